@@ -1,3 +1,6 @@
+-- 表结构已改为由 Flyway 版本化迁移维护：src/main/resources/db/migration
+-- 本文件仅作初始结构参考，新的表结构变更请新增迁移脚本
+
 create database buyi_picture;
 
 -- 用户表
@@ -59,6 +62,9 @@ ALTER TABLE picture
     -- 添加新列
     ADD COLUMN thumbnailUrl varchar(512) NULL COMMENT '缩略图 url';
 
+ALTER TABLE picture
+    ADD COLUMN webpUrl varchar(512) NULL COMMENT '压缩图 url（webp）';
+
 -- 空间表
 create table if not exists space
 (
@@ -111,3 +117,32 @@ create table if not exists space_user
     INDEX idx_spaceId (spaceId),                    -- 提升按空间查询的性能
     INDEX idx_userId (userId)                       -- 提升按用户查询的性能
 ) comment '空间用户关联' collate = utf8mb4_unicode_ci;
+
+-- 图片标签关联表（规范化 picture.tags，标签筛选走索引）
+create table if not exists picture_tag
+(
+    id         bigint auto_increment comment 'id' primary key,
+    pictureId  bigint                             not null comment '图片 id',
+    tag        varchar(128)                       not null comment '标签',
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    -- 索引设计
+    UNIQUE KEY uk_pictureId_tag (pictureId, tag), -- 一张图片的同一标签只记录一次，也用于按图片删除
+    INDEX idx_tag_pictureId (tag, pictureId)      -- 按标签筛选图片（覆盖索引）
+) comment '图片标签关联' collate = utf8mb4_unicode_ci;
+
+-- 回填已有图片的标签（MySQL 8.0+ JSON_TABLE）
+INSERT IGNORE INTO picture_tag (pictureId, tag)
+SELECT p.id, jt.tag
+FROM picture p,
+     JSON_TABLE(p.tags, '$[*]' COLUMNS (tag varchar(128) PATH '$')) jt
+WHERE p.isDelete = 0
+  AND p.tags IS NOT NULL
+  AND JSON_VALID(p.tags)
+  AND jt.tag IS NOT NULL
+  AND jt.tag <> '';
+
+-- 列表可排序字段索引（排序字段白名单中的列，避免全表 filesort）
+CREATE INDEX idx_createTime ON picture (createTime);
+CREATE INDEX idx_editTime ON picture (editTime);
+CREATE INDEX idx_createTime ON space (createTime);
+CREATE INDEX idx_createTime ON user (createTime);
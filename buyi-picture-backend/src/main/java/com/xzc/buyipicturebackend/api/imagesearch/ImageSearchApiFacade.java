@@ -1,31 +1,252 @@
 package com.xzc.buyipicturebackend.api.imagesearch;
 
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.xzc.buyipicturebackend.api.imagesearch.model.ImageSearchResult;
 import com.xzc.buyipicturebackend.api.imagesearch.sub.GetImageListApi;
 import com.xzc.buyipicturebackend.api.imagesearch.sub.GetImageUrlApi;
+import com.xzc.buyipicturebackend.config.ImageSearchConfig;
+import com.xzc.buyipicturebackend.exception.BusinessException;
+import com.xzc.buyipicturebackend.exception.ErrorCode;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
 
-import java.util.List;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 /**
  * 图片搜索API整合
  * 门面模式
+ * 1.图片在360的地址和合并后的搜图结果按图片缓存（本地缓存 -> redis），热门图片重复搜索不再请求360
+ * 2.第一页确定分页大小后，其余分页并发请求；慢请求发起一次对冲请求，整体受总耗时上限约束
+ * 3.同一图片的并发搜索合并为一次
  *
  * @author xuzhichao
  * @since 2025-03-13
  */
 @Slf4j
+@Component
 public class ImageSearchApiFacade {
-    public static List<ImageSearchResult> searchImages(String imageUrl, Integer start) {
-        String imageUrlOn360 = GetImageUrlApi.getImageUrl(imageUrl);
-        List<ImageSearchResult> imageList = GetImageListApi.getImageList(imageUrlOn360, start);
-        return imageList;
+
+    private static final String SOURCE_URL_KEY = "buyipicture:imageSearch:sourceUrl:";
+
+    private static final String RESULT_KEY = "buyipicture:imageSearch:result:";
+
+    @Resource
+    private ImageSearchConfig imageSearchConfig;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ThreadPoolExecutor imageSearchExecutor;
+
+    private final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "image-search-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Cache<String, String> LOCAL_CACHE =
+            Caffeine.newBuilder().initialCapacity(256)
+                    .maximumSize(10000L)
+                    .expireAfterWrite(10L, TimeUnit.MINUTES)
+                    .build();
+
+    /**
+     * 正在进行的搜图
+     */
+    private final Map<String, CompletableFuture<List<ImageSearchResult>>> inFlightMap = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void close() {
+        hedgeScheduler.shutdownNow();
+    }
+
+    /**
+     * 以图搜图
+     *
+     * @param pictureId 图片id
+     * @param imageUrl  图片地址
+     * @return 搜图结果（超时的分页被丢弃，可能少于上限）
+     */
+    public List<ImageSearchResult> searchImages(Long pictureId, String imageUrl) {
+        // 图片重新上传后地址变化，缓存随之失效
+        String cacheId = pictureId + ":" + DigestUtils.md5DigestAsHex(imageUrl.getBytes(StandardCharsets.UTF_8));
+        String cachedValue = getCache(RESULT_KEY + cacheId);
+        if (cachedValue != null) {
+            return JSONUtil.toList(cachedValue, ImageSearchResult.class);
+        }
+
+        CompletableFuture<List<ImageSearchResult>> future = new CompletableFuture<>();
+        CompletableFuture<List<ImageSearchResult>> inFlight = inFlightMap.putIfAbsent(cacheId, future);
+        if (inFlight != null) {
+            // 等待进行中的同一搜图
+            try {
+                return inFlight.get(imageSearchConfig.getTimeBudgetMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "搜图失败");
+            } catch (ExecutionException | TimeoutException e) {
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "搜图失败");
+            }
+        }
+        try {
+            List<ImageSearchResult> resultList = doSearch(cacheId, imageUrl);
+            future.complete(resultList);
+            return resultList;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightMap.remove(cacheId, future);
+        }
+    }
+
+    private List<ImageSearchResult> doSearch(String cacheId, String imageUrl) {
+        long deadline = System.currentTimeMillis() + imageSearchConfig.getTimeBudgetMillis();
+
+        // 1.图片在360的地址（同一图片不变）
+        String sourceUrl = getCache(SOURCE_URL_KEY + cacheId);
+        if (sourceUrl == null) {
+            sourceUrl = await(hedged(() -> GetImageUrlApi.getImageUrl(imageUrl)), deadline);
+            if (StrUtil.isBlank(sourceUrl)) {
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "搜图失败");
+            }
+            putCache(SOURCE_URL_KEY + cacheId, sourceUrl, imageSearchConfig.getSourceUrlTtlSeconds());
+        }
+        String finalSourceUrl = sourceUrl;
+
+        // 2.第一页，确定分页大小
+        List<ImageSearchResult> firstPage = await(hedged(() -> GetImageListApi.getImageList(finalSourceUrl, 0)), deadline);
+        List<ImageSearchResult> resultList = new ArrayList<>(firstPage);
+        boolean complete = true;
+
+        // 3.其余分页并发请求，按页序合并
+        int pageSize = firstPage.size();
+        int maxResults = imageSearchConfig.getMaxResults();
+        if (pageSize > 0 && pageSize < maxResults) {
+            List<CompletableFuture<List<ImageSearchResult>>> pageFutures = new ArrayList<>();
+            for (int start = pageSize; start < maxResults; start += pageSize) {
+                int pageStart = start;
+                pageFutures.add(hedged(() -> GetImageListApi.getImageList(finalSourceUrl, pageStart)));
+            }
+            for (CompletableFuture<List<ImageSearchResult>> pageFuture : pageFutures) {
+                try {
+                    resultList.addAll(await(pageFuture, deadline));
+                } catch (BusinessException e) {
+                    complete = false;
+                }
+            }
+        }
+
+        // 4.去重、截断；完整的结果才缓存
+        Map<String, ImageSearchResult> resultMap = new LinkedHashMap<>();
+        for (ImageSearchResult imageSearchResult : resultList) {
+            resultMap.putIfAbsent(imageSearchResult.getImgUrl(), imageSearchResult);
+        }
+        List<ImageSearchResult> mergedList = new ArrayList<>(resultMap.values());
+        if (mergedList.size() > maxResults) {
+            mergedList = new ArrayList<>(mergedList.subList(0, maxResults));
+        }
+        if (complete) {
+            putCache(RESULT_KEY + cacheId, JSONUtil.toJsonStr(mergedList), imageSearchConfig.getResultTtlSeconds());
+        } else {
+            log.warn("360搜图部分分页超时或失败, cacheId = {}, size = {}", cacheId, mergedList.size());
+        }
+        return mergedList;
+    }
+
+    /**
+     * 对冲请求：先发起一次请求，超过对冲延迟未返回（或失败）时再发起一次，先成功的生效，两次都失败才失败
+     */
+    private <T> CompletableFuture<T> hedged(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicBoolean hedgeLaunched = new AtomicBoolean(false);
+        Runnable[] launchHedge = new Runnable[1];
+        BiConsumer<T, Throwable> handler = (value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            int failed = failures.incrementAndGet();
+            if (hedgeLaunched.compareAndSet(false, true)) {
+                // 首次请求直接失败，立即重试
+                launchHedge[0].run();
+            } else if (failed >= 2) {
+                result.completeExceptionally(error);
+            }
+        };
+        launchHedge[0] = () -> submit(call).whenComplete(handler);
+        submit(call).whenComplete(handler);
+        hedgeScheduler.schedule(() -> {
+            if (!result.isDone() && hedgeLaunched.compareAndSet(false, true)) {
+                launchHedge[0].run();
+            }
+        }, imageSearchConfig.getHedgeDelayMillis(), TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, imageSearchExecutor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * 在总耗时上限内等待结果
+     */
+    private <T> T await(CompletableFuture<T> future, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        try {
+            if (remaining <= 0) {
+                if (future.isDone()) {
+                    return future.get();
+                }
+                throw new TimeoutException();
+            }
+            return future.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "搜图失败");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "搜图失败");
+        }
+    }
+
+    /**
+     * 本地缓存 -> redis
+     */
+    private String getCache(String key) {
+        String value = LOCAL_CACHE.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        value = stringRedisTemplate.opsForValue().get(key);
+        if (value != null) {
+            LOCAL_CACHE.put(key, value);
+        }
+        return value;
     }
 
-    public static void main(String[] args) {
-        //测试整合的以图搜图功能
-        String imageUrl = "https://buyi-picture-1334180391.cos.ap-shanghai.myqcloud.com//public/1872227414019698690/2025-01-10_Fz9muibtq5rirO2Y.jpg";
-        List<ImageSearchResult> result = searchImages(imageUrl, 0);
-        System.out.println("搜索成功，结果列表：" + result);
+    private void putCache(String key, String value, long ttlSeconds) {
+        LOCAL_CACHE.put(key, value);
+        stringRedisTemplate.opsForValue().set(key, value, ttlSeconds, TimeUnit.SECONDS);
     }
 }
@@ -0,0 +1,41 @@
+package com.xzc.buyipicturebackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 站外以图搜图（360搜图）配置
+ *
+ * @author xuzhichao
+ */
+@Configuration
+@ConfigurationProperties(prefix = "picture.image-search")
+@Data
+public class ImageSearchConfig {
+
+    /**
+     * 最多返回的结果数
+     */
+    private int maxResults = 50;
+
+    /**
+     * 单次搜图的总耗时上限（毫秒），超时未返回的分页丢弃
+     */
+    private long timeBudgetMillis = 8000L;
+
+    /**
+     * 请求超过该时间（毫秒）未返回时发起一次对冲请求，先返回的结果生效
+     */
+    private long hedgeDelayMillis = 1500L;
+
+    /**
+     * 搜图结果缓存时间（秒）
+     */
+    private long resultTtlSeconds = 3600L;
+
+    /**
+     * 图片在360的地址缓存时间（秒），同一图片地址不变
+     */
+    private long sourceUrlTtlSeconds = 7 * 24 * 3600L;
+}
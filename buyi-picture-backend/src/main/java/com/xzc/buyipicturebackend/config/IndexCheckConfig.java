@@ -0,0 +1,26 @@
+package com.xzc.buyipicturebackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 启动时索引执行计划检查配置
+ *
+ * @author xuzhichao
+ */
+@Configuration
+@ConfigurationProperties(prefix = "picture.index-check")
+@Data
+public class IndexCheckConfig {
+
+    /**
+     * 是否在启动时检查核心查询的执行计划
+     */
+    private boolean enabled = true;
+
+    /**
+     * 核心查询无法使用预期索引时是否终止启动
+     */
+    private boolean failOnRegression = false;
+}
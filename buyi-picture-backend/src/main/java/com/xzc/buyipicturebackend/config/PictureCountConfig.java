@@ -0,0 +1,31 @@
+package com.xzc.buyipicturebackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 图片分页总数（COUNT）缓存配置
+ *
+ * @author xuzhichao
+ */
+@Configuration
+@ConfigurationProperties(prefix = "picture.count")
+@Data
+public class PictureCountConfig {
+
+    /**
+     * 总数缓存过期时间（秒）
+     */
+    private long cacheTtlSeconds = 600;
+
+    /**
+     * 宽泛查询条件下是否允许使用近似总数
+     */
+    private boolean approximateEnabled = true;
+
+    /**
+     * 近似总数阈值：索引统计估算的行数不小于该值时才使用近似总数，否则精确统计
+     */
+    private long approximateThreshold = 10000;
+}
@@ -0,0 +1,36 @@
+package com.xzc.buyipicturebackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 图片全文检索（Lucene 本地索引）配置
+ *
+ * @author xuzhichao
+ */
+@Configuration
+@ConfigurationProperties(prefix = "picture.search")
+@Data
+public class PictureSearchConfig {
+
+    /**
+     * 是否启用全文检索，关闭后搜索词回退为数据库模糊查询
+     */
+    private boolean enabled = true;
+
+    /**
+     * 索引目录（每个节点本地磁盘）
+     */
+    private String indexDir = "data/picture-index";
+
+    /**
+     * 单次搜索最多返回的命中数
+     */
+    private int maxHits = 1000;
+
+    /**
+     * 是否启用公共图库内存筛选索引，关闭后公共图库浏览直接查询数据库
+     */
+    private boolean galleryIndexEnabled = true;
+}
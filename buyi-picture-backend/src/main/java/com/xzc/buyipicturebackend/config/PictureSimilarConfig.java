@@ -0,0 +1,31 @@
+package com.xzc.buyipicturebackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 相似图片推荐（视觉特征 HNSW 本地索引）配置
+ *
+ * @author xuzhichao
+ */
+@Configuration
+@ConfigurationProperties(prefix = "picture.similar")
+@Data
+public class PictureSimilarConfig {
+
+    /**
+     * 是否启用相似图片推荐
+     */
+    private boolean enabled = true;
+
+    /**
+     * 索引文件目录（每个节点本地磁盘，每个空间一个文件）
+     */
+    private String indexDir = "data/feature-index";
+
+    /**
+     * 搜索时的候选集大小，越大召回越准、越慢
+     */
+    private int efSearch = 64;
+}
@@ -0,0 +1,34 @@
+package com.xzc.buyipicturebackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 图片大小分析配置
+ *
+ * @author xuzhichao
+ */
+@Configuration
+@ConfigurationProperties(prefix = "picture.size-analyze")
+@Data
+public class PictureSizeAnalyzeConfig {
+
+    /**
+     * 大小分布的分段边界（字节），相邻边界之间为一段，首尾各多一段
+     */
+    private List<Long> bucketBoundaries = Arrays.asList(100 * 1024L, 500 * 1024L, 1024 * 1024L);
+
+    /**
+     * 大小分位数的相对误差（分位数草图按该误差划分对数桶）
+     */
+    private double sketchRelativeAccuracy = 0.01;
+
+    /**
+     * 草图过期时间（小时），过期后下次读取时按数据库重建，修正累积的偏差
+     */
+    private long sketchTtlHours = 24;
+}
@@ -0,0 +1,41 @@
+package com.xzc.buyipicturebackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 空间额度对账配置
+ *
+ * @author xuzhichao
+ */
+@Configuration
+@ConfigurationProperties(prefix = "space.quota")
+@Data
+public class SpaceQuotaConfig {
+
+    /**
+     * 是否启用额度对账
+     */
+    private boolean reconcileEnabled = true;
+
+    /**
+     * 每批对账的空间数
+     */
+    private int reconcileChunkSize = 100;
+
+    /**
+     * 每轮最多对账的批数，未完成的部分从游标处继续
+     */
+    private int reconcileMaxChunks = 50;
+
+    /**
+     * 对账占用数据库时间的比例上限，按每批的统计耗时计算批间休眠时间
+     */
+    private double reconcileDutyCycle = 0.2;
+
+    /**
+     * 单批统计耗时超过该值（毫秒）时说明数据库繁忙，结束本轮
+     */
+    private long reconcileMaxQueryMillis = 2000L;
+}
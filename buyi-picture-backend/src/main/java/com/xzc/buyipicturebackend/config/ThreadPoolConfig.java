@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Configuration;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -26,4 +27,49 @@ public class ThreadPoolConfig {
         );
         return executor;
     }
+
+    /**
+     * 站外以图搜图专用线程池，与业务异步任务隔离；队列满时直接拒绝，由调用方降级
+     */
+    @Bean
+    public Executor imageSearchExecutor() {
+        return new ThreadPoolExecutor(
+                16,
+                16,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(200),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * 空间分析看板专用线程池，并行执行各项分析；队列满时由调用线程执行，退化为串行
+     */
+    @Bean
+    public Executor spaceAnalyzeExecutor() {
+        return new ThreadPoolExecutor(
+                8,
+                8,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(100),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    /**
+     * 空间额度对账专用线程池（单线程），对账的批间休眠不占用定时任务线程；已有对账在执行时丢弃
+     */
+    @Bean
+    public Executor spaceQuotaReconcileExecutor() {
+        return new ThreadPoolExecutor(
+                1,
+                1,
+                60L,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                new ThreadPoolExecutor.DiscardPolicy()
+        );
+    }
 }
@@ -1,14 +1,12 @@
 package com.xzc.buyipicturebackend.controller;
 
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.xzc.buyipicturebackend.annotation.AuthCheck;
 import com.xzc.buyipicturebackend.api.aliyun.AliyunAiApi;
 import com.xzc.buyipicturebackend.api.aliyun.model.CreateOutPaintingTaskResponse;
 import com.xzc.buyipicturebackend.api.aliyun.model.CreatePictureOutPaintingTaskRequest;
 import com.xzc.buyipicturebackend.api.aliyun.model.GetOutPaintingTaskResponse;
-import com.xzc.buyipicturebackend.api.imagesearch.ImageSearchApiFacade;
 import com.xzc.buyipicturebackend.api.imagesearch.model.ImageSearchResult;
 import com.xzc.buyipicturebackend.common.BaseResponse;
 import com.xzc.buyipicturebackend.common.ResultUtils;
@@ -20,19 +18,25 @@ import com.xzc.buyipicturebackend.manager.auth.SpaceUserAuthManager;
 import com.xzc.buyipicturebackend.manager.auth.StpKit;
 import com.xzc.buyipicturebackend.manager.auth.annotation.SaSpaceCheckPermission;
 import com.xzc.buyipicturebackend.manager.auth.model.SpaceUserPermissionConstant;
+import com.xzc.buyipicturebackend.manager.color.PicturePaletteIndexManager;
+import com.xzc.buyipicturebackend.manager.rollup.PictureDailyStatManager;
+import com.xzc.buyipicturebackend.manager.rollup.TagStatManager;
+import com.xzc.buyipicturebackend.manager.search.PictureSearchManager;
+import com.xzc.buyipicturebackend.manager.similar.PictureFeatureIndexManager;
+import com.xzc.buyipicturebackend.manager.similar.PictureHashIndexManager;
 import com.xzc.buyipicturebackend.model.dto.*;
 import com.xzc.buyipicturebackend.model.dto.picture.*;
 import com.xzc.buyipicturebackend.model.entity.Picture;
 import com.xzc.buyipicturebackend.model.entity.Space;
 import com.xzc.buyipicturebackend.model.entity.User;
 import com.xzc.buyipicturebackend.model.enums.PictureReviewStatusEnum;
+import com.xzc.buyipicturebackend.model.vo.picture.DuplicateReportVo;
 import com.xzc.buyipicturebackend.model.vo.picture.PictureTagCategory;
 import com.xzc.buyipicturebackend.model.vo.picture.PictureVo;
 import com.xzc.buyipicturebackend.service.PictureService;
 import com.xzc.buyipicturebackend.service.SpaceService;
 import com.xzc.buyipicturebackend.service.UserService;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.BeanUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -40,7 +44,6 @@ import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -70,6 +73,24 @@ public class PictureController {
     @Resource
     private SpaceUserAuthManager spaceUserAuthManager;
 
+    @Resource
+    private PictureSearchManager pictureSearchManager;
+
+    @Resource
+    private PicturePaletteIndexManager picturePaletteIndexManager;
+
+    @Resource
+    private PictureHashIndexManager pictureHashIndexManager;
+
+    @Resource
+    private PictureFeatureIndexManager pictureFeatureIndexManager;
+
+    @Resource
+    private TagStatManager tagStatManager;
+
+    @Resource
+    private PictureDailyStatManager pictureDailyStatManager;
+
     /**
      * 上传本地图片（可重新上传）（重新上传时，暂为直接在云中多上传一张图片，旧图片保留了，暂未删除）
      * 用户和管理员皆可上传
@@ -151,6 +172,23 @@ public class PictureController {
         return ResultUtils.success(true);
     }
 
+    /**
+     * 批量删除图片（同一空间；公共图库的图片仅本人或管理员可删除）
+     *
+     * @param pictureDeleteByBatchRequest 批量删除图片请求
+     * @param request                     HttpServletRequest
+     * @return true
+     */
+    @PostMapping("/delete/batch")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_DELETE)
+    public BaseResponse<Boolean> deletePictureByBatch(@RequestBody PictureDeleteByBatchRequest pictureDeleteByBatchRequest
+            , HttpServletRequest request) {
+        ThrowUtils.throwIf(pictureDeleteByBatchRequest == null, ErrorCode.PARAMS_ERROR);
+        User loginUser = userService.getLoginUser(request);
+        pictureService.deletePictureByBatch(pictureDeleteByBatchRequest, loginUser);
+        return ResultUtils.success(true);
+    }
+
     /**
      * 更新图片（仅管理员可用）
      *
@@ -162,27 +200,8 @@ public class PictureController {
     public BaseResponse<Boolean> updatePicture(@RequestBody PictureUpdateRequest pictureUpdateRequest
             , HttpServletRequest request) {
         ThrowUtils.throwIf(pictureUpdateRequest == null || pictureUpdateRequest.getId() <= 0, ErrorCode.PARAMS_ERROR);
-
-        // DTO转换实体类
-        Picture picture = new Picture();
-        BeanUtils.copyProperties(pictureUpdateRequest, picture);
-        picture.setTags(JSONUtil.toJsonStr(pictureUpdateRequest.getTags()));
-
-        // 校验图片id,url,简介
-        pictureService.validPicture(picture);
-
-        // 判断图片是否存在
-        Picture oldPicture = pictureService.getById(picture.getId());
-        ThrowUtils.throwIf(oldPicture == null, ErrorCode.NOT_FOUND_ERROR);
-
-        // 补充审核参数（管理员更新图片，自动过审）
         User loginUser = userService.getLoginUser(request);
-        pictureService.fillReviewParams(picture, loginUser, true);
-
-        // 更新
-        boolean result = pictureService.updateById(picture);
-        ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "更新失败，数据库错误");
-
+        pictureService.updatePicture(pictureUpdateRequest, loginUser);
         return ResultUtils.success(true);
     }
 
@@ -234,8 +253,8 @@ public class PictureController {
     @GetMapping("/get/vo")
     public BaseResponse<PictureVo> getPictureVoById(long id, HttpServletRequest request) {
         ThrowUtils.throwIf(id <= 0, ErrorCode.PARAMS_ERROR);
-        // 查询数据库
-        Picture picture = pictureService.getById(id);
+        // 查询数据库（只查询详情需要的列）
+        Picture picture = pictureService.getPictureDetailById(id);
         ThrowUtils.throwIf(picture == null, ErrorCode.NOT_FOUND_ERROR);
 
         // 如果为私有空间图片，仅本人可查看
@@ -261,6 +280,19 @@ public class PictureController {
         return ResultUtils.success(pictureVo);
     }
 
+    /**
+     * 获取视觉相似的图片（图片详情页“更多相似”）
+     *
+     * @param id 图片id
+     * @return List<PictureVo>
+     */
+    @GetMapping("/get/similar")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_VIEW)
+    public BaseResponse<List<PictureVo>> listSimilarPictureVo(long id) {
+        ThrowUtils.throwIf(id <= 0, ErrorCode.PARAMS_ERROR);
+        return ResultUtils.success(pictureService.listSimilarPictureVo(id));
+    }
+
     /**
      * 分页获取图片列表（仅管理员可用）
      *
@@ -270,12 +302,8 @@ public class PictureController {
     @PostMapping("/list/page")
     @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
     public BaseResponse<Page<Picture>> listPictureByPage(@RequestBody PictureQueryRequest pictureQueryRequest) {
-        long current = pictureQueryRequest.getCurrent();
-        long size = pictureQueryRequest.getPageSize();
-        // 查询数据库
-        Page<Picture> picturePage = pictureService.page(new Page<>(current, size),
-                pictureService.getQueryWrapper(pictureQueryRequest));
-        return ResultUtils.success(picturePage);
+        // 查询数据库（总数走计数缓存，可通过 exactCount 要求精确总数）
+        return ResultUtils.success(pictureService.listPictureByPage(pictureQueryRequest));
     }
 
     /**
@@ -297,6 +325,8 @@ public class PictureController {
         pictureQueryRequest.setReviewStatus(PictureReviewStatusEnum.PASS.getValue());
         // 只查看没有spaceId（公共图库）的图片
         pictureQueryRequest.setNullSpaceId(true);
+        // 精确总数仅管理员可要求
+        pictureQueryRequest.setExactCount(null);
 
         // 本地缓存-> redis缓存 -> 数据库
         return ResultUtils.success(pictureService.getDataFromCacheOrDb(pictureQueryRequest, request));
@@ -316,8 +346,6 @@ public class PictureController {
         // 查看私有空间的接口，必须有spaceId
         Long spaceId = pictureQueryRequest.getSpaceId();
         ThrowUtils.throwIf(spaceId == null, ErrorCode.PARAMS_ERROR);
-        long current = pictureQueryRequest.getCurrent();
-        long size = pictureQueryRequest.getPageSize();
 
         Space space = spaceService.getById(spaceId);
         ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "图库空间不存在");
@@ -328,9 +356,9 @@ public class PictureController {
 
         pictureQueryRequest.setSpaceId(spaceId);
         pictureQueryRequest.setNullSpaceId(false);
-        // 查询数据库。私有空间更新频率无法确定，不设置缓存
-        Page<Picture> picturePage = pictureService.page(new Page<>(current, size)
-                , pictureService.getQueryWrapper(pictureQueryRequest));
+        pictureQueryRequest.setExactCount(null);
+        // 查询数据库。私有空间更新频率无法确定，不设置列表缓存，仅总数走计数缓存
+        Page<Picture> picturePage = pictureService.listPictureCardByPage(pictureQueryRequest);
         Page<PictureVo> pictureVoPage = pictureService.getPictureVoPage(picturePage, request);
         return ResultUtils.success(pictureVoPage);
     }
@@ -404,33 +432,80 @@ public class PictureController {
     }
 
     /**
-     * 以图搜图
+     * 重建图片全文索引（异步执行）
+     *
+     * @return true
+     */
+    @PostMapping("/search/index/rebuild")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> rebuildSearchIndex() {
+        pictureSearchManager.rebuildIndexAsync();
+        return ResultUtils.success(true);
+    }
+
+    /**
+     * 按标签关联重新统计标签（异步执行）
+     *
+     * @return true
+     */
+    @PostMapping("/tag/stat/rebuild")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> rebuildTagStat() {
+        tagStatManager.rebuildAsync();
+        return ResultUtils.success(true);
+    }
+
+    /**
+     * 按图片表补录每日上传统计（异步执行）
+     *
+     * @return true
+     */
+    @PostMapping("/daily/stat/backfill")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> backfillDailyStat() {
+        boolean started = pictureDailyStatManager.backfillAsync();
+        ThrowUtils.throwIf(!started, ErrorCode.OPERATION_ERROR, "补录任务进行中，请稍后再试");
+        return ResultUtils.success(true);
+    }
+
+    /**
+     * 以图搜图（站内相似图片优先，站内无结果时调用360搜图）
      *
      * @param searchPictureByPictureRequest 图片id请求
      * @return List<ImageSearchResult>
      */
     @PostMapping("/search/picture")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_VIEW)
     public BaseResponse<List<ImageSearchResult>> searchPictureByPicture(@RequestBody SearchPictureByPictureRequest searchPictureByPictureRequest) {
         ThrowUtils.throwIf(searchPictureByPictureRequest == null, ErrorCode.PARAMS_ERROR);
-        Long pictureId = searchPictureByPictureRequest.getPictureId();
-        ThrowUtils.throwIf(pictureId == null || pictureId <= 0, ErrorCode.PARAMS_ERROR);
-        Picture picture = pictureService.getById(pictureId);
-        ThrowUtils.throwIf(picture == null, ErrorCode.NOT_FOUND_ERROR);
-
-        List<ImageSearchResult> resultList = new ArrayList<>();
-        //360搜图以start控制查询页数。本平台支持查询50条
-        int start = 0;
-        while (resultList.size() <= 50) {
-            List<ImageSearchResult> result = ImageSearchApiFacade.searchImages(picture.getUrl(), start);
-            if (result.isEmpty()) {
-                break;
-            }
-            resultList.addAll(result);
-            start += result.size();
-        }
+        List<ImageSearchResult> resultList = pictureService.searchPictureByPicture(searchPictureByPictureRequest);
         return ResultUtils.success(resultList);
     }
 
+    /**
+     * 为历史图片计算感知哈希（异步执行）
+     *
+     * @return true
+     */
+    @PostMapping("/hash/backfill")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> backfillPictureHash() {
+        pictureHashIndexManager.backfillHashesAsync();
+        return ResultUtils.success(true);
+    }
+
+    /**
+     * 为历史图片提取视觉特征（异步执行）
+     *
+     * @return true
+     */
+    @PostMapping("/feature/backfill")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> backfillPictureFeature() {
+        pictureFeatureIndexManager.backfillFeaturesAsync();
+        return ResultUtils.success(true);
+    }
+
     /**
      * 以色调搜图
      *
@@ -449,6 +524,81 @@ public class PictureController {
         return ResultUtils.success(pictureVos);
     }
 
+    /**
+     * 根据调色板搜索图片（空间或公共图库）
+     *
+     * @param searchPictureByPaletteRequest 目标颜色（1~5种）及空间id
+     * @param request                       HttpServletRequest
+     * @return List<PictureVo>
+     */
+    @PostMapping("/search/palette")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_VIEW)
+    public BaseResponse<List<PictureVo>> searchPictureByPalette(@RequestBody SearchPictureByPaletteRequest searchPictureByPaletteRequest
+            , HttpServletRequest request) {
+        ThrowUtils.throwIf(searchPictureByPaletteRequest == null, ErrorCode.PARAMS_ERROR);
+        User loginUser = userService.getLoginUser(request);
+        List<PictureVo> pictureVos = pictureService.searchPictureByPalette(searchPictureByPaletteRequest, loginUser);
+        return ResultUtils.success(pictureVos);
+    }
+
+    /**
+     * 后台分析空间中的近似重复图片
+     *
+     * @param duplicatePictureRequest 空间id
+     * @param request                 HttpServletRequest
+     * @return true
+     */
+    @PostMapping("/duplicate/analyze")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_DELETE)
+    public BaseResponse<Boolean> analyzeDuplicatePictures(@RequestBody DuplicatePictureRequest duplicatePictureRequest,
+                                                          HttpServletRequest request) {
+        ThrowUtils.throwIf(duplicatePictureRequest == null, ErrorCode.PARAMS_ERROR);
+        User loginUser = userService.getLoginUser(request);
+        pictureService.analyzeDuplicatePictures(duplicatePictureRequest.getSpaceId(), loginUser);
+        return ResultUtils.success(true);
+    }
+
+    /**
+     * 获取空间重复图片分析报告
+     *
+     * @param duplicatePictureRequest 空间id
+     * @return DuplicateReportVo，没有分析过时为 null
+     */
+    @PostMapping("/duplicate/report")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_VIEW)
+    public BaseResponse<DuplicateReportVo> getDuplicateReport(@RequestBody DuplicatePictureRequest duplicatePictureRequest) {
+        ThrowUtils.throwIf(duplicatePictureRequest == null, ErrorCode.PARAMS_ERROR);
+        return ResultUtils.success(pictureService.getDuplicateReport(duplicatePictureRequest.getSpaceId()));
+    }
+
+    /**
+     * 一键合并空间中的重复图片
+     *
+     * @param duplicatePictureRequest 空间id
+     * @param request                 HttpServletRequest
+     * @return 删除的图片数
+     */
+    @PostMapping("/duplicate/merge")
+    @SaSpaceCheckPermission(value = SpaceUserPermissionConstant.PICTURE_DELETE)
+    public BaseResponse<Integer> mergeDuplicatePictures(@RequestBody DuplicatePictureRequest duplicatePictureRequest,
+                                                        HttpServletRequest request) {
+        ThrowUtils.throwIf(duplicatePictureRequest == null, ErrorCode.PARAMS_ERROR);
+        User loginUser = userService.getLoginUser(request);
+        return ResultUtils.success(pictureService.mergeDuplicatePictures(duplicatePictureRequest.getSpaceId(), loginUser));
+    }
+
+    /**
+     * 为历史图片提取调色板（异步执行）
+     *
+     * @return true
+     */
+    @PostMapping("/palette/backfill")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> backfillPicturePalette() {
+        picturePaletteIndexManager.backfillPalettesAsync();
+        return ResultUtils.success(true);
+    }
+
     /**
      * 批量编辑图片（分类或标签或名称）
      *
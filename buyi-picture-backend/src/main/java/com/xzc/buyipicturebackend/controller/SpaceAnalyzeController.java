@@ -5,7 +5,6 @@ import com.xzc.buyipicturebackend.common.ResultUtils;
 import com.xzc.buyipicturebackend.exception.ErrorCode;
 import com.xzc.buyipicturebackend.exception.ThrowUtils;
 import com.xzc.buyipicturebackend.model.dto.space.analyze.*;
-import com.xzc.buyipicturebackend.model.entity.Space;
 import com.xzc.buyipicturebackend.model.entity.User;
 import com.xzc.buyipicturebackend.model.vo.space.analyze.*;
 import com.xzc.buyipicturebackend.service.SpaceAnalyzeService;
@@ -37,6 +36,22 @@ public class SpaceAnalyzeController {
     @Resource
     private SpaceAnalyzeService spaceAnalyzeService;
 
+    /**
+     * 空间分析看板（一次返回资源使用、分类、标签、大小、上传行为分析，全空间分析时附带排行）
+     *
+     * @param spaceDashboardRequest 空间分析看板请求
+     * @param request               HttpServletRequest
+     * @return 看板结果
+     */
+    @PostMapping("/dashboard")
+    public BaseResponse<SpaceDashboardResponse> getSpaceDashboard(
+            @RequestBody SpaceDashboardRequest spaceDashboardRequest
+            , HttpServletRequest request) {
+        ThrowUtils.throwIf(spaceDashboardRequest == null, ErrorCode.PARAMS_ERROR);
+        User loginUser = userService.getLoginUser(request);
+        return ResultUtils.success(spaceAnalyzeService.getSpaceDashboard(spaceDashboardRequest, loginUser));
+    }
+
     /**
      * 空间资源使用情况分析（获取空间使用情况）
      *
@@ -101,6 +116,22 @@ public class SpaceAnalyzeController {
         return ResultUtils.success(spaceAnalyzeService.getSpaceSizeAnalyze(spaceSizeAnalyzeRequest, loginUser));
     }
 
+    /**
+     * 空间图片大小的分位数分析（p50/p90/p99，近似值）
+     *
+     * @param spaceSizeAnalyzeRequest 空间图片大小分析请求
+     * @param request                 HttpServletRequest
+     * @return 分析结果
+     */
+    @PostMapping("/size/percentile")
+    public BaseResponse<SpaceSizePercentileResponse> getSpaceSizePercentile(
+            @RequestBody SpaceSizeAnalyzeRequest spaceSizeAnalyzeRequest
+            , HttpServletRequest request) {
+        ThrowUtils.throwIf(spaceSizeAnalyzeRequest == null, ErrorCode.PARAMS_ERROR);
+        User loginUser = userService.getLoginUser(request);
+        return ResultUtils.success(spaceAnalyzeService.getSpaceSizePercentile(spaceSizeAnalyzeRequest, loginUser));
+    }
+
     /**
      * 空间中用户上传行为分析
      *
@@ -125,11 +156,27 @@ public class SpaceAnalyzeController {
      * @return 分析结果
      */
     @PostMapping("/rank")
-    public BaseResponse<List<Space>> getSpaceRankAnalyze(
+    public BaseResponse<List<SpaceRankAnalyzeResponse>> getSpaceRankAnalyze(
             @RequestBody SpaceRankAnalyzeRequest spaceRankAnalyzeRequest
             , HttpServletRequest request) {
         ThrowUtils.throwIf(spaceRankAnalyzeRequest == null, ErrorCode.PARAMS_ERROR);
         User loginUser = userService.getLoginUser(request);
         return ResultUtils.success(spaceAnalyzeService.getSpaceRankAnalyze(spaceRankAnalyzeRequest, loginUser));
     }
+
+    /**
+     * 空间排名历史
+     *
+     * @param spaceRankHistoryRequest 空间排名历史请求
+     * @param request                 HttpServletRequest
+     * @return 按日期升序的排名
+     */
+    @PostMapping("/rank/history")
+    public BaseResponse<List<SpaceRankHistoryResponse>> getSpaceRankHistory(
+            @RequestBody SpaceRankHistoryRequest spaceRankHistoryRequest
+            , HttpServletRequest request) {
+        ThrowUtils.throwIf(spaceRankHistoryRequest == null, ErrorCode.PARAMS_ERROR);
+        User loginUser = userService.getLoginUser(request);
+        return ResultUtils.success(spaceAnalyzeService.getSpaceRankHistory(spaceRankHistoryRequest, loginUser));
+    }
 }
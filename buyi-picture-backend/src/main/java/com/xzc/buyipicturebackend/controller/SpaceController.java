@@ -12,6 +12,11 @@ import com.xzc.buyipicturebackend.manager.auth.SpaceUserAuthManager;
 import com.xzc.buyipicturebackend.manager.auth.StpKit;
 import com.xzc.buyipicturebackend.manager.auth.annotation.SaSpaceCheckPermission;
 import com.xzc.buyipicturebackend.manager.auth.model.SpaceUserPermissionConstant;
+import com.xzc.buyipicturebackend.manager.cache.SpaceDashboardCacheManager;
+import com.xzc.buyipicturebackend.manager.quota.SpaceQuotaManager;
+import com.xzc.buyipicturebackend.manager.rollup.PictureSizeSketchManager;
+import com.xzc.buyipicturebackend.manager.rollup.UploaderCardinalityManager;
+import com.xzc.buyipicturebackend.manager.quota.SpaceQuotaReconciler;
 import com.xzc.buyipicturebackend.model.dto.*;
 import com.xzc.buyipicturebackend.model.dto.space.SpaceAddRequest;
 import com.xzc.buyipicturebackend.model.dto.space.SpaceEditRequest;
@@ -21,6 +26,7 @@ import com.xzc.buyipicturebackend.model.entity.Space;
 import com.xzc.buyipicturebackend.model.entity.User;
 import com.xzc.buyipicturebackend.model.enums.SpaceLevelEnum;
 import com.xzc.buyipicturebackend.model.vo.space.SpaceLevel;
+import com.xzc.buyipicturebackend.model.vo.space.SpaceQuotaReconcileVo;
 import com.xzc.buyipicturebackend.model.vo.space.SpaceVo;
 import com.xzc.buyipicturebackend.service.SpaceService;
 import com.xzc.buyipicturebackend.service.UserService;
@@ -56,6 +62,21 @@ public class SpaceController {
     @Resource
     private SpaceUserAuthManager spaceUserAuthManager;
 
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
+
+    @Resource
+    private PictureSizeSketchManager pictureSizeSketchManager;
+
+    @Resource
+    private SpaceDashboardCacheManager spaceDashboardCacheManager;
+
+    @Resource
+    private UploaderCardinalityManager uploaderCardinalityManager;
+
+    @Resource
+    private SpaceQuotaReconciler spaceQuotaReconciler;
+
     /**
      * 添加创建私有图库空间
      *
@@ -96,6 +117,9 @@ public class SpaceController {
         // 操作数据库
         boolean result = spaceService.removeById(id);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "删除空间失败，数据库错误");
+        spaceQuotaManager.evict(id);
+        pictureSizeSketchManager.evict(id);
+        uploaderCardinalityManager.evict(id);
         return ResultUtils.success(true);
     }
 
@@ -144,7 +168,7 @@ public class SpaceController {
     public BaseResponse<Space> getSpaceById(long id) {
         ThrowUtils.throwIf(id <= 0, ErrorCode.PARAMS_ERROR);
         // 查询数据库
-        Space space = spaceService.getById(id);
+        Space space = spaceQuotaManager.fillUsage(spaceService.getById(id));
         ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR);
         // 获取封装类
         return ResultUtils.success(space);
@@ -162,7 +186,7 @@ public class SpaceController {
     public BaseResponse<SpaceVo> getSpaceVoById(long id, HttpServletRequest request) {
         ThrowUtils.throwIf(id <= 0, ErrorCode.PARAMS_ERROR);
         // 查询数据库
-        Space space = spaceService.getById(id);
+        Space space = spaceQuotaManager.fillUsage(spaceService.getById(id));
         ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR);
 
         // 非本人查询
@@ -203,6 +227,9 @@ public class SpaceController {
         // 操作数据库
         boolean result = spaceService.updateById(space);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
+        // 空间级别变化时同步额度上限
+        spaceQuotaManager.refreshLimit(spaceService.getById(id));
+        spaceDashboardCacheManager.bumpVersion(id);
         return ResultUtils.success(true);
     }
 
@@ -238,9 +265,23 @@ public class SpaceController {
         // 操作数据库
         boolean result = spaceService.updateById(space);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR);
+        // 空间级别变化时同步额度上限
+        spaceQuotaManager.refreshLimit(spaceService.getById(id));
+        spaceDashboardCacheManager.bumpVersion(id);
         return ResultUtils.success(true);
     }
 
+    /**
+     * 获取空间额度对账统计（仅管理员可用）
+     *
+     * @return SpaceQuotaReconcileVo
+     */
+    @GetMapping("/quota/reconcile/stats")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<SpaceQuotaReconcileVo> getQuotaReconcileStats() {
+        return ResultUtils.success(spaceQuotaReconciler.getStats());
+    }
+
     /**
      * 获取空间级别列表，便于前端展示
      *
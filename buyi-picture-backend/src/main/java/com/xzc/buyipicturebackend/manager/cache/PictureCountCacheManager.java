@@ -0,0 +1,220 @@
+package com.xzc.buyipicturebackend.manager.cache;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xzc.buyipicturebackend.config.PictureCountConfig;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.dto.picture.PictureQueryRequest;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片分页总数缓存
+ * 1.按规范化后的查询条件（去掉分页和排序）缓存 COUNT 结果，本地缓存 -> redis缓存 -> 数据库
+ * 2.写操作时自增版本号，所有旧的总数缓存整体失效（无需 KEYS 扫描）
+ * 3.宽泛条件（仅等值过滤）下可使用 EXPLAIN 的索引统计信息给出近似总数
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureCountCacheManager {
+
+    /**
+     * 总数缓存版本号 key
+     */
+    private static final String VERSION_KEY = "buyipicture:pictureCount:version";
+
+    /**
+     * 总数缓存 key 前缀
+     */
+    private static final String COUNT_KEY_PREFIX = "buyipicture:pictureCount:";
+
+    @Resource
+    private PictureCountConfig pictureCountConfig;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    // 本地缓存1分钟，兜底其他节点的版本号变化
+    private final Cache<String, Long> LOCAL_COUNT_CACHE =
+            Caffeine.newBuilder().initialCapacity(256)
+                    .maximumSize(10000L)
+                    .expireAfterWrite(1L, TimeUnit.MINUTES)
+                    .build();
+
+    /**
+     * 获取查询条件对应的总数
+     * 请求中 exactCount 为 true 时跳过缓存和近似统计，精确统计后回写缓存
+     *
+     * @param pictureQueryRequest 查询请求
+     * @param countQueryWrapper   不含排序的查询条件
+     * @return 总数
+     */
+    public long getCount(PictureQueryRequest pictureQueryRequest, QueryWrapper<Picture> countQueryWrapper) {
+        String cacheKey = buildCacheKey(pictureQueryRequest);
+        String approximateCacheKey = cacheKey + ":approx";
+
+        // 1.明确要求精确总数
+        if (Boolean.TRUE.equals(pictureQueryRequest.getExactCount())) {
+            long count = pictureMapper.selectCount(countQueryWrapper);
+            putCache(cacheKey, count);
+            return count;
+        }
+
+        // 2.精确总数缓存
+        Long cachedCount = getCache(cacheKey);
+        if (cachedCount != null) {
+            return cachedCount;
+        }
+
+        // 3.宽泛条件下使用近似总数
+        if (pictureCountConfig.isApproximateEnabled() && isBroadQuery(pictureQueryRequest)) {
+            cachedCount = getCache(approximateCacheKey);
+            if (cachedCount != null) {
+                return cachedCount;
+            }
+            Long estimate = estimateCount(countQueryWrapper);
+            if (estimate != null && estimate >= pictureCountConfig.getApproximateThreshold()) {
+                putCache(approximateCacheKey, estimate);
+                return estimate;
+            }
+        }
+
+        // 4.精确统计
+        long count = pictureMapper.selectCount(countQueryWrapper);
+        putCache(cacheKey, count);
+        return count;
+    }
+
+    /**
+     * 使所有总数缓存失效（图片新增、删除、编辑、审核后调用）
+     */
+    public void invalidate() {
+        LOCAL_COUNT_CACHE.invalidateAll();
+        try {
+            stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+        } catch (Exception e) {
+            log.error("图片总数缓存版本号更新失败", e);
+        }
+    }
+
+    /**
+     * 构建缓存 key：版本号 + 规范化查询条件的摘要
+     *
+     * @param pictureQueryRequest 查询请求
+     * @return 缓存 key
+     */
+    private String buildCacheKey(PictureQueryRequest pictureQueryRequest) {
+        String version = stringRedisTemplate.opsForValue().get(VERSION_KEY);
+        if (version == null) {
+            version = "0";
+        }
+        return COUNT_KEY_PREFIX + version + ":" + DigestUtils.md5DigestAsHex(getSignature(pictureQueryRequest).getBytes());
+    }
+
+    /**
+     * 规范化查询条件：去掉分页、排序等与总数无关的参数，标签排序后再序列化
+     *
+     * @param pictureQueryRequest 查询请求
+     * @return 查询条件签名
+     */
+    private String getSignature(PictureQueryRequest pictureQueryRequest) {
+        PictureQueryRequest countRequest = new PictureQueryRequest();
+        BeanUtils.copyProperties(pictureQueryRequest, countRequest);
+        countRequest.setCurrent(1);
+        countRequest.setPageSize(0);
+        countRequest.setSortField(null);
+        countRequest.setSortOrder(null);
+        countRequest.setExactCount(null);
+        if (CollUtil.isNotEmpty(countRequest.getTags())) {
+            List<String> tags = new ArrayList<>(countRequest.getTags());
+            Collections.sort(tags);
+            countRequest.setTags(tags);
+        }
+        return JSONUtil.toJsonStr(countRequest);
+    }
+
+    /**
+     * 是否为宽泛的查询条件（不含模糊匹配和标签条件，索引统计的估算较为可靠）
+     *
+     * @param pictureQueryRequest 查询请求
+     * @return 是否为宽泛条件
+     */
+    private boolean isBroadQuery(PictureQueryRequest pictureQueryRequest) {
+        return StrUtil.isAllBlank(pictureQueryRequest.getSearchText(),
+                pictureQueryRequest.getName(),
+                pictureQueryRequest.getIntroduction(),
+                pictureQueryRequest.getPicFormat(),
+                pictureQueryRequest.getReviewMessage())
+                && CollUtil.isEmpty(pictureQueryRequest.getTags())
+                && pictureQueryRequest.getId() == null;
+    }
+
+    /**
+     * 根据执行计划的索引统计信息估算总数（rows * filtered%）
+     *
+     * @param countQueryWrapper 查询条件
+     * @return 估算总数，无法估算时返回 null
+     */
+    private Long estimateCount(QueryWrapper<Picture> countQueryWrapper) {
+        try {
+            List<Map<String, Object>> explainRows = pictureMapper.explainCount(countQueryWrapper);
+            if (CollUtil.isEmpty(explainRows)) {
+                return null;
+            }
+            Map<String, Object> explainRow = explainRows.get(0);
+            Object rows = explainRow.get("rows");
+            if (!(rows instanceof Number)) {
+                return null;
+            }
+            double filtered = 100;
+            Object filteredObj = explainRow.get("filtered");
+            if (filteredObj instanceof Number) {
+                filtered = ((Number) filteredObj).doubleValue();
+            }
+            return Math.round(((Number) rows).longValue() * filtered / 100);
+        } catch (Exception e) {
+            log.warn("估算图片总数失败，改为精确统计", e);
+            return null;
+        }
+    }
+
+    private Long getCache(String cacheKey) {
+        Long count = LOCAL_COUNT_CACHE.getIfPresent(cacheKey);
+        if (count != null) {
+            return count;
+        }
+        String cachedValue = stringRedisTemplate.opsForValue().get(cacheKey);
+        if (cachedValue == null) {
+            return null;
+        }
+        count = Long.valueOf(cachedValue);
+        LOCAL_COUNT_CACHE.put(cacheKey, count);
+        return count;
+    }
+
+    private void putCache(String cacheKey, long count) {
+        LOCAL_COUNT_CACHE.put(cacheKey, count);
+        stringRedisTemplate.opsForValue().set(cacheKey, String.valueOf(count),
+                pictureCountConfig.getCacheTtlSeconds(), TimeUnit.SECONDS);
+    }
+}
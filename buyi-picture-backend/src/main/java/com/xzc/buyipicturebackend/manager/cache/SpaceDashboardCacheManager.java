@@ -0,0 +1,122 @@
+package com.xzc.buyipicturebackend.manager.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xzc.buyipicturebackend.model.vo.space.analyze.SpaceDashboardResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 空间分析看板缓存
+ * 1.每个范围（all、public、space:空间id）一个版本号，空间内图片变化时自增该空间和 all 的版本号
+ * 2.看板结果按 (范围, 版本号, 参数) 缓存在本地，版本号变化后旧结果不再命中，过期后自然淘汰
+ * 3.计算前先读取版本号，计算期间发生变化的结果只会写入旧版本，不会被读到
+ * 4.标签统计异步写入，写入后按其范围再次自增，看板不会缓存写入前的标签排行
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class SpaceDashboardCacheManager {
+
+    private static final String VERSION_KEY_PREFIX = "buyipicture:spaceDashboard:version:";
+
+    public static final String SCOPE_ALL = "all";
+
+    public static final String SCOPE_PUBLIC = "public";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final Cache<String, SpaceDashboardResponse> LOCAL_DASHBOARD_CACHE =
+            Caffeine.newBuilder().initialCapacity(256)
+                    .maximumSize(2000L)
+                    .expireAfterWrite(10L, TimeUnit.MINUTES)
+                    .build();
+
+    /**
+     * 空间的缓存范围
+     *
+     * @param spaceId 空间id，公共图库为 null
+     * @return 范围
+     */
+    public static String scopeOf(Long spaceId) {
+        return spaceId == null ? SCOPE_PUBLIC : "space:" + spaceId;
+    }
+
+    /**
+     * 构造缓存 key（包含范围当前的版本号）
+     *
+     * @param scope  范围
+     * @param params 影响结果的请求参数
+     * @return 缓存 key
+     */
+    public String buildCacheKey(String scope, Object... params) {
+        String version;
+        try {
+            version = stringRedisTemplate.opsForValue().get(VERSION_KEY_PREFIX + scope);
+        } catch (Exception e) {
+            // 读不到版本号时不使用缓存
+            log.error("空间看板缓存版本号读取失败, scope = {}", scope, e);
+            return null;
+        }
+        return scope + ":" + (version == null ? "0" : version) + ":" + Arrays.toString(params);
+    }
+
+    /**
+     * 获取缓存的看板结果
+     *
+     * @param cacheKey 缓存 key
+     * @return 看板结果，未命中时返回 null
+     */
+    public SpaceDashboardResponse get(String cacheKey) {
+        return cacheKey == null ? null : LOCAL_DASHBOARD_CACHE.getIfPresent(cacheKey);
+    }
+
+    /**
+     * 缓存看板结果
+     *
+     * @param cacheKey 缓存 key
+     * @param response 看板结果
+     */
+    public void put(String cacheKey, SpaceDashboardResponse response) {
+        if (cacheKey != null) {
+            LOCAL_DASHBOARD_CACHE.put(cacheKey, response);
+        }
+    }
+
+    /**
+     * 空间内图片变化后使该空间和全部范围的看板缓存失效
+     *
+     * @param spaceId 空间id，公共图库为 null
+     */
+    public void bumpVersion(Long spaceId) {
+        try {
+            stringRedisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + scopeOf(spaceId));
+            stringRedisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + SCOPE_ALL);
+        } catch (Exception e) {
+            log.error("空间看板缓存版本号更新失败, spaceId = {}", spaceId, e);
+        }
+    }
+
+    /**
+     * 按范围使看板缓存失效（异步写入的统计落库后调用）
+     *
+     * @param scopes 范围（all、public、space:空间id）
+     */
+    public void bumpVersion(Collection<String> scopes) {
+        for (String scope : scopes) {
+            try {
+                stringRedisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + scope);
+            } catch (Exception e) {
+                log.error("空间看板缓存版本号更新失败, scope = {}", scope, e);
+            }
+        }
+    }
+}
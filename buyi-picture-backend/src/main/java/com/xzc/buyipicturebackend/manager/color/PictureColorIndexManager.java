@@ -0,0 +1,261 @@
+package com.xzc.buyipicturebackend.manager.color;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.utils.ColorLabUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 空间图片颜色索引
+ * 1.每个空间一份索引，主色调以 Lab 分量存放在基本类型数组中，首次搜索时加载
+ * 2.搜索时用容量为 k 的最大堆保留 ΔE 最小的 k 张图片，不对全部图片排序
+ * 3.上传、删除时增量更新；其他节点的写入依靠缓存过期后重新加载
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureColorIndexManager {
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    // 空间颜色索引缓存，10分钟后重新加载，兜底其他节点的变更
+    private final Cache<Long, SpaceColorIndex> SPACE_INDEX_CACHE =
+            Caffeine.newBuilder().initialCapacity(64)
+                    .maximumSize(1000L)
+                    .expireAfterWrite(10L, TimeUnit.MINUTES)
+                    .build();
+
+    /**
+     * 搜索空间中主色调与目标颜色最接近的图片
+     *
+     * @param spaceId 空间id
+     * @param rgb     目标颜色 RGB
+     * @param k       返回数量
+     * @return 图片id列表，按色差升序
+     */
+    public List<Long> searchTopK(Long spaceId, int rgb, int k) {
+        SpaceColorIndex spaceColorIndex = SPACE_INDEX_CACHE.get(spaceId, this::loadSpaceIndex);
+        return spaceColorIndex.topK(ColorLabUtils.rgbToLab(rgb), k);
+    }
+
+    /**
+     * 新增或更新图片（仅在该空间索引已加载时更新，未加载的会在首次搜索时从数据库读取）
+     *
+     * @param picture 图片（需包含 id、spaceId、picColorLab）
+     */
+    public void putPicture(Picture picture) {
+        if (picture.getSpaceId() == null) {
+            return;
+        }
+        SpaceColorIndex spaceColorIndex = SPACE_INDEX_CACHE.getIfPresent(picture.getSpaceId());
+        if (spaceColorIndex == null) {
+            return;
+        }
+        if (picture.getPicColorLab() == null) {
+            spaceColorIndex.remove(picture.getId());
+        } else {
+            spaceColorIndex.put(picture.getId(), picture.getPicColorLab());
+        }
+    }
+
+    /**
+     * 删除图片
+     *
+     * @param spaceId   空间id
+     * @param pictureId 图片id
+     */
+    public void removePicture(Long spaceId, Long pictureId) {
+        if (spaceId == null) {
+            return;
+        }
+        SpaceColorIndex spaceColorIndex = SPACE_INDEX_CACHE.getIfPresent(spaceId);
+        if (spaceColorIndex != null) {
+            spaceColorIndex.remove(pictureId);
+        }
+    }
+
+    /**
+     * 从数据库加载空间颜色索引，Lab 为空的历史数据计算后回填
+     *
+     * @param spaceId 空间id
+     * @return 空间颜色索引
+     */
+    private SpaceColorIndex loadSpaceIndex(Long spaceId) {
+        List<Picture> pictureList = pictureMapper.selectList(new QueryWrapper<Picture>()
+                .select("id", "picColor", "picColorLab")
+                .eq("spaceId", spaceId)
+                .isNotNull("picColor"));
+        SpaceColorIndex spaceColorIndex = new SpaceColorIndex(pictureList.size());
+        List<Picture> backfillList = new ArrayList<>();
+        for (Picture picture : pictureList) {
+            Long packedLab = picture.getPicColorLab();
+            if (packedLab == null) {
+                Integer rgb = ColorLabUtils.parseRgb(picture.getPicColor());
+                if (rgb == null) {
+                    continue;
+                }
+                packedLab = ColorLabUtils.rgbToPackedLab(rgb);
+                Picture backfill = new Picture();
+                backfill.setId(picture.getId());
+                backfill.setPicColorRgb(rgb);
+                backfill.setPicColorLab(packedLab);
+                backfillList.add(backfill);
+            }
+            spaceColorIndex.put(picture.getId(), packedLab);
+        }
+        for (Picture backfill : backfillList) {
+            try {
+                pictureMapper.updateById(backfill);
+            } catch (Exception e) {
+                log.warn("回填图片主色调 Lab 失败, pictureId = {}", backfill.getId(), e);
+            }
+        }
+        return spaceColorIndex;
+    }
+
+    /**
+     * 单个空间的颜色索引：并列的基本类型数组，删除时用末尾元素填补空位
+     */
+    private static class SpaceColorIndex {
+
+        private long[] ids;
+
+        private double[] ls;
+
+        private double[] as;
+
+        private double[] bs;
+
+        private int size;
+
+        private final Map<Long, Integer> positionMap = new HashMap<>();
+
+        private SpaceColorIndex(int capacity) {
+            int initialCapacity = Math.max(16, capacity);
+            ids = new long[initialCapacity];
+            ls = new double[initialCapacity];
+            as = new double[initialCapacity];
+            bs = new double[initialCapacity];
+        }
+
+        private synchronized void put(long pictureId, long packedLab) {
+            double[] lab = ColorLabUtils.unpackLab(packedLab);
+            Integer position = positionMap.get(pictureId);
+            if (position == null) {
+                if (size == ids.length) {
+                    int newCapacity = ids.length * 2;
+                    ids = Arrays.copyOf(ids, newCapacity);
+                    ls = Arrays.copyOf(ls, newCapacity);
+                    as = Arrays.copyOf(as, newCapacity);
+                    bs = Arrays.copyOf(bs, newCapacity);
+                }
+                position = size++;
+                positionMap.put(pictureId, position);
+            }
+            ids[position] = pictureId;
+            ls[position] = lab[0];
+            as[position] = lab[1];
+            bs[position] = lab[2];
+        }
+
+        private synchronized void remove(long pictureId) {
+            Integer position = positionMap.remove(pictureId);
+            if (position == null) {
+                return;
+            }
+            int last = --size;
+            if (position != last) {
+                ids[position] = ids[last];
+                ls[position] = ls[last];
+                as[position] = as[last];
+                bs[position] = bs[last];
+                positionMap.put(ids[position], position);
+            }
+        }
+
+        /**
+         * 取色差最小的 k 个：堆顶为当前 k 个中色差最大的，新元素更小时替换堆顶
+         */
+        private synchronized List<Long> topK(double[] targetLab, int k) {
+            int capacity = Math.min(k, size);
+            if (capacity <= 0) {
+                return Collections.emptyList();
+            }
+            double[] heapDistances = new double[capacity];
+            long[] heapIds = new long[capacity];
+            int heapSize = 0;
+            for (int i = 0; i < size; i++) {
+                double distance = ColorLabUtils.deltaESquared(ls[i], as[i], bs[i],
+                        targetLab[0], targetLab[1], targetLab[2]);
+                if (heapSize < capacity) {
+                    heapDistances[heapSize] = distance;
+                    heapIds[heapSize] = ids[i];
+                    siftUp(heapDistances, heapIds, heapSize++);
+                } else if (distance < heapDistances[0]) {
+                    heapDistances[0] = distance;
+                    heapIds[0] = ids[i];
+                    siftDown(heapDistances, heapIds, heapSize);
+                }
+            }
+            // 依次弹出堆顶（由远到近），倒序填充
+            Long[] result = new Long[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                result[i] = heapIds[0];
+                heapDistances[0] = heapDistances[i];
+                heapIds[0] = heapIds[i];
+                siftDown(heapDistances, heapIds, i);
+            }
+            return Arrays.asList(result);
+        }
+
+        private static void siftUp(double[] distances, long[] heapIds, int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (distances[parent] >= distances[index]) {
+                    return;
+                }
+                swap(distances, heapIds, parent, index);
+                index = parent;
+            }
+        }
+
+        private static void siftDown(double[] distances, long[] heapIds, int heapSize) {
+            int index = 0;
+            while (true) {
+                int largest = index;
+                int left = index * 2 + 1;
+                int right = left + 1;
+                if (left < heapSize && distances[left] > distances[largest]) {
+                    largest = left;
+                }
+                if (right < heapSize && distances[right] > distances[largest]) {
+                    largest = right;
+                }
+                if (largest == index) {
+                    return;
+                }
+                swap(distances, heapIds, index, largest);
+                index = largest;
+            }
+        }
+
+        private static void swap(double[] distances, long[] heapIds, int i, int j) {
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+            long id = heapIds[i];
+            heapIds[i] = heapIds[j];
+            heapIds[j] = id;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.xzc.buyipicturebackend.manager.color;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.dto.picture.PaletteColor;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.enums.PictureReviewStatusEnum;
+import com.xzc.buyipicturebackend.utils.ColorLabUtils;
+import com.xzc.buyipicturebackend.utils.ColorPaletteUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 调色板倒排索引
+ * 1.Lab 空间按 L 每 10、a/b 每 16 划分网格，图片调色板中占比足够的颜色登记到所在网格
+ * 2.搜索时只取目标颜色附近网格中的图片作为候选，再按色差和占比打分，不扫描整个空间
+ * 3.每个空间一份索引（公共图库单独一份，只含已过审图片），首次搜索时加载；上传、审核、删除时增量更新
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PicturePaletteIndexManager {
+
+    /**
+     * 公共图库的索引 key（空间 id 不会为 0）
+     */
+    private static final long PUBLIC_SCOPE = 0L;
+
+    /**
+     * 网格大小
+     */
+    private static final double L_CELL = 10.0;
+    private static final double AB_CELL = 16.0;
+
+    /**
+     * a/b 方向的网格数
+     */
+    private static final int AB_CELLS = 16;
+
+    /**
+     * 视为相近颜色的最大色差 ΔE
+     */
+    private static final double MAX_DELTA_E = 20.0;
+
+    /**
+     * 占比低于该值的颜色不登记（噪点颜色）
+     */
+    private static final double MIN_WEIGHT = 0.05;
+
+    /**
+     * 回填时每批读取的图片数
+     */
+    private static final int BACKFILL_BATCH_SIZE = 100;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @Resource
+    private ThreadPoolExecutor customExecutor;
+
+    private final AtomicBoolean backfilling = new AtomicBoolean(false);
+
+    // 调色板索引缓存，10分钟后重新加载，兜底其他节点的变更
+    private final Cache<Long, PaletteIndex> PALETTE_INDEX_CACHE =
+            Caffeine.newBuilder().initialCapacity(64)
+                    .maximumSize(1000L)
+                    .expireAfterWrite(10L, TimeUnit.MINUTES)
+                    .build();
+
+    /**
+     * 搜索同时包含所有目标颜色（的相近色）的图片
+     *
+     * @param spaceId    空间id，为空表示公共图库
+     * @param targetRgbs 目标颜色 RGB
+     * @param limit      返回数量
+     * @return 图片id列表，按匹配度降序
+     */
+    public List<Long> search(Long spaceId, List<Integer> targetRgbs, int limit) {
+        long scope = spaceId == null ? PUBLIC_SCOPE : spaceId;
+        PaletteIndex paletteIndex = PALETTE_INDEX_CACHE.get(scope, this::loadIndex);
+        List<double[]> targetLabs = new ArrayList<>();
+        for (Integer rgb : targetRgbs) {
+            targetLabs.add(ColorLabUtils.rgbToLab(rgb));
+        }
+        return paletteIndex.search(targetLabs, limit);
+    }
+
+    /**
+     * 从数据库读取图片并更新所在空间的索引（仅在该索引已加载时）
+     *
+     * @param pictureId 图片id
+     */
+    public void refreshPicture(Long pictureId) {
+        if (pictureId == null) {
+            return;
+        }
+        try {
+            Picture picture = pictureMapper.selectOne(new QueryWrapper<Picture>()
+                    .select("id", "spaceId", "reviewStatus", "picPalette")
+                    .eq("id", pictureId));
+            if (picture == null) {
+                // 已删除，不知道所在空间，从已加载的索引中全部移除
+                PALETTE_INDEX_CACHE.asMap().values().forEach(paletteIndex -> paletteIndex.remove(pictureId));
+                return;
+            }
+            long scope = picture.getSpaceId() == null ? PUBLIC_SCOPE : picture.getSpaceId();
+            PaletteIndex paletteIndex = PALETTE_INDEX_CACHE.getIfPresent(scope);
+            if (paletteIndex == null) {
+                return;
+            }
+            boolean visible = picture.getSpaceId() != null
+                    || Integer.valueOf(PictureReviewStatusEnum.PASS.getValue()).equals(picture.getReviewStatus());
+            if (visible && StrUtil.isNotBlank(picture.getPicPalette())) {
+                paletteIndex.put(pictureId, picture.getPicPalette());
+            } else {
+                paletteIndex.remove(pictureId);
+            }
+        } catch (Exception e) {
+            log.error("更新调色板索引失败, pictureId = {}", pictureId, e);
+        }
+    }
+
+    /**
+     * 从已加载的索引中删除图片
+     *
+     * @param spaceId   空间id
+     * @param pictureId 图片id
+     */
+    public void removePicture(Long spaceId, Long pictureId) {
+        long scope = spaceId == null ? PUBLIC_SCOPE : spaceId;
+        PaletteIndex paletteIndex = PALETTE_INDEX_CACHE.getIfPresent(scope);
+        if (paletteIndex != null) {
+            paletteIndex.remove(pictureId);
+        }
+    }
+
+    /**
+     * 异步为历史图片（调色板为空）提取调色板，使用缩略图以减少下载量
+     */
+    public void backfillPalettesAsync() {
+        customExecutor.execute(this::backfillPalettes);
+    }
+
+    /**
+     * 为历史图片提取调色板（按 id 游标分批读取，提取失败的跳过）
+     */
+    public void backfillPalettes() {
+        if (!backfilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long lastId = 0L;
+            int count = 0;
+            while (true) {
+                List<Picture> pictureList = pictureMapper.selectList(new QueryWrapper<Picture>()
+                        .select("id", "url", "thumbnailUrl")
+                        .isNull("picPalette")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + BACKFILL_BATCH_SIZE));
+                if (pictureList.isEmpty()) {
+                    break;
+                }
+                for (Picture picture : pictureList) {
+                    String picPalette = extractPalette(StrUtil.blankToDefault(picture.getThumbnailUrl(), picture.getUrl()));
+                    if (picPalette == null) {
+                        continue;
+                    }
+                    Picture updatePicture = new Picture();
+                    updatePicture.setId(picture.getId());
+                    updatePicture.setPicPalette(picPalette);
+                    pictureMapper.updateById(updatePicture);
+                    refreshPicture(picture.getId());
+                    count++;
+                }
+                lastId = pictureList.get(pictureList.size() - 1).getId();
+            }
+            log.info("图片调色板回填完成, count = {}", count);
+        } catch (Exception e) {
+            log.error("图片调色板回填失败", e);
+        } finally {
+            backfilling.set(false);
+        }
+    }
+
+    private String extractPalette(String imageUrl) {
+        if (StrUtil.isBlank(imageUrl)) {
+            return null;
+        }
+        try {
+            BufferedImage image = ImageIO.read(new URL(imageUrl));
+            List<PaletteColor> palette = ColorPaletteUtils.extractPalette(image, 5);
+            return palette.isEmpty() ? null : JSONUtil.toJsonStr(palette);
+        } catch (Exception e) {
+            log.warn("提取图片调色板失败, url = {}", imageUrl, e);
+            return null;
+        }
+    }
+
+    /**
+     * 从数据库加载索引
+     *
+     * @param scope 空间id，0 表示公共图库
+     * @return 索引
+     */
+    private PaletteIndex loadIndex(Long scope) {
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<Picture>()
+                .select("id", "picPalette")
+                .isNotNull("picPalette");
+        if (scope == PUBLIC_SCOPE) {
+            queryWrapper.isNull("spaceId").eq("reviewStatus", PictureReviewStatusEnum.PASS.getValue());
+        } else {
+            queryWrapper.eq("spaceId", scope);
+        }
+        PaletteIndex paletteIndex = new PaletteIndex();
+        for (Picture picture : pictureMapper.selectList(queryWrapper)) {
+            paletteIndex.put(picture.getId(), picture.getPicPalette());
+        }
+        return paletteIndex;
+    }
+
+    /**
+     * 单个空间的调色板索引
+     */
+    private static class PaletteIndex {
+
+        /**
+         * 网格 -> 图片id
+         */
+        private final Map<Integer, Set<Long>> cellPictureMap = new HashMap<>();
+
+        /**
+         * 图片id -> 调色板（每种颜色依次为 L、a、b、占比）
+         */
+        private final Map<Long, double[]> paletteMap = new HashMap<>();
+
+        private synchronized void put(long pictureId, String picPalette) {
+            remove(pictureId);
+            List<PaletteColor> palette;
+            try {
+                palette = JSONUtil.toList(picPalette, PaletteColor.class);
+            } catch (Exception e) {
+                return;
+            }
+            List<Double> values = new ArrayList<>();
+            for (PaletteColor paletteColor : palette) {
+                Integer rgb = ColorLabUtils.parseRgb(paletteColor.getColor());
+                double weight = paletteColor.getWeight() == null ? 0 : paletteColor.getWeight();
+                if (rgb == null || weight < MIN_WEIGHT) {
+                    continue;
+                }
+                double[] lab = ColorLabUtils.rgbToLab(rgb);
+                values.add(lab[0]);
+                values.add(lab[1]);
+                values.add(lab[2]);
+                values.add(weight);
+                cellPictureMap.computeIfAbsent(cellOf(lab[0], lab[1], lab[2]), k -> new HashSet<>()).add(pictureId);
+            }
+            if (!values.isEmpty()) {
+                paletteMap.put(pictureId, values.stream().mapToDouble(Double::doubleValue).toArray());
+            }
+        }
+
+        private synchronized void remove(long pictureId) {
+            double[] values = paletteMap.remove(pictureId);
+            if (values == null) {
+                return;
+            }
+            for (int i = 0; i < values.length; i += 4) {
+                int cell = cellOf(values[i], values[i + 1], values[i + 2]);
+                Set<Long> pictureIds = cellPictureMap.get(cell);
+                if (pictureIds != null) {
+                    pictureIds.remove(pictureId);
+                    if (pictureIds.isEmpty()) {
+                        cellPictureMap.remove(cell);
+                    }
+                }
+            }
+        }
+
+        private synchronized List<Long> search(List<double[]> targetLabs, int limit) {
+            // 1.候选：每个目标颜色附近网格中的图片取交集
+            Set<Long> candidates = null;
+            for (double[] targetLab : targetLabs) {
+                Set<Long> nearby = nearbyPictures(targetLab);
+                if (candidates == null) {
+                    candidates = nearby;
+                } else {
+                    candidates.retainAll(nearby);
+                }
+                if (candidates.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+            if (candidates == null) {
+                return Collections.emptyList();
+            }
+
+            // 2.打分：每个目标颜色取调色板中最匹配的颜色（越接近、占比越大得分越高），需全部匹配
+            Map<Long, Double> scoreMap = new HashMap<>();
+            for (Long pictureId : candidates) {
+                double[] values = paletteMap.get(pictureId);
+                double score = 0;
+                boolean matchedAll = true;
+                for (double[] targetLab : targetLabs) {
+                    double best = 0;
+                    for (int i = 0; i < values.length; i += 4) {
+                        double deltaE = Math.sqrt(ColorLabUtils.deltaESquared(values[i], values[i + 1], values[i + 2],
+                                targetLab[0], targetLab[1], targetLab[2]));
+                        if (deltaE < MAX_DELTA_E) {
+                            best = Math.max(best, values[i + 3] * (1 - deltaE / MAX_DELTA_E));
+                        }
+                    }
+                    if (best <= 0) {
+                        matchedAll = false;
+                        break;
+                    }
+                    score += best;
+                }
+                if (matchedAll) {
+                    scoreMap.put(pictureId, score);
+                }
+            }
+            List<Long> result = new ArrayList<>(scoreMap.keySet());
+            result.sort((id1, id2) -> Double.compare(scoreMap.get(id2), scoreMap.get(id1)));
+            return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+        }
+
+        /**
+         * 目标颜色 ΔE 范围内可能涉及的所有网格中的图片
+         */
+        private Set<Long> nearbyPictures(double[] targetLab) {
+            int lRange = (int) Math.ceil(MAX_DELTA_E / L_CELL);
+            int abRange = (int) Math.ceil(MAX_DELTA_E / AB_CELL);
+            int lCell = lCell(targetLab[0]);
+            int aCell = abCell(targetLab[1]);
+            int bCell = abCell(targetLab[2]);
+            Set<Long> pictureIds = new HashSet<>();
+            for (int l = lCell - lRange; l <= lCell + lRange; l++) {
+                for (int a = aCell - abRange; a <= aCell + abRange; a++) {
+                    for (int b = bCell - abRange; b <= bCell + abRange; b++) {
+                        if (l < 0 || a < 0 || b < 0 || a >= AB_CELLS || b >= AB_CELLS) {
+                            continue;
+                        }
+                        Set<Long> cellPictures = cellPictureMap.get((l * AB_CELLS + a) * AB_CELLS + b);
+                        if (cellPictures != null) {
+                            pictureIds.addAll(cellPictures);
+                        }
+                    }
+                }
+            }
+            return pictureIds;
+        }
+
+        private static int cellOf(double l, double a, double b) {
+            return (lCell(l) * AB_CELLS + abCell(a)) * AB_CELLS + abCell(b);
+        }
+
+        private static int lCell(double l) {
+            return Math.max(0, (int) (l / L_CELL));
+        }
+
+        private static int abCell(double value) {
+            return Math.max(0, Math.min(AB_CELLS - 1, (int) ((value + 128) / AB_CELL)));
+        }
+    }
+}
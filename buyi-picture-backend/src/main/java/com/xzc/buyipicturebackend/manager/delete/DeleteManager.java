@@ -1,13 +1,21 @@
 package com.xzc.buyipicturebackend.manager.delete;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
 import com.qcloud.cos.COSClient;
-import com.qcloud.cos.model.COSObject;
-import com.qcloud.cos.model.GetObjectRequest;
+import com.qcloud.cos.exception.MultiObjectDeleteException;
+import com.qcloud.cos.model.DeleteObjectsRequest;
+import com.qcloud.cos.model.DeleteObjectsRequest.KeyVersion;
 import com.xzc.buyipicturebackend.config.CosClientConfig;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  * 图片删除
@@ -18,6 +26,11 @@ import javax.annotation.Resource;
 @Service
 public class DeleteManager {
 
+    /**
+     * 单次批量删除最多的对象数（COS 限制）
+     */
+    private static final int DELETE_OBJECTS_BATCH_SIZE = 1000;
+
     @Resource
     private CosClientConfig cosClientConfig;
 
@@ -33,4 +46,37 @@ public class DeleteManager {
     public void deleteObject(String key) {
         cosClient.deleteObject(cosClientConfig.getBucket(), key);
     }
+
+    /**
+     * 批量删除对象
+     * 异步执行，每 1000 个对象一次请求；部分对象删除失败只记录日志
+     *
+     * @param keys 唯一键
+     */
+    @Async
+    public void deleteObjects(Collection<String> keys) {
+        // 批量删除的键不带开头的 /，去重后分批
+        LinkedHashSet<String> keySet = new LinkedHashSet<>();
+        for (String key : keys) {
+            if (StrUtil.isNotBlank(key)) {
+                keySet.add(StrUtil.removePrefix(key, "/"));
+            }
+        }
+        for (List<String> batch : CollUtil.split(keySet, DELETE_OBJECTS_BATCH_SIZE)) {
+            List<KeyVersion> keyVersionList = new ArrayList<>(batch.size());
+            batch.forEach(key -> keyVersionList.add(new KeyVersion(key)));
+            DeleteObjectsRequest deleteObjectsRequest = new DeleteObjectsRequest(cosClientConfig.getBucket());
+            deleteObjectsRequest.setKeys(keyVersionList);
+            // 只返回删除失败的对象
+            deleteObjectsRequest.setQuiet(true);
+            try {
+                cosClient.deleteObjects(deleteObjectsRequest);
+            } catch (MultiObjectDeleteException e) {
+                e.getErrors().forEach(error -> log.error("删除对象失败, key = {}, code = {}, message = {}",
+                        error.getKey(), error.getCode(), error.getMessage()));
+            } catch (Exception e) {
+                log.error("批量删除对象失败, count = {}", batch.size(), e);
+            }
+        }
+    }
 }
@@ -0,0 +1,191 @@
+package com.xzc.buyipicturebackend.manager.index;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.config.IndexCheckConfig;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.dto.picture.PictureQueryRequest;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.enums.PictureReviewStatusEnum;
+import com.xzc.buyipicturebackend.service.PictureService;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 核心查询索引检查
+ * 启动时对 getQueryWrapper 生成的典型查询执行 EXPLAIN，确认仍能使用迁移脚本中建立的索引，
+ * 避免查询条件或索引变更导致的性能退化在上线后才被发现
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class QueryIndexChecker {
+
+    @Resource
+    private IndexCheckConfig indexCheckConfig;
+
+    @Resource
+    private PictureService pictureService;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!indexCheckConfig.isEnabled()) {
+            return;
+        }
+        List<String> regressions = new ArrayList<>();
+        for (IndexCheck indexCheck : buildChecks()) {
+            try {
+                String problem = check(indexCheck);
+                if (problem != null) {
+                    regressions.add(problem);
+                }
+            } catch (Exception e) {
+                log.warn("执行计划检查失败: {}", indexCheck.getName(), e);
+            }
+        }
+        if (regressions.isEmpty()) {
+            log.info("核心查询执行计划检查通过");
+            return;
+        }
+        regressions.forEach(problem -> log.warn("核心查询索引退化: {}", problem));
+        if (indexCheckConfig.isFailOnRegression()) {
+            throw new IllegalStateException("核心查询索引退化: " + regressions);
+        }
+    }
+
+    /**
+     * 典型查询及其预期索引
+     */
+    private List<IndexCheck> buildChecks() {
+        List<IndexCheck> indexChecks = new ArrayList<>();
+
+        // 1.公共图库按创建时间、编辑时间浏览
+        for (String sortField : Arrays.asList("createTime", "editTime")) {
+            PictureQueryRequest publicQueryRequest = new PictureQueryRequest();
+            publicQueryRequest.setNullSpaceId(true);
+            publicQueryRequest.setReviewStatus(PictureReviewStatusEnum.PASS.getValue());
+            publicQueryRequest.setSortField(sortField);
+            publicQueryRequest.setSortOrder("descend");
+            indexChecks.add(new IndexCheck("公共图库按 " + sortField + " 排序",
+                    pictureService.getQueryWrapper(publicQueryRequest),
+                    "picture", "idx_spaceId_reviewStatus_isDelete_" + sortField));
+        }
+
+        // 2.私有空间按创建时间浏览
+        PictureQueryRequest spaceQueryRequest = new PictureQueryRequest();
+        spaceQueryRequest.setSpaceId(1L);
+        spaceQueryRequest.setSortField("createTime");
+        spaceQueryRequest.setSortOrder("descend");
+        indexChecks.add(new IndexCheck("私有空间按 createTime 排序",
+                pictureService.getQueryWrapper(spaceQueryRequest),
+                "picture", "idx_spaceId_isDelete_createTime"));
+
+        // 3.按颜色搜索（与 searchPictureByColor 的条件一致）
+        QueryWrapper<Picture> colorQueryWrapper = new QueryWrapper<>();
+        colorQueryWrapper.eq("spaceId", 1L).isNotNull("picColor");
+        indexChecks.add(new IndexCheck("私有空间按颜色搜索", colorQueryWrapper,
+                "picture", "idx_spaceId_picColor"));
+
+        // 4.空间额度对账统计（与 SpaceQuotaReconciler 的条件一致）
+        QueryWrapper<Picture> usageQueryWrapper = new QueryWrapper<>();
+        usageQueryWrapper.in("spaceId", Arrays.asList(1L, 2L)).groupBy("spaceId");
+        indexChecks.add(new IndexCheck("空间额度对账统计", usageQueryWrapper,
+                "picture", "idx_spaceId_isDelete_picSize"));
+
+        // 5.标签筛选子查询
+        PictureQueryRequest tagQueryRequest = new PictureQueryRequest();
+        tagQueryRequest.setTags(Collections.singletonList("check"));
+        indexChecks.add(new IndexCheck("标签筛选",
+                pictureService.getQueryWrapper(tagQueryRequest),
+                "picture_tag", "idx_tag_pictureId"));
+        return indexChecks;
+    }
+
+    /**
+     * 检查执行计划中目标表是否可以使用预期索引
+     *
+     * @param indexCheck 检查项
+     * @return 问题描述，没有问题返回 null
+     */
+    private String check(IndexCheck indexCheck) {
+        QueryWrapper<Picture> queryWrapper = indexCheck.getQueryWrapper();
+        // 自定义 SQL 不会自动拼接逻辑删除条件
+        queryWrapper.eq("isDelete", 0);
+        List<Map<String, Object>> explainRows = pictureMapper.explainList(queryWrapper);
+        for (Map<String, Object> explainRow : explainRows) {
+            if (!indexCheck.getTable().equals(getString(explainRow, "table"))) {
+                continue;
+            }
+            String key = getString(explainRow, "key");
+            String possibleKeys = StrUtil.nullToEmpty(getString(explainRow, "possible_keys"));
+            // 数据量较小时优化器可能选择全表扫描，只要预期索引仍在候选中即视为正常
+            boolean usable = indexCheck.getIndex().equals(key)
+                    || StrUtil.split(possibleKeys, ',').contains(indexCheck.getIndex());
+            if (!usable) {
+                return String.format("%s: 表 %s 无法使用索引 %s（key = %s, possible_keys = %s）",
+                        indexCheck.getName(), indexCheck.getTable(), indexCheck.getIndex(), key, possibleKeys);
+            }
+            String extra = StrUtil.nullToEmpty(getString(explainRow, "Extra"));
+            if (indexCheck.getIndex().equals(key) && extra.contains("Using filesort")) {
+                return String.format("%s: 使用了索引 %s 但仍需 filesort", indexCheck.getName(), key);
+            }
+            return null;
+        }
+        return String.format("%s: 执行计划中没有表 %s", indexCheck.getName(), indexCheck.getTable());
+    }
+
+    /**
+     * EXPLAIN 结果列名大小写随驱动不同，忽略大小写取值
+     */
+    private String getString(Map<String, Object> explainRow, String column) {
+        for (Map.Entry<String, Object> entry : explainRow.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(column)) {
+                return entry.getValue() == null ? null : String.valueOf(entry.getValue());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 检查项
+     */
+    @Getter
+    @AllArgsConstructor
+    private static class IndexCheck {
+
+        /**
+         * 检查项名称
+         */
+        private final String name;
+
+        /**
+         * 查询条件
+         */
+        private final QueryWrapper<Picture> queryWrapper;
+
+        /**
+         * 执行计划中的目标表
+         */
+        private final String table;
+
+        /**
+         * 预期使用的索引
+         */
+        private final String index;
+    }
+}
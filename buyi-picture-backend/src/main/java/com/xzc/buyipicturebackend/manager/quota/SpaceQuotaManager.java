@@ -0,0 +1,422 @@
+package com.xzc.buyipicturebackend.manager.quota;
+
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.xzc.buyipicturebackend.exception.BusinessException;
+import com.xzc.buyipicturebackend.exception.ErrorCode;
+import com.xzc.buyipicturebackend.manager.rank.SpaceRankManager;
+import com.xzc.buyipicturebackend.mapper.SpaceMapper;
+import com.xzc.buyipicturebackend.model.entity.Space;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 空间额度管理
+ * 1.额度（已用容量、已用条数、上限）以 redis hash 保存，上传前用 lua 原子地校验并预占条数，上传完成后确认实际大小，失败时回滚
+ * 2.额度变化只标记空间为脏，由定时任务批量写回 space 表，上传不再争抢 space 行锁
+ * 3.同一脚本内更新空间排行（容量、数量、当日增长）
+ * 4.对账（见 SpaceQuotaReconciler）按 picture 表的真实用量修正 redis，统计期间有变更的空间留给下一轮
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class SpaceQuotaManager {
+
+    private static final String QUOTA_KEY = "buyipicture:spaceQuota:";
+
+    /**
+     * 进行中的额度变更数（预占未确认、删除未释放），进程异常退出时靠过期兜底
+     */
+    private static final String PENDING_KEY = "buyipicture:spaceQuota:pending:";
+
+    private static final String DIRTY_KEY = "buyipicture:spaceQuota:dirty";
+
+    private static final String FLUSH_LOCK_KEY = "buyipicture:spaceQuota:flushLock";
+
+    private static final long QUOTA_TTL_SECONDS = 7 * 24 * 3600L;
+
+    private static final long PENDING_TTL_SECONDS = 600L;
+
+    /**
+     * 每次写回的空间数
+     */
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    // 预占、确认、加载、对账脚本统一使用 quotaKeys 的 KEYS：KEYS[1] 额度，KEYS[2] 进行中计数，KEYS[3] 脏集合，
+    // KEYS[4] 容量排行，KEYS[5] 数量排行，KEYS[6] 当日容量增长排行
+
+    /**
+     * 预占：ARGV[1] 预占条数，ARGV[2] 空间id
+     * 返回 -1 额度未加载，1 条数已满，2 容量已满，0 成功
+     */
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end\n" +
+                    "local quota = redis.call('HMGET', KEYS[1], 'totalSize', 'totalCount', 'maxSize', 'maxCount')\n" +
+                    "local countDelta = tonumber(ARGV[1])\n" +
+                    "if countDelta > 0 and tonumber(quota[2]) + countDelta > tonumber(quota[4]) then return 1 end\n" +
+                    "if tonumber(quota[1]) >= tonumber(quota[3]) then return 2 end\n" +
+                    "redis.call('HINCRBY', KEYS[1], 'totalCount', countDelta)\n" +
+                    "redis.call('HINCRBY', KEYS[1], 'version', 1)\n" +
+                    "redis.call('ZADD', KEYS[5], tonumber(quota[2]) + countDelta, ARGV[2])\n" +
+                    "redis.call('EXPIRE', KEYS[1], " + QUOTA_TTL_SECONDS + ")\n" +
+                    "redis.call('INCR', KEYS[2])\n" +
+                    "redis.call('EXPIRE', KEYS[2], " + PENDING_TTL_SECONDS + ")\n" +
+                    "redis.call('SADD', KEYS[3], ARGV[2])\n" +
+                    "return 0", Long.class);
+
+    /**
+     * 确认或回滚：ARGV[1] 容量变化，ARGV[2] 条数变化，ARGV[3] 空间id
+     * 返回 -1 额度未加载（由调用方直接更新数据库，更新后再结束进行中的变更），0 成功
+     */
+    private static final RedisScript<Long> SETTLE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end\n" +
+                    "if tonumber(redis.call('GET', KEYS[2]) or '0') > 0 then redis.call('DECR', KEYS[2]) end\n" +
+                    "local totalSize = redis.call('HINCRBY', KEYS[1], 'totalSize', ARGV[1])\n" +
+                    "local totalCount = redis.call('HINCRBY', KEYS[1], 'totalCount', ARGV[2])\n" +
+                    "redis.call('HINCRBY', KEYS[1], 'version', 1)\n" +
+                    "redis.call('EXPIRE', KEYS[1], " + QUOTA_TTL_SECONDS + ")\n" +
+                    "redis.call('SADD', KEYS[3], ARGV[3])\n" +
+                    "redis.call('ZADD', KEYS[4], totalSize, ARGV[3])\n" +
+                    "redis.call('ZADD', KEYS[5], totalCount, ARGV[3])\n" +
+                    "if tonumber(ARGV[1]) ~= 0 then\n" +
+                    "  redis.call('ZINCRBY', KEYS[6], ARGV[1], ARGV[3])\n" +
+                    "  redis.call('EXPIRE', KEYS[6], " + SpaceRankManager.GROWTH_TTL_SECONDS + ")\n" +
+                    "end\n" +
+                    "return 0", Long.class);
+
+    /**
+     * 结束一次进行中的额度变更：KEYS[1] 进行中计数
+     */
+    private static final RedisScript<Long> END_SCRIPT = new DefaultRedisScript<>(
+            "if tonumber(redis.call('GET', KEYS[1]) or '0') > 0 then return redis.call('DECR', KEYS[1]) end\n" +
+                    "return 0", Long.class);
+
+    /**
+     * 开始一次不需要校验的额度变更（删除）：KEYS[1] 进行中计数
+     */
+    private static final RedisScript<Long> BEGIN_SCRIPT = new DefaultRedisScript<>(
+            "local pending = redis.call('INCR', KEYS[1])\n" +
+                    "redis.call('EXPIRE', KEYS[1], " + PENDING_TTL_SECONDS + ")\n" +
+                    "return pending", Long.class);
+
+    /**
+     * 加载额度（已存在时不覆盖）：ARGV 依次为 totalSize、totalCount、maxSize、maxCount、空间id
+     */
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end\n" +
+                    "redis.call('HSET', KEYS[1], 'totalSize', ARGV[1], 'totalCount', ARGV[2], 'maxSize', ARGV[3], 'maxCount', ARGV[4], 'version', 0)\n" +
+                    "redis.call('EXPIRE', KEYS[1], " + QUOTA_TTL_SECONDS + ")\n" +
+                    "redis.call('ZADD', KEYS[4], ARGV[1], ARGV[5])\n" +
+                    "redis.call('ZADD', KEYS[5], ARGV[2], ARGV[5])\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 更新上限（未加载时忽略）：KEYS[1] 额度；ARGV[1] maxSize，ARGV[2] maxCount
+     */
+    private static final RedisScript<Long> LIMIT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end\n" +
+                    "redis.call('HSET', KEYS[1], 'maxSize', ARGV[1], 'maxCount', ARGV[2])\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 对账修正：ARGV[1] 真实容量，ARGV[2] 真实条数，ARGV[3] 对账前的版本号，ARGV[4] 空间id
+     * 对账期间有额度变更（进行中或版本号变化）时放弃，留给下一轮
+     */
+    private static final RedisScript<Long> RECONCILE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end\n" +
+                    "if tonumber(redis.call('GET', KEYS[2]) or '0') > 0 then return 0 end\n" +
+                    "if redis.call('HGET', KEYS[1], 'version') ~= ARGV[3] then return 0 end\n" +
+                    "redis.call('HSET', KEYS[1], 'totalSize', ARGV[1], 'totalCount', ARGV[2])\n" +
+                    "redis.call('HINCRBY', KEYS[1], 'version', 1)\n" +
+                    "redis.call('SADD', KEYS[3], ARGV[4])\n" +
+                    "redis.call('ZADD', KEYS[4], ARGV[1], ARGV[4])\n" +
+                    "redis.call('ZADD', KEYS[5], ARGV[2], ARGV[4])\n" +
+                    "return 1", Long.class);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SpaceMapper spaceMapper;
+
+    @Resource
+    private SpaceRankManager spaceRankManager;
+
+    /**
+     * 上传前预占额度：校验条数和容量，预占条数（重新上传时不占条数）
+     * 预占成功后必须调用 {@link #confirm} 或 {@link #cancel}
+     *
+     * @param spaceId    空间id
+     * @param countDelta 预占条数
+     */
+    public void reserve(Long spaceId, long countDelta) {
+        Long result = executeReserve(spaceId, countDelta);
+        if (result != null && result == -1L) {
+            load(spaceId);
+            result = executeReserve(spaceId, countDelta);
+        }
+        if (result == null || result == -1L) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "额度校验失败");
+        }
+        if (result == 1L) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "空间条数已满");
+        }
+        if (result == 2L) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "空间容量已满");
+        }
+    }
+
+    /**
+     * 上传完成，计入实际容量变化
+     *
+     * @param spaceId   空间id
+     * @param sizeDelta 容量变化（重新上传时为新旧图片大小之差）
+     */
+    public void confirm(Long spaceId, long sizeDelta) {
+        settle(spaceId, sizeDelta, 0);
+    }
+
+    /**
+     * 上传失败，归还预占的条数
+     *
+     * @param spaceId    空间id
+     * @param countDelta 预占的条数
+     */
+    public void cancel(Long spaceId, long countDelta) {
+        settle(spaceId, 0, -countDelta);
+    }
+
+    /**
+     * 删除图片前登记一次进行中的额度变更，删除后必须调用 {@link #release}（失败时传 0）
+     *
+     * @param spaceId 空间id
+     */
+    public void beginRelease(Long spaceId) {
+        stringRedisTemplate.execute(BEGIN_SCRIPT, Collections.singletonList(PENDING_KEY + spaceId));
+    }
+
+    /**
+     * 删除图片后释放额度
+     *
+     * @param spaceId 空间id
+     * @param size    释放的容量
+     * @param count   释放的条数
+     */
+    public void release(Long spaceId, long size, long count) {
+        settle(spaceId, -size, -count);
+    }
+
+    /**
+     * 空间上限变化（修改空间级别）后同步到 redis
+     *
+     * @param space 空间（需包含 id、maxSize、maxCount）
+     */
+    public void refreshLimit(Space space) {
+        if (space == null) {
+            return;
+        }
+        stringRedisTemplate.execute(LIMIT_SCRIPT, Collections.singletonList(QUOTA_KEY + space.getId()),
+                String.valueOf(limitOf(space.getMaxSize())), String.valueOf(limitOf(space.getMaxCount())));
+    }
+
+    /**
+     * 删除空间后清除额度
+     *
+     * @param spaceId 空间id
+     */
+    public void evict(Long spaceId) {
+        stringRedisTemplate.delete(QUOTA_KEY + spaceId);
+        stringRedisTemplate.opsForSet().remove(DIRTY_KEY, String.valueOf(spaceId));
+        spaceRankManager.remove(spaceId);
+    }
+
+    /**
+     * 用 redis 中的实时用量覆盖空间的 totalSize、totalCount（space 表最多落后一个写回周期）
+     *
+     * @param space 空间
+     * @return 空间
+     */
+    public Space fillUsage(Space space) {
+        if (space == null || space.getId() == null) {
+            return space;
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(QUOTA_KEY + space.getId(),
+                Arrays.asList("totalSize", "totalCount"));
+        if (values.get(0) != null && values.get(1) != null) {
+            space.setTotalSize(Long.parseLong((String) values.get(0)));
+            space.setTotalCount(Long.parseLong((String) values.get(1)));
+        }
+        return space;
+    }
+
+    /**
+     * 读取已加载到 redis 的额度快照（对账前读取，修正时据此判断期间是否有变更）
+     *
+     * @param spaceId 空间id
+     * @return 快照，未加载时返回 null
+     */
+    public QuotaSnapshot getSnapshot(Long spaceId) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(QUOTA_KEY + spaceId,
+                Arrays.asList("totalSize", "totalCount", "version"));
+        if (values.get(0) == null || values.get(1) == null || values.get(2) == null) {
+            return null;
+        }
+        return new QuotaSnapshot(Long.parseLong((String) values.get(0)), Long.parseLong((String) values.get(1)),
+                (String) values.get(2));
+    }
+
+    /**
+     * 是否有进行中的额度变更（对账直接修正数据库前检查）
+     *
+     * @param spaceId 空间id
+     * @return 是否有进行中的变更
+     */
+    public boolean hasPending(Long spaceId) {
+        String pending = stringRedisTemplate.opsForValue().get(PENDING_KEY + spaceId);
+        return pending != null && Long.parseLong(pending) > 0;
+    }
+
+    /**
+     * 按真实用量修正 redis 中的额度并标记写回
+     *
+     * @param spaceId    空间id
+     * @param totalSize  真实容量
+     * @param totalCount 真实条数
+     * @param snapshot   统计前读取的快照
+     * @return 是否修正（统计期间有额度变更时放弃，留给下一轮）
+     */
+    public boolean repair(Long spaceId, long totalSize, long totalCount, QuotaSnapshot snapshot) {
+        Long result = stringRedisTemplate.execute(RECONCILE_SCRIPT,
+                quotaKeys(spaceId),
+                String.valueOf(totalSize), String.valueOf(totalCount), snapshot.getVersion(), String.valueOf(spaceId));
+        return result != null && result == 1L;
+    }
+
+    /**
+     * 定时将有变化的额度批量写回 space 表
+     * 写回加锁，避免多个节点以不同顺序写入旧值
+     */
+    @Scheduled(fixedDelay = 5_000L, initialDelay = 5_000L)
+    public void flushDirty() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(FLUSH_LOCK_KEY, "1", 60, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            while (true) {
+                List<String> spaceIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, FLUSH_BATCH_SIZE);
+                if (spaceIds == null || spaceIds.isEmpty()) {
+                    break;
+                }
+                for (String spaceId : spaceIds) {
+                    try {
+                        flushSpace(Long.valueOf(spaceId));
+                    } catch (Exception e) {
+                        log.error("空间额度写回失败, spaceId = {}", spaceId, e);
+                        stringRedisTemplate.opsForSet().add(DIRTY_KEY, spaceId);
+                    }
+                }
+                if (spaceIds.size() < FLUSH_BATCH_SIZE) {
+                    break;
+                }
+            }
+        } finally {
+            stringRedisTemplate.delete(FLUSH_LOCK_KEY);
+        }
+    }
+
+    private Long executeReserve(Long spaceId, long countDelta) {
+        return stringRedisTemplate.execute(RESERVE_SCRIPT,
+                quotaKeys(spaceId),
+                String.valueOf(countDelta), String.valueOf(spaceId));
+    }
+
+    private void settle(Long spaceId, long sizeDelta, long countDelta) {
+        Long result = stringRedisTemplate.execute(SETTLE_SCRIPT,
+                quotaKeys(spaceId),
+                String.valueOf(sizeDelta), String.valueOf(countDelta), String.valueOf(spaceId));
+        if (result == null || result != -1L) {
+            return;
+        }
+        // 额度已过期或被清除，直接更新数据库，下次使用时重新加载
+        // 更新数据库后才结束进行中的变更，对账在此之前不会直接修正该空间
+        try {
+            if (sizeDelta != 0 || countDelta != 0) {
+                spaceMapper.update(null, new UpdateWrapper<Space>()
+                        .eq("id", spaceId)
+                        .setSql("totalSize = totalSize + " + sizeDelta)
+                        .setSql("totalCount = totalCount + " + countDelta));
+            }
+        } finally {
+            stringRedisTemplate.execute(END_SCRIPT, Collections.singletonList(PENDING_KEY + spaceId));
+        }
+    }
+
+    /**
+     * 从 space 表加载额度
+     */
+    private void load(Long spaceId) {
+        Space space = spaceMapper.selectById(spaceId);
+        if (space == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, "空间不存在");
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, quotaKeys(spaceId),
+                String.valueOf(space.getTotalSize() == null ? 0L : space.getTotalSize()),
+                String.valueOf(space.getTotalCount() == null ? 0L : space.getTotalCount()),
+                String.valueOf(limitOf(space.getMaxSize())),
+                String.valueOf(limitOf(space.getMaxCount())),
+                String.valueOf(spaceId));
+    }
+
+    /**
+     * 额度脚本使用的 KEYS
+     */
+    private List<String> quotaKeys(Long spaceId) {
+        return Arrays.asList(QUOTA_KEY + spaceId, PENDING_KEY + spaceId, DIRTY_KEY,
+                SpaceRankManager.SIZE_RANK_KEY, SpaceRankManager.COUNT_RANK_KEY, SpaceRankManager.growthRankKey(new Date()));
+    }
+
+    /**
+     * 写回单个空间的额度
+     */
+    private void flushSpace(Long spaceId) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(QUOTA_KEY + spaceId,
+                Arrays.asList("totalSize", "totalCount"));
+        if (values.get(0) == null || values.get(1) == null) {
+            return;
+        }
+        Space space = new Space();
+        space.setId(spaceId);
+        space.setTotalSize(Long.parseLong((String) values.get(0)));
+        space.setTotalCount(Long.parseLong((String) values.get(1)));
+        spaceMapper.updateById(space);
+    }
+
+    private static long limitOf(Long limit) {
+        return limit == null ? Long.MAX_VALUE : limit;
+    }
+
+    /**
+     * 额度快照
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class QuotaSnapshot {
+
+        private final long totalSize;
+
+        private final long totalCount;
+
+        private final String version;
+    }
+}
@@ -0,0 +1,233 @@
+package com.xzc.buyipicturebackend.manager.quota;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.xzc.buyipicturebackend.config.SpaceQuotaConfig;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.mapper.SpaceMapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.entity.Space;
+import com.xzc.buyipicturebackend.model.vo.space.SpaceQuotaReconcileVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 空间额度增量对账
+ * 1.按空间 id 游标分批对账，每批一次 spaceId IN (...) GROUP BY spaceId 统计（走 idx_spaceId_isDelete_picSize，无需回表）
+ * 2.额度已加载到 redis 的空间修正 redis（再由写回任务落库），未加载的空间以条件更新直接修正 space 表
+ * 3.按每批统计的耗时控制批间休眠，统计变慢时结束本轮，游标保存在 redis，下一轮继续；对账在专用线程执行，休眠不阻塞其他定时任务
+ * 4.修正的空间数和偏差量累计到 redis，供管理员查看
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class SpaceQuotaReconciler {
+
+    private static final String CURSOR_KEY = "buyipicture:spaceQuota:reconcile:cursor";
+
+    private static final String STATS_KEY = "buyipicture:spaceQuota:reconcile:stats";
+
+    private static final String LOCK_KEY = "buyipicture:spaceQuota:reconcile:lock";
+
+    @Resource
+    private SpaceQuotaConfig spaceQuotaConfig;
+
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
+
+    @Resource
+    private SpaceMapper spaceMapper;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ThreadPoolExecutor spaceQuotaReconcileExecutor;
+
+    /**
+     * 定时提交一轮对账到专用线程（上一轮未结束时跳过）
+     */
+    @Scheduled(fixedDelay = 600_000L, initialDelay = 120_000L)
+    public void scheduleReconcile() {
+        spaceQuotaReconcileExecutor.execute(this::reconcile);
+    }
+
+    /**
+     * 对账一轮（多个节点中只有一个执行）
+     */
+    public void reconcile() {
+        if (!spaceQuotaConfig.isReconcileEnabled()) {
+            return;
+        }
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "1", 30, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            String cursorValue = stringRedisTemplate.opsForValue().get(CURSOR_KEY);
+            long cursor = cursorValue == null ? 0L : Long.parseLong(cursorValue);
+            for (int i = 0; i < spaceQuotaConfig.getReconcileMaxChunks(); i++) {
+                List<Space> spaceList = spaceMapper.selectList(new QueryWrapper<Space>()
+                        .select("id", "totalSize", "totalCount")
+                        .gt("id", cursor)
+                        .orderByAsc("id")
+                        .last("limit " + spaceQuotaConfig.getReconcileChunkSize()));
+                if (spaceList.isEmpty()) {
+                    cursor = 0L;
+                    log.info("空间额度对账完成一轮");
+                    break;
+                }
+                long queryMillis = reconcileChunk(spaceList);
+                cursor = spaceList.get(spaceList.size() - 1).getId();
+                stringRedisTemplate.opsForValue().set(CURSOR_KEY, String.valueOf(cursor));
+                if (!throttle(queryMillis)) {
+                    break;
+                }
+            }
+            stringRedisTemplate.opsForValue().set(CURSOR_KEY, String.valueOf(cursor));
+            stringRedisTemplate.opsForHash().put(STATS_KEY, "lastRunTime", String.valueOf(System.currentTimeMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stringRedisTemplate.delete(LOCK_KEY);
+        }
+    }
+
+    /**
+     * 获取对账统计
+     *
+     * @return 统计
+     */
+    public SpaceQuotaReconcileVo getStats() {
+        Map<Object, Object> stats = stringRedisTemplate.opsForHash().entries(STATS_KEY);
+        SpaceQuotaReconcileVo spaceQuotaReconcileVo = new SpaceQuotaReconcileVo();
+        spaceQuotaReconcileVo.setCheckedCount(getLong(stats, "checkedCount"));
+        spaceQuotaReconcileVo.setRepairedCount(getLong(stats, "repairedCount"));
+        spaceQuotaReconcileVo.setSkippedCount(getLong(stats, "skippedCount"));
+        spaceQuotaReconcileVo.setSizeDrift(getLong(stats, "sizeDrift"));
+        spaceQuotaReconcileVo.setCountDrift(getLong(stats, "countDrift"));
+        spaceQuotaReconcileVo.setLastQueryMillis(getLong(stats, "lastQueryMillis"));
+        Long lastRunTime = getLong(stats, "lastRunTime");
+        spaceQuotaReconcileVo.setLastRunTime(lastRunTime == 0L ? null : new Date(lastRunTime));
+        String cursorValue = stringRedisTemplate.opsForValue().get(CURSOR_KEY);
+        spaceQuotaReconcileVo.setCursor(cursorValue == null ? 0L : Long.parseLong(cursorValue));
+        return spaceQuotaReconcileVo;
+    }
+
+    /**
+     * 对账一批空间
+     *
+     * @param spaceList 空间（需包含 id、totalSize、totalCount）
+     * @return 统计查询耗时（毫秒）
+     */
+    private long reconcileChunk(List<Space> spaceList) {
+        List<Long> spaceIds = spaceList.stream().map(Space::getId).collect(Collectors.toList());
+        // 统计前读取 redis 快照，修正时据此判断统计期间是否有额度变更
+        Map<Long, SpaceQuotaManager.QuotaSnapshot> snapshotMap = new HashMap<>();
+        for (Long spaceId : spaceIds) {
+            SpaceQuotaManager.QuotaSnapshot snapshot = spaceQuotaManager.getSnapshot(spaceId);
+            if (snapshot != null) {
+                snapshotMap.put(spaceId, snapshot);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        List<Map<String, Object>> usageList = pictureMapper.selectMaps(new QueryWrapper<Picture>()
+                .select("spaceId", "COUNT(*) AS totalCount", "IFNULL(SUM(picSize), 0) AS totalSize")
+                .in("spaceId", spaceIds)
+                .groupBy("spaceId"));
+        long queryMillis = System.currentTimeMillis() - start;
+        Map<Long, long[]> usageMap = new HashMap<>();
+        for (Map<String, Object> usage : usageList) {
+            usageMap.put(((Number) usage.get("spaceId")).longValue(), new long[]{
+                    ((Number) usage.get("totalSize")).longValue(), ((Number) usage.get("totalCount")).longValue()});
+        }
+
+        long repaired = 0, skipped = 0, sizeDrift = 0, countDrift = 0;
+        for (Space space : spaceList) {
+            // 没有图片的空间不在统计结果中
+            long[] usage = usageMap.getOrDefault(space.getId(), new long[]{0L, 0L});
+            SpaceQuotaManager.QuotaSnapshot snapshot = snapshotMap.get(space.getId());
+            long currentSize = snapshot != null ? snapshot.getTotalSize() : nullToZero(space.getTotalSize());
+            long currentCount = snapshot != null ? snapshot.getTotalCount() : nullToZero(space.getTotalCount());
+            if (usage[0] == currentSize && usage[1] == currentCount) {
+                continue;
+            }
+            boolean success;
+            if (snapshot != null) {
+                success = spaceQuotaManager.repair(space.getId(), usage[0], usage[1], snapshot);
+            } else if (spaceQuotaManager.hasPending(space.getId())) {
+                // 有进行中的额度变更（未加载时直接更新数据库），统计可能已包含其变化，留给下一轮
+                success = false;
+            } else {
+                // 未加载到 redis 的空间直接修正数据库，期间被修改过则放弃
+                success = spaceMapper.update(null, new UpdateWrapper<Space>()
+                        .eq("id", space.getId())
+                        .eq("totalSize", currentSize)
+                        .eq("totalCount", currentCount)
+                        .set("totalSize", usage[0])
+                        .set("totalCount", usage[1])) > 0;
+            }
+            if (!success) {
+                skipped++;
+                continue;
+            }
+            repaired++;
+            sizeDrift += Math.abs(usage[0] - currentSize);
+            countDrift += Math.abs(usage[1] - currentCount);
+            log.info("修正空间额度, spaceId = {}, sizeDelta = {}, countDelta = {}",
+                    space.getId(), usage[0] - currentSize, usage[1] - currentCount);
+        }
+
+        stringRedisTemplate.opsForHash().increment(STATS_KEY, "checkedCount", spaceList.size());
+        stringRedisTemplate.opsForHash().increment(STATS_KEY, "repairedCount", repaired);
+        stringRedisTemplate.opsForHash().increment(STATS_KEY, "skippedCount", skipped);
+        stringRedisTemplate.opsForHash().increment(STATS_KEY, "sizeDrift", sizeDrift);
+        stringRedisTemplate.opsForHash().increment(STATS_KEY, "countDrift", countDrift);
+        stringRedisTemplate.opsForHash().put(STATS_KEY, "lastQueryMillis", String.valueOf(queryMillis));
+        return queryMillis;
+    }
+
+    /**
+     * 按统计耗时休眠，使对账占用数据库的时间不超过配置比例
+     *
+     * @param queryMillis 本批统计耗时
+     * @return 是否继续本轮
+     */
+    private boolean throttle(long queryMillis) throws InterruptedException {
+        if (queryMillis > spaceQuotaConfig.getReconcileMaxQueryMillis()) {
+            log.warn("空间额度对账统计耗时 {} ms，数据库繁忙，本轮提前结束", queryMillis);
+            return false;
+        }
+        double dutyCycle = spaceQuotaConfig.getReconcileDutyCycle();
+        if (dutyCycle <= 0 || dutyCycle >= 1) {
+            return true;
+        }
+        long sleepMillis = (long) (queryMillis * (1 - dutyCycle) / dutyCycle);
+        if (sleepMillis > 0) {
+            Thread.sleep(sleepMillis);
+        }
+        return true;
+    }
+
+    private static long nullToZero(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    private static Long getLong(Map<Object, Object> stats, String field) {
+        Object value = stats.get(field);
+        return value == null ? 0L : Long.parseLong((String) value);
+    }
+}
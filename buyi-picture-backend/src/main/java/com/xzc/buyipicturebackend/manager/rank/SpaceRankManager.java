@@ -0,0 +1,200 @@
+package com.xzc.buyipicturebackend.manager.rank;
+
+import cn.hutool.core.date.DateUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.mapper.SpaceMapper;
+import com.xzc.buyipicturebackend.mapper.SpaceRankSnapshotMapper;
+import com.xzc.buyipicturebackend.model.entity.Space;
+import com.xzc.buyipicturebackend.model.entity.SpaceRankSnapshot;
+import com.xzc.buyipicturebackend.model.enums.SpaceRankTypeEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 空间使用排行
+ * 1.已用容量、图片数量、当日容量增长各维护一个 redis 有序集合，额度变化时由额度脚本原子地更新（见 SpaceQuotaManager）
+ * 2.取前 N 名为 ZREVRANGE，不再对 space 表排序
+ * 3.每天保存各排行的前 N 名快照，用于查看排名随时间的变化
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class SpaceRankManager {
+
+    public static final String SIZE_RANK_KEY = "buyipicture:spaceRank:size";
+
+    public static final String COUNT_RANK_KEY = "buyipicture:spaceRank:count";
+
+    private static final String GROWTH_RANK_KEY_PREFIX = "buyipicture:spaceRank:growth:";
+
+    private static final String SNAPSHOT_LOCK_KEY = "buyipicture:spaceRank:snapshotLock";
+
+    /**
+     * 当日增长排行保留天数
+     */
+    public static final long GROWTH_TTL_SECONDS = 8 * 24 * 3600L;
+
+    /**
+     * 每个排行快照保存的名次数
+     */
+    private static final int SNAPSHOT_TOP_N = 100;
+
+    /**
+     * 重建时每批读取的空间数
+     */
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    /**
+     * 重建：已存在的成员不覆盖（redis 中的实时值比 space 表新）
+     */
+    private static final RedisScript<Long> REBUILD_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #ARGV, 3 do\n" +
+                    "  redis.call('ZADD', KEYS[1], 'NX', ARGV[i + 1], ARGV[i])\n" +
+                    "  redis.call('ZADD', KEYS[2], 'NX', ARGV[i + 2], ARGV[i])\n" +
+                    "end\n" +
+                    "return 1", Long.class);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SpaceMapper spaceMapper;
+
+    @Resource
+    private SpaceRankSnapshotMapper spaceRankSnapshotMapper;
+
+    /**
+     * 某天的容量增长排行 key
+     *
+     * @param date 日期
+     * @return key
+     */
+    public static String growthRankKey(Date date) {
+        return GROWTH_RANK_KEY_PREFIX + DateUtil.format(date, "yyyyMMdd");
+    }
+
+    /**
+     * 排行不存在时（首次部署或 redis 数据丢失）按 space 表重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(SIZE_RANK_KEY))) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.error("重建空间排行失败", e);
+        }
+    }
+
+    /**
+     * 按 space 表重建容量和数量排行
+     */
+    public void rebuild() {
+        long lastId = 0L;
+        int total = 0;
+        while (true) {
+            List<Space> spaceList = spaceMapper.selectList(new QueryWrapper<Space>()
+                    .select("id", "totalSize", "totalCount")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + REBUILD_BATCH_SIZE));
+            if (spaceList.isEmpty()) {
+                break;
+            }
+            Object[] args = new Object[spaceList.size() * 3];
+            for (int i = 0; i < spaceList.size(); i++) {
+                Space space = spaceList.get(i);
+                args[i * 3] = String.valueOf(space.getId());
+                args[i * 3 + 1] = String.valueOf(space.getTotalSize() == null ? 0L : space.getTotalSize());
+                args[i * 3 + 2] = String.valueOf(space.getTotalCount() == null ? 0L : space.getTotalCount());
+            }
+            stringRedisTemplate.execute(REBUILD_SCRIPT, Arrays.asList(SIZE_RANK_KEY, COUNT_RANK_KEY), args);
+            total += spaceList.size();
+            lastId = spaceList.get(spaceList.size() - 1).getId();
+        }
+        log.info("空间排行重建完成, 空间数 = {}", total);
+    }
+
+    /**
+     * 获取排行前 N 名
+     *
+     * @param rankType 排行类型
+     * @param topN     名次数
+     * @return 空间id及排行值，按排行值降序
+     */
+    public Set<ZSetOperations.TypedTuple<String>> listTop(SpaceRankTypeEnum rankType, int topN) {
+        return listTop(rankKey(rankType, new Date()), topN);
+    }
+
+    /**
+     * 删除空间后移出排行
+     *
+     * @param spaceId 空间id
+     */
+    public void remove(Long spaceId) {
+        String member = String.valueOf(spaceId);
+        stringRedisTemplate.opsForZSet().remove(SIZE_RANK_KEY, member);
+        stringRedisTemplate.opsForZSet().remove(COUNT_RANK_KEY, member);
+        stringRedisTemplate.opsForZSet().remove(growthRankKey(new Date()), member);
+    }
+
+    /**
+     * 每天凌晨保存各排行的前 N 名（增长排行取前一天的完整数据）
+     */
+    @Scheduled(cron = "0 5 0 * * ?")
+    public void saveSnapshot() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(SNAPSHOT_LOCK_KEY, "1", 10, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        Date snapshotDate = DateUtil.beginOfDay(DateUtil.yesterday());
+        List<SpaceRankSnapshot> snapshotList = new ArrayList<>();
+        for (SpaceRankTypeEnum rankType : SpaceRankTypeEnum.values()) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = listTop(rankKey(rankType, snapshotDate), SNAPSHOT_TOP_N);
+            int rankNo = 0;
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                SpaceRankSnapshot snapshot = new SpaceRankSnapshot();
+                snapshot.setSnapshotDate(snapshotDate);
+                snapshot.setRankType(rankType.getValue());
+                snapshot.setSpaceId(Long.valueOf(tuple.getValue()));
+                snapshot.setRankNo(++rankNo);
+                snapshot.setScore(tuple.getScore() == null ? 0L : tuple.getScore().longValue());
+                snapshotList.add(snapshot);
+            }
+        }
+        if (!snapshotList.isEmpty()) {
+            spaceRankSnapshotMapper.upsertBatch(snapshotList);
+        }
+        log.info("空间排行快照完成, date = {}, 条数 = {}", DateUtil.formatDate(snapshotDate), snapshotList.size());
+    }
+
+    private Set<ZSetOperations.TypedTuple<String>> listTop(String key, int topN) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .reverseRangeWithScores(key, 0, topN - 1);
+        return tuples == null ? Collections.emptySet() : tuples;
+    }
+
+    private String rankKey(SpaceRankTypeEnum rankType, Date date) {
+        switch (rankType) {
+            case COUNT:
+                return COUNT_RANK_KEY;
+            case GROWTH:
+                return growthRankKey(date);
+            default:
+                return SIZE_RANK_KEY;
+        }
+    }
+}
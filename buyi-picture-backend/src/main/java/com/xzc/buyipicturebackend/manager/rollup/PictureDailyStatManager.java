@@ -0,0 +1,100 @@
+package com.xzc.buyipicturebackend.manager.rollup;
+
+import cn.hutool.core.date.DateUtil;
+import com.xzc.buyipicturebackend.mapper.PictureDailyStatMapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每日上传统计
+ * 1.新图片写入时在同一事务内累加 (空间, 用户, 日期) 的上传数量和大小
+ * 2.用户上传行为分析按日读取统计行，周、月由日数据汇总
+ * 3.补录任务按天分段重新统计历史数据（走 createTime 索引），可重复执行
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureDailyStatManager {
+
+    /**
+     * 公共图库在统计表中的空间 id
+     */
+    public static final long PUBLIC_SPACE_ID = 0L;
+
+    private static final String BACKFILL_LOCK_KEY = "buyipicture:pictureDailyStat:backfillLock";
+
+    @Resource
+    private PictureDailyStatMapper pictureDailyStatMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ThreadPoolExecutor customExecutor;
+
+    /**
+     * 记录一次新图片上传（需在保存图片的同一事务中调用，重新上传不计入）
+     *
+     * @param picture 已保存的图片
+     */
+    public void recordUpload(Picture picture) {
+        long spaceId = picture.getSpaceId() == null ? PUBLIC_SPACE_ID : picture.getSpaceId();
+        Date createTime = picture.getCreateTime() == null ? new Date() : picture.getCreateTime();
+        pictureDailyStatMapper.addUpload(spaceId, picture.getUserId(), DateUtil.beginOfDay(createTime),
+                picture.getPicSize() == null ? 0L : picture.getPicSize());
+    }
+
+    /**
+     * 异步补录全部历史数据
+     *
+     * @return 是否提交成功（已有补录任务进行中时返回 false）
+     */
+    public boolean backfillAsync() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(BACKFILL_LOCK_KEY, "1", 2, TimeUnit.HOURS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return false;
+        }
+        customExecutor.execute(() -> {
+            try {
+                Date minCreateTime = pictureDailyStatMapper.selectMinPictureCreateTime();
+                if (minCreateTime != null) {
+                    backfill(minCreateTime, new Date());
+                }
+            } catch (Exception e) {
+                log.error("每日上传统计补录失败", e);
+            } finally {
+                stringRedisTemplate.delete(BACKFILL_LOCK_KEY);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 按天重新统计一个时间段（覆盖已有统计行），每天一条语句，避免长时间锁住大量图片行
+     *
+     * @param from 开始日期（包含）
+     * @param to   结束日期（包含）
+     */
+    public void backfill(Date from, Date to) {
+        Date dayStart = DateUtil.beginOfDay(from);
+        Date end = DateUtil.beginOfDay(DateUtil.offsetDay(to, 1));
+        long rows = 0;
+        int days = 0;
+        while (dayStart.before(end)) {
+            Date dayEnd = DateUtil.offsetDay(dayStart, 1);
+            rows += pictureDailyStatMapper.replaceFromPicture(dayStart, dayEnd);
+            days++;
+            dayStart = dayEnd;
+        }
+        log.info("每日上传统计补录完成, from = {}, to = {}, days = {}, rows = {}",
+                DateUtil.formatDate(from), DateUtil.formatDate(to), days, rows);
+    }
+}
@@ -0,0 +1,291 @@
+package com.xzc.buyipicturebackend.manager.rollup;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.config.PictureSizeAnalyzeConfig;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片大小分位数草图（按相对误差划分对数桶，同 DDSketch）
+ * 1.每个范围（all、public、space:空间id）一个 redis 哈希：桶序号 -> 图片数，桶数只与大小跨度有关，与图片数无关
+ * 2.上传、删除后按桶增减计数；草图可直接相加合并
+ * 3.草图不存在时在数据库中按桶 GROUP BY 一次重建，不逐行读取 picSize；
+ *   重建加 redis 锁，并用版本号校验重建期间没有新的变化，否则放弃写入，避免丢失并发的增减
+ * 4.草图设置过期时间，过期后重建，修正更新失败等原因累积的偏差
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureSizeSketchManager {
+
+    private static final String SKETCH_KEY_PREFIX = "buyipicture:sizeSketch:";
+
+    public static final String SCOPE_ALL = "all";
+
+    public static final String SCOPE_PUBLIC = "public";
+
+    /**
+     * 重建锁的过期时间（秒）
+     */
+    private static final long REBUILD_LOCK_SECONDS = 60;
+
+    /**
+     * 增减桶计数：KEYS 为 [草图, 版本号] 成对传入，每次都递增版本号；
+     * 只更新已存在的草图（不存在的草图在读取时整体重建），计数归零时删除该桶
+     * ARGV[1] 为版本号过期时间（秒），之后为 [桶序号, 变化量] 成对传入
+     */
+    private static final RedisScript<Long> UPDATE_SCRIPT = new DefaultRedisScript<>(
+            "for k = 1, #KEYS, 2 do\n" +
+                    "  redis.call('INCR', KEYS[k + 1])\n" +
+                    "  redis.call('EXPIRE', KEYS[k + 1], ARGV[1])\n" +
+                    "  if redis.call('EXISTS', KEYS[k]) == 1 then\n" +
+                    "    for i = 2, #ARGV, 2 do\n" +
+                    "      if redis.call('HINCRBY', KEYS[k], ARGV[i], ARGV[i + 1]) <= 0 then\n" +
+                    "        redis.call('HDEL', KEYS[k], ARGV[i])\n" +
+                    "      end\n" +
+                    "    end\n" +
+                    "  end\n" +
+                    "end\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 写入重建的草图：版本号与聚合前读取的一致（期间没有增减）时才写入并设置过期时间
+     * KEYS = [草图, 版本号]，ARGV = [聚合前的版本号, 过期时间（秒）, 桶序号, 图片数, ...]
+     */
+    private static final RedisScript<Long> INSTALL_SCRIPT = new DefaultRedisScript<>(
+            "local version = redis.call('GET', KEYS[2])\n" +
+                    "if (version or '') ~= ARGV[1] then\n" +
+                    "  return 0\n" +
+                    "end\n" +
+                    "redis.call('DEL', KEYS[1])\n" +
+                    "for i = 3, #ARGV, 2 do\n" +
+                    "  redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+                    "end\n" +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+                    "return 1", Long.class);
+
+    @Resource
+    private PictureSizeAnalyzeConfig pictureSizeAnalyzeConfig;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    /**
+     * 相邻桶边界之比
+     */
+    private double gamma;
+
+    private double logGamma;
+
+    /**
+     * 草图 key 前缀（包含相对误差，修改误差后旧草图自然失效）
+     */
+    private String keyPrefix;
+
+    /**
+     * 草图过期时间（秒）
+     */
+    private long ttlSeconds;
+
+    @PostConstruct
+    public void init() {
+        double accuracy = pictureSizeAnalyzeConfig.getSketchRelativeAccuracy();
+        if (accuracy <= 0 || accuracy >= 1) {
+            throw new IllegalStateException("picture.size-analyze.sketch-relative-accuracy 需在 (0, 1) 之间");
+        }
+        gamma = (1 + accuracy) / (1 - accuracy);
+        logGamma = Math.log(gamma);
+        keyPrefix = SKETCH_KEY_PREFIX + Math.round(accuracy * 10000) + ":";
+        ttlSeconds = TimeUnit.HOURS.toSeconds(pictureSizeAnalyzeConfig.getSketchTtlHours());
+    }
+
+    /**
+     * 空间的草图范围
+     *
+     * @param spaceId 空间id，公共图库为 null
+     * @return 范围
+     */
+    public static String scopeOf(Long spaceId) {
+        return spaceId == null ? SCOPE_PUBLIC : "space:" + spaceId;
+    }
+
+    /**
+     * 记录大小变化（图片写入数据库之后调用）
+     *
+     * @param spaceId      图片所在空间，公共图库为 null
+     * @param addedSizes   新增图片的大小
+     * @param removedSizes 删除图片的大小
+     */
+    public void record(Long spaceId, Collection<Long> addedSizes, Collection<Long> removedSizes) {
+        Map<Integer, Long> bucketDelta = new TreeMap<>();
+        addedSizes.forEach(size -> bucketDelta.merge(bucketOf(size), 1L, Long::sum));
+        removedSizes.forEach(size -> bucketDelta.merge(bucketOf(size), -1L, Long::sum));
+        List<String> args = new ArrayList<>(bucketDelta.size() * 2 + 1);
+        // 版本号比草图多保留一个周期，保证重建期间不会过期
+        args.add(String.valueOf(ttlSeconds * 2));
+        bucketDelta.forEach((bucket, delta) -> {
+            if (delta != 0) {
+                args.add(String.valueOf(bucket));
+                args.add(String.valueOf(delta));
+            }
+        });
+        if (args.size() == 1) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(UPDATE_SCRIPT, Arrays.asList(keyPrefix + SCOPE_ALL, versionKeyOf(SCOPE_ALL),
+                    keyPrefix + scopeOf(spaceId), versionKeyOf(scopeOf(spaceId))), args.toArray());
+        } catch (Exception e) {
+            // 草图只用于近似分析，更新失败时删除，下次读取重建
+            log.error("图片大小草图更新失败, spaceId = {}", spaceId, e);
+            stringRedisTemplate.delete(Arrays.asList(keyPrefix + SCOPE_ALL, keyPrefix + scopeOf(spaceId)));
+        }
+    }
+
+    /**
+     * 删除空间后删除其草图
+     *
+     * @param spaceId 空间id
+     */
+    public void evict(Long spaceId) {
+        stringRedisTemplate.delete(Arrays.asList(keyPrefix + scopeOf(spaceId), versionKeyOf(scopeOf(spaceId))));
+    }
+
+    /**
+     * 获取分位数
+     *
+     * @param scope     范围
+     * @param quantiles 分位点（0-1）
+     * @return 与分位点一一对应的大小估计（字节），无图片时为 null
+     */
+    public Long[] getQuantiles(String scope, double... quantiles) {
+        TreeMap<Integer, Long> sketch = getSketch(scope);
+        long total = sketch.values().stream().mapToLong(Long::longValue).sum();
+        Long[] result = new Long[quantiles.length];
+        if (total == 0) {
+            return result;
+        }
+        for (int q = 0; q < quantiles.length; q++) {
+            long rank = (long) Math.floor(quantiles[q] * (total - 1));
+            long seen = 0;
+            for (Map.Entry<Integer, Long> entry : sketch.entrySet()) {
+                seen += entry.getValue();
+                if (seen > rank) {
+                    result[q] = estimateOf(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取图片数
+     *
+     * @param scope 范围
+     * @return 草图中的图片数
+     */
+    public long getCount(String scope) {
+        return getSketch(scope).values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private TreeMap<Integer, Long> getSketch(String scope) {
+        String key = keyPrefix + scope;
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+        TreeMap<Integer, Long> sketch = new TreeMap<>();
+        if (entries.isEmpty()) {
+            return rebuild(scope);
+        }
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            sketch.put(Integer.valueOf(entry.getKey().toString()), Long.valueOf(entry.getValue().toString()));
+        }
+        return sketch;
+    }
+
+    /**
+     * 按数据库重建草图
+     * 拿到锁的请求在聚合前读取版本号，聚合期间有增减时放弃写入（下次读取再重建）；
+     * 没拿到锁的请求直接返回聚合结果
+     */
+    private TreeMap<Integer, Long> rebuild(String scope) {
+        String key = keyPrefix + scope;
+        String versionKey = versionKeyOf(scope);
+        String lockKey = key + ":lock";
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, "1", REBUILD_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return aggregate(scope);
+        }
+        try {
+            String version = StrUtil.nullToEmpty(stringRedisTemplate.opsForValue().get(versionKey));
+            TreeMap<Integer, Long> sketch = aggregate(scope);
+            if (sketch.isEmpty()) {
+                return sketch;
+            }
+            List<String> args = new ArrayList<>(sketch.size() * 2 + 2);
+            args.add(version);
+            args.add(String.valueOf(ttlSeconds));
+            sketch.forEach((bucket, count) -> {
+                args.add(String.valueOf(bucket));
+                args.add(String.valueOf(count));
+            });
+            Long installed = stringRedisTemplate.execute(INSTALL_SCRIPT, Arrays.asList(key, versionKey), args.toArray());
+            if (!Long.valueOf(1L).equals(installed)) {
+                log.info("图片大小草图重建期间有变化，暂不写入, scope = {}", scope);
+            }
+            return sketch;
+        } finally {
+            stringRedisTemplate.delete(lockKey);
+        }
+    }
+
+    private String versionKeyOf(String scope) {
+        return keyPrefix + scope + ":version";
+    }
+
+    /**
+     * 在数据库中按桶统计图片数
+     */
+    private TreeMap<Integer, Long> aggregate(String scope) {
+        String bucketExpr = "CEIL(LN(GREATEST(IFNULL(picSize, 1), 1)) / " + logGamma + ")";
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<Picture>()
+                .select(bucketExpr + " AS bucket", "COUNT(*) AS count")
+                .groupBy("bucket");
+        if (SCOPE_PUBLIC.equals(scope)) {
+            queryWrapper.isNull("spaceId");
+        } else if (!SCOPE_ALL.equals(scope)) {
+            queryWrapper.eq("spaceId", Long.valueOf(scope.substring("space:".length())));
+        }
+        TreeMap<Integer, Long> sketch = new TreeMap<>();
+        for (Map<String, Object> result : pictureMapper.selectMaps(queryWrapper)) {
+            sketch.put(((Number) result.get("bucket")).intValue(), ((Number) result.get("count")).longValue());
+        }
+        return sketch;
+    }
+
+    int bucketOf(Long size) {
+        long value = size == null || size < 1 ? 1L : size;
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    /**
+     * 桶 (gamma^(i-1), gamma^i] 的估计值，相对误差不超过配置值
+     */
+    private long estimateOf(int bucket) {
+        return Math.round(2 * Math.pow(gamma, bucket) / (gamma + 1));
+    }
+}
@@ -0,0 +1,164 @@
+package com.xzc.buyipicturebackend.manager.rollup;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.mapper.PictureUsageRollupMapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.entity.PictureUsageRollup;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图库用量汇总（全部图片、公共图库）
+ * 1.上传、删除后在本地累加用量变化，定时合并为一条 UPDATE 写入汇总行，避免每次上传都锁同一行
+ * 2.管理员用量分析读取汇总行（主键查询）加上本节点未写入的变化
+ * 3.每天用一次 SUM/COUNT 聚合重新统计，修正进程异常退出时丢失的变化
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureUsageRollupManager {
+
+    public static final String SCOPE_ALL = "all";
+
+    public static final String SCOPE_PUBLIC = "public";
+
+    private static final String REBUILD_LOCK_KEY = "buyipicture:pictureUsageRollup:rebuildLock";
+
+    private final AtomicLong allSizeDelta = new AtomicLong();
+
+    private final AtomicLong allCountDelta = new AtomicLong();
+
+    private final AtomicLong publicSizeDelta = new AtomicLong();
+
+    private final AtomicLong publicCountDelta = new AtomicLong();
+
+    @Resource
+    private PictureUsageRollupMapper pictureUsageRollupMapper;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 记录用量变化（图片写入数据库之后调用）
+     *
+     * @param spaceId    图片所在空间，公共图库为 null
+     * @param sizeDelta  大小变化
+     * @param countDelta 数量变化
+     */
+    public void record(Long spaceId, long sizeDelta, long countDelta) {
+        allSizeDelta.addAndGet(sizeDelta);
+        allCountDelta.addAndGet(countDelta);
+        if (spaceId == null) {
+            publicSizeDelta.addAndGet(sizeDelta);
+            publicCountDelta.addAndGet(countDelta);
+        }
+    }
+
+    /**
+     * 获取用量
+     *
+     * @param scope 统计范围
+     * @return [图片总大小, 图片总数]
+     */
+    public long[] getUsage(String scope) {
+        PictureUsageRollup rollup = pictureUsageRollupMapper.selectById(scope);
+        if (rollup == null) {
+            // 汇总行缺失（迁移前的库或被误删）时直接聚合，并补上汇总行
+            long[] usage = aggregate(scope);
+            pictureUsageRollupMapper.replaceUsage(scope, usage[0], usage[1]);
+            rollup = new PictureUsageRollup();
+            rollup.setTotalSize(usage[0]);
+            rollup.setTotalCount(usage[1]);
+        }
+        boolean isAll = SCOPE_ALL.equals(scope);
+        long totalSize = rollup.getTotalSize() + (isAll ? allSizeDelta.get() : publicSizeDelta.get());
+        long totalCount = rollup.getTotalCount() + (isAll ? allCountDelta.get() : publicCountDelta.get());
+        return new long[]{totalSize, totalCount};
+    }
+
+    /**
+     * 定时将本地累加的变化写入汇总行
+     */
+    @Scheduled(fixedDelay = 5_000L, initialDelay = 5_000L)
+    public synchronized void flush() {
+        flush(SCOPE_ALL, allSizeDelta, allCountDelta);
+        flush(SCOPE_PUBLIC, publicSizeDelta, publicCountDelta);
+    }
+
+    /**
+     * 每天凌晨重新统计（多个节点中只有一个执行）
+     */
+    @Scheduled(cron = "0 0 4 * * ?")
+    public void rebuild() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(REBUILD_LOCK_KEY, "1", 10, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        synchronized (this) {
+            flush();
+            for (String scope : new String[]{SCOPE_ALL, SCOPE_PUBLIC}) {
+                long[] usage = aggregate(scope);
+                pictureUsageRollupMapper.replaceUsage(scope, usage[0], usage[1]);
+                log.info("图库用量重新统计完成, scope = {}, totalSize = {}, totalCount = {}", scope, usage[0], usage[1]);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("图库用量写入失败", e);
+        }
+    }
+
+    private void flush(String scope, AtomicLong sizeDelta, AtomicLong countDelta) {
+        long size = sizeDelta.getAndSet(0);
+        long count = countDelta.getAndSet(0);
+        if (size == 0 && count == 0) {
+            return;
+        }
+        try {
+            pictureUsageRollupMapper.addUsage(scope, size, count);
+        } catch (Exception e) {
+            // 写入失败时放回，下次重试
+            sizeDelta.addAndGet(size);
+            countDelta.addAndGet(count);
+            log.error("图库用量写入失败, scope = {}", scope, e);
+        }
+    }
+
+    /**
+     * 在数据库中聚合统计用量
+     *
+     * @return [图片总大小, 图片总数]
+     */
+    private long[] aggregate(String scope) {
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<Picture>()
+                .select("IFNULL(SUM(picSize), 0) AS totalSize", "COUNT(*) AS totalCount");
+        if (SCOPE_PUBLIC.equals(scope)) {
+            queryWrapper.isNull("spaceId");
+        }
+        List<Map<String, Object>> resultList = pictureMapper.selectMaps(queryWrapper);
+        if (resultList.isEmpty() || resultList.get(0) == null) {
+            return new long[]{0L, 0L};
+        }
+        Map<String, Object> result = resultList.get(0);
+        return new long[]{((Number) result.get("totalSize")).longValue(), ((Number) result.get("totalCount")).longValue()};
+    }
+}
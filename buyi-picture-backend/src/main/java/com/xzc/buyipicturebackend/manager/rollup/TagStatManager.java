@@ -0,0 +1,441 @@
+package com.xzc.buyipicturebackend.manager.rollup;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.json.JSONUtil;
+import com.xzc.buyipicturebackend.manager.cache.SpaceDashboardCacheManager;
+import com.xzc.buyipicturebackend.mapper.TagStatMapper;
+import com.xzc.buyipicturebackend.model.entity.TagStat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 标签统计
+ * 1.标签关联变化时，事务提交后在本地按 (scope, tag) 累加增减量，定时合并为多值 INSERT 写入，
+ *   热门标签不会在每次上传、编辑时被行锁串行化（计数最多延迟一个刷新周期）
+ * 2.标签分析按 (scope, count) 索引取前 N，不再读取并解析每张图片的 tags
+ * 3.每周在一个可重复读快照中按图片 id 游标分批统计到临时表，再用 RENAME 原子替换，读请求始终能看到完整的统计
+ * 4.每次重建递增一个代号，变化记录时带上当时的代号：
+ *   快照之前的变化已包含在快照中，替换后丢弃；重建期间的新变化记录到 redis 队列，结束后写入新表，不会丢失也不会重复
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class TagStatManager {
+
+    public static final String SCOPE_ALL = "all";
+
+    public static final String SCOPE_PUBLIC = "public";
+
+    private static final String SCOPE_SPACE_PREFIX = "space:";
+
+    private static final String REBUILD_LOCK_KEY = "buyipicture:tagStat:rebuildLock";
+
+    /**
+     * 当前代号，每次重建开始时递增
+     */
+    private static final String GENERATION_KEY = "buyipicture:tagStat:generation";
+
+    /**
+     * 正在重建的代号（重建期间存在）
+     */
+    private static final String REBUILDING_KEY = "buyipicture:tagStat:rebuilding";
+
+    /**
+     * 最近一次成功替换的代号
+     */
+    private static final String SWAPPED_KEY = "buyipicture:tagStat:swapped";
+
+    /**
+     * 重建期间的变化队列（每个元素为一批 TagStat 的 JSON）
+     */
+    private static final String REPLAY_KEY = "buyipicture:tagStat:replay";
+
+    private static final long REBUILD_TIMEOUT_MINUTES = 30;
+
+    /**
+     * 单条 INSERT 最多写入的行数
+     */
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    /**
+     * 重建时每批统计的图片数
+     */
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    /**
+     * 开始重建：递增代号并标记为重建中，返回新代号
+     */
+    private static final RedisScript<Long> BEGIN_SCRIPT = new DefaultRedisScript<>(
+            "local generation = redis.call('INCR', KEYS[1])\n" +
+                    "redis.call('SET', KEYS[2], generation, 'EX', ARGV[1])\n" +
+                    "return generation", Long.class);
+
+    /**
+     * 重建中且代号一致时把变化加入队列（返回 1），否则返回 0 由调用方直接写表
+     */
+    private static final RedisScript<Long> DEFER_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then\n" +
+                    "  return 0\n" +
+                    "end\n" +
+                    "redis.call('RPUSH', KEYS[2], ARGV[2])\n" +
+                    "redis.call('EXPIRE', KEYS[2], ARGV[3])\n" +
+                    "return 1", Long.class);
+
+    /**
+     * 结束重建：清除重建标记，取出并删除变化队列
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> FINISH_SCRIPT = new DefaultRedisScript<>(
+            "local items = redis.call('LRANGE', KEYS[2], 0, -1)\n" +
+                    "redis.call('DEL', KEYS[1], KEYS[2])\n" +
+                    "return items", List.class);
+
+    /**
+     * 本节点未写入的变化：(代号, scope, tag) -> 关联图片数的变化
+     */
+    private final Map<DeltaKey, Long> pendingDelta = new ConcurrentHashMap<>();
+
+    /**
+     * 最近一次读取到的代号，读取失败时使用
+     */
+    private volatile long lastGeneration;
+
+    @Resource
+    private TagStatMapper tagStatMapper;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    @Resource
+    private ThreadPoolExecutor customExecutor;
+
+    @Resource
+    private SpaceDashboardCacheManager spaceDashboardCacheManager;
+
+    /**
+     * 重建使用的快照事务（可重复读，所有批次读取同一时刻的数据，且普通查询不加锁）
+     */
+    private TransactionTemplate snapshotTransactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        snapshotTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        snapshotTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    /**
+     * 空间的统计范围
+     *
+     * @param spaceId 空间id，公共图库为 null
+     * @return 统计范围
+     */
+    public static String scopeOf(Long spaceId) {
+        return spaceId == null ? SCOPE_PUBLIC : SCOPE_SPACE_PREFIX + spaceId;
+    }
+
+    /**
+     * 累加标签计数
+     * 在事务中调用时等事务提交后再计入，回滚的变化不会写入
+     *
+     * @param spaceId  图片所在空间，公共图库为 null
+     * @param tagDelta 标签 -> 关联图片数的变化
+     */
+    public void applyDelta(Long spaceId, Map<String, Long> tagDelta) {
+        Map<String, Long> nonZeroDelta = new HashMap<>();
+        tagDelta.forEach((tag, delta) -> {
+            if (delta != 0) {
+                nonZeroDelta.put(tag, delta);
+            }
+        });
+        if (nonZeroDelta.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addPending(spaceId, nonZeroDelta);
+                }
+            });
+        } else {
+            addPending(spaceId, nonZeroDelta);
+        }
+    }
+
+    /**
+     * 按范围取关联图片数最多的标签
+     *
+     * @param scope 统计范围
+     * @param topN  条数
+     * @return 标签统计，按关联图片数降序
+     */
+    public List<TagStat> listTop(String scope, int topN) {
+        return tagStatMapper.listTop(scope, topN);
+    }
+
+    /**
+     * 异步重新统计（管理员手动修正）
+     */
+    public void rebuildAsync() {
+        customExecutor.execute(this::rebuild);
+    }
+
+    /**
+     * 定时将本地累加的变化写入标签统计
+     * 1.代号等于当前代号的变化：重建中加入 redis 队列，否则直接写表
+     * 2.代号更早的变化：重建中先保留；重建已替换则丢弃（已包含在快照中），重建失败则直接写入仍在使用的旧表
+     * 按 (scope, tag) 排序写入，多个节点以相同顺序加锁，避免死锁；写入后使这些范围的看板缓存失效
+     */
+    @Scheduled(fixedDelay = 5_000L, initialDelay = 5_000L)
+    public synchronized void flush() {
+        if (pendingDelta.isEmpty()) {
+            return;
+        }
+        long generation;
+        String rebuilding;
+        long swapped;
+        try {
+            generation = readGeneration();
+            rebuilding = stringRedisTemplate.opsForValue().get(REBUILDING_KEY);
+            swapped = parseLong(stringRedisTemplate.opsForValue().get(SWAPPED_KEY));
+        } catch (Exception e) {
+            log.error("标签统计代号读取失败，下次重试", e);
+            return;
+        }
+        TreeMap<Long, List<TagStat>> generationDelta = drainPending();
+        Set<String> writtenScopes = new TreeSet<>();
+        generationDelta.forEach((deltaGeneration, tagStatList) -> {
+            if (deltaGeneration >= generation) {
+                write(deltaGeneration, tagStatList, true, writtenScopes);
+            } else if (rebuilding != null) {
+                tagStatList.forEach(tagStat -> addPending(deltaGeneration, tagStat.getScope(), tagStat.getTag(), tagStat.getCount()));
+            } else if (swapped <= deltaGeneration) {
+                write(deltaGeneration, tagStatList, false, writtenScopes);
+            }
+        });
+        if (!writtenScopes.isEmpty()) {
+            spaceDashboardCacheManager.bumpVersion(writtenScopes);
+        }
+    }
+
+    /**
+     * 每周按标签关联重新统计（多个节点中只有一个执行）
+     * 在可重复读快照中按图片 id 游标分批统计，普通查询不锁 picture_tag；完成后用 RENAME 原子替换
+     */
+    @Scheduled(cron = "0 30 4 ? * MON")
+    public void rebuild() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(REBUILD_LOCK_KEY, "1",
+                REBUILD_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        boolean begun = false;
+        try {
+            tagStatMapper.dropStaging();
+            tagStatMapper.createStaging();
+            // 递增代号后立即开始快照：之前提交的变化在快照中，之后提交的变化带新代号，在重建结束后写入新表
+            Long generation = stringRedisTemplate.execute(BEGIN_SCRIPT, Arrays.asList(GENERATION_KEY, REBUILDING_KEY),
+                    String.valueOf(TimeUnit.MINUTES.toSeconds(REBUILD_TIMEOUT_MINUTES)));
+            begun = true;
+            Long rows = snapshotTransactionTemplate.execute(status -> copyToStaging());
+            tagStatMapper.swapStaging();
+            stringRedisTemplate.opsForValue().set(SWAPPED_KEY, String.valueOf(generation));
+            tagStatMapper.dropOld();
+            log.info("标签统计重建完成, 条数 = {}, 耗时 {} ms", rows, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("标签统计重建失败", e);
+        } finally {
+            if (begun) {
+                finishRebuild();
+            }
+            stringRedisTemplate.delete(REBUILD_LOCK_KEY);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("标签统计写入失败", e);
+        }
+    }
+
+    /**
+     * 在快照中按图片 id 游标分批统计，写入临时表
+     *
+     * @return 写入的统计行数
+     */
+    private long copyToStaging() {
+        long lastId = 0L;
+        long rows = 0;
+        while (true) {
+            List<Long> pictureIdList = tagStatMapper.listPictureIdsAfter(lastId, REBUILD_BATCH_SIZE);
+            if (pictureIdList.isEmpty()) {
+                break;
+            }
+            long maxId = pictureIdList.get(pictureIdList.size() - 1);
+            // 按 (scope, tag) 排序，all 由各范围相加得到
+            TreeMap<String, TagStat> statMap = new TreeMap<>();
+            for (TagStat tagStat : tagStatMapper.countByPictureIdRange(lastId, maxId)) {
+                mergeInto(statMap, tagStat.getScope(), tagStat.getTag(), tagStat.getCount());
+                mergeInto(statMap, SCOPE_ALL, tagStat.getTag(), tagStat.getCount());
+            }
+            for (List<TagStat> batch : CollUtil.split(new ArrayList<>(statMap.values()), INSERT_BATCH_SIZE)) {
+                rows += tagStatMapper.addStagingCountBatch(batch);
+            }
+            lastId = maxId;
+        }
+        return rows;
+    }
+
+    /**
+     * 结束重建：清除重建标记并取出重建期间的变化，放回本地按当前代号写入
+     * 替换成功时写入新表；替换失败时旧表仍在使用，同样直接写入
+     */
+    @SuppressWarnings("unchecked")
+    private void finishRebuild() {
+        try {
+            long generation = readGeneration();
+            List<String> items = stringRedisTemplate.execute(FINISH_SCRIPT, Arrays.asList(REBUILDING_KEY, REPLAY_KEY));
+            if (CollUtil.isEmpty(items)) {
+                return;
+            }
+            for (String item : items) {
+                JSONUtil.toList(item, TagStat.class)
+                        .forEach(tagStat -> addPending(generation, tagStat.getScope(), tagStat.getTag(), tagStat.getCount()));
+            }
+            log.info("标签统计重建期间的变化已放回, 批数 = {}", items.size());
+        } catch (Exception e) {
+            log.error("标签统计重建期间的变化回放失败", e);
+        }
+    }
+
+    /**
+     * 写入一批变化
+     *
+     * @param generation    变化的代号
+     * @param deferrable    重建中是否加入队列（只有当前代号的变化需要）
+     * @param writtenScopes 收集写入了统计表的范围
+     */
+    private void write(long generation, List<TagStat> tagStatList, boolean deferrable, Set<String> writtenScopes) {
+        for (List<TagStat> batch : CollUtil.split(tagStatList, INSERT_BATCH_SIZE)) {
+            try {
+                Long deferred = deferrable
+                        ? stringRedisTemplate.execute(DEFER_SCRIPT, Arrays.asList(REBUILDING_KEY, REPLAY_KEY),
+                        String.valueOf(generation), JSONUtil.toJsonStr(batch),
+                        String.valueOf(TimeUnit.MINUTES.toSeconds(REBUILD_TIMEOUT_MINUTES * 2)))
+                        : Long.valueOf(0L);
+                if (!Long.valueOf(1L).equals(deferred)) {
+                    tagStatMapper.addCountBatch(batch);
+                    batch.forEach(tagStat -> writtenScopes.add(tagStat.getScope()));
+                }
+            } catch (Exception e) {
+                // 写入失败时放回，下次重试
+                batch.forEach(tagStat -> addPending(generation, tagStat.getScope(), tagStat.getTag(), tagStat.getCount()));
+                log.error("标签统计写入失败, count = {}", batch.size(), e);
+            }
+        }
+    }
+
+    /**
+     * 取出本地所有变化，按代号分组，组内按 (scope, tag) 排序
+     */
+    private TreeMap<Long, List<TagStat>> drainPending() {
+        List<DeltaKey> keyList = new ArrayList<>(pendingDelta.keySet());
+        keyList.sort(Comparator.comparingLong(DeltaKey::getGeneration)
+                .thenComparing(DeltaKey::getScope)
+                .thenComparing(DeltaKey::getTag));
+        TreeMap<Long, List<TagStat>> generationDelta = new TreeMap<>();
+        for (DeltaKey key : keyList) {
+            // 取出并移除是原子的，之后的变化会重新创建条目
+            Long delta = pendingDelta.remove(key);
+            if (delta == null || delta == 0) {
+                continue;
+            }
+            TagStat tagStat = new TagStat();
+            tagStat.setScope(key.getScope());
+            tagStat.setTag(key.getTag());
+            tagStat.setCount(delta);
+            generationDelta.computeIfAbsent(key.getGeneration(), generation -> new ArrayList<>()).add(tagStat);
+        }
+        return generationDelta;
+    }
+
+    private void addPending(Long spaceId, Map<String, Long> tagDelta) {
+        long generation;
+        try {
+            generation = readGeneration();
+        } catch (Exception e) {
+            generation = lastGeneration;
+            log.error("标签统计代号读取失败，使用上次的代号 {}", generation, e);
+        }
+        for (String scope : Arrays.asList(SCOPE_ALL, scopeOf(spaceId))) {
+            for (Map.Entry<String, Long> entry : tagDelta.entrySet()) {
+                addPending(generation, scope, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void addPending(long generation, String scope, String tag, long delta) {
+        pendingDelta.merge(new DeltaKey(generation, scope, tag), delta, Long::sum);
+    }
+
+    private long readGeneration() {
+        long generation = parseLong(stringRedisTemplate.opsForValue().get(GENERATION_KEY));
+        lastGeneration = generation;
+        return generation;
+    }
+
+    private static long parseLong(String value) {
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    private static void mergeInto(TreeMap<String, TagStat> statMap, String scope, String tag, long count) {
+        TagStat tagStat = statMap.computeIfAbsent(scope + "\n" + tag, key -> {
+            TagStat newTagStat = new TagStat();
+            newTagStat.setScope(scope);
+            newTagStat.setTag(tag);
+            newTagStat.setCount(0L);
+            return newTagStat;
+        });
+        tagStat.setCount(tagStat.getCount() + count);
+    }
+
+    /**
+     * 本地变化的 key
+     */
+    @Data
+    @AllArgsConstructor
+    private static class DeltaKey {
+
+        private long generation;
+
+        private String scope;
+
+        private String tag;
+    }
+}
@@ -0,0 +1,151 @@
+package com.xzc.buyipicturebackend.manager.rollup;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.mapper.PictureDailyStatMapper;
+import com.xzc.buyipicturebackend.model.entity.PictureDailyStat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * 上传用户数（基数估计）
+ * 1.每个范围（all、public、space:空间id）一个 redis HyperLogLog，上传时 PFADD 上传用户，PFCOUNT 为 O(1)
+ * 2.标准误差约 0.81%，每个 key 最多约 12KB，与用户数无关
+ * 3.HyperLogLog 不存在时按每日上传统计表逐批去重重建（与上传行为分析口径一致，包含已删除图片的上传用户）
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class UploaderCardinalityManager {
+
+    private static final String HLL_KEY_PREFIX = "buyipicture:uploaderHll:";
+
+    public static final String SCOPE_ALL = "all";
+
+    public static final String SCOPE_PUBLIC = "public";
+
+    /**
+     * HyperLogLog 标准误差
+     */
+    public static final double STANDARD_ERROR = 0.0081;
+
+    /**
+     * 重建时每批读取的用户数
+     */
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private PictureDailyStatMapper pictureDailyStatMapper;
+
+    /**
+     * 空间的统计范围
+     *
+     * @param spaceId 空间id，公共图库为 null
+     * @return 范围
+     */
+    public static String scopeOf(Long spaceId) {
+        return spaceId == null ? SCOPE_PUBLIC : "space:" + spaceId;
+    }
+
+    /**
+     * 记录一次上传（图片写入数据库之后调用）
+     *
+     * @param spaceId 图片所在空间，公共图库为 null
+     * @param userId  上传用户 id
+     */
+    public void record(Long spaceId, Long userId) {
+        if (userId == null) {
+            return;
+        }
+        try {
+            // 只更新已存在的 HyperLogLog，不存在的在读取时整体重建
+            for (String scope : new String[]{SCOPE_ALL, scopeOf(spaceId)}) {
+                String key = HLL_KEY_PREFIX + scope;
+                if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+                    stringRedisTemplate.opsForHyperLogLog().add(key, String.valueOf(userId));
+                }
+            }
+        } catch (Exception e) {
+            log.error("上传用户数更新失败, spaceId = {}", spaceId, e);
+        }
+    }
+
+    /**
+     * 估计范围内的上传用户数
+     *
+     * @param scope 范围
+     * @return 上传用户数估计值
+     */
+    public long estimate(String scope) {
+        String key = HLL_KEY_PREFIX + scope;
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+            rebuild(scope);
+        }
+        Long count = stringRedisTemplate.opsForHyperLogLog().size(key);
+        return count == null ? 0L : count;
+    }
+
+    /**
+     * 精确统计范围内的上传用户数
+     *
+     * @param scope 范围
+     * @return 上传用户数
+     */
+    public long count(String scope) {
+        QueryWrapper<PictureDailyStat> queryWrapper = new QueryWrapper<PictureDailyStat>()
+                .select("COUNT(DISTINCT userId) AS uploaderCount");
+        fillScope(queryWrapper, scope);
+        List<Object> resultList = pictureDailyStatMapper.selectObjs(queryWrapper);
+        return resultList.isEmpty() || resultList.get(0) == null ? 0L : ((Number) resultList.get(0)).longValue();
+    }
+
+    /**
+     * 删除空间后删除其 HyperLogLog
+     *
+     * @param spaceId 空间id
+     */
+    public void evict(Long spaceId) {
+        stringRedisTemplate.delete(HLL_KEY_PREFIX + scopeOf(spaceId));
+    }
+
+    /**
+     * 按用户 id 游标分批去重读取上传用户，写入 HyperLogLog
+     */
+    private void rebuild(String scope) {
+        String key = HLL_KEY_PREFIX + scope;
+        long lastUserId = 0L;
+        int total = 0;
+        while (true) {
+            QueryWrapper<PictureDailyStat> queryWrapper = new QueryWrapper<PictureDailyStat>()
+                    .select("DISTINCT userId")
+                    .gt("userId", lastUserId)
+                    .orderByAsc("userId")
+                    .last("limit " + REBUILD_BATCH_SIZE);
+            fillScope(queryWrapper, scope);
+            List<Object> userIds = pictureDailyStatMapper.selectObjs(queryWrapper);
+            if (userIds.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.opsForHyperLogLog().add(key,
+                    userIds.stream().map(String::valueOf).toArray(String[]::new));
+            total += userIds.size();
+            lastUserId = ((Number) userIds.get(userIds.size() - 1)).longValue();
+        }
+        log.info("上传用户数重建完成, scope = {}, 用户数 = {}", scope, total);
+    }
+
+    private void fillScope(QueryWrapper<PictureDailyStat> queryWrapper, String scope) {
+        if (SCOPE_PUBLIC.equals(scope)) {
+            queryWrapper.eq("spaceId", PictureDailyStatManager.PUBLIC_SPACE_ID);
+        } else if (!SCOPE_ALL.equals(scope)) {
+            queryWrapper.eq("spaceId", Long.valueOf(scope.substring("space:".length())));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.xzc.buyipicturebackend.manager.scan;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.function.BiConsumer;
+
+/**
+ * 图片流式扫描
+ * 1.一条查询、逐行读取（MySQL 流式结果集），不把整个结果集读入内存，也不需要按 id 游标分批多次查询
+ * 2.每行到达时折叠进调用方的累加器，内存占用只取决于累加器大小
+ * 3.折叠函数中不能访问数据库（流式读取期间连接被占用）
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureScanManager {
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    /**
+     * 扫描未删除的图片并折叠为结果
+     *
+     * @param queryWrapper 查询条件（通过 select 指定需要的列，列越少越好）
+     * @param accumulator  累加器
+     * @param folder       折叠函数：(累加器, 图片)
+     * @param <A>          累加器类型
+     * @return 累加器
+     */
+    public <A> A fold(QueryWrapper<Picture> queryWrapper, A accumulator, BiConsumer<A, Picture> folder) {
+        // 自定义 SQL 不会自动加上逻辑删除条件
+        queryWrapper.eq("isDelete", 0);
+        long startTime = System.currentTimeMillis();
+        long[] rows = new long[1];
+        pictureMapper.scan(queryWrapper, resultContext -> {
+            folder.accept(accumulator, resultContext.getResultObject());
+            rows[0]++;
+        });
+        log.debug("图片流式扫描完成, rows = {}, cost = {}ms", rows[0], System.currentTimeMillis() - startTime);
+        return accumulator;
+    }
+}
@@ -0,0 +1,592 @@
+package com.xzc.buyipicturebackend.manager.search;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.config.PictureSearchConfig;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.dto.picture.PictureQueryRequest;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.analysis.cjk.CJKBigramFilter;
+import org.apache.lucene.analysis.cjk.CJKWidthFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 图片全文检索管理（Lucene 本地磁盘索引）
+ * 1.索引图片名称和简介（CJK 单字 + 二元分词），同时存储空间、审核状态、分类、标签等过滤字段
+ * 2.上传、编辑、审核、删除时增量更新（近实时可见，定时提交落盘）；定时按 updateTime 游标补齐其他节点的变更
+ * 3.可从数据库全量重建：在原索引上逐条覆盖，完成后删除未被覆盖的旧文档，重建期间搜索仍使用完整的旧索引
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureSearchManager {
+
+    /**
+     * 公共图库在索引中的 spaceId 取值
+     */
+    private static final String PUBLIC_SPACE = "public";
+
+    /**
+     * 提交数据中记录增量同步游标的 key
+     */
+    private static final String WATERMARK_KEY = "watermark";
+
+    /**
+     * 提交数据中记录分词方式版本的 key，版本不一致时启动后重建
+     */
+    private static final String ANALYZER_VERSION_KEY = "analyzerVersion";
+
+    /**
+     * 分词方式版本（1：CJK 二元分词；2：CJK 单字 + 二元分词）
+     */
+    private static final String ANALYZER_VERSION = "2";
+
+    /**
+     * 走全文索引的最短搜索词长度，更短的搜索词（单字）用数据库模糊查询
+     */
+    private static final int MIN_SEARCH_TEXT_LENGTH = 2;
+
+    /**
+     * 增量同步时向前回溯的毫秒数，避免漏掉同一时刻提交的变更（重复索引是幂等的）
+     */
+    private static final long WATERMARK_OVERLAP_MILLIS = 10_000L;
+
+    /**
+     * 记录写入时所在重建批次的字段，重建完成后删除其他批次的文档
+     */
+    private static final String GENERATION_FIELD = "generation";
+
+    /**
+     * 建立索引文档需要的列
+     */
+    private static final String[] INDEX_COLUMNS = {"id", "name", "introduction", "spaceId", "reviewStatus",
+            "category", "userId", "tags", "isDelete", "updateTime"};
+
+    private static final String SYNC_COLUMNS = String.join(", ", INDEX_COLUMNS);
+
+    /**
+     * 全量重建、增量同步每批读取的条数
+     */
+    private static final int BATCH_SIZE = 500;
+
+    @Resource
+    private PictureSearchConfig pictureSearchConfig;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @Resource
+    private ThreadPoolExecutor customExecutor;
+
+    private final Analyzer analyzer = new CjkUnigramBigramAnalyzer();
+
+    /**
+     * 索引中记录的分词方式版本
+     */
+    private String indexAnalyzerVersion;
+
+    private FSDirectory directory;
+
+    private IndexWriter indexWriter;
+
+    private SearcherManager searcherManager;
+
+    /**
+     * 已同步到的最大 updateTime
+     */
+    private volatile Date watermark;
+
+    /**
+     * 是否正在全量重建
+     */
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    /**
+     * 当前写入文档的重建批次（每次全量重建开始时更新）
+     */
+    private volatile String generation = String.valueOf(System.currentTimeMillis());
+
+    @PostConstruct
+    public void init() {
+        if (!pictureSearchConfig.isEnabled()) {
+            return;
+        }
+        try {
+            directory = FSDirectory.open(Paths.get(pictureSearchConfig.getIndexDir()));
+            IndexWriterConfig indexWriterConfig = new IndexWriterConfig(analyzer);
+            indexWriterConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            indexWriter = new IndexWriter(directory, indexWriterConfig);
+            searcherManager = new SearcherManager(indexWriter, new SearcherFactory());
+            // 从上次提交中恢复同步游标
+            Iterable<Map.Entry<String, String>> commitData = indexWriter.getLiveCommitData();
+            if (commitData != null) {
+                for (Map.Entry<String, String> entry : commitData) {
+                    if (WATERMARK_KEY.equals(entry.getKey())) {
+                        watermark = new Date(Long.parseLong(entry.getValue()));
+                    } else if (ANALYZER_VERSION_KEY.equals(entry.getKey())) {
+                        indexAnalyzerVersion = entry.getValue();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("图片全文索引初始化失败，搜索将回退为数据库查询", e);
+            close();
+        }
+    }
+
+    /**
+     * 启动后若索引为空（首次部署）或分词方式已变化则全量重建，否则补齐停机期间的变更
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (indexWriter == null) {
+            return;
+        }
+        if (watermark == null || indexWriter.getDocStats().numDocs == 0
+                || !ANALYZER_VERSION.equals(indexAnalyzerVersion)) {
+            rebuildIndexAsync();
+        } else {
+            customExecutor.execute(this::syncChanges);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            if (indexWriter != null && indexWriter.isOpen() && watermark != null) {
+                commit();
+            }
+            if (searcherManager != null) {
+                searcherManager.close();
+            }
+            if (indexWriter != null) {
+                indexWriter.close();
+            }
+            if (directory != null) {
+                directory.close();
+            }
+        } catch (IOException e) {
+            log.error("关闭图片全文索引失败", e);
+        } finally {
+            searcherManager = null;
+            indexWriter = null;
+            directory = null;
+        }
+    }
+
+    /**
+     * 索引是否可用（未启用、初始化失败或首次重建未完成时不可用）
+     *
+     * @return 是否可用
+     */
+    public boolean isAvailable() {
+        return indexWriter != null && watermark != null;
+    }
+
+    /**
+     * 搜索词是否可以走全文索引（索引不可用或单字搜索词时用数据库模糊查询）
+     *
+     * @param searchText 搜索词
+     * @return 是否可以走全文索引
+     */
+    public boolean canSearch(String searchText) {
+        if (!isAvailable() || StrUtil.isBlank(searchText)) {
+            return false;
+        }
+        String text = searchText.trim();
+        return text.codePointCount(0, text.length()) >= MIN_SEARCH_TEXT_LENGTH;
+    }
+
+    /**
+     * 搜索图片，按相关度返回图片id
+     * 搜索词匹配名称或简介（名称权重更高），并按分类、标签、空间、审核状态、用户过滤
+     *
+     * @param pictureQueryRequest 查询请求（searchText 不能为空）
+     * @return 按相关度降序的图片id列表，最多 maxHits 条；索引不可用或查询失败时返回 null，由调用方回退为数据库查询
+     */
+    public List<Long> search(PictureQueryRequest pictureQueryRequest) {
+        String searchText = pictureQueryRequest.getSearchText();
+        if (!canSearch(searchText)) {
+            return null;
+        }
+
+        // 1.搜索词：名称短语 > 名称全部命中 > 简介全部命中
+        QueryBuilder queryBuilder = new QueryBuilder(analyzer);
+        BooleanQuery.Builder textQuery = new BooleanQuery.Builder();
+        addShould(textQuery, queryBuilder.createPhraseQuery("name", searchText), 3f);
+        addShould(textQuery, queryBuilder.createBooleanQuery("name", searchText, BooleanClause.Occur.MUST), 2f);
+        addShould(textQuery, queryBuilder.createBooleanQuery("introduction", searchText, BooleanClause.Occur.MUST), 1f);
+        textQuery.setMinimumNumberShouldMatch(1);
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        query.add(textQuery.build(), BooleanClause.Occur.MUST);
+
+        // 2.过滤条件（不参与打分）
+        Long spaceId = pictureQueryRequest.getSpaceId();
+        if (spaceId != null) {
+            addFilter(query, "spaceId", String.valueOf(spaceId));
+        } else if (pictureQueryRequest.isNullSpaceId()) {
+            addFilter(query, "spaceId", PUBLIC_SPACE);
+        }
+        if (pictureQueryRequest.getReviewStatus() != null) {
+            addFilter(query, "reviewStatus", String.valueOf(pictureQueryRequest.getReviewStatus()));
+        }
+        if (StrUtil.isNotBlank(pictureQueryRequest.getCategory())) {
+            addFilter(query, "category", pictureQueryRequest.getCategory());
+        }
+        if (pictureQueryRequest.getUserId() != null) {
+            addFilter(query, "userId", String.valueOf(pictureQueryRequest.getUserId()));
+        }
+        if (CollUtil.isNotEmpty(pictureQueryRequest.getTags())) {
+            for (String tag : pictureQueryRequest.getTags()) {
+                if (StrUtil.isNotBlank(tag)) {
+                    addFilter(query, "tag", tag.trim());
+                }
+            }
+        }
+
+        // 3.查询
+        IndexSearcher indexSearcher = null;
+        try {
+            indexSearcher = searcherManager.acquire();
+            TopDocs topDocs = indexSearcher.search(query.build(), pictureSearchConfig.getMaxHits());
+            List<Long> pictureIdList = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                pictureIdList.add(Long.valueOf(indexSearcher.doc(scoreDoc.doc).get("id")));
+            }
+            return pictureIdList;
+        } catch (IOException e) {
+            log.error("图片全文检索失败，回退为数据库查询, searchText = {}", searchText, e);
+            return null;
+        } finally {
+            releaseSearcher(indexSearcher);
+        }
+    }
+
+    /**
+     * 从数据库读取最新数据并更新索引（图片已删除则从索引中移除）
+     *
+     * @param pictureIds 图片id集合
+     */
+    public void refreshPictures(Collection<Long> pictureIds) {
+        if (indexWriter == null || CollUtil.isEmpty(pictureIds)) {
+            return;
+        }
+        try {
+            Map<Long, Picture> pictureMap = new HashMap<>();
+            for (List<Long> batch : CollUtil.split(new ArrayList<>(pictureIds), BATCH_SIZE)) {
+                pictureMapper.selectList(new QueryWrapper<Picture>().select(INDEX_COLUMNS).in("id", batch))
+                        .forEach(picture -> pictureMap.put(picture.getId(), picture));
+            }
+            for (Long pictureId : pictureIds) {
+                Picture picture = pictureMap.get(pictureId);
+                if (picture == null) {
+                    indexWriter.deleteDocuments(new Term("id", String.valueOf(pictureId)));
+                } else {
+                    indexWriter.updateDocument(new Term("id", String.valueOf(pictureId)), toDocument(picture));
+                }
+            }
+            refreshSearcher();
+        } catch (Exception e) {
+            // 索引失败不影响业务，等待定时增量同步补齐
+            log.error("更新图片全文索引失败, pictureIds = {}", pictureIds, e);
+        }
+    }
+
+    /**
+     * 更新单张图片的索引
+     *
+     * @param pictureId 图片id
+     */
+    public void refreshPicture(Long pictureId) {
+        if (pictureId == null) {
+            return;
+        }
+        refreshPictures(Collections.singletonList(pictureId));
+    }
+
+    /**
+     * 从索引中删除图片
+     *
+     * @param pictureIds 图片id集合
+     */
+    public void deletePictures(Collection<Long> pictureIds) {
+        if (indexWriter == null || CollUtil.isEmpty(pictureIds)) {
+            return;
+        }
+        try {
+            Term[] terms = pictureIds.stream()
+                    .map(pictureId -> new Term("id", String.valueOf(pictureId)))
+                    .toArray(Term[]::new);
+            indexWriter.deleteDocuments(terms);
+            refreshSearcher();
+        } catch (Exception e) {
+            log.error("删除图片全文索引失败, pictureIds = {}", pictureIds, e);
+        }
+    }
+
+    /**
+     * 异步从数据库全量重建索引
+     */
+    public void rebuildIndexAsync() {
+        if (indexWriter == null) {
+            return;
+        }
+        customExecutor.execute(this::rebuildIndex);
+    }
+
+    /**
+     * 从数据库全量重建索引（按 id 游标分批读取）
+     * 1.不清空索引，按 id 覆盖写入（与并发的增量更新一样幂等），重建期间的搜索不受影响
+     * 2.完成后删除不属于本次重建批次的文档（已删除的图片）
+     * 3.同步游标取重建开始时间，读取之后又发生的变更由增量同步补齐
+     */
+    public void rebuildIndex() {
+        if (indexWriter == null || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        String rebuildGeneration = String.valueOf(start);
+        // 此后所有写入（包括并发的增量更新）都属于本次重建批次
+        generation = rebuildGeneration;
+        try {
+            long lastId = 0;
+            int total = 0;
+            while (true) {
+                List<Picture> pictureList = pictureMapper.selectList(new QueryWrapper<Picture>()
+                        .select(INDEX_COLUMNS)
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + BATCH_SIZE));
+                if (pictureList.isEmpty()) {
+                    break;
+                }
+                for (Picture picture : pictureList) {
+                    indexWriter.updateDocument(new Term("id", String.valueOf(picture.getId())), toDocument(picture));
+                }
+                total += pictureList.size();
+                lastId = pictureList.get(pictureList.size() - 1).getId();
+            }
+            // 删除本次重建没有覆盖到的文档
+            indexWriter.deleteDocuments(new BooleanQuery.Builder()
+                    .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+                    .add(new TermQuery(new Term(GENERATION_FIELD, rebuildGeneration)), BooleanClause.Occur.MUST_NOT)
+                    .build());
+            watermark = new Date(start);
+            indexAnalyzerVersion = ANALYZER_VERSION;
+            commit();
+            log.info("图片全文索引重建完成, 共 {} 条, 耗时 {} ms", total, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("图片全文索引重建失败", e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 定时增量同步：按 updateTime 游标读取变更（含逻辑删除），补齐其他节点上发生的写操作
+     */
+    @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+    public void syncChanges() {
+        if (!isAvailable() || rebuilding.get()) {
+            return;
+        }
+        try {
+            Date cursorTime = new Date(watermark.getTime() - WATERMARK_OVERLAP_MILLIS);
+            long cursorId = 0;
+            Date maxUpdateTime = watermark;
+            int total = 0;
+            while (true) {
+                List<Picture> pictureList = pictureMapper.listChangedSince(SYNC_COLUMNS, cursorTime, cursorId, BATCH_SIZE);
+                if (pictureList.isEmpty()) {
+                    break;
+                }
+                for (Picture picture : pictureList) {
+                    Term idTerm = new Term("id", String.valueOf(picture.getId()));
+                    if (Integer.valueOf(1).equals(picture.getIsDelete())) {
+                        indexWriter.deleteDocuments(idTerm);
+                    } else {
+                        indexWriter.updateDocument(idTerm, toDocument(picture));
+                    }
+                    if (picture.getUpdateTime().after(maxUpdateTime)) {
+                        maxUpdateTime = picture.getUpdateTime();
+                    }
+                }
+                total += pictureList.size();
+                Picture last = pictureList.get(pictureList.size() - 1);
+                cursorTime = last.getUpdateTime();
+                cursorId = last.getId();
+            }
+            if (total > 0) {
+                watermark = maxUpdateTime;
+                refreshSearcher();
+                log.debug("图片全文索引增量同步 {} 条", total);
+            }
+        } catch (Exception e) {
+            log.error("图片全文索引增量同步失败", e);
+        }
+    }
+
+    /**
+     * 图片转索引文档
+     *
+     * @param picture 图片
+     * @return 索引文档
+     */
+    private Document toDocument(Picture picture) {
+        Document document = new Document();
+        document.add(new StringField("id", String.valueOf(picture.getId()), Field.Store.YES));
+        document.add(new StringField(GENERATION_FIELD, generation, Field.Store.NO));
+        if (StrUtil.isNotBlank(picture.getName())) {
+            document.add(new TextField("name", picture.getName(), Field.Store.NO));
+        }
+        if (StrUtil.isNotBlank(picture.getIntroduction())) {
+            document.add(new TextField("introduction", picture.getIntroduction(), Field.Store.NO));
+        }
+        String spaceId = picture.getSpaceId() == null ? PUBLIC_SPACE : String.valueOf(picture.getSpaceId());
+        document.add(new StringField("spaceId", spaceId, Field.Store.NO));
+        if (picture.getReviewStatus() != null) {
+            document.add(new StringField("reviewStatus", String.valueOf(picture.getReviewStatus()), Field.Store.NO));
+        }
+        if (StrUtil.isNotBlank(picture.getCategory())) {
+            document.add(new StringField("category", picture.getCategory(), Field.Store.NO));
+        }
+        if (picture.getUserId() != null) {
+            document.add(new StringField("userId", String.valueOf(picture.getUserId()), Field.Store.NO));
+        }
+        if (StrUtil.isNotBlank(picture.getTags()) && JSONUtil.isTypeJSONArray(picture.getTags())) {
+            for (String tag : JSONUtil.toList(picture.getTags(), String.class)) {
+                if (StrUtil.isNotBlank(tag)) {
+                    document.add(new StringField("tag", tag.trim(), Field.Store.NO));
+                }
+            }
+        }
+        return document;
+    }
+
+    /**
+     * 定时提交索引（fsync 较慢，不在每次写入时执行；未提交的变更进程退出后由增量同步补齐）
+     */
+    @Scheduled(fixedDelay = 30_000L, initialDelay = 30_000L)
+    public void commitChanges() {
+        if (indexWriter == null || !indexWriter.hasUncommittedChanges()) {
+            return;
+        }
+        try {
+            commit();
+        } catch (Exception e) {
+            log.error("提交图片全文索引失败", e);
+        }
+    }
+
+    /**
+     * 近实时刷新搜索器，写入后无需提交即可被搜索到
+     */
+    private void refreshSearcher() throws IOException {
+        searcherManager.maybeRefresh();
+    }
+
+    /**
+     * 提交索引（同时记录同步游标），并刷新搜索器
+     */
+    private synchronized void commit() throws IOException {
+        if (watermark != null) {
+            Map<String, String> commitData = new HashMap<>();
+            commitData.put(WATERMARK_KEY, String.valueOf(watermark.getTime()));
+            if (indexAnalyzerVersion != null) {
+                commitData.put(ANALYZER_VERSION_KEY, indexAnalyzerVersion);
+            }
+            indexWriter.setLiveCommitData(commitData.entrySet());
+        }
+        indexWriter.commit();
+        if (searcherManager != null) {
+            searcherManager.maybeRefresh();
+        }
+    }
+
+    private void addShould(BooleanQuery.Builder builder, Query query, float boost) {
+        // 分词结果为空（如只包含停用词）时 QueryBuilder 返回 null
+        if (query != null) {
+            builder.add(new BoostQuery(query, boost), BooleanClause.Occur.SHOULD);
+        }
+    }
+
+    private void addFilter(BooleanQuery.Builder builder, String field, String value) {
+        builder.add(new TermQuery(new Term(field, value)), BooleanClause.Occur.FILTER);
+    }
+
+    private void releaseSearcher(IndexSearcher indexSearcher) {
+        if (indexSearcher == null) {
+            return;
+        }
+        try {
+            searcherManager.release(indexSearcher);
+        } catch (IOException e) {
+            log.error("释放图片索引搜索器失败", e);
+        }
+    }
+
+    /**
+     * CJK 分词：在 CJKAnalyzer 的基础上同时输出单字，单字搜索词也能命中
+     */
+    private static class CjkUnigramBigramAnalyzer extends Analyzer {
+
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer source = new StandardTokenizer();
+            TokenStream result = new CJKWidthFilter(source);
+            result = new LowerCaseFilter(result);
+            result = new CJKBigramFilter(result, CJKBigramFilter.HAN | CJKBigramFilter.HIRAGANA
+                    | CJKBigramFilter.KATAKANA | CJKBigramFilter.HANGUL, true);
+            return new TokenStreamComponents(source, new StopFilter(result, CJKAnalyzer.getDefaultStopSet()));
+        }
+
+        @Override
+        protected TokenStream normalize(String fieldName, TokenStream in) {
+            return new LowerCaseFilter(new CJKWidthFilter(in));
+        }
+    }
+}
@@ -0,0 +1,583 @@
+package com.xzc.buyipicturebackend.manager.search;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.xzc.buyipicturebackend.config.PictureSearchConfig;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.dto.picture.PictureQueryRequest;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.enums.PictureReviewStatusEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 公共图库内存筛选索引
+ * 1.只收录公共图库中已过审的图片，实体常驻内存
+ * 2.按分类、标签、格式、宽度、高度各维护一组压缩位图，筛选条件通过位图求交得到结果集
+ * 3.按排序字段预先计算有序数组，分页时按序遍历结果集，不再查询数据库
+ * 4.上传、编辑、审核、删除时增量更新；定时按 updateTime 游标补齐其他节点的变更
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PublicGalleryIndexManager {
+
+    /**
+     * 支持的排序字段
+     */
+    private static final Set<String> SORT_FIELDS = new HashSet<>(Arrays.asList("id", "createTime", "editTime"));
+
+    /**
+     * 结果集不超过该值时直接排序，否则按预先计算的有序数组遍历
+     */
+    private static final int SMALL_RESULT_SIZE = 4096;
+
+    /**
+     * 增量同步时向前回溯的毫秒数（重复更新是幂等的）
+     */
+    private static final long WATERMARK_OVERLAP_MILLIS = 10_000L;
+
+    /**
+     * 索引保存的列：过滤、排序需要的列和分页返回的图片详情列（不含特征向量等大字段）
+     */
+    private static final String[] INDEX_COLUMNS = {"id", "url", "webpUrl", "thumbnailUrl", "name", "introduction",
+            "category", "tags", "picSize", "picWidth", "picHeight", "picScale", "picFormat", "userId", "spaceId",
+            "picColor", "picPalette", "reviewStatus", "createTime", "editTime", "updateTime", "isDelete"};
+
+    private static final String SYNC_COLUMNS = String.join(", ", INDEX_COLUMNS);
+
+    /**
+     * 全量构建、增量同步每批读取的条数
+     */
+    private static final int BATCH_SIZE = 500;
+
+    @Resource
+    private PictureSearchConfig pictureSearchConfig;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @Resource
+    private ThreadPoolExecutor customExecutor;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 当前索引，全量构建完成后整体替换
+     */
+    private IndexState state = new IndexState();
+
+    /**
+     * 已同步到的最大 updateTime，为空表示索引尚未构建完成
+     */
+    private volatile Date watermark;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    /**
+     * 启动后异步全量构建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (pictureSearchConfig.isGalleryIndexEnabled()) {
+            customExecutor.execute(this::rebuildIndex);
+        }
+    }
+
+    /**
+     * 查询条件是否可以由索引回答
+     * 仅限公共图库已过审图片，且只包含分类、标签、格式、宽高等值过滤条件
+     *
+     * @param pictureQueryRequest 查询请求
+     * @return 是否可用索引查询
+     */
+    public boolean canServe(PictureQueryRequest pictureQueryRequest) {
+        if (watermark == null || !pictureSearchConfig.isGalleryIndexEnabled()) {
+            return false;
+        }
+        String sortField = pictureQueryRequest.getSortField();
+        return pictureQueryRequest.isNullSpaceId()
+                && pictureQueryRequest.getSpaceId() == null
+                && PictureReviewStatusEnum.PASS.getValue() == Optional.ofNullable(pictureQueryRequest.getReviewStatus()).orElse(-1)
+                && StrUtil.isAllBlank(pictureQueryRequest.getSearchText(),
+                pictureQueryRequest.getName(),
+                pictureQueryRequest.getIntroduction(),
+                pictureQueryRequest.getReviewMessage())
+                && pictureQueryRequest.getId() == null
+                && pictureQueryRequest.getUserId() == null
+                && pictureQueryRequest.getPicSize() == null
+                && pictureQueryRequest.getPicScale() == null
+                && pictureQueryRequest.getReviewerId() == null
+                && pictureQueryRequest.getStartEditTime() == null
+                && pictureQueryRequest.getEndEditTime() == null
+                && (StrUtil.isBlank(sortField) || SORT_FIELDS.contains(sortField));
+    }
+
+    /**
+     * 分页查询（调用前需通过 canServe 判断）
+     *
+     * @param pictureQueryRequest 查询请求
+     * @return 分页结果，记录为缓存实体的副本
+     */
+    public Page<Picture> query(PictureQueryRequest pictureQueryRequest) {
+        long current = pictureQueryRequest.getCurrent();
+        long size = pictureQueryRequest.getPageSize();
+        lock.readLock().lock();
+        try {
+            IndexState indexState = state;
+            RoaringBitmap result = indexState.filter(pictureQueryRequest);
+            int total = result.getCardinality();
+            Page<Picture> picturePage = new Page<>(current, size, total, false);
+            long offset = (current - 1) * size;
+            if (total == 0 || offset >= total) {
+                return picturePage;
+            }
+            String sortField = StrUtil.blankToDefault(pictureQueryRequest.getSortField(), "id");
+            boolean ascend = "ascend".equals(pictureQueryRequest.getSortOrder());
+            int[] pageOrdinals = indexState.page(result, sortField, ascend, (int) offset, (int) size);
+            List<Picture> pictureList = new ArrayList<>(pageOrdinals.length);
+            for (int ordinal : pageOrdinals) {
+                Picture picture = new Picture();
+                BeanUtils.copyProperties(indexState.pictures[ordinal], picture);
+                pictureList.add(picture);
+            }
+            picturePage.setRecords(pictureList);
+            return picturePage;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从数据库读取最新数据并更新索引（不再属于公共已过审图片的会被移除）
+     *
+     * @param pictureIds 图片id集合
+     */
+    public void refreshPictures(Collection<Long> pictureIds) {
+        if (watermark == null || CollUtil.isEmpty(pictureIds)) {
+            return;
+        }
+        try {
+            Map<Long, Picture> pictureMap = new HashMap<>();
+            for (List<Long> batch : CollUtil.split(new ArrayList<>(pictureIds), BATCH_SIZE)) {
+                pictureMapper.selectList(new QueryWrapper<Picture>().select(INDEX_COLUMNS).in("id", batch))
+                        .forEach(picture -> pictureMap.put(picture.getId(), picture));
+            }
+            lock.writeLock().lock();
+            try {
+                for (Long pictureId : pictureIds) {
+                    Picture picture = pictureMap.get(pictureId);
+                    if (picture == null) {
+                        state.remove(pictureId);
+                    } else {
+                        state.upsert(picture);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            // 更新失败不影响业务，等待定时增量同步补齐
+            log.error("更新公共图库索引失败, pictureIds = {}", pictureIds, e);
+        }
+    }
+
+    /**
+     * 更新单张图片
+     *
+     * @param pictureId 图片id
+     */
+    public void refreshPicture(Long pictureId) {
+        if (pictureId == null) {
+            return;
+        }
+        refreshPictures(Collections.singletonList(pictureId));
+    }
+
+    /**
+     * 从数据库全量构建索引，构建完成后整体替换
+     */
+    public void rebuildIndex() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            IndexState newState = new IndexState();
+            long lastId = 0;
+            while (true) {
+                List<Picture> pictureList = pictureMapper.selectList(new QueryWrapper<Picture>()
+                        .select(INDEX_COLUMNS)
+                        .isNull("spaceId")
+                        .eq("reviewStatus", PictureReviewStatusEnum.PASS.getValue())
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + BATCH_SIZE));
+                if (pictureList.isEmpty()) {
+                    break;
+                }
+                pictureList.forEach(newState::upsert);
+                lastId = pictureList.get(pictureList.size() - 1).getId();
+            }
+            lock.writeLock().lock();
+            try {
+                state = newState;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            // 构建期间发生的变更由增量同步补齐
+            watermark = new Date(start);
+            syncChanges();
+            log.info("公共图库索引构建完成, 共 {} 条, 耗时 {} ms", newState.all.getCardinality(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("公共图库索引构建失败", e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 定时增量同步：按 updateTime 游标读取变更（含逻辑删除），补齐其他节点上发生的写操作
+     */
+    @Scheduled(fixedDelay = 30_000L, initialDelay = 30_000L)
+    public void syncChanges() {
+        Date currentWatermark = watermark;
+        if (currentWatermark == null) {
+            return;
+        }
+        try {
+            Date cursorTime = new Date(currentWatermark.getTime() - WATERMARK_OVERLAP_MILLIS);
+            long cursorId = 0;
+            Date maxUpdateTime = currentWatermark;
+            while (true) {
+                List<Picture> pictureList = pictureMapper.listChangedSince(SYNC_COLUMNS, cursorTime, cursorId, BATCH_SIZE);
+                if (pictureList.isEmpty()) {
+                    break;
+                }
+                lock.writeLock().lock();
+                try {
+                    for (Picture picture : pictureList) {
+                        if (Integer.valueOf(1).equals(picture.getIsDelete())) {
+                            state.remove(picture.getId());
+                        } else {
+                            state.upsert(picture);
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                Picture last = pictureList.get(pictureList.size() - 1);
+                cursorTime = last.getUpdateTime();
+                cursorId = last.getId();
+                if (cursorTime.after(maxUpdateTime)) {
+                    maxUpdateTime = cursorTime;
+                }
+            }
+            watermark = maxUpdateTime;
+        } catch (Exception e) {
+            log.error("公共图库索引增量同步失败", e);
+        }
+    }
+
+    /**
+     * 索引数据：图片按内部序号（连续 int）存放，位图记录序号
+     */
+    private static class IndexState {
+
+        private final Map<Long, Integer> idToOrdinal = new HashMap<>();
+
+        private Picture[] pictures = new Picture[1024];
+
+        private int nextOrdinal = 0;
+
+        /**
+         * 删除后空出的序号，新图片优先复用，数组和位图不会随删除次数增长
+         */
+        private final RoaringBitmap freeOrdinals = new RoaringBitmap();
+
+        private final RoaringBitmap all = new RoaringBitmap();
+
+        private final Map<String, RoaringBitmap> categoryBitmaps = new HashMap<>();
+
+        private final Map<String, RoaringBitmap> tagBitmaps = new HashMap<>();
+
+        private final Map<String, RoaringBitmap> formatBitmaps = new HashMap<>();
+
+        private final Map<Integer, RoaringBitmap> widthBitmaps = new HashMap<>();
+
+        private final Map<Integer, RoaringBitmap> heightBitmaps = new HashMap<>();
+
+        /**
+         * 排序字段 -> 按该字段升序（相同时按 id 升序）排列的序号，成员或排序字段变化后失效，查询时按需重建（读锁下并发重建）
+         */
+        private final Map<String, int[]> sortArrays = new ConcurrentHashMap<>();
+
+        /**
+         * 按查询条件求交得到结果集
+         */
+        private RoaringBitmap filter(PictureQueryRequest pictureQueryRequest) {
+            RoaringBitmap result = all.clone();
+            String category = pictureQueryRequest.getCategory();
+            if (StrUtil.isNotBlank(category)) {
+                result.and(bitmapOf(categoryBitmaps, category));
+            }
+            List<String> tags = pictureQueryRequest.getTags();
+            if (CollUtil.isNotEmpty(tags)) {
+                for (String tag : tags) {
+                    if (StrUtil.isNotBlank(tag)) {
+                        result.and(bitmapOf(tagBitmaps, tag.trim()));
+                    }
+                }
+            }
+            // 格式与数据库查询一致，为不区分大小写的包含匹配
+            String picFormat = pictureQueryRequest.getPicFormat();
+            if (StrUtil.isNotBlank(picFormat)) {
+                RoaringBitmap formatResult = new RoaringBitmap();
+                formatBitmaps.forEach((format, bitmap) -> {
+                    if (StrUtil.containsIgnoreCase(format, picFormat)) {
+                        formatResult.or(bitmap);
+                    }
+                });
+                result.and(formatResult);
+            }
+            if (pictureQueryRequest.getPicWidth() != null) {
+                result.and(bitmapOf(widthBitmaps, pictureQueryRequest.getPicWidth()));
+            }
+            if (pictureQueryRequest.getPicHeight() != null) {
+                result.and(bitmapOf(heightBitmaps, pictureQueryRequest.getPicHeight()));
+            }
+            return result;
+        }
+
+        /**
+         * 取结果集中按排序字段排列后的一页
+         */
+        private int[] page(RoaringBitmap result, String sortField, boolean ascend, int offset, int size) {
+            int total = result.getCardinality();
+            int length = Math.min(size, total - offset);
+            if (total <= SMALL_RESULT_SIZE) {
+                // 结果集较小，直接排序
+                Integer[] ordinals = new Integer[total];
+                int i = 0;
+                IntIterator iterator = result.getIntIterator();
+                while (iterator.hasNext()) {
+                    ordinals[i++] = iterator.next();
+                }
+                Comparator<Integer> comparator = comparator(sortField);
+                Arrays.sort(ordinals, ascend ? comparator : comparator.reversed());
+                int[] pageOrdinals = new int[length];
+                for (int j = 0; j < length; j++) {
+                    pageOrdinals[j] = ordinals[offset + j];
+                }
+                return pageOrdinals;
+            }
+            // 结果集较大，按有序数组遍历
+            int[] sorted = sortArrays.computeIfAbsent(sortField, this::buildSortArray);
+            int[] pageOrdinals = new int[length];
+            int skipped = 0;
+            int collected = 0;
+            for (int i = 0; i < sorted.length && collected < length; i++) {
+                int ordinal = sorted[ascend ? i : sorted.length - 1 - i];
+                if (!result.contains(ordinal)) {
+                    continue;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    pageOrdinals[collected++] = ordinal;
+                }
+            }
+            return pageOrdinals;
+        }
+
+        private int[] buildSortArray(String sortField) {
+            Integer[] ordinals = new Integer[all.getCardinality()];
+            int i = 0;
+            IntIterator iterator = all.getIntIterator();
+            while (iterator.hasNext()) {
+                ordinals[i++] = iterator.next();
+            }
+            Arrays.sort(ordinals, comparator(sortField));
+            return Arrays.stream(ordinals).mapToInt(Integer::intValue).toArray();
+        }
+
+        private Comparator<Integer> comparator(String sortField) {
+            Comparator<Integer> byId = Comparator.comparingLong(ordinal -> pictures[ordinal].getId());
+            switch (sortField) {
+                case "createTime":
+                    return Comparator.<Integer>comparingLong(ordinal -> timeOf(pictures[ordinal].getCreateTime()))
+                            .thenComparing(byId);
+                case "editTime":
+                    return Comparator.<Integer>comparingLong(ordinal -> timeOf(pictures[ordinal].getEditTime()))
+                            .thenComparing(byId);
+                default:
+                    return byId;
+            }
+        }
+
+        private void upsert(Picture picture) {
+            boolean publicPassed = picture.getSpaceId() == null
+                    && Integer.valueOf(PictureReviewStatusEnum.PASS.getValue()).equals(picture.getReviewStatus());
+            if (!publicPassed) {
+                remove(picture.getId());
+                return;
+            }
+            Integer ordinal = idToOrdinal.get(picture.getId());
+            if (ordinal != null) {
+                Picture old = pictures[ordinal];
+                if (sameFilterKeys(old, picture)) {
+                    // 过滤字段未变（如增量同步回溯重复读到的行、只改了名称简介），只替换实体，位图不动
+                    pictures[ordinal] = picture;
+                    if (!sameSortKeys(old, picture)) {
+                        sortArrays.clear();
+                    }
+                    return;
+                }
+                unindex(ordinal);
+                if (sameSortKeys(old, picture)) {
+                    // 序号集合和排序字段都未变，有序数组仍然有效
+                    reindex(ordinal, picture);
+                    return;
+                }
+            } else if (!freeOrdinals.isEmpty()) {
+                ordinal = freeOrdinals.first();
+                freeOrdinals.remove(ordinal);
+                idToOrdinal.put(picture.getId(), ordinal);
+            } else {
+                ordinal = nextOrdinal++;
+                if (ordinal >= pictures.length) {
+                    pictures = Arrays.copyOf(pictures, pictures.length * 2);
+                }
+                idToOrdinal.put(picture.getId(), ordinal);
+            }
+            reindex(ordinal, picture);
+            sortArrays.clear();
+        }
+
+        /**
+         * 保存实体并把序号加入对应位图
+         */
+        private void reindex(int ordinal, Picture picture) {
+            pictures[ordinal] = picture;
+            all.add(ordinal);
+            if (StrUtil.isNotBlank(picture.getCategory())) {
+                addTo(categoryBitmaps, picture.getCategory(), ordinal);
+            }
+            if (StrUtil.isNotBlank(picture.getTags()) && JSONUtil.isTypeJSONArray(picture.getTags())) {
+                for (String tag : JSONUtil.toList(picture.getTags(), String.class)) {
+                    if (StrUtil.isNotBlank(tag)) {
+                        addTo(tagBitmaps, tag.trim(), ordinal);
+                    }
+                }
+            }
+            if (StrUtil.isNotBlank(picture.getPicFormat())) {
+                addTo(formatBitmaps, picture.getPicFormat(), ordinal);
+            }
+            if (picture.getPicWidth() != null) {
+                addTo(widthBitmaps, picture.getPicWidth(), ordinal);
+            }
+            if (picture.getPicHeight() != null) {
+                addTo(heightBitmaps, picture.getPicHeight(), ordinal);
+            }
+        }
+
+        /**
+         * 过滤用到的字段是否相同
+         */
+        private static boolean sameFilterKeys(Picture old, Picture picture) {
+            return old != null
+                    && Objects.equals(old.getCategory(), picture.getCategory())
+                    && Objects.equals(old.getTags(), picture.getTags())
+                    && Objects.equals(old.getPicFormat(), picture.getPicFormat())
+                    && Objects.equals(old.getPicWidth(), picture.getPicWidth())
+                    && Objects.equals(old.getPicHeight(), picture.getPicHeight());
+        }
+
+        /**
+         * 排序用到的字段是否相同（id 不会变化）
+         */
+        private static boolean sameSortKeys(Picture old, Picture picture) {
+            return old != null
+                    && timeOf(old.getCreateTime()) == timeOf(picture.getCreateTime())
+                    && timeOf(old.getEditTime()) == timeOf(picture.getEditTime());
+        }
+
+        private void remove(Long pictureId) {
+            Integer ordinal = idToOrdinal.remove(pictureId);
+            if (ordinal == null) {
+                return;
+            }
+            unindex(ordinal);
+            pictures[ordinal] = null;
+            freeOrdinals.add(ordinal);
+            sortArrays.clear();
+        }
+
+        /**
+         * 把序号从所有位图中移除（按旧实体的取值定位位图）
+         */
+        private void unindex(int ordinal) {
+            all.remove(ordinal);
+            Picture old = pictures[ordinal];
+            if (old == null) {
+                return;
+            }
+            removeFrom(categoryBitmaps, old.getCategory(), ordinal);
+            if (StrUtil.isNotBlank(old.getTags()) && JSONUtil.isTypeJSONArray(old.getTags())) {
+                for (String tag : JSONUtil.toList(old.getTags(), String.class)) {
+                    if (StrUtil.isNotBlank(tag)) {
+                        removeFrom(tagBitmaps, tag.trim(), ordinal);
+                    }
+                }
+            }
+            removeFrom(formatBitmaps, old.getPicFormat(), ordinal);
+            removeFrom(widthBitmaps, old.getPicWidth(), ordinal);
+            removeFrom(heightBitmaps, old.getPicHeight(), ordinal);
+        }
+
+        private static <K> RoaringBitmap bitmapOf(Map<K, RoaringBitmap> bitmaps, K key) {
+            RoaringBitmap bitmap = bitmaps.get(key);
+            return bitmap == null ? new RoaringBitmap() : bitmap;
+        }
+
+        private static <K> void addTo(Map<K, RoaringBitmap> bitmaps, K key, int ordinal) {
+            bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(ordinal);
+        }
+
+        private static <K> void removeFrom(Map<K, RoaringBitmap> bitmaps, K key, int ordinal) {
+            if (key == null) {
+                return;
+            }
+            RoaringBitmap bitmap = bitmaps.get(key);
+            if (bitmap == null) {
+                return;
+            }
+            bitmap.remove(ordinal);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+
+        private static long timeOf(Date date) {
+            return date == null ? 0L : date.getTime();
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.xzc.buyipicturebackend.manager.similar;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.manager.scan.PictureScanManager;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.enums.DuplicateReportStatusEnum;
+import com.xzc.buyipicturebackend.model.vo.picture.DuplicateClusterVo;
+import com.xzc.buyipicturebackend.model.vo.picture.DuplicateReportVo;
+import com.xzc.buyipicturebackend.utils.PerceptualHashUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 空间近似重复图片分析
+ * 1.按感知哈希两两比较（pHash、dHash 汉明距离都在阈值内视为近似重复），大空间用 fork/join 并行
+ * 2.按保留顺序（分辨率最高的优先）取保留图片，只有与保留图片本身近似重复的图片才归入其组
+ * 3.分析在后台执行，报告存入 redis，同一空间同时只有一个分析任务；空间图片上传、编辑后报告失效
+ * 4.合并时在事务内重新读取感知哈希，只删除仍与保留图片近似重复的图片
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class DuplicatePictureManager {
+
+    private static final String REPORT_KEY = "buyipicture:duplicateReport:";
+
+    private static final String LOCK_KEY = "buyipicture:duplicateReport:lock:";
+
+    /**
+     * 空间图片最近一次变化（上传、编辑）的时间，晚于分析开始时间的分析结果作废
+     */
+    private static final String CHANGED_KEY = "buyipicture:duplicateReport:changed:";
+
+    /**
+     * 视为近似重复的最大 pHash 汉明距离（比相似搜索更严格）
+     */
+    private static final int MAX_PHASH_DISTANCE = 6;
+
+    /**
+     * 视为近似重复的最大 dHash 汉明距离
+     */
+    private static final int MAX_DHASH_DISTANCE = 12;
+
+    /**
+     * fork/join 叶子任务负责的行数（第 i 行与其后所有图片比较）
+     */
+    private static final int ROWS_PER_TASK = 256;
+
+    /**
+     * 组内保留顺序：分辨率高的、体积大的、先上传的（id 小）优先
+     */
+    public static final Comparator<Picture> KEEP_ORDER = Comparator
+            .comparingLong((Picture picture) -> picture.getPicWidth() == null || picture.getPicHeight() == null
+                    ? 0L : (long) picture.getPicWidth() * picture.getPicHeight()).reversed()
+            .thenComparing(Comparator.comparingLong((Picture picture) -> picture.getPicSize() == null ? 0L : picture.getPicSize()).reversed())
+            .thenComparingLong(Picture::getId);
+
+    @Resource
+    private PictureScanManager pictureScanManager;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ThreadPoolExecutor customExecutor;
+
+    /**
+     * 提交空间的分析任务
+     *
+     * @param spaceId 空间id
+     * @return 是否提交成功（已有分析任务进行中时返回 false）
+     */
+    public boolean startAnalysis(Long spaceId) {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY + spaceId, "1", 30, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return false;
+        }
+        DuplicateReportVo runningReport = new DuplicateReportVo();
+        runningReport.setSpaceId(spaceId);
+        runningReport.setStatus(DuplicateReportStatusEnum.RUNNING.getValue());
+        runningReport.setCreateTime(new Date());
+        saveReport(runningReport);
+        long startTime = System.currentTimeMillis();
+        customExecutor.execute(() -> {
+            try {
+                DuplicateReportVo report = analyze(spaceId);
+                if (changedSince(spaceId, startTime)) {
+                    // 分析期间空间图片有变化，结果可能已过时
+                    deleteReport(spaceId);
+                    return;
+                }
+                saveReport(report);
+            } catch (Exception e) {
+                log.error("空间重复图片分析失败, spaceId = {}", spaceId, e);
+                runningReport.setStatus(DuplicateReportStatusEnum.FAILED.getValue());
+                saveReport(runningReport);
+            } finally {
+                stringRedisTemplate.delete(LOCK_KEY + spaceId);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 获取空间最近一次的分析报告（不含图片详情）
+     *
+     * @param spaceId 空间id
+     * @return 报告，没有时返回 null
+     */
+    public DuplicateReportVo getReport(Long spaceId) {
+        String value = stringRedisTemplate.opsForValue().get(REPORT_KEY + spaceId);
+        return value == null ? null : JSONUtil.toBean(value, DuplicateReportVo.class);
+    }
+
+    /**
+     * 删除报告（合并后报告失效）
+     *
+     * @param spaceId 空间id
+     */
+    public void deleteReport(Long spaceId) {
+        stringRedisTemplate.delete(REPORT_KEY + spaceId);
+    }
+
+    /**
+     * 空间图片变化（上传、编辑）后报告失效，进行中的分析结果也不再保存
+     *
+     * @param spaceId 空间id，公共图库为 null 时忽略
+     */
+    public void invalidateReport(Long spaceId) {
+        if (spaceId == null) {
+            return;
+        }
+        stringRedisTemplate.opsForValue().set(CHANGED_KEY + spaceId, String.valueOf(System.currentTimeMillis()), 1, TimeUnit.DAYS);
+        deleteReport(spaceId);
+    }
+
+    /**
+     * 合并前按锁定的最新数据重新校验报告
+     * 每组以仍存在的图片中保留顺序排在首位的为保留图片，只删除感知哈希仍在阈值内的图片
+     *
+     * @param clusters    报告中的重复组
+     * @param pictureList 组内仍存在的图片（需包含 id、picSize、picWidth、picHeight、picPHash、picDHash）
+     * @return 需要删除的图片
+     */
+    public List<Picture> selectRemovable(List<DuplicateClusterVo> clusters, List<Picture> pictureList) {
+        Map<Long, Picture> pictureMap = new HashMap<>();
+        pictureList.forEach(picture -> pictureMap.put(picture.getId(), picture));
+        List<Picture> removeList = new ArrayList<>();
+        Set<Long> visited = new HashSet<>();
+        for (DuplicateClusterVo cluster : clusters) {
+            List<Picture> group = new ArrayList<>();
+            for (Long pictureId : cluster.getPictureIds()) {
+                Picture picture = pictureMap.get(pictureId);
+                if (picture != null && visited.add(pictureId)) {
+                    group.add(picture);
+                }
+            }
+            if (group.size() < 2) {
+                continue;
+            }
+            group.sort(KEEP_ORDER);
+            Picture keeper = group.get(0);
+            for (int i = 1; i < group.size(); i++) {
+                if (isDuplicate(keeper, group.get(i))) {
+                    removeList.add(group.get(i));
+                }
+            }
+        }
+        return removeList;
+    }
+
+    /**
+     * 两张图片的 pHash、dHash 汉明距离是否都在阈值内（缺少哈希的不算重复）
+     *
+     * @param a 图片
+     * @param b 图片
+     * @return 是否近似重复
+     */
+    public static boolean isDuplicate(Picture a, Picture b) {
+        if (a.getPicPHash() == null || b.getPicPHash() == null || a.getPicDHash() == null || b.getPicDHash() == null) {
+            return false;
+        }
+        return isDuplicate(a.getPicPHash(), a.getPicDHash(), b.getPicPHash(), b.getPicDHash());
+    }
+
+    private static boolean isDuplicate(long pHashA, long dHashA, long pHashB, long dHashB) {
+        return PerceptualHashUtils.hammingDistance(pHashA, pHashB) <= MAX_PHASH_DISTANCE
+                && PerceptualHashUtils.hammingDistance(dHashA, dHashB) <= MAX_DHASH_DISTANCE;
+    }
+
+    /**
+     * 分析空间内的近似重复图片
+     *
+     * @param spaceId 空间id
+     * @return 报告
+     */
+    public DuplicateReportVo analyze(Long spaceId) {
+        // 1.流式读取有感知哈希的图片，逐行折叠为基本类型数组（只取比较和排序需要的列，不保留实体）
+        HashRows rows = pictureScanManager.fold(new QueryWrapper<Picture>()
+                        .select("id", "picSize", "picWidth", "picHeight", "picPHash", "picDHash")
+                        .eq("spaceId", spaceId)
+                        .isNotNull("picPHash")
+                        .isNotNull("picDHash"),
+                new HashRows(), HashRows::add);
+
+        // 2.分组
+        List<DuplicateClusterVo> clusters = cluster(rows);
+        DuplicateReportVo report = new DuplicateReportVo();
+        report.setSpaceId(spaceId);
+        report.setStatus(DuplicateReportStatusEnum.DONE.getValue());
+        report.setPictureCount(rows.size());
+        report.setClusterCount(clusters.size());
+        report.setDuplicateCount(clusters.stream().mapToInt(cluster -> cluster.getPictureIds().size() - 1).sum());
+        report.setReclaimableSize(clusters.stream().mapToLong(DuplicateClusterVo::getReclaimableSize).sum());
+        report.setClusters(clusters);
+        report.setCreateTime(new Date());
+        log.info("空间重复图片分析完成, spaceId = {}, pictureCount = {}, clusterCount = {}",
+                spaceId, rows.size(), clusters.size());
+        return report;
+    }
+
+    /**
+     * 将图片分为近似重复组（只返回至少两张的组）
+     * 按保留顺序依次取未分组的图片作为保留图片，只吸收与保留图片本身近似重复的图片，
+     * 不会因 A~B、B~C 把与 A 相差较远的 C 并入 A 的组
+     *
+     * @param pictureList 图片（需包含 id、picSize、picWidth、picHeight、picPHash、picDHash）
+     * @return 重复组，按可释放大小降序
+     */
+    public List<DuplicateClusterVo> cluster(List<Picture> pictureList) {
+        HashRows rows = new HashRows();
+        pictureList.forEach(rows::add);
+        return cluster(rows);
+    }
+
+    /**
+     * 将图片分为近似重复组（只返回至少两张的组）
+     *
+     * @param rows 图片的 id、大小、分辨率、感知哈希
+     * @return 重复组，按可释放大小降序
+     */
+    public List<DuplicateClusterVo> cluster(HashRows rows) {
+        rows.sortByKeepOrder();
+        int n = rows.size();
+        long[] pHashes = rows.pHashes;
+        long[] dHashes = rows.dHashes;
+        // 并行找出每张图片之后（保留顺序靠后）与其近似重复的图片
+        int[][] laterDuplicates = new int[n][];
+        ForkJoinPool.commonPool().invoke(new CompareTask(pHashes, dHashes, n, laterDuplicates, 0, n));
+
+        // 按保留顺序分组：排在前面的未分组图片作为保留图片
+        boolean[] grouped = new boolean[n];
+        List<DuplicateClusterVo> clusters = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (grouped[i] || laterDuplicates[i].length == 0) {
+                continue;
+            }
+            List<Long> pictureIds = new ArrayList<>();
+            long reclaimableSize = 0;
+            for (int j : laterDuplicates[i]) {
+                if (grouped[j]) {
+                    continue;
+                }
+                grouped[j] = true;
+                pictureIds.add(rows.ids[j]);
+                reclaimableSize += rows.sizes[j];
+            }
+            if (pictureIds.isEmpty()) {
+                continue;
+            }
+            grouped[i] = true;
+            Long keepId = rows.ids[i];
+            pictureIds.add(0, keepId);
+            DuplicateClusterVo cluster = new DuplicateClusterVo();
+            cluster.setKeepId(keepId);
+            cluster.setPictureIds(pictureIds);
+            cluster.setReclaimableSize(reclaimableSize);
+            clusters.add(cluster);
+        }
+        clusters.sort(Comparator.comparingLong(DuplicateClusterVo::getReclaimableSize).reversed());
+        return clusters;
+    }
+
+    private boolean changedSince(Long spaceId, long time) {
+        String value = stringRedisTemplate.opsForValue().get(CHANGED_KEY + spaceId);
+        return value != null && Long.parseLong(value) >= time;
+    }
+
+    private void saveReport(DuplicateReportVo report) {
+        stringRedisTemplate.opsForValue().set(REPORT_KEY + report.getSpaceId(), JSONUtil.toJsonStr(report), 1, TimeUnit.DAYS);
+    }
+
+    /**
+     * 分析用的图片行（按列存为基本类型数组，每张图片约 40 字节）
+     */
+    public static class HashRows {
+
+        private long[] ids = new long[256];
+
+        private long[] pHashes = new long[256];
+
+        private long[] dHashes = new long[256];
+
+        private long[] sizes = new long[256];
+
+        private long[] areas = new long[256];
+
+        private int size;
+
+        /**
+         * 追加一张图片（需包含 id、picSize、picWidth、picHeight、picPHash、picDHash）
+         *
+         * @param picture 图片
+         */
+        public void add(Picture picture) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                pHashes = Arrays.copyOf(pHashes, capacity);
+                dHashes = Arrays.copyOf(dHashes, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                areas = Arrays.copyOf(areas, capacity);
+            }
+            ids[size] = picture.getId();
+            pHashes[size] = picture.getPicPHash();
+            dHashes[size] = picture.getPicDHash();
+            sizes[size] = picture.getPicSize() == null ? 0L : picture.getPicSize();
+            areas[size] = picture.getPicWidth() == null || picture.getPicHeight() == null
+                    ? 0L : (long) picture.getPicWidth() * picture.getPicHeight();
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 按保留顺序重排（与 {@link #KEEP_ORDER} 一致：分辨率、体积降序，id 升序）
+         */
+        private void sortByKeepOrder() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                int result = Long.compare(areas[b], areas[a]);
+                if (result == 0) {
+                    result = Long.compare(sizes[b], sizes[a]);
+                }
+                return result != 0 ? result : Long.compare(ids[a], ids[b]);
+            });
+            ids = permute(ids, order);
+            pHashes = permute(pHashes, order);
+            dHashes = permute(dHashes, order);
+            sizes = permute(sizes, order);
+            areas = permute(areas, order);
+        }
+
+        private long[] permute(long[] values, Integer[] order) {
+            long[] result = new long[values.length];
+            for (int i = 0; i < order.length; i++) {
+                result[i] = values[order[i]];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 两两比较任务：按行区间拆分，第 i 行与 i 之后的所有图片比较，结果写入各自的行，无需加锁
+     * 靠前的行比较次数多，按行数均分已足够均衡（fork/join 会窃取空闲任务）
+     */
+    private static class CompareTask extends RecursiveAction {
+
+        private final long[] pHashes;
+
+        private final long[] dHashes;
+
+        /**
+         * 有效行数（数组按容量分配，尾部为空行）
+         */
+        private final int n;
+
+        private final int[][] laterDuplicates;
+
+        private final int from;
+
+        private final int to;
+
+        private CompareTask(long[] pHashes, long[] dHashes, int n, int[][] laterDuplicates, int from, int to) {
+            this.pHashes = pHashes;
+            this.dHashes = dHashes;
+            this.n = n;
+            this.laterDuplicates = laterDuplicates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CompareTask(pHashes, dHashes, n, laterDuplicates, from, middle),
+                        new CompareTask(pHashes, dHashes, n, laterDuplicates, middle, to));
+                return;
+            }
+            int[] row = new int[16];
+            for (int i = from; i < to; i++) {
+                int count = 0;
+                for (int j = i + 1; j < n; j++) {
+                    if (isDuplicate(pHashes[i], dHashes[i], pHashes[j], dHashes[j])) {
+                        if (count == row.length) {
+                            row = Arrays.copyOf(row, row.length * 2);
+                        }
+                        row[count++] = j;
+                    }
+                }
+                laterDuplicates[i] = Arrays.copyOf(row, count);
+            }
+        }
+    }
+}
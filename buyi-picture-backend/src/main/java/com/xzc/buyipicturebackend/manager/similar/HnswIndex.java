@@ -0,0 +1,588 @@
+package com.xzc.buyipicturebackend.manager.similar;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * HNSW（分层可导航小世界图）近似最近邻索引，欧氏距离
+ * 1.每个节点随机分配层数，上层稀疏用于快速定位，第 0 层稠密用于精确搜索
+ * 2.删除只打墓碑标记，节点仍参与路由，搜索结果中过滤；墓碑过多时调用 compact 原地重建
+ * 3.可保存为文件，加载时通过内存映射顺序读取，无需从数据库重新建图
+ * 读写锁保护：搜索并发执行，插入、删除、重建互斥
+ *
+ * @author xuzhichao
+ */
+public class HnswIndex {
+
+    private static final int MAGIC = 0x484E5357;
+
+    private static final int VERSION = 1;
+
+    private static final int MAX_LEVEL = 16;
+
+    private final int dimension;
+
+    /**
+     * 第 0 层以上每个节点的最大连接数
+     */
+    private final int m;
+
+    /**
+     * 第 0 层每个节点的最大连接数
+     */
+    private final int maxM0;
+
+    private final int efConstruction;
+
+    private final double levelMultiplier;
+
+    private final Random random = new Random(42);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ThreadLocal<VisitedMarks> visitedMarks = ThreadLocal.withInitial(VisitedMarks::new);
+
+    /**
+     * 节点数（含墓碑）
+     */
+    private int size;
+
+    private int deletedCount;
+
+    private float[] vectors;
+
+    private long[] ids;
+
+    /**
+     * links[节点][层] = {连接数, 邻居1, 邻居2, ...}
+     */
+    private int[][][] links;
+
+    private BitSet deleted;
+
+    /**
+     * 图片id -> 节点（不含墓碑）
+     */
+    private Map<Long, Integer> nodeMap;
+
+    private int entryPoint;
+
+    private int maxLevel;
+
+    /**
+     * 同步游标（由调用方维护，随索引一起保存）
+     */
+    private volatile long watermark;
+
+    public HnswIndex(int dimension, int m, int efConstruction) {
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        clear(16);
+    }
+
+    /**
+     * 插入或更新向量（向量未变化时跳过）
+     *
+     * @param id     图片id
+     * @param vector 向量
+     */
+    public void add(long id, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = nodeMap.get(id);
+            if (existing != null) {
+                if (sameVector(existing, vector)) {
+                    return;
+                }
+                markDeleted(id, existing);
+            }
+            insert(id, vector);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除（打墓碑标记）
+     *
+     * @param id 图片id
+     */
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeMap.get(id);
+            if (node != null) {
+                markDeleted(id, node);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索最近的 k 个
+     *
+     * @param query     查询向量
+     * @param k         返回数量
+     * @param ef        搜索时候选集大小，越大越准确、越慢
+     * @param excludeId 排除的图片id（通常为查询图片本身）
+     * @return 图片id列表，按距离升序
+     */
+    public List<Long> search(float[] query, int k, int ef, long excludeId) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return Collections.emptyList();
+            }
+            int current = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                current = greedyClosest(query, current, level);
+            }
+            List<Long> result = new ArrayList<>(k);
+            for (Candidate candidate : searchLayer(query, current, Math.max(ef, k + 1), 0)) {
+                if (deleted.get(candidate.node) || ids[candidate.node] == excludeId) {
+                    continue;
+                }
+                result.add(ids[candidate.node]);
+                if (result.size() >= k) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 有效向量数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeMap.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 墓碑数
+     */
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * 去掉墓碑，原地重建图（期间阻塞搜索）
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (deletedCount == 0) {
+                return;
+            }
+            int oldSize = size;
+            long[] oldIds = ids;
+            float[] oldVectors = vectors;
+            BitSet oldDeleted = deleted;
+            clear(Math.max(16, oldSize - deletedCount));
+            for (int node = 0; node < oldSize; node++) {
+                if (!oldDeleted.get(node)) {
+                    insert(oldIds[node], Arrays.copyOfRange(oldVectors, node * dimension, (node + 1) * dimension));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 保存到文件：先写临时文件再替换，避免进程中断留下损坏的索引
+     *
+     * @param path 文件路径
+     */
+    public void save(Path path) throws IOException {
+        lock.readLock().lock();
+        try {
+            long total = 4L * 8 + 8;
+            for (int node = 0; node < size; node++) {
+                total += 8 + 1 + 4 + 4L * dimension;
+                for (int[] levelLinks : links[node]) {
+                    total += 4 + 4L * levelLinks[0];
+                }
+            }
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException("索引文件过大: " + total);
+            }
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, total);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(m).putInt(efConstruction)
+                        .putInt(size).putInt(entryPoint).putInt(maxLevel).putLong(watermark);
+                for (int node = 0; node < size; node++) {
+                    buffer.putLong(ids[node]);
+                    buffer.put((byte) (deleted.get(node) ? 1 : 0));
+                    buffer.putInt(links[node].length - 1);
+                    int offset = node * dimension;
+                    for (int i = 0; i < dimension; i++) {
+                        buffer.putFloat(vectors[offset + i]);
+                    }
+                    for (int[] levelLinks : links[node]) {
+                        buffer.putInt(levelLinks[0]);
+                        for (int i = 1; i <= levelLinks[0]; i++) {
+                            buffer.putInt(levelLinks[i]);
+                        }
+                    }
+                }
+                buffer.force();
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从文件加载
+     *
+     * @param path      文件路径
+     * @param dimension 期望的向量维度，不一致时视为文件无效
+     * @return 索引
+     */
+    public static HnswIndex load(Path path, int dimension) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("索引文件格式错误: " + path);
+            }
+            int fileDimension = buffer.getInt();
+            if (fileDimension != dimension) {
+                throw new IOException("索引文件维度不一致: " + fileDimension);
+            }
+            HnswIndex index = new HnswIndex(dimension, buffer.getInt(), buffer.getInt());
+            int size = buffer.getInt();
+            index.clear(Math.max(16, size));
+            index.size = size;
+            index.entryPoint = buffer.getInt();
+            index.maxLevel = buffer.getInt();
+            index.watermark = buffer.getLong();
+            for (int node = 0; node < size; node++) {
+                long id = buffer.getLong();
+                boolean isDeleted = buffer.get() == 1;
+                int level = buffer.getInt();
+                index.ids[node] = id;
+                int offset = node * dimension;
+                for (int i = 0; i < dimension; i++) {
+                    index.vectors[offset + i] = buffer.getFloat();
+                }
+                index.links[node] = new int[level + 1][];
+                for (int l = 0; l <= level; l++) {
+                    int count = buffer.getInt();
+                    int[] levelLinks = new int[(l == 0 ? index.maxM0 : index.m) + 1];
+                    levelLinks[0] = count;
+                    for (int i = 1; i <= count; i++) {
+                        levelLinks[i] = buffer.getInt();
+                    }
+                    index.links[node][l] = levelLinks;
+                }
+                if (isDeleted) {
+                    index.deleted.set(node);
+                    index.deletedCount++;
+                } else {
+                    index.nodeMap.put(id, node);
+                }
+            }
+            return index;
+        }
+    }
+
+    private void clear(int capacity) {
+        size = 0;
+        deletedCount = 0;
+        vectors = new float[capacity * dimension];
+        ids = new long[capacity];
+        links = new int[capacity][][];
+        deleted = new BitSet(capacity);
+        nodeMap = new HashMap<>(capacity * 2);
+        entryPoint = -1;
+        maxLevel = -1;
+    }
+
+    private void insert(long id, float[] vector) {
+        ensureCapacity(size + 1);
+        int node = size++;
+        System.arraycopy(vector, 0, vectors, node * dimension, dimension);
+        ids[node] = id;
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        nodeMap.put(id, node);
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        // 1.上层贪心下降到新节点所在的最高层
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        // 2.逐层搜索候选邻居并双向连接
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(vector, current, efConstruction, l);
+            List<Candidate> neighbors = selectNeighbors(candidates, m);
+            int[] nodeLinks = links[node][l];
+            nodeLinks[0] = neighbors.size();
+            for (int i = 0; i < neighbors.size(); i++) {
+                nodeLinks[i + 1] = neighbors.get(i).node;
+            }
+            int maxLinks = l == 0 ? maxM0 : m;
+            for (Candidate neighbor : neighbors) {
+                addLink(neighbor.node, node, l, maxLinks);
+            }
+            current = candidates.get(0).node;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    private void markDeleted(long id, int node) {
+        nodeMap.remove(id);
+        deleted.set(node);
+        deletedCount++;
+    }
+
+    private boolean sameVector(int node, float[] vector) {
+        int offset = node * dimension;
+        for (int i = 0; i < dimension; i++) {
+            if (vectors[offset + i] != vector[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 给已有节点增加连接，超出上限时按启发式重新挑选
+     */
+    private void addLink(int target, int newNode, int level, int maxLinks) {
+        int[] targetLinks = links[target][level];
+        if (targetLinks[0] < maxLinks) {
+            targetLinks[++targetLinks[0]] = newNode;
+            return;
+        }
+        List<Candidate> candidates = new ArrayList<>(maxLinks + 1);
+        for (int i = 1; i <= targetLinks[0]; i++) {
+            candidates.add(new Candidate(targetLinks[i], distanceBetween(target, targetLinks[i])));
+        }
+        candidates.add(new Candidate(newNode, distanceBetween(target, newNode)));
+        candidates.sort(Candidate.ASCENDING);
+        List<Candidate> selected = selectNeighbors(candidates, maxLinks);
+        targetLinks[0] = selected.size();
+        for (int i = 0; i < selected.size(); i++) {
+            targetLinks[i + 1] = selected.get(i).node;
+        }
+    }
+
+    /**
+     * 启发式挑选邻居：优先保留比已选邻居更靠近目标的候选，使连接分布在不同方向；不足时用剩余最近的补齐
+     *
+     * @param candidates 按距离升序的候选
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int maxCount) {
+        List<Candidate> selected = new ArrayList<>(maxCount);
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= maxCount) {
+                break;
+            }
+            boolean good = true;
+            for (Candidate chosen : selected) {
+                if (distanceBetween(candidate.node, chosen.node) < candidate.distance) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < maxCount; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] currentLinks = links[current][level];
+            for (int i = 1; i <= currentLinks[0]; i++) {
+                float d = distance(query, currentLinks[i]);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = currentLinks[i];
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 单层内的最佳优先搜索
+     *
+     * @return 最近的 ef 个节点，按距离升序
+     */
+    private List<Candidate> searchLayer(float[] query, int entry, int ef, int level) {
+        VisitedMarks visited = visitedMarks.get();
+        visited.reset(size);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.ASCENDING);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Candidate.ASCENDING.reversed());
+        Candidate first = new Candidate(entry, distance(query, entry));
+        visited.visit(entry);
+        candidates.add(first);
+        results.add(first);
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (results.size() >= ef && candidate.distance > results.peek().distance) {
+                break;
+            }
+            int[] candidateLinks = links[candidate.node][level];
+            for (int i = 1; i <= candidateLinks[0]; i++) {
+                int neighbor = candidateLinks[i];
+                if (!visited.visit(neighbor)) {
+                    continue;
+                }
+                float d = distance(query, neighbor);
+                if (results.size() < ef || d < results.peek().distance) {
+                    Candidate next = new Candidate(neighbor, d);
+                    candidates.add(next);
+                    results.add(next);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> result = new ArrayList<>(results);
+        result.sort(Candidate.ASCENDING);
+        return result;
+    }
+
+    private float distance(float[] query, int node) {
+        int offset = node * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            float diff = query[i] - vectors[offset + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private float distanceBetween(int node1, int node2) {
+        int offset1 = node1 * dimension;
+        int offset2 = node2 * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            float diff = vectors[offset1 + i] - vectors[offset2 + i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        links = Arrays.copyOf(links, newCapacity);
+    }
+
+    private static class Candidate {
+
+        private static final Comparator<Candidate> ASCENDING = (c1, c2) -> Float.compare(c1.distance, c2.distance);
+
+        private final int node;
+
+        private final float distance;
+
+        private Candidate(int node, float distance) {
+            this.node = node;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * 访问标记：按轮次标记，每次搜索不必清空数组
+     */
+    private static class VisitedMarks {
+
+        private int[] marks = new int[0];
+
+        private int round;
+
+        private void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                round = 0;
+            }
+            if (++round == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                round = 1;
+            }
+        }
+
+        /**
+         * @return 之前未访问过返回 true
+         */
+        private boolean visit(int node) {
+            if (marks[node] == round) {
+                return false;
+            }
+            marks[node] = round;
+            return true;
+        }
+    }
+}
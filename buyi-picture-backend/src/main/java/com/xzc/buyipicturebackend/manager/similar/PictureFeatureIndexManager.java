@@ -0,0 +1,495 @@
+package com.xzc.buyipicturebackend.manager.similar;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.config.PictureSimilarConfig;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.enums.PictureReviewStatusEnum;
+import com.xzc.buyipicturebackend.utils.PictureFeatureUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 相似图片推荐索引（“更多相似”）
+ * 1.每个空间一份 HNSW 索引（公共图库单独一份，只含已过审图片），向量为上传时提取的视觉特征
+ * 2.首次访问时在后台优先从本地索引文件加载并补齐文件保存后的变更，没有文件时从数据库建图；
+ *   加载完成前按最近的图片在数据库中暴力比较，不阻塞请求线程
+ * 3.上传、审核、删除时增量更新；定时按 updateTime 游标补齐其他节点的变更，定时保存有变更的索引
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureFeatureIndexManager {
+
+    /**
+     * 公共图库的索引 key（空间 id 不会为 0）
+     */
+    private static final long PUBLIC_SCOPE = 0L;
+
+    private static final int M = 16;
+
+    private static final int EF_CONSTRUCTION = 100;
+
+    /**
+     * 增量同步时向前回溯的毫秒数，避免漏掉同一时刻提交的变更（重复写入是幂等的）
+     */
+    private static final long WATERMARK_OVERLAP_MILLIS = 10_000L;
+
+    /**
+     * 增量同步需要的列
+     */
+    private static final String SYNC_COLUMNS = "id, spaceId, reviewStatus, picFeature, isDelete, updateTime";
+
+    /**
+     * 建图、增量同步每批读取的条数
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * 回填时每批读取的图片数
+     */
+    private static final int BACKFILL_BATCH_SIZE = 100;
+
+    /**
+     * 索引加载完成前，数据库兜底搜索最多比较的图片数（按 id 取最新的）
+     */
+    private static final int FALLBACK_SCAN_LIMIT = 2000;
+
+    /**
+     * 墓碑数超过该值且超过有效向量数时重建索引
+     */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    @Resource
+    private PictureSimilarConfig pictureSimilarConfig;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @Resource
+    private ThreadPoolExecutor customExecutor;
+
+    private final Map<Long, HnswIndex> indexMap = new ConcurrentHashMap<>();
+
+    /**
+     * 有未保存变更的索引
+     */
+    private final Set<Long> dirtyScopes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 正在后台加载的索引
+     */
+    private final Set<Long> loadingScopes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已加载索引的增量同步游标
+     */
+    private volatile Date watermark;
+
+    private final AtomicBoolean backfilling = new AtomicBoolean(false);
+
+    @PostConstruct
+    public void init() {
+        watermark = new Date();
+        if (!pictureSimilarConfig.isEnabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(Paths.get(pictureSimilarConfig.getIndexDir()));
+        } catch (IOException e) {
+            log.error("创建相似图片索引目录失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        persistIndexes();
+    }
+
+    /**
+     * 搜索与图片视觉相似的图片（不含自身）
+     *
+     * @param picture 图片（需包含 id、spaceId、picFeature）
+     * @param k       返回数量
+     * @return 图片id列表，按相似度降序；图片没有特征时返回空列表
+     */
+    public List<Long> searchSimilar(Picture picture, int k) {
+        float[] vector = PictureFeatureUtils.toVector(picture.getPicFeature());
+        if (!pictureSimilarConfig.isEnabled() || vector == null) {
+            return Collections.emptyList();
+        }
+        long scope = picture.getSpaceId() == null ? PUBLIC_SCOPE : picture.getSpaceId();
+        HnswIndex index = indexMap.get(scope);
+        if (index == null) {
+            loadIndexAsync(scope);
+            return searchByDatabase(scope, vector, k, picture.getId());
+        }
+        return index.search(vector, k, pictureSimilarConfig.getEfSearch(), picture.getId());
+    }
+
+    /**
+     * 从数据库读取图片并更新所在空间的索引（仅在该索引已加载时）
+     *
+     * @param pictureId 图片id
+     */
+    public void refreshPicture(Long pictureId) {
+        if (pictureId == null || indexMap.isEmpty()) {
+            return;
+        }
+        try {
+            Picture picture = pictureMapper.selectOne(new QueryWrapper<Picture>()
+                    .select("id", "spaceId", "reviewStatus", "picFeature")
+                    .eq("id", pictureId));
+            if (picture == null) {
+                // 已删除，不知道所在空间，从已加载的索引中全部移除
+                indexMap.forEach((scope, index) -> {
+                    index.remove(pictureId);
+                    dirtyScopes.add(scope);
+                });
+                return;
+            }
+            applyChange(picture);
+        } catch (Exception e) {
+            log.error("更新相似图片索引失败, pictureId = {}", pictureId, e);
+        }
+    }
+
+    /**
+     * 从已加载的索引中删除图片
+     *
+     * @param spaceId   空间id
+     * @param pictureId 图片id
+     */
+    public void removePicture(Long spaceId, Long pictureId) {
+        long scope = spaceId == null ? PUBLIC_SCOPE : spaceId;
+        HnswIndex index = indexMap.get(scope);
+        if (index != null) {
+            index.remove(pictureId);
+            dirtyScopes.add(scope);
+        }
+    }
+
+    /**
+     * 定时补齐其他节点的变更（仅作用于已加载的索引）
+     */
+    @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+    public void syncChanges() {
+        if (!pictureSimilarConfig.isEnabled()) {
+            return;
+        }
+        try {
+            Date maxUpdateTime = forEachChangeSince(watermark, null, false, this::applyChange);
+            if (maxUpdateTime != null) {
+                watermark = maxUpdateTime;
+                indexMap.values().forEach(index -> index.setWatermark(Math.max(index.getWatermark(), maxUpdateTime.getTime())));
+            }
+        } catch (Exception e) {
+            log.error("相似图片索引增量同步失败", e);
+        }
+    }
+
+    /**
+     * 定时保存有变更的索引，墓碑过多的先重建
+     */
+    @Scheduled(fixedDelay = 300_000L, initialDelay = 300_000L)
+    public void persistIndexes() {
+        for (Long scope : new ArrayList<>(dirtyScopes)) {
+            HnswIndex index = indexMap.get(scope);
+            dirtyScopes.remove(scope);
+            if (index == null) {
+                continue;
+            }
+            try {
+                if (index.deletedCount() > COMPACT_THRESHOLD && index.deletedCount() > index.size()) {
+                    index.compact();
+                }
+                index.save(indexPath(scope));
+            } catch (Exception e) {
+                dirtyScopes.add(scope);
+                log.error("保存相似图片索引失败, scope = {}", scope, e);
+            }
+        }
+    }
+
+    /**
+     * 异步为历史图片（特征为空）提取视觉特征，使用缩略图以减少下载量
+     */
+    public void backfillFeaturesAsync() {
+        customExecutor.execute(this::backfillFeatures);
+    }
+
+    /**
+     * 为历史图片提取视觉特征（按 id 游标分批读取，读取失败的跳过）
+     */
+    public void backfillFeatures() {
+        if (!backfilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long lastId = 0L;
+            int count = 0;
+            while (true) {
+                List<Picture> pictureList = pictureMapper.selectList(new QueryWrapper<Picture>()
+                        .select("id", "url", "thumbnailUrl")
+                        .isNull("picFeature")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + BACKFILL_BATCH_SIZE));
+                if (pictureList.isEmpty()) {
+                    break;
+                }
+                for (Picture picture : pictureList) {
+                    BufferedImage image = readImage(StrUtil.blankToDefault(picture.getThumbnailUrl(), picture.getUrl()));
+                    if (image == null) {
+                        continue;
+                    }
+                    Picture updatePicture = new Picture();
+                    updatePicture.setId(picture.getId());
+                    updatePicture.setPicFeature(PictureFeatureUtils.extractFeature(image));
+                    pictureMapper.updateById(updatePicture);
+                    refreshPicture(picture.getId());
+                    count++;
+                }
+                lastId = pictureList.get(pictureList.size() - 1).getId();
+            }
+            log.info("图片视觉特征回填完成, count = {}", count);
+        } catch (Exception e) {
+            log.error("图片视觉特征回填失败", e);
+        } finally {
+            backfilling.set(false);
+        }
+    }
+
+    /**
+     * 在后台加载索引（同一空间同时只加载一次）
+     * 加载完成放入后再补齐一次该空间的变更，覆盖加载期间被增量更新忽略的写操作
+     *
+     * @param scope 空间id，0 表示公共图库
+     */
+    private void loadIndexAsync(long scope) {
+        if (!loadingScopes.add(scope)) {
+            return;
+        }
+        try {
+            customExecutor.execute(() -> {
+                try {
+                    HnswIndex index = loadIndex(scope);
+                    indexMap.put(scope, index);
+                    catchUp(scope, index);
+                } catch (Exception e) {
+                    log.error("加载相似图片索引失败, scope = {}", scope, e);
+                } finally {
+                    loadingScopes.remove(scope);
+                }
+            });
+        } catch (Exception e) {
+            loadingScopes.remove(scope);
+            log.error("提交相似图片索引加载任务失败, scope = {}", scope, e);
+        }
+    }
+
+    /**
+     * 索引加载完成前的兜底：在数据库中取该空间最新的一批有特征的图片，按向量距离排序
+     *
+     * @return 图片id列表，按相似度降序
+     */
+    private List<Long> searchByDatabase(long scope, float[] vector, int k, long excludeId) {
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<Picture>()
+                .select("id", "picFeature")
+                .isNotNull("picFeature")
+                .ne("id", excludeId)
+                .orderByDesc("id")
+                .last("limit " + FALLBACK_SCAN_LIMIT);
+        if (scope == PUBLIC_SCOPE) {
+            queryWrapper.isNull("spaceId").eq("reviewStatus", PictureReviewStatusEnum.PASS.getValue());
+        } else {
+            queryWrapper.eq("spaceId", scope);
+        }
+        // 大顶堆保留距离最小的 k 个
+        PriorityQueue<Map.Entry<Long, Float>> nearest = new PriorityQueue<>(
+                Comparator.comparing(Map.Entry<Long, Float>::getValue).reversed());
+        for (Picture candidate : pictureMapper.selectList(queryWrapper)) {
+            float[] candidateVector = PictureFeatureUtils.toVector(candidate.getPicFeature());
+            if (candidateVector == null) {
+                continue;
+            }
+            float distance = 0;
+            for (int i = 0; i < vector.length; i++) {
+                float diff = vector[i] - candidateVector[i];
+                distance += diff * diff;
+            }
+            nearest.add(new AbstractMap.SimpleEntry<>(candidate.getId(), distance));
+            if (nearest.size() > k) {
+                nearest.poll();
+            }
+        }
+        LinkedList<Long> result = new LinkedList<>();
+        while (!nearest.isEmpty()) {
+            result.addFirst(nearest.poll().getKey());
+        }
+        return result;
+    }
+
+    /**
+     * 加载索引：优先读取索引文件并补齐文件保存后的变更，否则从数据库建图
+     *
+     * @param scope 空间id，0 表示公共图库
+     * @return 索引
+     */
+    private HnswIndex loadIndex(Long scope) {
+        Path path = indexPath(scope);
+        if (Files.exists(path)) {
+            try {
+                HnswIndex index = HnswIndex.load(path, PictureFeatureUtils.DIMENSION);
+                catchUp(scope, index);
+                log.info("相似图片索引从文件加载, scope = {}, size = {}", scope, index.size());
+                return index;
+            } catch (Exception e) {
+                log.warn("相似图片索引文件无效，从数据库重建, scope = {}", scope, e);
+            }
+        }
+        return buildIndex(scope);
+    }
+
+    /**
+     * 从数据库建图（按 id 游标分批读取）
+     */
+    private HnswIndex buildIndex(long scope) {
+        HnswIndex index = new HnswIndex(PictureFeatureUtils.DIMENSION, M, EF_CONSTRUCTION);
+        // 先记录游标再读取，读取期间的变更由后续同步补齐
+        index.setWatermark(System.currentTimeMillis());
+        long lastId = 0L;
+        while (true) {
+            QueryWrapper<Picture> queryWrapper = new QueryWrapper<Picture>()
+                    .select("id", "picFeature")
+                    .isNotNull("picFeature")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + BATCH_SIZE);
+            if (scope == PUBLIC_SCOPE) {
+                queryWrapper.isNull("spaceId").eq("reviewStatus", PictureReviewStatusEnum.PASS.getValue());
+            } else {
+                queryWrapper.eq("spaceId", scope);
+            }
+            List<Picture> pictureList = pictureMapper.selectList(queryWrapper);
+            if (pictureList.isEmpty()) {
+                break;
+            }
+            for (Picture picture : pictureList) {
+                float[] vector = PictureFeatureUtils.toVector(picture.getPicFeature());
+                if (vector != null) {
+                    index.add(picture.getId(), vector);
+                }
+            }
+            lastId = pictureList.get(pictureList.size() - 1).getId();
+        }
+        dirtyScopes.add(scope);
+        log.info("相似图片索引从数据库构建, scope = {}, size = {}", scope, index.size());
+        return index;
+    }
+
+    /**
+     * 补齐索引游标之后该空间的变更
+     */
+    private void catchUp(long scope, HnswIndex index) {
+        Long spaceId = scope == PUBLIC_SCOPE ? null : scope;
+        Date maxUpdateTime = forEachChangeSince(new Date(index.getWatermark()), spaceId, true,
+                picture -> applyChange(index, picture));
+        if (maxUpdateTime != null) {
+            index.setWatermark(Math.max(index.getWatermark(), maxUpdateTime.getTime()));
+            dirtyScopes.add(scope);
+        }
+    }
+
+    /**
+     * 遍历游标之后变更的图片（含逻辑删除的）
+     *
+     * @param since       游标
+     * @param spaceId     只遍历该空间（null 表示公共图库），scoped 为 false 时忽略
+     * @param scoped      是否按空间过滤
+     * @param consumer    处理变更
+     * @return 变更中最大的 updateTime，没有变更返回 null
+     */
+    private Date forEachChangeSince(Date since, Long spaceId, boolean scoped, Consumer<Picture> consumer) {
+        Date cursorTime = new Date(since.getTime() - WATERMARK_OVERLAP_MILLIS);
+        long cursorId = 0;
+        Date maxUpdateTime = null;
+        while (true) {
+            List<Picture> pictureList = scoped
+                    ? pictureMapper.listChangedSinceInSpace(SYNC_COLUMNS, spaceId, cursorTime, cursorId, BATCH_SIZE)
+                    : pictureMapper.listChangedSince(SYNC_COLUMNS, cursorTime, cursorId, BATCH_SIZE);
+            if (pictureList.isEmpty()) {
+                break;
+            }
+            for (Picture picture : pictureList) {
+                consumer.accept(picture);
+                if (maxUpdateTime == null || picture.getUpdateTime().after(maxUpdateTime)) {
+                    maxUpdateTime = picture.getUpdateTime();
+                }
+            }
+            Picture last = pictureList.get(pictureList.size() - 1);
+            cursorTime = last.getUpdateTime();
+            cursorId = last.getId();
+        }
+        return maxUpdateTime;
+    }
+
+    /**
+     * 将图片的最新状态应用到所在空间已加载的索引
+     */
+    private void applyChange(Picture picture) {
+        long scope = picture.getSpaceId() == null ? PUBLIC_SCOPE : picture.getSpaceId();
+        HnswIndex index = indexMap.get(scope);
+        if (index != null) {
+            applyChange(index, picture);
+            dirtyScopes.add(scope);
+        }
+    }
+
+    private void applyChange(HnswIndex index, Picture picture) {
+        boolean visible = !Integer.valueOf(1).equals(picture.getIsDelete())
+                && (picture.getSpaceId() != null
+                || Integer.valueOf(PictureReviewStatusEnum.PASS.getValue()).equals(picture.getReviewStatus()));
+        float[] vector = PictureFeatureUtils.toVector(picture.getPicFeature());
+        if (visible && vector != null) {
+            index.add(picture.getId(), vector);
+        } else {
+            index.remove(picture.getId());
+        }
+    }
+
+    private BufferedImage readImage(String imageUrl) {
+        if (StrUtil.isBlank(imageUrl)) {
+            return null;
+        }
+        try {
+            return ImageIO.read(new URL(imageUrl));
+        } catch (Exception e) {
+            log.warn("读取图片失败, url = {}", imageUrl, e);
+            return null;
+        }
+    }
+
+    private Path indexPath(long scope) {
+        return Paths.get(pictureSimilarConfig.getIndexDir(), (scope == PUBLIC_SCOPE ? "public" : String.valueOf(scope)) + ".hnsw");
+    }
+}
@@ -0,0 +1,331 @@
+package com.xzc.buyipicturebackend.manager.similar;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xzc.buyipicturebackend.mapper.PictureMapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.enums.PictureReviewStatusEnum;
+import com.xzc.buyipicturebackend.utils.PerceptualHashUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 感知哈希相似图片索引
+ * 1.每个空间一份 BK 树（公共图库单独一份，只含已过审图片），以 pHash 的汉明距离组织，首次搜索时加载
+ * 2.搜索时只访问与目标距离可能在阈值内的子树，候选再按 pHash + dHash 的距离排序
+ * 3.上传、审核、删除时增量更新；删除只从节点上摘除图片，节点本身保留用于路由
+ *
+ * @author xuzhichao
+ */
+@Slf4j
+@Component
+public class PictureHashIndexManager {
+
+    /**
+     * 公共图库的索引 key（空间 id 不会为 0）
+     */
+    private static final long PUBLIC_SCOPE = 0L;
+
+    /**
+     * 视为相似图片的最大 pHash 汉明距离
+     */
+    static final int MAX_DISTANCE = 12;
+
+    /**
+     * 回填时每批读取的图片数
+     */
+    private static final int BACKFILL_BATCH_SIZE = 100;
+
+    @Resource
+    private PictureMapper pictureMapper;
+
+    @Resource
+    private ThreadPoolExecutor customExecutor;
+
+    private final AtomicBoolean backfilling = new AtomicBoolean(false);
+
+    // 哈希索引缓存，10分钟后重新加载，兜底其他节点的变更
+    private final Cache<Long, HashIndex> HASH_INDEX_CACHE =
+            Caffeine.newBuilder().initialCapacity(64)
+                    .maximumSize(1000L)
+                    .expireAfterWrite(10L, TimeUnit.MINUTES)
+                    .build();
+
+    /**
+     * 搜索与图片相似的图片（不含自身）
+     *
+     * @param picture 图片（需包含 id、spaceId、picPHash、picDHash）
+     * @param limit   返回数量
+     * @return 图片id列表，按相似度降序；图片没有哈希时返回空列表
+     */
+    public List<Long> searchSimilar(Picture picture, int limit) {
+        if (picture.getPicPHash() == null) {
+            return Collections.emptyList();
+        }
+        long scope = picture.getSpaceId() == null ? PUBLIC_SCOPE : picture.getSpaceId();
+        HashIndex hashIndex = HASH_INDEX_CACHE.get(scope, this::loadIndex);
+        long dHash = picture.getPicDHash() == null ? 0L : picture.getPicDHash();
+        return hashIndex.search(picture.getId(), picture.getPicPHash(), dHash, limit);
+    }
+
+    /**
+     * 从数据库读取图片并更新所在空间的索引（仅在该索引已加载时）
+     *
+     * @param pictureId 图片id
+     */
+    public void refreshPicture(Long pictureId) {
+        if (pictureId == null) {
+            return;
+        }
+        try {
+            Picture picture = pictureMapper.selectOne(new QueryWrapper<Picture>()
+                    .select("id", "spaceId", "reviewStatus", "picPHash", "picDHash")
+                    .eq("id", pictureId));
+            if (picture == null) {
+                // 已删除，不知道所在空间，从已加载的索引中全部移除
+                HASH_INDEX_CACHE.asMap().values().forEach(hashIndex -> hashIndex.remove(pictureId));
+                return;
+            }
+            long scope = picture.getSpaceId() == null ? PUBLIC_SCOPE : picture.getSpaceId();
+            HashIndex hashIndex = HASH_INDEX_CACHE.getIfPresent(scope);
+            if (hashIndex == null) {
+                return;
+            }
+            boolean visible = picture.getSpaceId() != null
+                    || Integer.valueOf(PictureReviewStatusEnum.PASS.getValue()).equals(picture.getReviewStatus());
+            if (visible && picture.getPicPHash() != null) {
+                hashIndex.put(pictureId, picture.getPicPHash(), picture.getPicDHash() == null ? 0L : picture.getPicDHash());
+            } else {
+                hashIndex.remove(pictureId);
+            }
+        } catch (Exception e) {
+            log.error("更新感知哈希索引失败, pictureId = {}", pictureId, e);
+        }
+    }
+
+    /**
+     * 从已加载的索引中删除图片
+     *
+     * @param spaceId   空间id
+     * @param pictureId 图片id
+     */
+    public void removePicture(Long spaceId, Long pictureId) {
+        long scope = spaceId == null ? PUBLIC_SCOPE : spaceId;
+        HashIndex hashIndex = HASH_INDEX_CACHE.getIfPresent(scope);
+        if (hashIndex != null) {
+            hashIndex.remove(pictureId);
+        }
+    }
+
+    /**
+     * 异步为历史图片（哈希为空）计算感知哈希，使用缩略图以减少下载量
+     */
+    public void backfillHashesAsync() {
+        customExecutor.execute(this::backfillHashes);
+    }
+
+    /**
+     * 为历史图片计算感知哈希（按 id 游标分批读取，读取失败的跳过）
+     */
+    public void backfillHashes() {
+        if (!backfilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long lastId = 0L;
+            int count = 0;
+            while (true) {
+                List<Picture> pictureList = pictureMapper.selectList(new QueryWrapper<Picture>()
+                        .select("id", "url", "thumbnailUrl")
+                        .isNull("picPHash")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + BACKFILL_BATCH_SIZE));
+                if (pictureList.isEmpty()) {
+                    break;
+                }
+                for (Picture picture : pictureList) {
+                    BufferedImage image = readImage(StrUtil.blankToDefault(picture.getThumbnailUrl(), picture.getUrl()));
+                    if (image == null) {
+                        continue;
+                    }
+                    Picture updatePicture = new Picture();
+                    updatePicture.setId(picture.getId());
+                    updatePicture.setPicPHash(PerceptualHashUtils.pHash(image));
+                    updatePicture.setPicDHash(PerceptualHashUtils.dHash(image));
+                    pictureMapper.updateById(updatePicture);
+                    refreshPicture(picture.getId());
+                    count++;
+                }
+                lastId = pictureList.get(pictureList.size() - 1).getId();
+            }
+            log.info("图片感知哈希回填完成, count = {}", count);
+        } catch (Exception e) {
+            log.error("图片感知哈希回填失败", e);
+        } finally {
+            backfilling.set(false);
+        }
+    }
+
+    private BufferedImage readImage(String imageUrl) {
+        if (StrUtil.isBlank(imageUrl)) {
+            return null;
+        }
+        try {
+            return ImageIO.read(new URL(imageUrl));
+        } catch (Exception e) {
+            log.warn("读取图片失败, url = {}", imageUrl, e);
+            return null;
+        }
+    }
+
+    /**
+     * 从数据库加载索引
+     *
+     * @param scope 空间id，0 表示公共图库
+     * @return 索引
+     */
+    private HashIndex loadIndex(Long scope) {
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<Picture>()
+                .select("id", "picPHash", "picDHash")
+                .isNotNull("picPHash");
+        if (scope == PUBLIC_SCOPE) {
+            queryWrapper.isNull("spaceId").eq("reviewStatus", PictureReviewStatusEnum.PASS.getValue());
+        } else {
+            queryWrapper.eq("spaceId", scope);
+        }
+        HashIndex hashIndex = new HashIndex();
+        for (Picture picture : pictureMapper.selectList(queryWrapper)) {
+            hashIndex.put(picture.getId(), picture.getPicPHash(), picture.getPicDHash() == null ? 0L : picture.getPicDHash());
+        }
+        return hashIndex;
+    }
+
+    /**
+     * 单个空间的 BK 树
+     * 子节点按与父节点的距离区分，由三角不等式，距离目标为 d 的节点只需访问距离在 [d - r, d + r] 内的子树
+     */
+    static class HashIndex {
+
+        private Node root;
+
+        /**
+         * 图片id -> {pHash, dHash}
+         */
+        private final Map<Long, long[]> hashMap = new HashMap<>();
+
+        /**
+         * pHash -> 节点，删除时定位节点
+         */
+        private final Map<Long, Node> nodeMap = new HashMap<>();
+
+        synchronized void put(long pictureId, long pHash, long dHash) {
+            long[] old = hashMap.get(pictureId);
+            if (old != null && old[0] == pHash && old[1] == dHash) {
+                return;
+            }
+            remove(pictureId);
+            hashMap.put(pictureId, new long[]{pHash, dHash});
+            Node node = nodeMap.get(pHash);
+            if (node == null) {
+                node = insert(pHash);
+                nodeMap.put(pHash, node);
+            }
+            node.pictureIds.add(pictureId);
+        }
+
+        synchronized void remove(long pictureId) {
+            long[] hashes = hashMap.remove(pictureId);
+            if (hashes == null) {
+                return;
+            }
+            Node node = nodeMap.get(hashes[0]);
+            if (node != null) {
+                node.pictureIds.remove(pictureId);
+            }
+        }
+
+        synchronized List<Long> search(long pictureId, long pHash, long dHash, int limit) {
+            if (root == null) {
+                return Collections.emptyList();
+            }
+            // 1.BK 树范围查询
+            Map<Long, Integer> distanceMap = new HashMap<>();
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                int distance = PerceptualHashUtils.hammingDistance(node.hash, pHash);
+                if (distance <= MAX_DISTANCE) {
+                    for (Long candidateId : node.pictureIds) {
+                        if (candidateId != pictureId) {
+                            long[] hashes = hashMap.get(candidateId);
+                            distanceMap.put(candidateId, distance + PerceptualHashUtils.hammingDistance(hashes[1], dHash));
+                        }
+                    }
+                }
+                if (node.children == null) {
+                    continue;
+                }
+                for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                    if (Math.abs(entry.getKey() - distance) <= MAX_DISTANCE) {
+                        stack.push(entry.getValue());
+                    }
+                }
+            }
+
+            // 2.按 pHash + dHash 距离升序
+            List<Long> result = new ArrayList<>(distanceMap.keySet());
+            result.sort(Comparator.comparingInt((Long id) -> distanceMap.get(id)).thenComparing(Comparator.reverseOrder()));
+            return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+        }
+
+        private Node insert(long hash) {
+            Node newNode = new Node(hash);
+            if (root == null) {
+                root = newNode;
+                return newNode;
+            }
+            Node node = root;
+            while (true) {
+                int distance = PerceptualHashUtils.hammingDistance(node.hash, hash);
+                if (node.children == null) {
+                    node.children = new HashMap<>(4);
+                }
+                Node child = node.children.get(distance);
+                if (child == null) {
+                    node.children.put(distance, newNode);
+                    return newNode;
+                }
+                node = child;
+            }
+        }
+    }
+
+    /**
+     * BK 树节点，同一 pHash 的图片共用一个节点
+     */
+    private static class Node {
+
+        private final long hash;
+
+        private final Set<Long> pictureIds = new HashSet<>(2);
+
+        private Map<Integer, Node> children;
+
+        private Node(long hash) {
+            this.hash = hash;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.json.JSONUtil;
 import com.qcloud.cos.COSClient;
 import com.qcloud.cos.model.PutObjectRequest;
 import com.qcloud.cos.model.PutObjectResult;
@@ -15,14 +16,25 @@ import com.qcloud.cos.model.ciModel.persistence.ProcessResults;
 import com.xzc.buyipicturebackend.config.CosClientConfig;
 import com.xzc.buyipicturebackend.exception.BusinessException;
 import com.xzc.buyipicturebackend.exception.ErrorCode;
+import com.xzc.buyipicturebackend.model.dto.picture.PaletteColor;
 import com.xzc.buyipicturebackend.model.dto.picture.UploadPictureResult;
+import com.xzc.buyipicturebackend.utils.ColorPaletteUtils;
+import com.xzc.buyipicturebackend.utils.PerceptualHashUtils;
+import com.xzc.buyipicturebackend.utils.PictureFeatureUtils;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Resource;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * 图片上传模板类
@@ -34,6 +46,11 @@ import java.util.List;
 @Slf4j
 public abstract class PictureUploadTemplate {
 
+    /**
+     * 本地解析图片时解码的最大边长（像素）
+     */
+    private static final int ANALYZE_MAX_EDGE = 1024;
+
     @Resource
     private CosClientConfig cosClientConfig;
 
@@ -78,6 +95,7 @@ public abstract class PictureUploadTemplate {
             // 压缩处理结果
             ProcessResults processResults = putObjectResult.getCiUploadResult().getProcessResults();
             List<CIObject> objectList = processResults.getObjectList();
+            UploadPictureResult uploadPictureResult;
             if (CollUtil.isNotEmpty(objectList)) {
                 // 压缩处理成webp后的图片对象
                 CIObject compressedCiObject = objectList.get(0);
@@ -88,11 +106,20 @@ public abstract class PictureUploadTemplate {
                     thumbnailCiObject = objectList.get(1);
                 }
                 // 5.封装webp返回结果
-                return buildResult(originFilename, compressedCiObject, thumbnailCiObject, uploadPath, imageInfo, file);
+                uploadPictureResult = buildResult(originFilename, compressedCiObject, thumbnailCiObject, uploadPath, imageInfo, file);
+            } else {
+                // 5.封装原图返回结果
+                uploadPictureResult = buildResult(originFilename, file, uploadPath, imageInfo);
             }
-
-            // 5.封装原图返回结果
-            return buildResult(originFilename, file, uploadPath, imageInfo);
+            // 6.从本地临时文件提取调色板、感知哈希和特征向量（每项单独容错，失败只留空，不影响已上传的对象）
+            BufferedImage image = readImage(file);
+            if (image != null) {
+                uploadPictureResult.setPicPalette(extractPalette(image));
+                uploadPictureResult.setPicPHash(safeExtract(() -> PerceptualHashUtils.pHash(image), "pHash"));
+                uploadPictureResult.setPicDHash(safeExtract(() -> PerceptualHashUtils.dHash(image), "dHash"));
+                uploadPictureResult.setPicFeature(safeExtract(() -> PictureFeatureUtils.extractFeature(image), "特征向量"));
+            }
+            return uploadPictureResult;
         } catch (Exception e) {
             log.error("图片上传到对象存储失败", e);
             throw new BusinessException(ErrorCode.SYSTEM_ERROR, "上传失败");
@@ -189,6 +216,74 @@ public abstract class PictureUploadTemplate {
         return uploadPictureResult;
     }
 
+    /**
+     * 读取本地图片（按长边不超过 {@link #ANALYZE_MAX_EDGE} 降采样解码）
+     * 调色板、感知哈希和特征向量都只需要小图，避免把大图按原始分辨率整张解码到内存；
+     * 解析失败（如 ImageIO 不支持的格式、内存不足）时返回 null，不影响上传
+     *
+     * @param file 本地图片文件
+     * @return 图片
+     */
+    private BufferedImage readImage(File file) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int maxEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = (maxEdge + ANALYZE_MAX_EDGE - 1) / ANALYZE_MAX_EDGE;
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (Throwable e) {
+            log.warn("读取本地图片失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 容错执行单项图片特征提取，失败（包括内存不足）时返回 null
+     *
+     * @param extractor 提取逻辑
+     * @param name      提取项名称（用于日志）
+     * @return 提取结果
+     */
+    private <T> T safeExtract(Supplier<T> extractor, String name) {
+        try {
+            return extractor.get();
+        } catch (Throwable e) {
+            log.warn("提取图片{}失败", name, e);
+            return null;
+        }
+    }
+
+    /**
+     * 提取图片调色板（前5种主要颜色及占比）
+     *
+     * @param image 图片
+     * @return 调色板 JSON
+     */
+    private String extractPalette(BufferedImage image) {
+        try {
+            List<PaletteColor> palette = ColorPaletteUtils.extractPalette(image, 5);
+            return palette.isEmpty() ? null : JSONUtil.toJsonStr(palette);
+        } catch (Throwable e) {
+            log.warn("提取图片调色板失败", e);
+            return null;
+        }
+    }
+
     /**
      * 删除临时文件
      */
@@ -0,0 +1,45 @@
+package com.xzc.buyipicturebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xzc.buyipicturebackend.model.entity.PictureDailyStat;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+
+/**
+ * @author xuzhichao
+ * @description 针对表【picture_daily_stat(每日上传统计)】的数据库操作Mapper
+ * @Entity com.xzc.buyipicturebackend.model.entity.PictureDailyStat
+ * 主键为 (spaceId, userId, day)，没有单列主键，启动时 MyBatis-Plus 会提示找不到主键：
+ * 只使用 selectObjs、selectMaps 等按条件查询的方法，不使用 selectById、updateById 等按主键的方法，该提示可以忽略
+ */
+public interface PictureDailyStatMapper extends BaseMapper<PictureDailyStat> {
+
+    /**
+     * 累加一次上传（当天的统计行不存在时创建）
+     *
+     * @param spaceId 空间 id（0 表示公共图库）
+     * @param userId  上传用户 id
+     * @param day     上传日期
+     * @param bytes   上传大小
+     * @return 影响行数
+     */
+    int addUpload(@Param("spaceId") long spaceId, @Param("userId") long userId,
+                  @Param("day") Date day, @Param("bytes") long bytes);
+
+    /**
+     * 最早的图片上传时间（包含已删除的图片）
+     *
+     * @return 最早上传时间，没有图片时为 null
+     */
+    Date selectMinPictureCreateTime();
+
+    /**
+     * 按图片表重新统计一个时间段（覆盖已有的统计行）
+     *
+     * @param startTime 开始时间（包含）
+     * @param endTime   结束时间（不包含）
+     * @return 影响行数
+     */
+    int replaceFromPicture(@Param("startTime") Date startTime, @Param("endTime") Date endTime);
+}
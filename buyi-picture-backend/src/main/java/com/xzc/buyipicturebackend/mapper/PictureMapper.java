@@ -1,7 +1,15 @@
 package com.xzc.buyipicturebackend.mapper;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
 import com.xzc.buyipicturebackend.model.entity.Picture;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 /**
 * @author xuzhichao
@@ -11,8 +19,58 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 */
 public interface PictureMapper extends BaseMapper<Picture> {
 
-}
+    /**
+     * 获取 COUNT 查询的执行计划，用于根据索引统计信息估算总数
+     *
+     * @param queryWrapper 查询条件（不能包含排序、分组）
+     * @return EXPLAIN 结果行
+     */
+    List<Map<String, Object>> explainCount(@Param(Constants.WRAPPER) Wrapper<Picture> queryWrapper);
 
+    /**
+     * 获取列表查询的执行计划，用于启动时检查核心查询是否使用了预期索引
+     *
+     * @param queryWrapper 查询条件（可包含排序；需自行加上 isDelete 条件）
+     * @return EXPLAIN 结果行
+     */
+    List<Map<String, Object>> explainList(@Param(Constants.WRAPPER) Wrapper<Picture> queryWrapper);
 
+    /**
+     * 按 (updateTime, id) 游标查询有变更的图片（包含已逻辑删除的），用于本地索引的增量同步
+     *
+     * @param columns    查询的列（由调用方的常量给出，需包含 id、updateTime、isDelete）
+     * @param updateTime 游标：更新时间
+     * @param lastId     游标：同一更新时间下已处理的最大 id
+     * @param limit      条数
+     * @return 图片列表
+     */
+    List<Picture> listChangedSince(@Param("columns") String columns,
+                                   @Param("updateTime") Date updateTime,
+                                   @Param("lastId") long lastId,
+                                   @Param("limit") int limit);
 
+    /**
+     * 按 (updateTime, id) 游标查询某个空间内有变更的图片（包含已逻辑删除的），用于加载单个空间的本地索引后补齐变更
+     *
+     * @param columns    查询的列（由调用方的常量给出，需包含 id、updateTime、isDelete）
+     * @param spaceId    空间id，null 表示公共图库
+     * @param updateTime 游标：更新时间
+     * @param lastId     游标：同一更新时间下已处理的最大 id
+     * @param limit      条数
+     * @return 图片列表
+     */
+    List<Picture> listChangedSinceInSpace(@Param("columns") String columns,
+                                          @Param("spaceId") Long spaceId,
+                                          @Param("updateTime") Date updateTime,
+                                          @Param("lastId") long lastId,
+                                          @Param("limit") int limit);
 
+    /**
+     * 流式扫描图片（MySQL 逐行读取，不在内存中缓存结果集），用于大范围分析
+     * 不会自动加上逻辑删除条件；处理器中不能再使用同一连接执行查询
+     *
+     * @param queryWrapper 查询条件（通过 select 指定需要的列）
+     * @param handler      逐行处理器
+     */
+    void scan(@Param(Constants.WRAPPER) Wrapper<Picture> queryWrapper, ResultHandler<Picture> handler);
+}
@@ -0,0 +1,23 @@
+package com.xzc.buyipicturebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xzc.buyipicturebackend.model.entity.PictureTag;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * @author xuzhichao
+ * @description 针对表【picture_tag(图片标签关联)】的数据库操作Mapper
+ * @Entity com.xzc.buyipicturebackend.model.entity.PictureTag
+ */
+public interface PictureTagMapper extends BaseMapper<PictureTag> {
+
+    /**
+     * 批量插入图片标签关联（单条多值 INSERT，已存在则忽略）
+     *
+     * @param pictureTagList 图片标签关联列表
+     * @return 插入条数
+     */
+    int insertIgnoreBatch(@Param("list") List<PictureTag> pictureTagList);
+}
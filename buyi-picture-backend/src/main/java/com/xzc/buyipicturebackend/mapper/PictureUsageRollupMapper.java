@@ -0,0 +1,33 @@
+package com.xzc.buyipicturebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xzc.buyipicturebackend.model.entity.PictureUsageRollup;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * @author xuzhichao
+ * @description 针对表【picture_usage_rollup(图库用量汇总)】的数据库操作Mapper
+ * @Entity com.xzc.buyipicturebackend.model.entity.PictureUsageRollup
+ */
+public interface PictureUsageRollupMapper extends BaseMapper<PictureUsageRollup> {
+
+    /**
+     * 累加用量（汇总行不存在时创建）
+     *
+     * @param scope      统计范围
+     * @param sizeDelta  大小变化
+     * @param countDelta 数量变化
+     * @return 影响行数
+     */
+    int addUsage(@Param("scope") String scope, @Param("sizeDelta") long sizeDelta, @Param("countDelta") long countDelta);
+
+    /**
+     * 覆盖用量（重新统计后使用）
+     *
+     * @param scope      统计范围
+     * @param totalSize  图片总大小
+     * @param totalCount 图片总数
+     * @return 影响行数
+     */
+    int replaceUsage(@Param("scope") String scope, @Param("totalSize") long totalSize, @Param("totalCount") long totalCount);
+}
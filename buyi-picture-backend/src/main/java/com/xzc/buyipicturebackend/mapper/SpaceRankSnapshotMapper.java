@@ -0,0 +1,23 @@
+package com.xzc.buyipicturebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xzc.buyipicturebackend.model.entity.SpaceRankSnapshot;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * @author xuzhichao
+ * @description 针对表【space_rank_snapshot(空间排行快照)】的数据库操作Mapper
+ * @Entity com.xzc.buyipicturebackend.model.entity.SpaceRankSnapshot
+ */
+public interface SpaceRankSnapshotMapper extends BaseMapper<SpaceRankSnapshot> {
+
+    /**
+     * 批量保存排行快照（单条多值 INSERT，同一天重复快照时覆盖名次和排行值）
+     *
+     * @param snapshotList 快照列表
+     * @return 影响行数
+     */
+    int upsertBatch(@Param("list") List<SpaceRankSnapshot> snapshotList);
+}
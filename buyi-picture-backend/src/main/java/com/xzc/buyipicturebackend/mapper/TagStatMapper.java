@@ -0,0 +1,78 @@
+package com.xzc.buyipicturebackend.mapper;
+
+import com.xzc.buyipicturebackend.model.entity.TagStat;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * @author xuzhichao
+ * @description 针对表【tag_stat(标签统计)】的数据库操作Mapper
+ * @Entity com.xzc.buyipicturebackend.model.entity.TagStat
+ * 主键为 (scope, tag)，只使用 XML 中的 SQL，不继承 BaseMapper（没有单列主键的实体会在启动时告警）
+ */
+public interface TagStatMapper {
+
+    /**
+     * 批量累加标签计数（单条多值 INSERT，不存在则创建）
+     *
+     * @param tagStatList 标签统计（count 为变化量）
+     * @return 影响行数
+     */
+    int addCountBatch(@Param("list") List<TagStat> tagStatList);
+
+    /**
+     * 按范围取关联图片数最多的标签
+     *
+     * @param scope 统计范围
+     * @param limit 条数
+     * @return 标签统计，按关联图片数降序
+     */
+    List<TagStat> listTop(@Param("scope") String scope, @Param("limit") int limit);
+
+    /**
+     * 删除重建用的临时表（上次重建中断时残留）
+     */
+    void dropStaging();
+
+    /**
+     * 按 tag_stat 的结构创建重建用的临时表
+     */
+    void createStaging();
+
+    /**
+     * 按 id 游标查询下一批图片 id（含逻辑删除）
+     *
+     * @param lastId 上一批最后的图片 id（不含）
+     * @param limit  条数
+     * @return 图片 id，升序
+     */
+    List<Long> listPictureIdsAfter(@Param("lastId") long lastId, @Param("limit") int limit);
+
+    /**
+     * 按标签关联统计 id 在 (minId, maxId] 内的图片，按 (scope, tag) 分组（不含 all）
+     *
+     * @param minId 起始图片 id（不含）
+     * @param maxId 结束图片 id（含）
+     * @return 标签统计
+     */
+    List<TagStat> countByPictureIdRange(@Param("minId") long minId, @Param("maxId") long maxId);
+
+    /**
+     * 批量累加临时表中的标签计数
+     *
+     * @param tagStatList 标签统计
+     * @return 影响行数
+     */
+    int addStagingCountBatch(@Param("list") List<TagStat> tagStatList);
+
+    /**
+     * 用临时表原子替换标签统计表
+     */
+    void swapStaging();
+
+    /**
+     * 删除替换下来的旧表
+     */
+    void dropOld();
+}
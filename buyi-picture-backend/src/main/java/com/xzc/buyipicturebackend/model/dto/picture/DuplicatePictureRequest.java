@@ -0,0 +1,21 @@
+package com.xzc.buyipicturebackend.model.dto.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 空间重复图片分析、报告、合并请求
+ *
+ * @author xuzhichao
+ */
+@Data
+public class DuplicatePictureRequest implements Serializable {
+
+    /**
+     * 空间 id
+     */
+    private Long spaceId;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,30 @@
+package com.xzc.buyipicturebackend.model.dto.picture;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 图片调色板中的一种颜色
+ *
+ * @author xuzhichao
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaletteColor implements Serializable {
+
+    /**
+     * 颜色（十六进制，如 0xFF0000）
+     */
+    private String color;
+
+    /**
+     * 占比（0 到 1）
+     */
+    private Double weight;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,27 @@
+package com.xzc.buyipicturebackend.model.dto.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量删除图片请求
+ *
+ * @author xuzhichao
+ */
+@Data
+public class PictureDeleteByBatchRequest implements Serializable {
+
+    /**
+     * 图片 id 列表
+     */
+    private List<Long> pictureIdList;
+
+    /**
+     * 空间 id（为空表示公共图库）
+     */
+    private Long spaceId;
+
+    private static final long serialVersionUID = 1L;
+}
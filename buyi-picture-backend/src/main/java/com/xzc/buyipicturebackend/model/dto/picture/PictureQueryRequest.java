@@ -112,6 +112,10 @@ public class PictureQueryRequest extends PageRequest implements Serializable {
      */
     private Date endEditTime;
 
+    /**
+     * 是否精确统计总数（仅管理员接口生效，跳过总数缓存和近似统计）
+     */
+    private Boolean exactCount;
 
     private static final long serialVersionUID = 1L;
 }
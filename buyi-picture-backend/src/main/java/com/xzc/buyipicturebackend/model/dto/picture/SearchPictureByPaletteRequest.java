@@ -0,0 +1,27 @@
+package com.xzc.buyipicturebackend.model.dto.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 按调色板搜图请求
+ *
+ * @author xuzhichao
+ */
+@Data
+public class SearchPictureByPaletteRequest implements Serializable {
+
+    /**
+     * 目标颜色（十六进制，1 到 5 种，图片需同时包含相近的颜色）
+     */
+    private List<String> colors;
+
+    /**
+     * 空间 id（为空表示公共图库）
+     */
+    private Long spaceId;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -60,5 +60,25 @@ public class UploadPictureResult {
      */
     private String picColor;
 
+    /**
+     * 图片调色板（JSON 数组，前5种主要颜色及占比）
+     */
+    private String picPalette;
+
+    /**
+     * 感知哈希 pHash
+     */
+    private Long picPHash;
+
+    /**
+     * 差异哈希 dHash
+     */
+    private Long picDHash;
+
+    /**
+     * 图片视觉特征（量化后的向量）
+     */
+    private byte[] picFeature;
+
 
 }
@@ -27,5 +27,10 @@ public class SpaceAnalyzeRequest implements Serializable {
      */
     private boolean queryAll;
 
+    /**
+     * 是否允许近似统计（上传用户数使用 HyperLogLog 估计，标准误差约 0.81%），关闭时精确统计
+     */
+    private boolean approximate = true;
+
     private static final long serialVersionUID = 1L;
 }
@@ -0,0 +1,31 @@
+package com.xzc.buyipicturebackend.model.dto.space.analyze;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 空间分析看板请求类（一次返回所有分析结果）
+ *
+ * @author xuzhichao
+ */
+@EqualsAndHashCode(callSuper = true)
+@Data
+public class SpaceDashboardRequest extends SpaceAnalyzeRequest {
+
+    /**
+     * 标签分析：关联图片数最多的前 N 个标签
+     */
+    private Integer tagTopN = 100;
+
+    /**
+     * 上传行为分析的时间维度：day / week / month
+     */
+    private String timeDimension = "day";
+
+    /**
+     * 空间排行：前 N 名（仅全空间分析时返回）
+     */
+    private Integer rankTopN = 10;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -16,6 +16,11 @@ public class SpaceRankAnalyzeRequest implements Serializable {
      */
     private Integer topN = 10;
 
+    /**
+     * 排行类型：size（已用容量，默认）/ count（图片数量）/ growth（当日容量增长）
+     */
+    private String rankType;
+
     private static final long serialVersionUID = 1L;
 
 }
@@ -0,0 +1,31 @@
+package com.xzc.buyipicturebackend.model.dto.space.analyze;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 空间排名历史请求类（仅管理员可用）
+ *
+ * @author xuzhichao
+ */
+@Data
+public class SpaceRankHistoryRequest implements Serializable {
+    /**
+     * 空间 id
+     */
+    private Long spaceId;
+
+    /**
+     * 排行类型：size / count / growth，默认 size
+     */
+    private String rankType;
+
+    /**
+     * 最近多少天
+     */
+    private Integer days = 30;
+
+    private static final long serialVersionUID = 1L;
+
+}
@@ -12,4 +12,10 @@ import lombok.EqualsAndHashCode;
 @Data
 public class SpaceTagAnalyzeRequest extends SpaceAnalyzeRequest {
 
+    /**
+     * 关联图片数最多的前 N 个标签
+     */
+    private Integer topN = 100;
+
+    private static final long serialVersionUID = 1L;
 }
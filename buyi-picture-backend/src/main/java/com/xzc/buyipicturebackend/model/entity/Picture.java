@@ -141,6 +141,36 @@ public class Picture implements Serializable {
      */
     private String picColor;
 
+    /**
+     * 图片主色调 RGB（0xRRGGBB）
+     */
+    private Integer picColorRgb;
+
+    /**
+     * 图片主色调 CIELAB（压缩存储，见 ColorLabUtils）
+     */
+    private Long picColorLab;
+
+    /**
+     * 图片调色板（JSON 数组，前5种主要颜色及占比）
+     */
+    private String picPalette;
+
+    /**
+     * 感知哈希 pHash
+     */
+    private Long picPHash;
+
+    /**
+     * 差异哈希 dHash
+     */
+    private Long picDHash;
+
+    /**
+     * 图片视觉特征（量化后的向量）
+     */
+    private byte[] picFeature;
+
 
     @TableField(exist = false)
     private static final long serialVersionUID = 1L;
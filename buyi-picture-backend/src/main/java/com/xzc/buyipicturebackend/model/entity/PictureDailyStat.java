@@ -0,0 +1,50 @@
+package com.xzc.buyipicturebackend.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 每日上传统计（联合主键，没有 @TableId，不能使用按主键的通用方法）
+ * @TableName picture_daily_stat
+ * @author xuzhichao
+ */
+@TableName(value ="picture_daily_stat")
+@Data
+public class PictureDailyStat implements Serializable {
+    /**
+     * 空间 id（0 表示公共图库）
+     */
+    private Long spaceId;
+
+    /**
+     * 上传用户 id
+     */
+    private Long userId;
+
+    /**
+     * 上传日期
+     */
+    private Date day;
+
+    /**
+     * 上传数量
+     */
+    private Long count;
+
+    /**
+     * 上传大小
+     */
+    private Long bytes;
+
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
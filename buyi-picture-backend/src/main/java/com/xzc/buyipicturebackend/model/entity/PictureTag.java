@@ -0,0 +1,43 @@
+package com.xzc.buyipicturebackend.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 图片标签关联
+ * @TableName picture_tag
+ * @author xuzhichao
+ */
+@TableName(value ="picture_tag")
+@Data
+public class PictureTag implements Serializable {
+    /**
+     * id
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 图片 id
+     */
+    private Long pictureId;
+
+    /**
+     * 标签
+     */
+    private String tag;
+
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
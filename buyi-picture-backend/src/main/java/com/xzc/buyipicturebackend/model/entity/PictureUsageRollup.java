@@ -0,0 +1,43 @@
+package com.xzc.buyipicturebackend.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 图库用量汇总
+ * @TableName picture_usage_rollup
+ * @author xuzhichao
+ */
+@TableName(value ="picture_usage_rollup")
+@Data
+public class PictureUsageRollup implements Serializable {
+    /**
+     * 统计范围：all/public
+     */
+    @TableId(type = IdType.INPUT)
+    private String scope;
+
+    /**
+     * 图片总大小
+     */
+    private Long totalSize;
+
+    /**
+     * 图片总数
+     */
+    private Long totalCount;
+
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
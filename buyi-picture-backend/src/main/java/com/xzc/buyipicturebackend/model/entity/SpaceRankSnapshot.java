@@ -0,0 +1,58 @@
+package com.xzc.buyipicturebackend.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 空间排行快照
+ * @TableName space_rank_snapshot
+ * @author xuzhichao
+ */
+@TableName(value ="space_rank_snapshot")
+@Data
+public class SpaceRankSnapshot implements Serializable {
+    /**
+     * id
+     */
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 快照日期
+     */
+    private Date snapshotDate;
+
+    /**
+     * 排行类型：size/count/growth
+     */
+    private String rankType;
+
+    /**
+     * 空间 id
+     */
+    private Long spaceId;
+
+    /**
+     * 名次（从 1 开始）
+     */
+    private Integer rankNo;
+
+    /**
+     * 排行值
+     */
+    private Long score;
+
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,40 @@
+package com.xzc.buyipicturebackend.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 标签统计
+ * @TableName tag_stat
+ * @author xuzhichao
+ */
+@TableName(value ="tag_stat")
+@Data
+public class TagStat implements Serializable {
+    /**
+     * 统计范围：all/public/space:空间id
+     */
+    private String scope;
+
+    /**
+     * 标签
+     */
+    private String tag;
+
+    /**
+     * 关联图片数
+     */
+    private Long count;
+
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
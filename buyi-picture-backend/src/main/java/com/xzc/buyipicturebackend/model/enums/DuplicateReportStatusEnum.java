@@ -0,0 +1,40 @@
+package com.xzc.buyipicturebackend.model.enums;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.Getter;
+
+/**
+ * 重复图片分析报告状态枚举类
+ *
+ * @author xuzhichao
+ */
+@Getter
+public enum DuplicateReportStatusEnum {
+    //分析状态
+    RUNNING("分析中", 0),
+    DONE("已完成", 1),
+    FAILED("失败", 2);
+
+    private final String text;
+    private final int value;
+
+    DuplicateReportStatusEnum(String text, int value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     */
+    public static DuplicateReportStatusEnum getEnumByValue(Integer value) {
+        if (ObjUtil.isEmpty(value)) {
+            return null;
+        }
+        for (DuplicateReportStatusEnum duplicateReportStatusEnum : DuplicateReportStatusEnum.values()) {
+            if (duplicateReportStatusEnum.value == value) {
+                return duplicateReportStatusEnum;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.xzc.buyipicturebackend.model.enums;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.Getter;
+
+/**
+ * 空间排行类型枚举类
+ *
+ * @author xuzhichao
+ */
+@Getter
+public enum SpaceRankTypeEnum {
+
+    SIZE("已用容量", "size"),
+    COUNT("图片数量", "count"),
+    GROWTH("当日容量增长", "growth");
+
+    private final String text;
+
+    private final String value;
+
+    SpaceRankTypeEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     */
+    public static SpaceRankTypeEnum getEnumByValue(String value) {
+        if (StrUtil.isBlank(value)) {
+            return null;
+        }
+        for (SpaceRankTypeEnum rankTypeEnum : SpaceRankTypeEnum.values()) {
+            if (rankTypeEnum.value.equals(value)) {
+                return rankTypeEnum;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,48 @@
+package com.xzc.buyipicturebackend.model.enums;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.Getter;
+
+/**
+ * 空间列表可排序字段枚举类
+ * 只允许按有索引的列排序，避免全表 filesort
+ *
+ * @author xuzhichao
+ */
+@SuppressWarnings("AlibabaEnumConstantsMustHaveComment")
+@Getter
+public enum SpaceSortFieldEnum {
+
+    ID("id", "id"),
+    CREATE_TIME("createTime", "createTime");
+
+    /**
+     * 接口中的排序字段名
+     */
+    private final String value;
+
+    /**
+     * 对应的数据库列
+     */
+    private final String column;
+
+    SpaceSortFieldEnum(String value, String column) {
+        this.value = value;
+        this.column = column;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     */
+    public static SpaceSortFieldEnum getEnumByValue(String value) {
+        if (StrUtil.isBlank(value)) {
+            return null;
+        }
+        for (SpaceSortFieldEnum sortFieldEnum : SpaceSortFieldEnum.values()) {
+            if (sortFieldEnum.value.equals(value)) {
+                return sortFieldEnum;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,37 @@
+package com.xzc.buyipicturebackend.model.vo.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 一组近似重复的图片
+ *
+ * @author xuzhichao
+ */
+@Data
+public class DuplicateClusterVo implements Serializable {
+
+    /**
+     * 合并时保留的图片 id（分辨率最高，其次体积最大、最早上传）
+     */
+    private Long keepId;
+
+    /**
+     * 组内全部图片 id（保留的图片在首位）
+     */
+    private List<Long> pictureIds;
+
+    /**
+     * 合并后可释放的空间大小
+     */
+    private Long reclaimableSize;
+
+    /**
+     * 组内图片（查询报告时填充）
+     */
+    private List<PictureVo> pictures;
+
+    private static final long serialVersionUID = 1L;
+}
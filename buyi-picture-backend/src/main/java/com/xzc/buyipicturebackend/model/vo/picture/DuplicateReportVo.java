@@ -0,0 +1,58 @@
+package com.xzc.buyipicturebackend.model.vo.picture;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 空间重复图片分析报告
+ *
+ * @author xuzhichao
+ */
+@Data
+public class DuplicateReportVo implements Serializable {
+
+    /**
+     * 空间 id
+     */
+    private Long spaceId;
+
+    /**
+     * 分析状态：0-分析中；1-已完成；2-失败
+     */
+    private Integer status;
+
+    /**
+     * 分析的图片数
+     */
+    private Integer pictureCount;
+
+    /**
+     * 重复组数
+     */
+    private Integer clusterCount;
+
+    /**
+     * 可删除的重复图片数
+     */
+    private Integer duplicateCount;
+
+    /**
+     * 合并后可释放的空间大小
+     */
+    private Long reclaimableSize;
+
+    /**
+     * 重复组（按可释放大小降序）
+     */
+    private List<DuplicateClusterVo> clusters;
+
+    /**
+     * 分析时间
+     */
+    private Date createTime;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -1,7 +1,9 @@
 package com.xzc.buyipicturebackend.model.vo.picture;
 
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.xzc.buyipicturebackend.model.dto.picture.PaletteColor;
 import com.xzc.buyipicturebackend.model.entity.Picture;
 import com.xzc.buyipicturebackend.model.vo.user.UserVo;
 import lombok.Data;
@@ -100,6 +102,11 @@ public class PictureVo implements Serializable {
      */
     private String picColor;
 
+    /**
+     * 图片调色板（主要颜色及占比）
+     */
+    private List<PaletteColor> picPalette;
+
     /**
      * 创建时间
      */
@@ -141,6 +148,9 @@ public class PictureVo implements Serializable {
         BeanUtils.copyProperties(pictureVO, picture);
         // 类型不同，需要转换  
         picture.setTags(JSONUtil.toJsonStr(pictureVO.getTags()));
+        if (pictureVO.getPicPalette() != null) {
+            picture.setPicPalette(JSONUtil.toJsonStr(pictureVO.getPicPalette()));
+        }
         return picture;
     }
 
@@ -155,6 +165,9 @@ public class PictureVo implements Serializable {
         BeanUtils.copyProperties(picture, pictureVO);
         // 类型不同，需要转换  
         pictureVO.setTags(JSONUtil.toList(picture.getTags(), String.class));
+        if (StrUtil.isNotBlank(picture.getPicPalette())) {
+            pictureVO.setPicPalette(JSONUtil.toList(picture.getPicPalette(), PaletteColor.class));
+        }
         return pictureVO;
     }
 }
@@ -0,0 +1,57 @@
+package com.xzc.buyipicturebackend.model.vo.space;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 空间额度对账统计（自上次清零以来的累计值）
+ *
+ * @author xuzhichao
+ */
+@Data
+public class SpaceQuotaReconcileVo implements Serializable {
+
+    /**
+     * 已检查的空间数
+     */
+    private Long checkedCount;
+
+    /**
+     * 修正的空间数
+     */
+    private Long repairedCount;
+
+    /**
+     * 因额度变更进行中而跳过的空间数
+     */
+    private Long skippedCount;
+
+    /**
+     * 修正的容量偏差（绝对值之和）
+     */
+    private Long sizeDrift;
+
+    /**
+     * 修正的条数偏差（绝对值之和）
+     */
+    private Long countDrift;
+
+    /**
+     * 最近一批统计查询的耗时（毫秒）
+     */
+    private Long lastQueryMillis;
+
+    /**
+     * 当前对账游标（空间id），0 表示新一轮从头开始
+     */
+    private Long cursor;
+
+    /**
+     * 最近一次对账时间
+     */
+    private Date lastRunTime;
+
+    private static final long serialVersionUID = 1L;
+}
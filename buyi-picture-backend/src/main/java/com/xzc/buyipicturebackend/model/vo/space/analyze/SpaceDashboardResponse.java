@@ -0,0 +1,52 @@
+package com.xzc.buyipicturebackend.model.vo.space.analyze;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 空间分析看板 响应类
+ *
+ * @author xuzhichao
+ */
+@Data
+public class SpaceDashboardResponse implements Serializable {
+
+    /**
+     * 资源使用情况
+     */
+    private SpaceUsageAnalyzeResponse usage;
+
+    /**
+     * 分类分析
+     */
+    private List<SpaceCategoryAnalyzeResponse> categoryList;
+
+    /**
+     * 标签分析
+     */
+    private List<SpaceTagAnalyzeResponse> tagList;
+
+    /**
+     * 大小分布
+     */
+    private List<SpaceSizeAnalyzeResponse> sizeList;
+
+    /**
+     * 大小分位数
+     */
+    private SpaceSizePercentileResponse sizePercentile;
+
+    /**
+     * 上传行为（范围内所有用户）
+     */
+    private List<SpaceUserAnalyzeResponse> userList;
+
+    /**
+     * 空间使用排行（仅全空间分析时返回）
+     */
+    private List<SpaceRankAnalyzeResponse> rankList;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,51 @@
+package com.xzc.buyipicturebackend.model.vo.space.analyze;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 空间使用排行分析 响应类
+ *
+ * @author xuzhichao
+ */
+@Data
+public class SpaceRankAnalyzeResponse implements Serializable {
+
+    /**
+     * 空间 id
+     */
+    private Long id;
+
+    /**
+     * 空间名称
+     */
+    private String spaceName;
+
+    /**
+     * 创建用户 id
+     */
+    private Long userId;
+
+    /**
+     * 已用容量
+     */
+    private Long totalSize;
+
+    /**
+     * 图片数量
+     */
+    private Long totalCount;
+
+    /**
+     * 名次（从 1 开始）
+     */
+    private Integer rankNo;
+
+    /**
+     * 排行值（容量、数量或当日容量增长）
+     */
+    private Long score;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,33 @@
+package com.xzc.buyipicturebackend.model.vo.space.analyze;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 空间排名历史 响应类
+ *
+ * @author xuzhichao
+ */
+@Data
+@AllArgsConstructor
+public class SpaceRankHistoryResponse implements Serializable {
+
+    /**
+     * 快照日期（yyyy-MM-dd）
+     */
+    private String snapshotDate;
+
+    /**
+     * 名次
+     */
+    private Integer rankNo;
+
+    /**
+     * 排行值
+     */
+    private Long score;
+
+    private static final long serialVersionUID = 1L;
+}
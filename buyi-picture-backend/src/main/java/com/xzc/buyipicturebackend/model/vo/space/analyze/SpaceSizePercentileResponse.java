@@ -0,0 +1,36 @@
+package com.xzc.buyipicturebackend.model.vo.space.analyze;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 空间图片大小分位数分析 响应类（近似值，相对误差见 picture.size-analyze.sketch-relative-accuracy）
+ *
+ * @author xuzhichao
+ */
+@Data
+public class SpaceSizePercentileResponse implements Serializable {
+
+    /**
+     * 图片数量
+     */
+    private Long count;
+
+    /**
+     * 大小中位数（字节）
+     */
+    private Long p50;
+
+    /**
+     * 大小 90 分位数（字节）
+     */
+    private Long p90;
+
+    /**
+     * 大小 99 分位数（字节）
+     */
+    private Long p99;
+
+    private static final long serialVersionUID = 1L;
+}
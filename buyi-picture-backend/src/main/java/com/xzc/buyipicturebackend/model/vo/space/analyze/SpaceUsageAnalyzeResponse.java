@@ -42,5 +42,15 @@ public class SpaceUsageAnalyzeResponse implements Serializable {
      */
     private Double countUsageRatio;
 
+    /**
+     * 上传过图片的用户数（包含图片已删除的用户）
+     */
+    private Long uploaderCount;
+
+    /**
+     * 上传用户数是否为估计值（HyperLogLog，标准误差约 0.81%）
+     */
+    private Boolean approximate;
+
     private static final long serialVersionUID = 1L;
 }
@@ -4,10 +4,12 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.xzc.buyipicturebackend.api.aliyun.model.CreateOutPaintingTaskResponse;
 import com.xzc.buyipicturebackend.api.aliyun.model.CreatePictureOutPaintingTaskRequest;
+import com.xzc.buyipicturebackend.api.imagesearch.model.ImageSearchResult;
 import com.xzc.buyipicturebackend.model.dto.picture.*;
 import com.xzc.buyipicturebackend.model.entity.Picture;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.xzc.buyipicturebackend.model.entity.User;
+import com.xzc.buyipicturebackend.model.vo.picture.DuplicateReportVo;
 import com.xzc.buyipicturebackend.model.vo.picture.PictureVo;
 
 import javax.servlet.http.HttpServletRequest;
@@ -55,6 +57,31 @@ public interface PictureService extends IService<Picture> {
      */
     QueryWrapper<Picture> getQueryWrapper(PictureQueryRequest pictureQueryRequest);
 
+    /**
+     * 分页查询图片
+     * 总数走计数缓存，宽泛条件下可使用近似总数；请求中 exactCount 为 true 时精确统计
+     *
+     * @param pictureQueryRequest PictureQueryRequest
+     * @return Page<Picture>
+     */
+    Page<Picture> listPictureByPage(PictureQueryRequest pictureQueryRequest);
+
+    /**
+     * 分页查询图片卡片（图库列表），只查询卡片展示需要的列
+     *
+     * @param pictureQueryRequest PictureQueryRequest
+     * @return Page<Picture>
+     */
+    Page<Picture> listPictureCardByPage(PictureQueryRequest pictureQueryRequest);
+
+    /**
+     * 根据 id 获取图片详情，只查询 PictureVo 需要的列
+     *
+     * @param id 图片id
+     * @return Picture
+     */
+    Picture getPictureDetailById(long id);
+
     /**
      * 获取单个图片的封装
      *
@@ -82,6 +109,14 @@ public interface PictureService extends IService<Picture> {
      */
     void validPicture(Picture picture);
 
+    /**
+     * 更新图片（管理员）
+     *
+     * @param pictureUpdateRequest PictureUpdateRequest
+     * @param loginUser            登录用户
+     */
+    void updatePicture(PictureUpdateRequest pictureUpdateRequest, User loginUser);
+
     /**
      * 图片审核（管理员）
      *
@@ -135,6 +170,14 @@ public interface PictureService extends IService<Picture> {
      */
     void deletePicture(long pictureId, User loginUser);
 
+    /**
+     * 批量删除图片
+     *
+     * @param pictureDeleteByBatchRequest 批量删除图片请求
+     * @param loginUser                   用户
+     */
+    void deletePictureByBatch(PictureDeleteByBatchRequest pictureDeleteByBatchRequest, User loginUser);
+
     /**
      * 删除图片在cos中的存储文件
      * 异步执行
@@ -173,6 +216,56 @@ public interface PictureService extends IService<Picture> {
      */
     List<PictureVo> searchPictureByColor(Long spaceId, String picColor, User loginUser);
 
+    /**
+     * 以图搜图（站内感知哈希优先，无结果时调用360搜图）
+     *
+     * @param searchPictureByPictureRequest 图片id请求
+     * @return List<ImageSearchResult>
+     */
+    List<ImageSearchResult> searchPictureByPicture(SearchPictureByPictureRequest searchPictureByPictureRequest);
+
+    /**
+     * 获取视觉相似的图片（“更多相似”）
+     *
+     * @param pictureId 图片id
+     * @return List<PictureVo>
+     */
+    List<PictureVo> listSimilarPictureVo(long pictureId);
+
+    /**
+     * 后台分析空间中的近似重复图片
+     *
+     * @param spaceId   空间id
+     * @param loginUser 用户
+     */
+    void analyzeDuplicatePictures(Long spaceId, User loginUser);
+
+    /**
+     * 获取空间最近一次的重复图片分析报告
+     *
+     * @param spaceId 空间id
+     * @return 报告，没有分析过时返回 null
+     */
+    DuplicateReportVo getDuplicateReport(Long spaceId);
+
+    /**
+     * 一键合并空间中的重复图片（每组保留一张，其余删除并释放额度）
+     *
+     * @param spaceId   空间id
+     * @param loginUser 用户
+     * @return 删除的图片数
+     */
+    int mergeDuplicatePictures(Long spaceId, User loginUser);
+
+    /**
+     * 根据调色板搜索图片（空间或公共图库）
+     *
+     * @param searchPictureByPaletteRequest 目标颜色及空间id
+     * @param loginUser                     用户
+     * @return List<PictureVo>
+     */
+    List<PictureVo> searchPictureByPalette(SearchPictureByPaletteRequest searchPictureByPaletteRequest, User loginUser);
+
     /**
      * 批量修改图片分类或标签或名称
      *
@@ -0,0 +1,43 @@
+package com.xzc.buyipicturebackend.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.xzc.buyipicturebackend.model.entity.PictureTag;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author xuzhichao
+ * @description 针对表【picture_tag(图片标签关联)】的数据库操作Service
+ */
+public interface PictureTagService extends IService<PictureTag> {
+
+    /**
+     * 同步单张图片的标签关联（以 picture.tags 为准，先删后插），并按增减量更新标签统计
+     * 需在更新图片的同一事务中调用
+     *
+     * @param pictureId 图片id
+     * @param spaceId   图片所在空间，公共图库为 null
+     * @param tags      标签列表（为空则清空该图片的标签关联）
+     */
+    void syncPictureTags(Long pictureId, Long spaceId, List<String> tags);
+
+    /**
+     * 批量将同一空间内多张图片的标签关联替换为同一组标签，并按增减量更新标签统计
+     * 需在更新图片的同一事务中调用
+     *
+     * @param pictureIds 图片id集合
+     * @param spaceId    图片所在空间，公共图库为 null
+     * @param tags       标签列表
+     */
+    void syncPictureTags(Collection<Long> pictureIds, Long spaceId, List<String> tags);
+
+    /**
+     * 删除同一空间内图片的所有标签关联，并扣减标签统计
+     * 需在删除图片的同一事务中调用
+     *
+     * @param pictureIds 图片id集合
+     * @param spaceId    图片所在空间，公共图库为 null
+     */
+    void removeByPictureIds(Collection<Long> pictureIds, Long spaceId);
+}
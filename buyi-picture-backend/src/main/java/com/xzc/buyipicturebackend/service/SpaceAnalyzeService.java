@@ -1,7 +1,6 @@
 package com.xzc.buyipicturebackend.service;
 
 import com.xzc.buyipicturebackend.model.dto.space.analyze.*;
-import com.xzc.buyipicturebackend.model.entity.Space;
 import com.xzc.buyipicturebackend.model.entity.User;
 import com.xzc.buyipicturebackend.model.vo.space.analyze.*;
 
@@ -50,6 +49,15 @@ public interface SpaceAnalyzeService {
      */
     List<SpaceSizeAnalyzeResponse> getSpaceSizeAnalyze(SpaceSizeAnalyzeRequest spaceSizeAnalyzeRequest, User loginUser);
 
+    /**
+     * 空间图片大小的分位数分析
+     *
+     * @param spaceSizeAnalyzeRequest 空间图片大小分析请求类
+     * @param loginUser               登录用户
+     * @return 分析结果
+     */
+    SpaceSizePercentileResponse getSpaceSizePercentile(SpaceSizeAnalyzeRequest spaceSizeAnalyzeRequest, User loginUser);
+
     /**
      * 空间中用户上传行为分析
      *
@@ -66,5 +74,23 @@ public interface SpaceAnalyzeService {
      * @param loginUser               登录用户
      * @return 分析结果
      */
-    List<Space> getSpaceRankAnalyze(SpaceRankAnalyzeRequest spaceRankAnalyzeRequest, User loginUser);
+    List<SpaceRankAnalyzeResponse> getSpaceRankAnalyze(SpaceRankAnalyzeRequest spaceRankAnalyzeRequest, User loginUser);
+
+    /**
+     * 空间排名历史
+     *
+     * @param spaceRankHistoryRequest 空间排名历史请求类
+     * @param loginUser               登录用户
+     * @return 按日期升序的排名
+     */
+    List<SpaceRankHistoryResponse> getSpaceRankHistory(SpaceRankHistoryRequest spaceRankHistoryRequest, User loginUser);
+
+    /**
+     * 空间分析看板（一次返回所有分析结果）
+     *
+     * @param spaceDashboardRequest 空间分析看板请求类
+     * @param loginUser             登录用户
+     * @return 看板结果
+     */
+    SpaceDashboardResponse getSpaceDashboard(SpaceDashboardRequest spaceDashboardRequest, User loginUser);
 }
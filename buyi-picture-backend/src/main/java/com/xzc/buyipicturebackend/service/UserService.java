@@ -8,6 +8,7 @@ import com.xzc.buyipicturebackend.model.vo.user.LoginUserVo;
 import com.xzc.buyipicturebackend.model.vo.user.UserVo;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -84,6 +85,14 @@ public interface UserService extends IService<User> {
      */
     List<UserVo> getUserVoList(List<User> userList);
 
+    /**
+     * 根据id批量查询用户，只查询 UserVo 需要的列
+     *
+     * @param userIds 用户id集合
+     * @return 用户列表
+     */
+    List<User> listUserVoColumnsByIds(Collection<Long> userIds);
+
     /**
      * 根据用户查询分页请求 构造QueryWrapper
      *
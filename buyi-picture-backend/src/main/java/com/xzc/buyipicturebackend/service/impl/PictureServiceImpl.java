@@ -17,11 +17,27 @@ import com.xzc.buyipicturebackend.api.aliyun.AliyunAiApi;
 import com.xzc.buyipicturebackend.api.aliyun.model.CreateOutPaintingTaskRequest;
 import com.xzc.buyipicturebackend.api.aliyun.model.CreateOutPaintingTaskResponse;
 import com.xzc.buyipicturebackend.api.aliyun.model.CreatePictureOutPaintingTaskRequest;
+import com.xzc.buyipicturebackend.api.imagesearch.ImageSearchApiFacade;
+import com.xzc.buyipicturebackend.api.imagesearch.model.ImageSearchResult;
 import com.xzc.buyipicturebackend.exception.BusinessException;
 import com.xzc.buyipicturebackend.exception.ErrorCode;
 import com.xzc.buyipicturebackend.exception.ThrowUtils;
+import com.xzc.buyipicturebackend.manager.cache.PictureCountCacheManager;
+import com.xzc.buyipicturebackend.manager.cache.SpaceDashboardCacheManager;
+import com.xzc.buyipicturebackend.manager.color.PictureColorIndexManager;
+import com.xzc.buyipicturebackend.manager.color.PicturePaletteIndexManager;
 import com.xzc.buyipicturebackend.manager.delete.DeleteManager;
 import com.xzc.buyipicturebackend.manager.download.DownloadManager;
+import com.xzc.buyipicturebackend.manager.quota.SpaceQuotaManager;
+import com.xzc.buyipicturebackend.manager.rollup.PictureDailyStatManager;
+import com.xzc.buyipicturebackend.manager.rollup.PictureSizeSketchManager;
+import com.xzc.buyipicturebackend.manager.rollup.PictureUsageRollupManager;
+import com.xzc.buyipicturebackend.manager.rollup.UploaderCardinalityManager;
+import com.xzc.buyipicturebackend.manager.search.PictureSearchManager;
+import com.xzc.buyipicturebackend.manager.search.PublicGalleryIndexManager;
+import com.xzc.buyipicturebackend.manager.similar.DuplicatePictureManager;
+import com.xzc.buyipicturebackend.manager.similar.PictureFeatureIndexManager;
+import com.xzc.buyipicturebackend.manager.similar.PictureHashIndexManager;
 import com.xzc.buyipicturebackend.manager.upload.FilePictureUpload;
 import com.xzc.buyipicturebackend.manager.upload.PictureUploadTemplate;
 import com.xzc.buyipicturebackend.manager.upload.UrlPictureUpload;
@@ -30,40 +46,48 @@ import com.xzc.buyipicturebackend.model.dto.picture.*;
 import com.xzc.buyipicturebackend.model.entity.Picture;
 import com.xzc.buyipicturebackend.model.entity.Space;
 import com.xzc.buyipicturebackend.model.entity.User;
+import com.xzc.buyipicturebackend.model.enums.DuplicateReportStatusEnum;
 import com.xzc.buyipicturebackend.model.enums.PictureReviewStatusEnum;
+import com.xzc.buyipicturebackend.model.enums.PictureSortFieldEnum;
+import com.xzc.buyipicturebackend.model.vo.picture.DuplicateClusterVo;
+import com.xzc.buyipicturebackend.model.vo.picture.DuplicateReportVo;
 import com.xzc.buyipicturebackend.model.vo.picture.PictureVo;
 import com.xzc.buyipicturebackend.model.vo.user.UserVo;
 import com.xzc.buyipicturebackend.service.PictureService;
+import com.xzc.buyipicturebackend.service.PictureTagService;
 import com.xzc.buyipicturebackend.service.SpaceService;
 import com.xzc.buyipicturebackend.service.UserService;
-import com.xzc.buyipicturebackend.utils.ColorSimilarUtils;
+import com.xzc.buyipicturebackend.utils.ColorLabUtils;
+import com.xzc.buyipicturebackend.utils.QuerySortUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.springframework.beans.BeanUtils;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.DigestUtils;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.awt.*;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * @author xuzhichao
@@ -76,6 +100,19 @@ import java.util.stream.Collectors;
 public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         implements PictureService {
 
+    /**
+     * 图库卡片需要的列
+     */
+    private static final String[] CARD_COLUMNS = {"id", "url", "thumbnailUrl", "name", "category", "tags",
+            "userId", "spaceId", "picColor", "createTime", "editTime"};
+
+    /**
+     * 图片详情需要的列（PictureVo 的字段，不含审核信息）
+     */
+    private static final String[] DETAIL_COLUMNS = {"id", "url", "webpUrl", "thumbnailUrl", "name", "introduction",
+            "category", "tags", "picSize", "picWidth", "picHeight", "picScale", "picFormat", "userId", "spaceId",
+            "picColor", "picPalette", "createTime", "editTime", "updateTime"};
+
     @Resource
     private DownloadManager downloadManager;
 
@@ -106,6 +143,69 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
     @Resource
     private AliyunAiApi aliyunAiApi;
 
+    @Resource
+    private ImageSearchApiFacade imageSearchApiFacade;
+
+    @Resource
+    private PictureCountCacheManager pictureCountCacheManager;
+
+    @Resource
+    private PictureTagService pictureTagService;
+
+    @Resource
+    private PictureSearchManager pictureSearchManager;
+
+    @Resource
+    private PublicGalleryIndexManager publicGalleryIndexManager;
+
+    @Resource
+    private PictureColorIndexManager pictureColorIndexManager;
+
+    @Resource
+    private PicturePaletteIndexManager picturePaletteIndexManager;
+
+    @Resource
+    private PictureHashIndexManager pictureHashIndexManager;
+
+    @Resource
+    private PictureFeatureIndexManager pictureFeatureIndexManager;
+
+    @Resource
+    private DuplicatePictureManager duplicatePictureManager;
+
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
+
+    @Resource
+    private PictureUsageRollupManager pictureUsageRollupManager;
+
+    @Resource
+    private PictureSizeSketchManager pictureSizeSketchManager;
+
+    @Resource
+    private PictureDailyStatManager pictureDailyStatManager;
+
+    @Resource
+    private SpaceDashboardCacheManager spaceDashboardCacheManager;
+
+    @Resource
+    private UploaderCardinalityManager uploaderCardinalityManager;
+
+    /**
+     * 批量编辑时每条 SQL 处理的图片数
+     */
+    private static final int BATCH_EDIT_CHUNK_SIZE = 1000;
+
+    /**
+     * 单次批量删除最多的图片数
+     */
+    private static final int BATCH_DELETE_MAX_SIZE = 1000;
+
+    /**
+     * 清除分页缓存时每次 SCAN 的数量
+     */
+    private static final int CACHE_SCAN_COUNT = 1000;
+
     /**
      * 上传图片（可重新上传）（重新上传时，暂为直接在云中多上传一张图片，旧图片保留了，暂未删除）
      * 用户和管理员皆可上传
@@ -136,19 +236,13 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
             //if (!loginUser.getId().equals(space.getUserId())) {
             //    throw new BusinessException(ErrorCode.NO_AUTH_ERROR, "没有空间权限");
             //}
-            // 校验额度
-            if (space.getTotalCount() >= space.getMaxCount()) {
-                throw new BusinessException(ErrorCode.OPERATION_ERROR, "空间条数已满");
-            }
-            if (space.getTotalSize() >= space.getMaxSize()) {
-                throw new BusinessException(ErrorCode.OPERATION_ERROR, "空间容量已满");
-            }
         }
 
         //如果是更新图片
+        Picture oldPicture = null;
         if (pictureId != null) {
             // 校验图片是否存在
-            Picture oldPicture = this.getById(pictureId);
+            oldPicture = this.getById(pictureId);
             ThrowUtils.throwIf(oldPicture == null, ErrorCode.NOT_FOUND_ERROR, "图片不存在");
 
             // 仅本人或管理员可编辑或修改图片的相关信息
@@ -172,11 +266,64 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
                     throw new BusinessException(ErrorCode.PARAMS_ERROR, "空间 id 不一致");
                 }
             }
-            //更新图片时删除原图片
-            // 删COS资源文件
+        }
+
+        // 预占额度（重新上传不占条数），上传或入库失败时归还
+        Long finalSpaceId = spaceId;
+        long reservedCount = oldPicture == null ? 1 : 0;
+        if (finalSpaceId != null) {
+            spaceQuotaManager.reserve(finalSpaceId, reservedCount);
+        }
+        Picture picture;
+        try {
+            picture = uploadAndSavePicture(inputSource, pictureUploadRequest, pictureId, finalSpaceId, loginUser);
+        } catch (RuntimeException e) {
+            if (finalSpaceId != null) {
+                spaceQuotaManager.cancel(finalSpaceId, reservedCount);
+            }
+            throw e;
+        }
+        if (oldPicture != null) {
+            //更新图片成功后删除原图片的COS资源文件
             deletePictureFile(oldPicture);
         }
+        // 重新上传时只计入新旧图片的大小之差
+        long oldSize = oldPicture == null || oldPicture.getPicSize() == null ? 0L : oldPicture.getPicSize();
+        if (finalSpaceId != null) {
+            spaceQuotaManager.confirm(finalSpaceId, picture.getPicSize() - oldSize);
+        }
+        pictureUsageRollupManager.record(finalSpaceId, picture.getPicSize() - oldSize, reservedCount);
+        pictureSizeSketchManager.record(finalSpaceId, Collections.singletonList(picture.getPicSize()),
+                oldPicture == null ? Collections.emptyList() : Collections.singletonList(oldSize));
+        uploaderCardinalityManager.record(finalSpaceId, picture.getUserId());
+        spaceDashboardCacheManager.bumpVersion(finalSpaceId);
+        duplicatePictureManager.invalidateReport(finalSpaceId);
+
+        pictureCountCacheManager.invalidate();
+        pictureSearchManager.refreshPicture(picture.getId());
+        publicGalleryIndexManager.refreshPicture(picture.getId());
+        pictureColorIndexManager.putPicture(picture);
+        picturePaletteIndexManager.refreshPicture(picture.getId());
+        pictureHashIndexManager.refreshPicture(picture.getId());
+        pictureFeatureIndexManager.refreshPicture(picture.getId());
+
+        PictureVo pictureVO = PictureVo.objToVo(picture);
+        pictureVO.setUser(UserVo.objToVo(loginUser));
+        return pictureVO;
+    }
 
+    /**
+     * 上传图片文件并保存图片记录（额度由调用方预占和确认）
+     *
+     * @param inputSource          输入源（本地文件或url）
+     * @param pictureUploadRequest 上传图片后需填写图片信息
+     * @param pictureId            重新上传时的图片id
+     * @param spaceId              空间id，公共图库为 null
+     * @param loginUser            登录用户
+     * @return 入库的图片
+     */
+    private Picture uploadAndSavePicture(Object inputSource, PictureUploadRequest pictureUploadRequest, Long pictureId,
+                                         Long spaceId, User loginUser) {
         // 按照用户 id 划分目录 => 按照空间划分目录
         String uploadPathPrefix;
         if (spaceId == null) {
@@ -212,6 +359,16 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         picture.setPicScale(uploadPictureResult.getPicScale());
         picture.setPicFormat(uploadPictureResult.getPicFormat());
         picture.setPicColor(uploadPictureResult.getPicColor());
+        // 预计算主色调的 RGB 和 Lab，供按颜色搜索使用
+        Integer picColorRgb = ColorLabUtils.parseRgb(uploadPictureResult.getPicColor());
+        if (picColorRgb != null) {
+            picture.setPicColorRgb(picColorRgb);
+            picture.setPicColorLab(ColorLabUtils.rgbToPackedLab(picColorRgb));
+        }
+        picture.setPicPalette(uploadPictureResult.getPicPalette());
+        picture.setPicPHash(uploadPictureResult.getPicPHash());
+        picture.setPicDHash(uploadPictureResult.getPicDHash());
+        picture.setPicFeature(uploadPictureResult.getPicFeature());
         picture.setUserId(loginUser.getId());
         if (pictureUploadRequest != null && StrUtil.isNotBlank(pictureUploadRequest.getCategory())) {
             picture.setCategory(pictureUploadRequest.getCategory());
@@ -236,25 +393,20 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
             picture.setUpdateTime(new Date());
         }
 
-        // 如果额度更新失败，也不用将图片记录保存
-        Long finalSpaceId = spaceId;
         transactionTemplate.execute(status -> {
             boolean result = this.saveOrUpdate(picture);
             ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "图片上传失败，数据库错误");
-            if (finalSpaceId != null) {
-                boolean update = spaceService.lambdaUpdate()
-                        .eq(Space::getId, finalSpaceId)
-                        .setSql("totalSize = totalSize + " + picture.getPicSize())
-                        .setSql("totalCount = totalCount + 1")
-                        .update();
-                ThrowUtils.throwIf(!update, ErrorCode.OPERATION_ERROR, "额度更新失败");
+            // 新图片计入每日上传统计
+            if (pictureId == null) {
+                pictureDailyStatManager.recordUpload(picture);
+            }
+            // 同步标签关联（未填写标签时不修改原有标签）
+            if (picture.getTags() != null) {
+                pictureTagService.syncPictureTags(picture.getId(), picture.getSpaceId(), pictureUploadRequest.getTags());
             }
             return picture;
         });
-
-        PictureVo pictureVO = PictureVo.objToVo(picture);
-        pictureVO.setUser(UserVo.objToVo(loginUser));
-        return pictureVO;
+        return picture;
     }
 
     /**
@@ -344,20 +496,167 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         queryWrapper.ge(ObjUtil.isNotEmpty(startEditTime), "editTime", startEditTime);
         queryWrapper.lt(ObjUtil.isNotEmpty(endEditTime), "editTime", endEditTime);
         queryWrapper.isNull(nullSpaceId, "spaceId");
-        // JSON 数组查询
+        // 标签查询：走 picture_tag 关联表的 (tag, pictureId) 索引，多个标签取交集
         if (CollUtil.isNotEmpty(tags)) {
-            for (String tag : tags) {
-                queryWrapper.like("tags", "\"" + tag + "\"");
+            List<String> tagList = tags.stream()
+                    .filter(StrUtil::isNotBlank)
+                    .map(String::trim)
+                    .distinct()
+                    .collect(Collectors.toList());
+            if (!tagList.isEmpty()) {
+                String placeholders = IntStream.range(0, tagList.size())
+                        .mapToObj(i -> "{" + i + "}")
+                        .collect(Collectors.joining(","));
+                queryWrapper.apply("id IN (SELECT pictureId FROM picture_tag WHERE tag IN (" + placeholders + ")"
+                        + " GROUP BY pictureId HAVING COUNT(*) = " + tagList.size() + ")", tagList.toArray());
             }
         }
-        // 排序
-        queryWrapper.orderBy(StrUtil.isNotEmpty(sortField), sortOrder.equals("ascend"), sortField);
+        // 排序（仅允许枚举中有索引的字段，相同值按 id 排序）
+        if (StrUtil.isNotBlank(sortField)) {
+            PictureSortFieldEnum sortFieldEnum = PictureSortFieldEnum.getEnumByValue(sortField);
+            ThrowUtils.throwIf(sortFieldEnum == null, ErrorCode.PARAMS_ERROR, "不支持的排序字段");
+            QuerySortUtils.orderBy(queryWrapper, sortFieldEnum.getColumn(), sortOrder);
+        }
         queryWrapper.eq(ObjUtil.isNotEmpty(reviewStatus), "reviewStatus", reviewStatus);
         queryWrapper.like(StrUtil.isNotBlank(reviewMessage), "reviewMessage", reviewMessage);
         queryWrapper.eq(ObjUtil.isNotEmpty(reviewerId), "reviewerId", reviewerId);
         return queryWrapper;
     }
 
+    /**
+     * 分页查询图片
+     * 公共图库的筛选浏览走内存位图索引；有搜索词时走全文索引
+     * 其余查询总数走计数缓存，宽泛条件下可使用近似总数；请求中 exactCount 为 true 时精确统计
+     *
+     * @param pictureQueryRequest PictureQueryRequest
+     * @return Page<Picture>
+     */
+    @Override
+    public Page<Picture> listPictureByPage(PictureQueryRequest pictureQueryRequest) {
+        return listPictureByPage(pictureQueryRequest, null);
+    }
+
+    /**
+     * 分页查询图片卡片（图库列表），只查询卡片展示需要的列
+     *
+     * @param pictureQueryRequest PictureQueryRequest
+     * @return Page<Picture>
+     */
+    @Override
+    public Page<Picture> listPictureCardByPage(PictureQueryRequest pictureQueryRequest) {
+        return listPictureByPage(pictureQueryRequest, CARD_COLUMNS);
+    }
+
+    /**
+     * 根据 id 获取图片详情，只查询 PictureVo 需要的列
+     *
+     * @param id 图片id
+     * @return Picture
+     */
+    @Override
+    public Picture getPictureDetailById(long id) {
+        return this.getOne(new QueryWrapper<Picture>().select(DETAIL_COLUMNS).eq("id", id));
+    }
+
+    /**
+     * 分页查询图片
+     *
+     * @param pictureQueryRequest PictureQueryRequest
+     * @param columns             查询的列，为空时查询全部列
+     * @return Page<Picture>
+     */
+    private Page<Picture> listPictureByPage(PictureQueryRequest pictureQueryRequest, String[] columns) {
+        long current = pictureQueryRequest.getCurrent();
+        long size = pictureQueryRequest.getPageSize();
+        // 公共图库筛选浏览，内存索引直接回答
+        if (!Boolean.TRUE.equals(pictureQueryRequest.getExactCount()) && publicGalleryIndexManager.canServe(pictureQueryRequest)) {
+            return publicGalleryIndexManager.query(pictureQueryRequest);
+        }
+        // 有搜索词时优先走全文索引，按相关度排序（索引不可用、查询失败或单字搜索词时回退为数据库模糊查询）
+        if (pictureSearchManager.canSearch(pictureQueryRequest.getSearchText())) {
+            Page<Picture> searchPage = searchPictureByPage(pictureQueryRequest, columns);
+            if (searchPage != null) {
+                return searchPage;
+            }
+        }
+        // 统计总数时不需要排序
+        PictureQueryRequest countQueryRequest = new PictureQueryRequest();
+        BeanUtils.copyProperties(pictureQueryRequest, countQueryRequest);
+        countQueryRequest.setSortField(null);
+        long total = pictureCountCacheManager.getCount(pictureQueryRequest, getQueryWrapper(countQueryRequest));
+
+        // 总数已知，分页查询时不再执行 COUNT
+        Page<Picture> picturePage = new Page<>(current, size, total, false);
+        // 没有数据或超出最后一页，不需要查询
+        if (total <= 0 || (current - 1) * size >= total) {
+            return picturePage;
+        }
+        QueryWrapper<Picture> queryWrapper = getQueryWrapper(pictureQueryRequest);
+        // 未指定排序字段时按 id 排序，与内存索引的默认顺序一致，翻页结果稳定
+        if (StrUtil.isBlank(pictureQueryRequest.getSortField())) {
+            QuerySortUtils.orderBy(queryWrapper, "id", pictureQueryRequest.getSortOrder());
+        }
+        if (columns != null) {
+            queryWrapper.select(columns);
+        }
+        return this.page(picturePage, queryWrapper);
+    }
+
+    /**
+     * 全文检索分页查询图片
+     * 1.全文索引按相关度返回候选图片id
+     * 2.数据库按其余条件校验候选id（仅查询id，过滤索引中尚未同步的变更）
+     * 3.按相关度顺序分页，再回表查询当前页数据
+     *
+     * @param pictureQueryRequest PictureQueryRequest
+     * @param columns             查询的列，为空时查询全部列
+     * @return Page<Picture>，全文索引查询失败时返回 null
+     */
+    private Page<Picture> searchPictureByPage(PictureQueryRequest pictureQueryRequest, String[] columns) {
+        long current = pictureQueryRequest.getCurrent();
+        long size = pictureQueryRequest.getPageSize();
+        List<Long> rankedIdList = pictureSearchManager.search(pictureQueryRequest);
+        if (rankedIdList == null) {
+            return null;
+        }
+        if (rankedIdList.isEmpty()) {
+            return new Page<>(current, size, 0, false);
+        }
+
+        // 搜索词已由索引匹配，数据库只校验其余条件
+        PictureQueryRequest filterQueryRequest = new PictureQueryRequest();
+        BeanUtils.copyProperties(pictureQueryRequest, filterQueryRequest);
+        filterQueryRequest.setSearchText(null);
+        filterQueryRequest.setSortField(null);
+        QueryWrapper<Picture> filterQueryWrapper = getQueryWrapper(filterQueryRequest);
+        filterQueryWrapper.select("id").in("id", rankedIdList);
+        Set<Long> validIdSet = this.listObjs(filterQueryWrapper, id -> Long.valueOf(String.valueOf(id)))
+                .stream()
+                .collect(Collectors.toSet());
+        List<Long> matchedIdList = rankedIdList.stream()
+                .filter(validIdSet::contains)
+                .collect(Collectors.toList());
+
+        // 按相关度分页
+        Page<Picture> picturePage = new Page<>(current, size, matchedIdList.size(), false);
+        long fromIndex = (current - 1) * size;
+        if (fromIndex >= matchedIdList.size()) {
+            return picturePage;
+        }
+        List<Long> pageIdList = matchedIdList.subList((int) fromIndex,
+                (int) Math.min(fromIndex + size, matchedIdList.size()));
+        List<Picture> pagePictureList = columns == null ? this.listByIds(pageIdList)
+                : this.list(new QueryWrapper<Picture>().select(columns).in("id", pageIdList));
+        Map<Long, Picture> pictureMap = pagePictureList.stream()
+                .collect(Collectors.toMap(Picture::getId, picture -> picture));
+        List<Picture> pictureList = pageIdList.stream()
+                .map(pictureMap::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        picturePage.setRecords(pictureList);
+        return picturePage;
+    }
+
     /**
      * 获取单个图片的封装
      *
@@ -372,9 +671,10 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         // 关联查询用户信息
         Long userId = picture.getUserId();
         if (userId != null && userId > 0) {
-            User user = userService.getById(userId);
-            UserVo userVO = userService.getUserVo(user);
-            pictureVO.setUser(userVO);
+            List<User> userList = userService.listUserVoColumnsByIds(Collections.singletonList(userId));
+            if (!userList.isEmpty()) {
+                pictureVO.setUser(userService.getUserVo(userList.get(0)));
+            }
         }
         return pictureVO;
     }
@@ -402,15 +702,16 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         // 1.关联查询用户信息
         // 提取图片对应的userId，去重
         Set<Long> userIdSet = pictureList.stream().map(Picture::getUserId).collect(Collectors.toSet());
-        // 根据userId查询用户详细信息，分组后得到userId与用户详细信息的一一对应。（List<User>列表中其实只有一个用户元素）
-        Map<Long, List<User>> userIdUserListMap = userService.listByIds(userIdSet).stream()
-                .collect(Collectors.groupingBy(User::getId));
+        // 根据userId查询用户信息（只查询 UserVo 需要的列），得到userId与用户信息的一一对应
+        Map<Long, User> userIdUserMap = userService.listUserVoColumnsByIds(userIdSet).stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
 
-        // 2.填充信息
+        // 2.填充信息（用户已被删除时不填充）
         pictureVoList.forEach(pictureVO -> {
-            Long userId = pictureVO.getUserId();
-            User user = userIdUserListMap.get(userId).get(0);
-            pictureVO.setUser(userService.getUserVo(user));
+            User user = userIdUserMap.get(pictureVO.getUserId());
+            if (user != null) {
+                pictureVO.setUser(userService.getUserVo(user));
+            }
         });
 
         pictureVoPage.setRecords(pictureVoList);
@@ -440,6 +741,45 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         }
     }
 
+    /**
+     * 更新图片（管理员）
+     *
+     * @param pictureUpdateRequest PictureUpdateRequest
+     * @param loginUser            登录用户
+     */
+    @Override
+    public void updatePicture(PictureUpdateRequest pictureUpdateRequest, User loginUser) {
+        // DTO转换实体类
+        Picture picture = new Picture();
+        BeanUtils.copyProperties(pictureUpdateRequest, picture);
+        picture.setTags(JSONUtil.toJsonStr(pictureUpdateRequest.getTags()));
+
+        // 校验图片id,url,简介
+        validPicture(picture);
+
+        // 判断图片是否存在
+        Picture oldPicture = this.getById(picture.getId());
+        ThrowUtils.throwIf(oldPicture == null, ErrorCode.NOT_FOUND_ERROR);
+
+        // 补充审核参数（管理员更新图片，自动过审）
+        fillReviewParams(picture, loginUser, true);
+
+        // 更新，同步标签关联
+        transactionTemplate.execute(status -> {
+            boolean result = this.updateById(picture);
+            ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "更新失败，数据库错误");
+            if (pictureUpdateRequest.getTags() != null) {
+                pictureTagService.syncPictureTags(picture.getId(), oldPicture.getSpaceId(), pictureUpdateRequest.getTags());
+            }
+            return true;
+        });
+        spaceDashboardCacheManager.bumpVersion(oldPicture.getSpaceId());
+        duplicatePictureManager.invalidateReport(oldPicture.getSpaceId());
+        pictureCountCacheManager.invalidate();
+        pictureSearchManager.refreshPicture(picture.getId());
+        publicGalleryIndexManager.refreshPicture(picture.getId());
+    }
+
     /**
      * 图片审核（管理员）
      *
@@ -471,6 +811,12 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         updatePicture.setReviewTime(new Date());
         boolean result = this.updateById(updatePicture);
         ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "审核失败，数据库错误");
+        pictureCountCacheManager.invalidate();
+        pictureSearchManager.refreshPicture(id);
+        publicGalleryIndexManager.refreshPicture(id);
+        picturePaletteIndexManager.refreshPicture(id);
+        pictureHashIndexManager.refreshPicture(id);
+        pictureFeatureIndexManager.refreshPicture(id);
     }
 
     /**
@@ -614,8 +960,6 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
      */
     @Override
     public Page<PictureVo> getDataFromCacheOrDb(PictureQueryRequest pictureQueryRequest, HttpServletRequest request) {
-        long current = pictureQueryRequest.getCurrent();
-        long size = pictureQueryRequest.getPageSize();
         // 构建缓存 key （将查询条件pictureQueryRequest作为key）
         String queryCondition = JSONUtil.toJsonStr(pictureQueryRequest);
         String hashKey = DigestUtils.md5DigestAsHex(queryCondition.getBytes());
@@ -636,8 +980,8 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
             return JSONUtil.toBean(cachedValue, Page.class);
         }
 
-        // 3. 查询数据库
-        Page<Picture> picturePage = this.page(new Page<>(current, size), getQueryWrapper(pictureQueryRequest));
+        // 3. 查询数据库（总数走计数缓存，只查询卡片需要的列）
+        Page<Picture> picturePage = listPictureCardByPage(pictureQueryRequest);
         Page<PictureVo> pictureVoPage = getPictureVoPage(picturePage, request);
 
         // 4. 更新缓存
@@ -657,13 +1001,27 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
     public void deleteAllCache() {
         // 1. 清除本地缓存
         LOCAL_CACHE.invalidateAll();
+        pictureCountCacheManager.invalidate();
 
-        // 2. 清除 Redis 缓存
+        // 2. 清除 Redis 缓存（SCAN 分批遍历，不用 KEYS 阻塞 Redis）
         String keyPattern = "buyipicture:listPictureVOByPage:*";
-        Set<String> keys = stringRedisTemplate.keys(keyPattern);
-        if (keys != null && !keys.isEmpty()) {
-            stringRedisTemplate.delete(keys);
-        }
+        ScanOptions scanOptions = ScanOptions.scanOptions().match(keyPattern).count(CACHE_SCAN_COUNT).build();
+        stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+            List<byte[]> batch = new ArrayList<>(CACHE_SCAN_COUNT);
+            try (Cursor<byte[]> cursor = connection.scan(scanOptions)) {
+                while (cursor.hasNext()) {
+                    batch.add(cursor.next());
+                    if (batch.size() >= CACHE_SCAN_COUNT) {
+                        connection.del(batch.toArray(new byte[0][]));
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                connection.del(batch.toArray(new byte[0][]));
+            }
+            return null;
+        });
     }
 
     /**
@@ -681,29 +1039,165 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         // 校验权限：公共图库的图片仅本人或管理员可删除；私有图库的图片仅本人可删除
         //checkPictureAuth(loginUser, picture);
 
-        // 开启事务，更新数据库并释放空间额度
-        transactionTemplate.execute(status -> {
-            // 操作数据库
-            boolean result = this.removeById(pictureId);
-            ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "删除数据库记录失败，数据库错误");
-            // 释放额度
-            Long spaceId = picture.getSpaceId();
+        // 开启事务，更新数据库，提交后释放空间额度
+        Long spaceId = picture.getSpaceId();
+        if (spaceId != null) {
+            spaceQuotaManager.beginRelease(spaceId);
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                // 操作数据库
+                boolean result = this.removeById(pictureId);
+                ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "删除数据库记录失败，数据库错误");
+                pictureTagService.removeByPictureIds(Collections.singletonList(pictureId), spaceId);
+                return true;
+            });
+        } catch (RuntimeException e) {
             if (spaceId != null) {
-                boolean update = spaceService.lambdaUpdate()
-                        .eq(Space::getId, spaceId)
-                        .setSql("totalSize = totalSize - " + picture.getPicSize())
-                        .setSql("totalCount = totalCount - 1")
-                        .update();
-                ThrowUtils.throwIf(!update, ErrorCode.OPERATION_ERROR, "额度更新失败");
+                spaceQuotaManager.release(spaceId, 0, 0);
             }
-            return true;
-        });
+            throw e;
+        }
+        long picSize = picture.getPicSize() == null ? 0L : picture.getPicSize();
+        if (spaceId != null) {
+            spaceQuotaManager.release(spaceId, picSize, 1);
+        }
+        pictureUsageRollupManager.record(spaceId, -picSize, -1);
+        pictureSizeSketchManager.record(spaceId, Collections.emptyList(), Collections.singletonList(picSize));
+        spaceDashboardCacheManager.bumpVersion(spaceId);
 
         deletePictureFile(picture);
         deleteAllCache();
+        pictureSearchManager.deletePictures(Collections.singletonList(pictureId));
+        publicGalleryIndexManager.refreshPicture(pictureId);
+        pictureColorIndexManager.removePicture(picture.getSpaceId(), pictureId);
+        picturePaletteIndexManager.removePicture(picture.getSpaceId(), pictureId);
+        pictureHashIndexManager.removePicture(picture.getSpaceId(), pictureId);
+        pictureFeatureIndexManager.removePicture(picture.getSpaceId(), pictureId);
         log.info("成功删除图片资源并清除缓存:{}", picture);
     }
 
+    /**
+     * 批量删除图片
+     * 公共图库的图片仅本人或管理员可删除，空间图片的权限由注解按 spaceId 校验
+     *
+     * @param pictureDeleteByBatchRequest 批量删除图片请求
+     * @param loginUser                   用户
+     */
+    @Override
+    public void deletePictureByBatch(PictureDeleteByBatchRequest pictureDeleteByBatchRequest, User loginUser) {
+        // 校验参数
+        List<Long> pictureIdList = pictureDeleteByBatchRequest.getPictureIdList();
+        Long spaceId = pictureDeleteByBatchRequest.getSpaceId();
+        ThrowUtils.throwIf(CollUtil.isEmpty(pictureIdList), ErrorCode.PARAMS_ERROR);
+        List<Long> sortedIdList = pictureIdList.stream().filter(Objects::nonNull).distinct().sorted().collect(Collectors.toList());
+        ThrowUtils.throwIf(sortedIdList.size() > BATCH_DELETE_MAX_SIZE, ErrorCode.PARAMS_ERROR, "单次最多删除 " + BATCH_DELETE_MAX_SIZE + " 张图片");
+
+        // 查询出所需要删除的图片，仅选择校验权限需要的字段（删除时在事务内重新锁定读取）
+        List<Picture> pictureList = this.lambdaQuery()
+                .select(Picture::getId, Picture::getUserId)
+                .eq(spaceId != null, Picture::getSpaceId, spaceId)
+                .isNull(spaceId == null, Picture::getSpaceId)
+                .in(Picture::getId, sortedIdList)
+                .list();
+        ThrowUtils.throwIf(CollUtil.isEmpty(pictureList), ErrorCode.NOT_FOUND_ERROR, "删除图片不存在或不属于该空间");
+        if (spaceId == null && !userService.isAdmin(loginUser)) {
+            boolean allOwned = pictureList.stream().allMatch(picture -> loginUser.getId().equals(picture.getUserId()));
+            ThrowUtils.throwIf(!allOwned, ErrorCode.NO_AUTH_ERROR);
+        }
+
+        // 一个事务内删除，一次释放额度，统一清理文件、缓存和索引
+        List<Long> deleteIds = pictureList.stream().map(Picture::getId).collect(Collectors.toList());
+        List<Picture> removedList = removePicturesAndReleaseQuota(spaceId, deleteIds);
+        log.info("批量删除图片, spaceId = {}, count = {}", spaceId, removedList.size());
+    }
+
+    /**
+     * 批量删除同一空间的图片：一个事务内删除记录，提交后一次性释放额度，之后统一清理文件、缓存和索引
+     * 事务内先锁定仍未删除的行，只删除并释放这些行，并发删除同一批图片时不会重复释放额度
+     *
+     * @param spaceId    空间id，公共图库为 null
+     * @param pictureIds 图片id
+     * @return 本次实际删除的图片
+     */
+    private List<Picture> removePicturesAndReleaseQuota(Long spaceId, Collection<Long> pictureIds) {
+        return removePicturesAndReleaseQuota(spaceId, pictureIds, UnaryOperator.identity());
+    }
+
+    /**
+     * 批量删除同一空间的图片，删除前在事务内按锁定的最新数据筛选需要删除的行
+     *
+     * @param spaceId    空间id，公共图库为 null
+     * @param pictureIds 需要锁定的图片id
+     * @param selector   从锁定的图片（包含 id、url、webpUrl、thumbnailUrl、picSize、picWidth、picHeight、picPHash、picDHash）中选出需要删除的图片
+     * @return 本次实际删除的图片
+     */
+    private List<Picture> removePicturesAndReleaseQuota(Long spaceId, Collection<Long> pictureIds,
+                                                        UnaryOperator<List<Picture>> selector) {
+        if (CollUtil.isEmpty(pictureIds)) {
+            return Collections.emptyList();
+        }
+        if (spaceId != null) {
+            spaceQuotaManager.beginRelease(spaceId);
+        }
+        List<Picture> pictureList;
+        try {
+            pictureList = transactionTemplate.execute(status -> {
+                // 锁定仍未删除的行（逻辑删除条件由框架追加），已被其他请求删除的行不再计入
+                List<Picture> lockedList = this.lambdaQuery()
+                        .select(Picture::getId, Picture::getSpaceId, Picture::getUrl, Picture::getWebpUrl,
+                                Picture::getThumbnailUrl, Picture::getPicSize, Picture::getPicWidth,
+                                Picture::getPicHeight, Picture::getPicPHash, Picture::getPicDHash)
+                        .eq(spaceId != null, Picture::getSpaceId, spaceId)
+                        .isNull(spaceId == null, Picture::getSpaceId)
+                        .in(Picture::getId, pictureIds)
+                        .last("FOR UPDATE")
+                        .list();
+                List<Picture> removeList = lockedList.isEmpty() ? lockedList : selector.apply(lockedList);
+                if (removeList.isEmpty()) {
+                    return removeList;
+                }
+                List<Long> removeIds = removeList.stream().map(Picture::getId).collect(Collectors.toList());
+                boolean result = this.removeByIds(removeIds);
+                ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "删除数据库记录失败，数据库错误");
+                pictureTagService.removeByPictureIds(removeIds, spaceId);
+                return removeList;
+            });
+        } catch (RuntimeException e) {
+            if (spaceId != null) {
+                spaceQuotaManager.release(spaceId, 0, 0);
+            }
+            throw e;
+        }
+        if (CollUtil.isEmpty(pictureList)) {
+            if (spaceId != null) {
+                spaceQuotaManager.release(spaceId, 0, 0);
+            }
+            return Collections.emptyList();
+        }
+        List<Long> removedIds = pictureList.stream().map(Picture::getId).collect(Collectors.toList());
+        long totalSize = pictureList.stream().mapToLong(picture -> picture.getPicSize() == null ? 0L : picture.getPicSize()).sum();
+        if (spaceId != null) {
+            spaceQuotaManager.release(spaceId, totalSize, removedIds.size());
+        }
+        pictureUsageRollupManager.record(spaceId, -totalSize, -removedIds.size());
+        pictureSizeSketchManager.record(spaceId, Collections.emptyList(),
+                pictureList.stream().map(Picture::getPicSize).collect(Collectors.toList()));
+        spaceDashboardCacheManager.bumpVersion(spaceId);
+
+        deletePictureFiles(pictureList);
+        deleteAllCache();
+        pictureSearchManager.deletePictures(removedIds);
+        publicGalleryIndexManager.refreshPictures(removedIds);
+        for (Long pictureId : removedIds) {
+            pictureColorIndexManager.removePicture(spaceId, pictureId);
+            picturePaletteIndexManager.removePicture(spaceId, pictureId);
+            pictureHashIndexManager.removePicture(spaceId, pictureId);
+            pictureFeatureIndexManager.removePicture(spaceId, pictureId);
+        }
+        return pictureList;
+    }
+
     /**
      * 删除图片在cos中的存储文件
      * 异步执行
@@ -737,6 +1231,31 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         }
     }
 
+    /**
+     * 批量删除图片在cos中的存储文件（原图、压缩图、缩略图合并后按批删除）
+     * 异步执行
+     *
+     * @param pictureList 图片
+     */
+    private void deletePictureFiles(List<Picture> pictureList) {
+        List<String> keys = new ArrayList<>(pictureList.size() * 3);
+        for (Picture picture : pictureList) {
+            for (String url : Arrays.asList(picture.getUrl(), picture.getWebpUrl(), picture.getThumbnailUrl())) {
+                if (StrUtil.isBlank(url)) {
+                    continue;
+                }
+                try {
+                    keys.add(new URI(url).getPath());
+                } catch (URISyntaxException e) {
+                    log.error("处理图片删除时遇到格式错误的 URL。图片 URL: {}", url, e);
+                }
+            }
+        }
+        if (!keys.isEmpty()) {
+            deleteManager.deleteObjects(keys);
+        }
+    }
+
     /**
      * 编辑图片
      * 公共图库的图片管理员和本人可编辑
@@ -770,9 +1289,20 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         }
         fillReviewParams(picture, loginUser, true);
 
-        // 操作数据库
-        boolean result = this.updateById(picture);
-        ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "编辑失败，数据库错误");
+        // 操作数据库，同步标签关联
+        transactionTemplate.execute(status -> {
+            boolean result = this.updateById(picture);
+            ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "编辑失败，数据库错误");
+            if (pictureEditRequest.getTags() != null) {
+                pictureTagService.syncPictureTags(id, oldPicture.getSpaceId(), pictureEditRequest.getTags());
+            }
+            return true;
+        });
+        spaceDashboardCacheManager.bumpVersion(oldPicture.getSpaceId());
+        duplicatePictureManager.invalidateReport(oldPicture.getSpaceId());
+        pictureCountCacheManager.invalidate();
+        pictureSearchManager.refreshPicture(id);
+        publicGalleryIndexManager.refreshPicture(id);
     }
 
     /**
@@ -820,42 +1350,244 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
             throw new BusinessException(ErrorCode.NO_AUTH_ERROR, "没有空间访问权限");
         }*/
 
-        // 查询空间下所有图片（包含主色调的）
-        List<Picture> pictureList = this.lambdaQuery()
-                .eq(Picture::getSpaceId, spaceId)
-                .isNotNull(Picture::getPicColor)
-                .list();
+        Integer targetRgb = ColorLabUtils.parseRgb(picColor);
+        ThrowUtils.throwIf(targetRgb == null, ErrorCode.PARAMS_ERROR, "颜色格式错误");
+
+        // 空间颜色索引中取色差最小的前12个
+        List<Long> pictureIdList = pictureColorIndexManager.searchTopK(spaceId, targetRgb, 12);
         // 没有查到，就直接返回空列表
-        if (CollUtil.isEmpty(pictureList)) {
+        if (CollUtil.isEmpty(pictureIdList)) {
+            return Collections.emptyList();
+        }
+
+        // 按色差顺序返回
+        Map<Long, Picture> pictureMap = this.list(new QueryWrapper<Picture>().select(CARD_COLUMNS).in("id", pictureIdList))
+                .stream()
+                .collect(Collectors.toMap(Picture::getId, picture -> picture));
+        return pictureIdList.stream()
+                .map(pictureMap::get)
+                .filter(Objects::nonNull)
+                .map(PictureVo::objToVo)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 以图搜图
+     * 优先在站内（图片所在空间或公共图库）按感知哈希搜索相似图片；
+     * 站内没有结果（如历史图片尚未回填哈希）时再调用360搜图，第三方失败不影响返回
+     *
+     * @param searchPictureByPictureRequest 图片id请求
+     * @return List<ImageSearchResult>
+     */
+    @Override
+    public List<ImageSearchResult> searchPictureByPicture(SearchPictureByPictureRequest searchPictureByPictureRequest) {
+        ThrowUtils.throwIf(searchPictureByPictureRequest == null, ErrorCode.PARAMS_ERROR);
+        Long pictureId = searchPictureByPictureRequest.getPictureId();
+        ThrowUtils.throwIf(pictureId == null || pictureId <= 0, ErrorCode.PARAMS_ERROR);
+        Picture picture = this.getOne(new QueryWrapper<Picture>()
+                .select("id", "url", "spaceId", "picPHash", "picDHash")
+                .eq("id", pictureId));
+        ThrowUtils.throwIf(picture == null, ErrorCode.NOT_FOUND_ERROR);
+
+        // 1.站内相似图片，按相似度顺序返回
+        List<Long> pictureIdList = pictureHashIndexManager.searchSimilar(picture, 50);
+        if (CollUtil.isNotEmpty(pictureIdList)) {
+            Map<Long, Picture> pictureMap = this.list(new QueryWrapper<Picture>().select(CARD_COLUMNS).in("id", pictureIdList))
+                    .stream()
+                    .collect(Collectors.toMap(Picture::getId, similarPicture -> similarPicture));
+            List<ImageSearchResult> resultList = pictureIdList.stream()
+                    .map(pictureMap::get)
+                    .filter(Objects::nonNull)
+                    .map(similarPicture -> {
+                        ImageSearchResult imageSearchResult = new ImageSearchResult();
+                        imageSearchResult.setImgUrl(similarPicture.getThumbnailUrl());
+                        imageSearchResult.setTitle(similarPicture.getName());
+                        imageSearchResult.setImgkey(String.valueOf(similarPicture.getId()));
+                        imageSearchResult.setHttp(similarPicture.getUrl());
+                        imageSearchResult.setHttps(similarPicture.getUrl());
+                        return imageSearchResult;
+                    })
+                    .collect(Collectors.toList());
+            if (!resultList.isEmpty()) {
+                return resultList;
+            }
+        }
+
+        // 2.站外兜底：360搜图（结果按图片缓存，分页并发、限时）
+        try {
+            return imageSearchApiFacade.searchImages(pictureId, picture.getUrl());
+        } catch (Exception e) {
+            log.warn("360搜图失败, pictureId = {}", pictureId, e);
             return Collections.emptyList();
         }
+    }
+
+    /**
+     * 获取视觉相似的图片（“更多相似”）
+     * 在图片所在空间内搜索，公共图库的图片只推荐已过审的公共图片
+     *
+     * @param pictureId 图片id
+     * @return List<PictureVo>
+     */
+    @Override
+    public List<PictureVo> listSimilarPictureVo(long pictureId) {
+        ThrowUtils.throwIf(pictureId <= 0, ErrorCode.PARAMS_ERROR);
+        Picture picture = this.getOne(new QueryWrapper<Picture>()
+                .select("id", "spaceId", "picFeature")
+                .eq("id", pictureId));
+        ThrowUtils.throwIf(picture == null, ErrorCode.NOT_FOUND_ERROR);
 
-        // 把要查询的目标颜色转为Color对象
-        Color targetColor = Color.decode(picColor);
-        // 计算相似度，并排序
-        List<Picture> sortedPictures = pictureList.stream()
-                .sorted(
-                        Comparator.comparingDouble(picture -> {
-                            //提取图片主色调
-                            String hexColor = picture.getPicColor();
-                            //没有主色调的图片放到最后
-                            if (StrUtil.isBlank(hexColor)) {
-                                return Double.MAX_VALUE;
-                            }
-                            Color pictureColor = Color.decode(hexColor);
-                            // 计算出的相似度越大越相似。返回负值，则return越小排序越靠前
-                            return -ColorSimilarUtils.calculateSimilarity(targetColor, pictureColor);
-                        })
-                )
-                //取前12个
-                .limit(12)
+        List<Long> pictureIdList = pictureFeatureIndexManager.searchSimilar(picture, 12);
+        if (CollUtil.isEmpty(pictureIdList)) {
+            return Collections.emptyList();
+        }
+
+        // 按相似度顺序返回
+        Map<Long, Picture> pictureMap = this.list(new QueryWrapper<Picture>().select(CARD_COLUMNS).in("id", pictureIdList))
+                .stream()
+                .collect(Collectors.toMap(Picture::getId, similarPicture -> similarPicture));
+        return pictureIdList.stream()
+                .map(pictureMap::get)
+                .filter(Objects::nonNull)
+                .map(PictureVo::objToVo)
                 .collect(Collectors.toList());
+    }
 
-        return sortedPictures.stream()
+    /**
+     * 根据调色板搜索图片（图片需同时包含所有目标颜色的相近色）
+     * 指定空间时搜索该空间，否则搜索公共图库中已过审的图片
+     *
+     * @param searchPictureByPaletteRequest 目标颜色及空间id
+     * @param loginUser                     用户
+     * @return List<PictureVo>
+     */
+    @Override
+    public List<PictureVo> searchPictureByPalette(SearchPictureByPaletteRequest searchPictureByPaletteRequest, User loginUser) {
+        // 校验参数
+        ThrowUtils.throwIf(searchPictureByPaletteRequest == null, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
+        List<String> colors = searchPictureByPaletteRequest.getColors();
+        ThrowUtils.throwIf(CollUtil.isEmpty(colors) || colors.size() > 5, ErrorCode.PARAMS_ERROR, "请选择1~5种颜色");
+        List<Integer> targetRgbs = new ArrayList<>();
+        for (String color : colors) {
+            Integer rgb = ColorLabUtils.parseRgb(color);
+            ThrowUtils.throwIf(rgb == null, ErrorCode.PARAMS_ERROR, "颜色格式错误");
+            targetRgbs.add(rgb);
+        }
+        Long spaceId = searchPictureByPaletteRequest.getSpaceId();
+        if (spaceId != null) {
+            Space space = spaceService.getById(spaceId);
+            ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "空间不存在");
+        }
+
+        // 调色板索引中取匹配度最高的前20个
+        List<Long> pictureIdList = picturePaletteIndexManager.search(spaceId, targetRgbs, 20);
+        if (CollUtil.isEmpty(pictureIdList)) {
+            return Collections.emptyList();
+        }
+
+        // 按匹配度顺序返回
+        Map<Long, Picture> pictureMap = this.list(new QueryWrapper<Picture>().select(CARD_COLUMNS).in("id", pictureIdList))
+                .stream()
+                .collect(Collectors.toMap(Picture::getId, picture -> picture));
+        return pictureIdList.stream()
+                .map(pictureMap::get)
+                .filter(Objects::nonNull)
                 .map(PictureVo::objToVo)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 后台分析空间中的近似重复图片
+     *
+     * @param spaceId   空间id
+     * @param loginUser 用户
+     */
+    @Override
+    public void analyzeDuplicatePictures(Long spaceId, User loginUser) {
+        ThrowUtils.throwIf(spaceId == null, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
+        Space space = spaceService.getById(spaceId);
+        ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "空间不存在");
+        boolean started = duplicatePictureManager.startAnalysis(spaceId);
+        ThrowUtils.throwIf(!started, ErrorCode.OPERATION_ERROR, "分析正在进行中，请稍后查看报告");
+    }
+
+    /**
+     * 获取空间最近一次的重复图片分析报告
+     * 报告生成后被删除的图片会被剔除，不足两张的组不再返回
+     *
+     * @param spaceId 空间id
+     * @return 报告，没有分析过时返回 null
+     */
+    @Override
+    public DuplicateReportVo getDuplicateReport(Long spaceId) {
+        ThrowUtils.throwIf(spaceId == null, ErrorCode.PARAMS_ERROR);
+        DuplicateReportVo report = duplicatePictureManager.getReport(spaceId);
+        if (report == null || CollUtil.isEmpty(report.getClusters())) {
+            return report;
+        }
+        List<Long> pictureIds = report.getClusters().stream()
+                .flatMap(cluster -> cluster.getPictureIds().stream())
+                .collect(Collectors.toList());
+        Map<Long, PictureVo> pictureVoMap = new HashMap<>();
+        for (List<Long> idChunk : CollUtil.split(pictureIds, 1000)) {
+            this.list(new QueryWrapper<Picture>().select(CARD_COLUMNS).eq("spaceId", spaceId).in("id", idChunk))
+                    .forEach(picture -> pictureVoMap.put(picture.getId(), PictureVo.objToVo(picture)));
+        }
+        List<DuplicateClusterVo> clusters = new ArrayList<>();
+        for (DuplicateClusterVo cluster : report.getClusters()) {
+            List<PictureVo> pictures = cluster.getPictureIds().stream()
+                    .map(pictureVoMap::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            if (pictures.size() < 2) {
+                continue;
+            }
+            cluster.setPictures(pictures);
+            cluster.setPictureIds(pictures.stream().map(PictureVo::getId).collect(Collectors.toList()));
+            cluster.setKeepId(pictures.get(0).getId());
+            clusters.add(cluster);
+        }
+        report.setClusters(clusters);
+        report.setClusterCount(clusters.size());
+        report.setDuplicateCount(clusters.stream().mapToInt(cluster -> cluster.getPictures().size() - 1).sum());
+        return report;
+    }
+
+    /**
+     * 一键合并空间中的重复图片：每组保留一张，其余批量删除并一次性释放额度
+     * 以最近一次报告为准，报告生成后被删除的图片跳过
+     *
+     * @param spaceId   空间id
+     * @param loginUser 用户
+     * @return 删除的图片数
+     */
+    @Override
+    public int mergeDuplicatePictures(Long spaceId, User loginUser) {
+        ThrowUtils.throwIf(spaceId == null, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
+        DuplicateReportVo report = duplicatePictureManager.getReport(spaceId);
+        ThrowUtils.throwIf(report == null || !Integer.valueOf(DuplicateReportStatusEnum.DONE.getValue()).equals(report.getStatus()),
+                ErrorCode.OPERATION_ERROR, "请先完成重复图片分析");
+        if (CollUtil.isEmpty(report.getClusters())) {
+            return 0;
+        }
+
+        // 1.报告中所有组的图片（包括保留的图片，锁定后其他请求无法同时删除或修改）
+        List<Long> pictureIds = report.getClusters().stream()
+                .flatMap(cluster -> cluster.getPictureIds().stream())
+                .collect(Collectors.toList());
+
+        // 2.事务内按最新的感知哈希重新校验（报告可能已过时），只删除仍与保留图片近似重复的图片，并释放额度
+        List<DuplicateClusterVo> clusters = report.getClusters();
+        List<Picture> removedList = removePicturesAndReleaseQuota(spaceId, pictureIds,
+                lockedList -> duplicatePictureManager.selectRemovable(clusters, lockedList));
+        duplicatePictureManager.deleteReport(spaceId);
+        log.info("合并空间重复图片, spaceId = {}, count = {}", spaceId, removedList.size());
+        return removedList.size();
+    }
+
     /**
      * 批量修改图片分类或标签或名称
      *
@@ -863,7 +1595,6 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
      * @param loginUser                 用户
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void editPictureByBatch(PictureEditByBatchRequest pictureEditByBatchRequest, User loginUser) {
         // 校验参数
         //ThrowUtils.throwIf(loginUser == null, ErrorCode.NO_AUTH_ERROR);
@@ -876,48 +1607,64 @@ public class PictureServiceImpl extends ServiceImpl<PictureMapper, Picture>
         ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "空间不存在");
         //ThrowUtils.throwIf(!loginUser.getId().equals(space.getUserId()), ErrorCode.NO_AUTH_ERROR, "无空间访问权限");
 
-        // 查询出所需要修改的图片，仅选择需要的字段
-        List<Picture> pictureList = this.lambdaQuery()
-                .select(Picture::getId, Picture::getSpaceId)
-                .eq(Picture::getSpaceId, spaceId)
-                .in(Picture::getId, pictureIdList)
-                .list();
+        // 查询出所需要修改的图片，仅选择需要的字段（按 id 分块，避免 IN 列表过长）
+        List<Long> sortedIdList = pictureIdList.stream().filter(Objects::nonNull).distinct().sorted().collect(Collectors.toList());
+        List<Picture> pictureList = new ArrayList<>(sortedIdList.size());
+        for (List<Long> idChunk : CollUtil.split(sortedIdList, BATCH_EDIT_CHUNK_SIZE)) {
+            pictureList.addAll(this.lambdaQuery()
+                    .select(Picture::getId, Picture::getSpaceId)
+                    .eq(Picture::getSpaceId, spaceId)
+                    .in(Picture::getId, idChunk)
+                    .orderByAsc(Picture::getId)
+                    .list());
+        }
         ThrowUtils.throwIf(CollUtil.isEmpty(pictureList), ErrorCode.NOT_FOUND_ERROR, "编辑图片不存在或不属于该空间");
+        List<Long> idList = pictureList.stream().map(Picture::getId).collect(Collectors.toList());
 
-        // 修改图片名称
-        String nameRule = pictureEditByBatchRequest.getNameRule();
-        fillPictureWithNameRule(pictureList, nameRule);
-
-        // 线程池分批并发处理
-        String category = pictureEditByBatchRequest.getCategory();
-        List<String> tags = pictureEditByBatchRequest.getTags();
-        int batchSize = 100;
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        for (int i = 0; i < pictureList.size(); i += batchSize) {
-            int endIndex = Math.min(i + batchSize, pictureList.size());
-            List<Picture> batch = pictureList.subList(i, endIndex);
-
-            //异步处理每批数据
-            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                batch.forEach(picture -> {
-                    //编辑分类和标签
-                    if (StrUtil.isNotBlank(category)) {
-                        picture.setCategory(category);
-                    }
-                    if (CollUtil.isNotEmpty(tags)) {
-                        picture.setTags(JSONUtil.toJsonStr(tags));
+        // 所有修改在同一事务、同一连接中执行，提交后再刷新缓存和索引
+        transactionTemplate.execute(status -> {
+            // 1.分类和标签对所有图片相同：按 id 分块执行 UPDATE ... WHERE id IN (...)
+            String category = pictureEditByBatchRequest.getCategory();
+            List<String> tags = pictureEditByBatchRequest.getTags();
+            boolean updateCategory = StrUtil.isNotBlank(category);
+            boolean updateTags = CollUtil.isNotEmpty(tags);
+            if (updateCategory || updateTags) {
+                String tagsJson = updateTags ? JSONUtil.toJsonStr(tags) : null;
+                for (List<Long> idChunk : CollUtil.split(idList, BATCH_EDIT_CHUNK_SIZE)) {
+                    boolean result = this.lambdaUpdate()
+                            .set(updateCategory, Picture::getCategory, category)
+                            .set(updateTags, Picture::getTags, tagsJson)
+                            .eq(Picture::getSpaceId, spaceId)
+                            .in(Picture::getId, idChunk)
+                            .update();
+                    ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "批量编辑图片失败");
+                    // 同步标签关联
+                    if (updateTags) {
+                        pictureTagService.syncPictureTags(idChunk, spaceId, tags);
                     }
-                });
-                //更新
-                boolean result = this.updateBatchById(batch);
-                ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "批量编辑图片失败");
-            }, customExecutor);
+                }
+            }
 
-            futures.add(future);
-        }
+            // 2.名称每张不同：只更新名称，一次 JDBC 批量执行（连接参数 rewriteBatchedStatements 合并发送）
+            String nameRule = pictureEditByBatchRequest.getNameRule();
+            if (StrUtil.isNotBlank(nameRule)) {
+                List<Picture> renameList = pictureList.stream().map(picture -> {
+                    Picture renamePicture = new Picture();
+                    renamePicture.setId(picture.getId());
+                    return renamePicture;
+                }).collect(Collectors.toList());
+                fillPictureWithNameRule(renameList, nameRule);
+                boolean result = this.updateBatchById(renameList, BATCH_EDIT_CHUNK_SIZE);
+                ThrowUtils.throwIf(!result, ErrorCode.OPERATION_ERROR, "批量编辑图片失败");
+            }
+            return true;
+        });
 
-        //等待所有任务完成
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        spaceDashboardCacheManager.bumpVersion(spaceId);
+        duplicatePictureManager.invalidateReport(spaceId);
+        pictureCountCacheManager.invalidate();
+        pictureSearchManager.refreshPictures(idList);
+        publicGalleryIndexManager.refreshPictures(idList);
     }
 
     /**
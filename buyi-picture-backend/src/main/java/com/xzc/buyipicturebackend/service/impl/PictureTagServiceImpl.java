@@ -0,0 +1,138 @@
+package com.xzc.buyipicturebackend.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.xzc.buyipicturebackend.manager.rollup.TagStatManager;
+import com.xzc.buyipicturebackend.mapper.PictureTagMapper;
+import com.xzc.buyipicturebackend.model.entity.PictureTag;
+import com.xzc.buyipicturebackend.service.PictureTagService;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * @author xuzhichao
+ * @description 针对表【picture_tag(图片标签关联)】的数据库操作Service实现
+ */
+@Service
+public class PictureTagServiceImpl extends ServiceImpl<PictureTagMapper, PictureTag>
+        implements PictureTagService {
+
+    /**
+     * 单条 INSERT 最多插入的行数
+     */
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    @Resource
+    private TagStatManager tagStatManager;
+
+    /**
+     * 同步单张图片的标签关联（以 picture.tags 为准，先删后插）
+     *
+     * @param pictureId 图片id
+     * @param spaceId   图片所在空间，公共图库为 null
+     * @param tags      标签列表（为空则清空该图片的标签关联）
+     */
+    @Override
+    public void syncPictureTags(Long pictureId, Long spaceId, List<String> tags) {
+        if (pictureId == null) {
+            return;
+        }
+        syncPictureTags(Collections.singletonList(pictureId), spaceId, tags);
+    }
+
+    /**
+     * 批量将同一空间内多张图片的标签关联替换为同一组标签
+     *
+     * @param pictureIds 图片id集合
+     * @param spaceId    图片所在空间，公共图库为 null
+     * @param tags       标签列表
+     */
+    @Override
+    public void syncPictureTags(Collection<Long> pictureIds, Long spaceId, List<String> tags) {
+        if (CollUtil.isEmpty(pictureIds)) {
+            return;
+        }
+        // 原有关联计 -1，新关联计 +1，未变化的标签相互抵消，不写统计
+        Map<String, Long> tagDelta = removeTags(pictureIds);
+
+        List<String> tagList = normalizeTags(tags);
+        if (!tagList.isEmpty()) {
+            List<PictureTag> pictureTagList = new ArrayList<>();
+            for (Long pictureId : pictureIds) {
+                for (String tag : tagList) {
+                    PictureTag pictureTag = new PictureTag();
+                    pictureTag.setPictureId(pictureId);
+                    pictureTag.setTag(tag);
+                    pictureTagList.add(pictureTag);
+                }
+            }
+            // 多值 INSERT，按批次拆分避免单条 SQL 过长
+            for (List<PictureTag> batch : CollUtil.split(pictureTagList, INSERT_BATCH_SIZE)) {
+                this.baseMapper.insertIgnoreBatch(batch);
+            }
+            for (String tag : tagList) {
+                tagDelta.merge(tag, (long) pictureIds.size(), Long::sum);
+            }
+        }
+        tagStatManager.applyDelta(spaceId, tagDelta);
+    }
+
+    /**
+     * 删除同一空间内图片的所有标签关联
+     *
+     * @param pictureIds 图片id集合
+     * @param spaceId    图片所在空间，公共图库为 null
+     */
+    @Override
+    public void removeByPictureIds(Collection<Long> pictureIds, Long spaceId) {
+        if (CollUtil.isEmpty(pictureIds)) {
+            return;
+        }
+        tagStatManager.applyDelta(spaceId, removeTags(pictureIds));
+    }
+
+    /**
+     * 删除图片的标签关联
+     *
+     * @param pictureIds 图片id集合
+     * @return 被删除的标签 -> 关联图片数的变化（负数）
+     */
+    private Map<String, Long> removeTags(Collection<Long> pictureIds) {
+        Map<String, Long> tagDelta = new HashMap<>();
+        List<PictureTag> oldPictureTagList = this.lambdaQuery()
+                .select(PictureTag::getTag)
+                .in(PictureTag::getPictureId, pictureIds)
+                .list();
+        if (oldPictureTagList.isEmpty()) {
+            return tagDelta;
+        }
+        for (PictureTag pictureTag : oldPictureTagList) {
+            tagDelta.merge(pictureTag.getTag(), -1L, Long::sum);
+        }
+        this.lambdaUpdate()
+                .in(PictureTag::getPictureId, pictureIds)
+                .remove();
+        return tagDelta;
+    }
+
+    /**
+     * 去除空白和重复的标签
+     *
+     * @param tags 标签列表
+     * @return 规范化后的标签列表
+     */
+    private List<String> normalizeTags(List<String> tags) {
+        if (CollUtil.isEmpty(tags)) {
+            return Collections.emptyList();
+        }
+        return tags.stream()
+                .filter(StrUtil::isNotBlank)
+                .map(String::trim)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+}
@@ -1,27 +1,43 @@
 package com.xzc.buyipicturebackend.service.impl;
 
+import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.util.NumberUtil;
-import cn.hutool.core.util.ObjUtil;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.config.PictureSizeAnalyzeConfig;
 import com.xzc.buyipicturebackend.exception.BusinessException;
 import com.xzc.buyipicturebackend.exception.ErrorCode;
 import com.xzc.buyipicturebackend.exception.ThrowUtils;
+import com.xzc.buyipicturebackend.manager.cache.SpaceDashboardCacheManager;
+import com.xzc.buyipicturebackend.manager.quota.SpaceQuotaManager;
+import com.xzc.buyipicturebackend.manager.rank.SpaceRankManager;
+import com.xzc.buyipicturebackend.manager.rollup.PictureDailyStatManager;
+import com.xzc.buyipicturebackend.manager.rollup.PictureSizeSketchManager;
+import com.xzc.buyipicturebackend.manager.rollup.PictureUsageRollupManager;
+import com.xzc.buyipicturebackend.manager.rollup.TagStatManager;
+import com.xzc.buyipicturebackend.manager.rollup.UploaderCardinalityManager;
+import com.xzc.buyipicturebackend.mapper.PictureDailyStatMapper;
+import com.xzc.buyipicturebackend.mapper.SpaceRankSnapshotMapper;
 import com.xzc.buyipicturebackend.model.dto.space.analyze.*;
 import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.entity.PictureDailyStat;
 import com.xzc.buyipicturebackend.model.entity.Space;
+import com.xzc.buyipicturebackend.model.entity.SpaceRankSnapshot;
 import com.xzc.buyipicturebackend.model.entity.User;
+import com.xzc.buyipicturebackend.model.enums.SpaceRankTypeEnum;
 import com.xzc.buyipicturebackend.model.vo.space.analyze.*;
 import com.xzc.buyipicturebackend.service.PictureService;
 import com.xzc.buyipicturebackend.service.SpaceAnalyzeService;
 import com.xzc.buyipicturebackend.service.SpaceService;
 import com.xzc.buyipicturebackend.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
 
 /**
@@ -29,6 +45,7 @@ import java.util.stream.Collectors;
  * @description 空间分析服务实现类
  * @createDate 2025-05-06 16:50:13
  */
+@Slf4j
 @Service
 public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
 
@@ -41,16 +58,51 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
     @Resource
     private PictureService pictureService;
 
+    @Resource
+    private SpaceQuotaManager spaceQuotaManager;
+
+    @Resource
+    private SpaceRankManager spaceRankManager;
+
+    @Resource
+    private PictureUsageRollupManager pictureUsageRollupManager;
+
+    @Resource
+    private SpaceRankSnapshotMapper spaceRankSnapshotMapper;
+
+    @Resource
+    private TagStatManager tagStatManager;
+
+    @Resource
+    private PictureSizeSketchManager pictureSizeSketchManager;
+
+    @Resource
+    private PictureSizeAnalyzeConfig pictureSizeAnalyzeConfig;
+
+    @Resource
+    private PictureDailyStatMapper pictureDailyStatMapper;
+
+    @Resource
+    private SpaceDashboardCacheManager spaceDashboardCacheManager;
+
+    @Resource
+    private UploaderCardinalityManager uploaderCardinalityManager;
+
+    @Resource
+    private ThreadPoolExecutor spaceAnalyzeExecutor;
+
     /**
      * 校验空间分析的权限
      *
      * @param spaceAnalyzeRequest 空间分析公共请求
      * @param loginUser           登录用户
+     * @return 私有空间分析时返回空间，全部或公共图库分析时返回 null
      */
-    private void checkSpaceAnalyzeAuth(SpaceAnalyzeRequest spaceAnalyzeRequest, User loginUser) {
+    private Space checkSpaceAnalyzeAuth(SpaceAnalyzeRequest spaceAnalyzeRequest, User loginUser) {
         if (spaceAnalyzeRequest.isQueryAll() || spaceAnalyzeRequest.isQueryPublic()) {
             // 如果是全空间分析或公共图库分析，则仅管理员可访问
             ThrowUtils.throwIf(!userService.isAdmin(loginUser), ErrorCode.NO_AUTH_ERROR, "仅管理员可进行全部或公共图库分析");
+            return null;
         } else {
             // 用户进行私有空间分析
             Long spaceId = spaceAnalyzeRequest.getSpaceId();
@@ -59,6 +111,7 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
             ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "空间不存在");
             // 校验用户权限，仅管理员和本人有权限
             spaceService.checkSpaceAuth(loginUser, space);
+            return space;
         }
     }
 
@@ -100,45 +153,59 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
         if (spaceUsageAnalyzeRequest.isQueryAll() || spaceUsageAnalyzeRequest.isQueryPublic()) {
             // 仅管理员有权限进行该操作
             ThrowUtils.throwIf(!userService.isAdmin(loginUser), ErrorCode.NO_AUTH_ERROR, "仅管理员可进行全部或公共图库分析");
-
-            // 统计公共图库的资源使用
-            QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
-            queryWrapper.select("picSize");
-            // 添加限定条件。查全部则不添加任何，查公共则spaceId为null
-            fillAnalyzeQueryWrapper(spaceUsageAnalyzeRequest, queryWrapper);
-
-            // 直接返回Object，提升性能节约空间
-            List<Object> pictureObjList = pictureService.getBaseMapper().selectObjs(queryWrapper);
-            long usedSize = pictureObjList.stream().mapToLong(result -> result instanceof Long ? (Long) result : 0).sum();
-            long usedCount = pictureObjList.size();
-            SpaceUsageAnalyzeResponse spaceUsageAnalyzeResponse = new SpaceUsageAnalyzeResponse();
-            spaceUsageAnalyzeResponse.setUsedSize(usedSize);
-            spaceUsageAnalyzeResponse.setUsedCount(usedCount);
-            // 查全部或公共图库则无上限，无比例
-            spaceUsageAnalyzeResponse.setMaxSize(null);
-            spaceUsageAnalyzeResponse.setMaxCount(null);
-            spaceUsageAnalyzeResponse.setSizeUsageRatio(null);
-            spaceUsageAnalyzeResponse.setSizeUsageRatio(null);
-            return spaceUsageAnalyzeResponse;
+            return buildUsageResponse(spaceUsageAnalyzeRequest, null);
         }
         // 私人空间分析
         else {
             Long spaceId = spaceUsageAnalyzeRequest.getSpaceId();
             ThrowUtils.throwIf(spaceId == null || spaceId <= 0, ErrorCode.PARAMS_ERROR);
-            Space space = spaceService.getById(spaceId);
+            Space space = spaceQuotaManager.fillUsage(spaceService.getById(spaceId));
             ThrowUtils.throwIf(space == null, ErrorCode.NOT_FOUND_ERROR, "空间不存在");
             // 权限校验，仅管理员或本人可操作
             spaceService.checkSpaceAuth(loginUser, space);
+            return buildUsageResponse(spaceUsageAnalyzeRequest, space);
+        }
+    }
 
-            SpaceUsageAnalyzeResponse spaceUsageAnalyzeResponse = new SpaceUsageAnalyzeResponse();
-            spaceUsageAnalyzeResponse.setUsedSize(space.getTotalSize());
-            spaceUsageAnalyzeResponse.setUsedCount(space.getTotalCount());
-            spaceUsageAnalyzeResponse.setMaxSize(space.getMaxSize());
-            spaceUsageAnalyzeResponse.setMaxCount(space.getMaxCount());
-            spaceUsageAnalyzeResponse.setSizeUsageRatio(NumberUtil.round(space.getTotalSize() * 100.0 / space.getMaxSize(), 2).doubleValue());
-            spaceUsageAnalyzeResponse.setCountUsageRatio(NumberUtil.round(space.getTotalCount() * 100.0 / space.getMaxCount(), 2).doubleValue());
+    /**
+     * 构造资源使用分析结果（已完成权限校验）
+     *
+     * @param spaceAnalyzeRequest 空间分析公共请求
+     * @param space               私有空间（已填充实时用量），全部或公共图库分析时为 null
+     * @return 分析结果
+     */
+    private SpaceUsageAnalyzeResponse buildUsageResponse(SpaceAnalyzeRequest spaceAnalyzeRequest, Space space) {
+        SpaceUsageAnalyzeResponse spaceUsageAnalyzeResponse = new SpaceUsageAnalyzeResponse();
+        // 上传用户数：默认读取上传时维护的 HyperLogLog（O(1)），关闭近似统计时按每日上传统计精确去重
+        String uploaderScope;
+        if (spaceAnalyzeRequest.isQueryAll()) {
+            uploaderScope = UploaderCardinalityManager.SCOPE_ALL;
+        } else {
+            uploaderScope = UploaderCardinalityManager.scopeOf(space == null ? null : space.getId());
+        }
+        spaceUsageAnalyzeResponse.setUploaderCount(spaceAnalyzeRequest.isApproximate()
+                ? uploaderCardinalityManager.estimate(uploaderScope) : uploaderCardinalityManager.count(uploaderScope));
+        spaceUsageAnalyzeResponse.setApproximate(spaceAnalyzeRequest.isApproximate());
+        if (space == null) {
+            // 读取上传、删除时增量维护的用量汇总，不再逐行读取 picSize
+            long[] usage = pictureUsageRollupManager.getUsage(spaceAnalyzeRequest.isQueryAll()
+                    ? PictureUsageRollupManager.SCOPE_ALL : PictureUsageRollupManager.SCOPE_PUBLIC);
+            spaceUsageAnalyzeResponse.setUsedSize(usage[0]);
+            spaceUsageAnalyzeResponse.setUsedCount(usage[1]);
+            // 查全部或公共图库则无上限，无比例
+            spaceUsageAnalyzeResponse.setMaxSize(null);
+            spaceUsageAnalyzeResponse.setMaxCount(null);
+            spaceUsageAnalyzeResponse.setSizeUsageRatio(null);
+            spaceUsageAnalyzeResponse.setSizeUsageRatio(null);
             return spaceUsageAnalyzeResponse;
         }
+        spaceUsageAnalyzeResponse.setUsedSize(space.getTotalSize());
+        spaceUsageAnalyzeResponse.setUsedCount(space.getTotalCount());
+        spaceUsageAnalyzeResponse.setMaxSize(space.getMaxSize());
+        spaceUsageAnalyzeResponse.setMaxCount(space.getMaxCount());
+        spaceUsageAnalyzeResponse.setSizeUsageRatio(NumberUtil.round(space.getTotalSize() * 100.0 / space.getMaxSize(), 2).doubleValue());
+        spaceUsageAnalyzeResponse.setCountUsageRatio(NumberUtil.round(space.getTotalCount() * 100.0 / space.getMaxCount(), 2).doubleValue());
+        return spaceUsageAnalyzeResponse;
     }
 
     /**
@@ -154,10 +221,16 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
 
         // 权限校验
         checkSpaceAnalyzeAuth(spaceCategoryAnalyzeRequest, loginUser);
+        return analyzeCategory(spaceCategoryAnalyzeRequest);
+    }
 
+    /**
+     * 分类分析（已完成权限校验）
+     */
+    private List<SpaceCategoryAnalyzeResponse> analyzeCategory(SpaceAnalyzeRequest spaceAnalyzeRequest) {
         // 构造查询
         QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
-        fillAnalyzeQueryWrapper(spaceCategoryAnalyzeRequest, queryWrapper);
+        fillAnalyzeQueryWrapper(spaceAnalyzeRequest, queryWrapper);
         queryWrapper.select("category AS category",
                         "COUNT(*) AS count",
                         "SUM(picSize) AS totalSize")
@@ -190,28 +263,28 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
         // 权限校验
         checkSpaceAnalyzeAuth(spaceTagAnalyzeRequest, loginUser);
 
-        // 构造查询
-        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
-        fillAnalyzeQueryWrapper(spaceTagAnalyzeRequest, queryWrapper);
-        queryWrapper.select("tags")
-                .eq("isDelete", 0);
-
-        // 查询
-        List<String> tagsJsonList = pictureService.getBaseMapper().selectObjs(queryWrapper)
-                .stream()
-                .filter(ObjUtil::isNotNull)
-                .map(Object::toString)
-                .collect(Collectors.toList());
+        Integer topN = spaceTagAnalyzeRequest.getTopN();
+        ThrowUtils.throwIf(topN == null || topN <= 0 || topN > 1000, ErrorCode.PARAMS_ERROR, "标签数量需在 1-1000 之间");
+        return analyzeTag(spaceTagAnalyzeRequest, topN);
+    }
 
-        // 合并所有标签并统计使用次数
-        Map<String, Long> tagCountMap = tagsJsonList.stream()
-                .flatMap(tagsJson -> JSONUtil.toList(tagsJson, String.class).stream())
-                .collect(Collectors.groupingBy(tag -> tag, Collectors.counting()));
+    /**
+     * 标签分析（已完成权限校验）
+     */
+    private List<SpaceTagAnalyzeResponse> analyzeTag(SpaceAnalyzeRequest spaceAnalyzeRequest, int topN) {
+        // 读取标签关联变化时增量维护的标签统计，不再读取并解析每张图片的 tags
+        String scope;
+        if (spaceAnalyzeRequest.isQueryAll()) {
+            scope = TagStatManager.SCOPE_ALL;
+        } else if (spaceAnalyzeRequest.isQueryPublic()) {
+            scope = TagStatManager.SCOPE_PUBLIC;
+        } else {
+            scope = TagStatManager.scopeOf(spaceAnalyzeRequest.getSpaceId());
+        }
 
-        // 按关联图片数量降序排序，并转换响应对象
-        return tagCountMap.entrySet().stream()
-                .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()))
-                .map(entry -> new SpaceTagAnalyzeResponse(entry.getKey(), entry.getValue()))
+        // 已按关联图片数量降序排序，转换响应对象
+        return tagStatManager.listTop(scope, topN).stream()
+                .map(tagStat -> new SpaceTagAnalyzeResponse(tagStat.getTag(), tagStat.getCount()))
                 .collect(Collectors.toList());
     }
 
@@ -228,28 +301,106 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
 
         // 权限校验
         checkSpaceAnalyzeAuth(spaceSizeAnalyzeRequest, loginUser);
+        return analyzeSize(spaceSizeAnalyzeRequest);
+    }
 
-        // 构造查询
-        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
-        fillAnalyzeQueryWrapper(spaceSizeAnalyzeRequest, queryWrapper);
-        queryWrapper.select("picSize")
-                .eq("isDelete", 0);
-        // 数据库中为bigint，直接取值可能会映射为Integer，需转换为Long
-        List<Long> picSizeList = pictureService.getBaseMapper().selectObjs(queryWrapper)
-                .stream()
-                .map(size -> ((Number) size).longValue())
+    /**
+     * 大小分布分析（已完成权限校验）
+     */
+    private List<SpaceSizeAnalyzeResponse> analyzeSize(SpaceAnalyzeRequest spaceAnalyzeRequest) {
+        // 分段边界（升序去重）
+        List<Long> boundaries = pictureSizeAnalyzeConfig.getBucketBoundaries().stream()
+                .filter(Objects::nonNull)
+                .filter(boundary -> boundary > 0)
+                .distinct()
+                .sorted()
                 .collect(Collectors.toList());
 
-        // 定义分段范围，使用有序Map，统计对应图片数量
-        Map<String, Long> sizeRangesMapCount = new LinkedHashMap<>();
-        sizeRangesMapCount.put("<100KB", picSizeList.stream().filter(size -> size < 100 * 1024).count());
-        sizeRangesMapCount.put("100KB-500KB", picSizeList.stream().filter(size -> size >= 100 * 1024 && size < 500 * 1024).count());
-        sizeRangesMapCount.put("500KB-1MB", picSizeList.stream().filter(size -> size >= 500 * 1024 && size < 1024 * 1024).count());
-        sizeRangesMapCount.put(">1MB", picSizeList.stream().filter(size -> size >= 1024 * 1024).count());
+        // 在数据库中一次分组统计各分段的图片数量：CASE WHEN picSize < b0 THEN 0 WHEN picSize < b1 THEN 1 ... ELSE n END
+        StringBuilder bucketExpr = new StringBuilder("CASE");
+        for (int i = 0; i < boundaries.size(); i++) {
+            bucketExpr.append(" WHEN IFNULL(picSize, 0) < ").append(boundaries.get(i)).append(" THEN ").append(i);
+        }
+        bucketExpr.append(" ELSE ").append(boundaries.size()).append(" END");
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+        fillAnalyzeQueryWrapper(spaceAnalyzeRequest, queryWrapper);
+        queryWrapper.select(bucketExpr + " AS bucket", "COUNT(*) AS count")
+                .groupBy("bucket");
+        long[] bucketCounts = new long[boundaries.size() + 1];
+        for (Map<String, Object> result : pictureService.getBaseMapper().selectMaps(queryWrapper)) {
+            bucketCounts[((Number) result.get("bucket")).intValue()] = ((Number) result.get("count")).longValue();
+        }
+
+        // 按分段顺序转换响应对象（没有图片的分段数量为 0）
+        List<SpaceSizeAnalyzeResponse> responseList = new ArrayList<>(bucketCounts.length);
+        for (int i = 0; i < bucketCounts.length; i++) {
+            String sizeRange;
+            if (boundaries.isEmpty()) {
+                sizeRange = "全部";
+            } else if (i == 0) {
+                sizeRange = "<" + formatSize(boundaries.get(0));
+            } else if (i == boundaries.size()) {
+                sizeRange = ">" + formatSize(boundaries.get(i - 1));
+            } else {
+                sizeRange = formatSize(boundaries.get(i - 1)) + "-" + formatSize(boundaries.get(i));
+            }
+            responseList.add(new SpaceSizeAnalyzeResponse(sizeRange, bucketCounts[i]));
+        }
+        return responseList;
+    }
 
-        return sizeRangesMapCount.entrySet().stream()
-                .map(entry -> new SpaceSizeAnalyzeResponse(entry.getKey(), entry.getValue()))
-                .collect(Collectors.toList());
+    /**
+     * 空间图片大小的分位数分析
+     *
+     * @param spaceSizeAnalyzeRequest 空间图片大小分析请求类
+     * @param loginUser               登录用户
+     * @return 分析结果
+     */
+    @Override
+    public SpaceSizePercentileResponse getSpaceSizePercentile(SpaceSizeAnalyzeRequest spaceSizeAnalyzeRequest, User loginUser) {
+        ThrowUtils.throwIf(spaceSizeAnalyzeRequest == null, ErrorCode.PARAMS_ERROR);
+
+        // 权限校验
+        checkSpaceAnalyzeAuth(spaceSizeAnalyzeRequest, loginUser);
+        return analyzeSizePercentile(spaceSizeAnalyzeRequest);
+    }
+
+    /**
+     * 大小分位数分析（已完成权限校验）
+     */
+    private SpaceSizePercentileResponse analyzeSizePercentile(SpaceAnalyzeRequest spaceAnalyzeRequest) {
+        // 读取上传、删除时增量维护的大小草图
+        String scope;
+        if (spaceAnalyzeRequest.isQueryAll()) {
+            scope = PictureSizeSketchManager.SCOPE_ALL;
+        } else if (spaceAnalyzeRequest.isQueryPublic()) {
+            scope = PictureSizeSketchManager.SCOPE_PUBLIC;
+        } else {
+            scope = PictureSizeSketchManager.scopeOf(spaceAnalyzeRequest.getSpaceId());
+        }
+        Long[] quantiles = pictureSizeSketchManager.getQuantiles(scope, 0.5, 0.9, 0.99);
+        SpaceSizePercentileResponse spaceSizePercentileResponse = new SpaceSizePercentileResponse();
+        spaceSizePercentileResponse.setCount(pictureSizeSketchManager.getCount(scope));
+        spaceSizePercentileResponse.setP50(quantiles[0]);
+        spaceSizePercentileResponse.setP90(quantiles[1]);
+        spaceSizePercentileResponse.setP99(quantiles[2]);
+        return spaceSizePercentileResponse;
+    }
+
+    /**
+     * 格式化分段边界，如 102400 -> 100KB
+     *
+     * @param size 字节数
+     * @return 格式化结果
+     */
+    private String formatSize(long size) {
+        if (size % (1024 * 1024) == 0) {
+            return size / (1024 * 1024) + "MB";
+        }
+        if (size % 1024 == 0) {
+            return size / 1024 + "KB";
+        }
+        return size + "B";
     }
 
     /**
@@ -269,27 +420,43 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
 
         // 权限校验
         checkSpaceAnalyzeAuth(spaceUserAnalyzeRequest, loginUser);
+        return analyzeUser(spaceUserAnalyzeRequest, userId, spaceUserAnalyzeRequest.getTimeDimension());
+    }
 
-        // 构造查询
-        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
-        fillAnalyzeQueryWrapper(spaceUserAnalyzeRequest, queryWrapper);
-        // 分析用户上传行为，不需要只查询未删除的，凡上传行为均查询
-        queryWrapper.eq("userId", userId);
+    /**
+     * 上传行为分析（已完成权限校验）
+     *
+     * @param spaceAnalyzeRequest 空间分析公共请求
+     * @param userId              用户id，为空时分析范围内所有用户
+     * @param timeDimension       时间维度：day / week / month
+     * @return 分析结果
+     */
+    private List<SpaceUserAnalyzeResponse> analyzeUser(SpaceAnalyzeRequest spaceAnalyzeRequest, Long userId, String timeDimension) {
+        // 构造查询：读取上传时增量维护的每日上传统计，周、月由日数据汇总
+        // 分析用户上传行为，统计包含已删除的图片，凡上传行为均计入
+        QueryWrapper<PictureDailyStat> queryWrapper = new QueryWrapper<>();
+        if (spaceAnalyzeRequest.isQueryPublic() && !spaceAnalyzeRequest.isQueryAll()) {
+            queryWrapper.eq("spaceId", PictureDailyStatManager.PUBLIC_SPACE_ID);
+        } else if (!spaceAnalyzeRequest.isQueryAll()) {
+            queryWrapper.eq("spaceId", spaceAnalyzeRequest.getSpaceId());
+        }
+        // 未指定用户时分析范围内所有用户
+        queryWrapper.eq(userId != null, "userId", userId);
 
         // 分析维度，日周月
-        String timeDimension = spaceUserAnalyzeRequest.getTimeDimension();
+        ThrowUtils.throwIf(timeDimension == null, ErrorCode.PARAMS_ERROR, "未指定时间维度");
         switch (timeDimension) {
             case "day":
-                queryWrapper.select("DATE_FORMAT(createTime,'%Y-%m-%d') AS period",
-                        "COUNT(*) AS count");
+                queryWrapper.select("DATE_FORMAT(day,'%Y-%m-%d') AS period",
+                        "SUM(count) AS count");
                 break;
             case "week":
-                queryWrapper.select("YEARWEEK(createTime) AS period",
-                        "COUNT(*) AS count");
+                queryWrapper.select("YEARWEEK(day) AS period",
+                        "SUM(count) AS count");
                 break;
             case "month":
-                queryWrapper.select("DATE_FORMAT(createTime,'%Y-%m') AS period",
-                        "COUNT(*) AS count");
+                queryWrapper.select("DATE_FORMAT(day,'%Y-%m') AS period",
+                        "SUM(count) AS count");
                 break;
             default:
                 throw new BusinessException(ErrorCode.PARAMS_ERROR, "不支持非日、周、月以外的时间维度");
@@ -299,7 +466,7 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
         queryWrapper.groupBy("period").orderByAsc("period");
 
         // 查询，转换
-        List<Map<String, Object>> results = pictureService.getBaseMapper().selectMaps(queryWrapper);
+        List<Map<String, Object>> results = pictureDailyStatMapper.selectMaps(queryWrapper);
         return results.stream()
                 .map(res -> {
                     String period = res.get("period").toString();
@@ -309,6 +476,79 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 空间分析看板：一次校验权限，在分析线程池中并行执行各项分析，结果按空间版本号缓存
+     *
+     * @param spaceDashboardRequest 空间分析看板请求类
+     * @param loginUser             登录用户
+     * @return 看板结果
+     */
+    @Override
+    public SpaceDashboardResponse getSpaceDashboard(SpaceDashboardRequest spaceDashboardRequest, User loginUser) {
+        ThrowUtils.throwIf(spaceDashboardRequest == null, ErrorCode.PARAMS_ERROR);
+        Integer tagTopN = spaceDashboardRequest.getTagTopN();
+        ThrowUtils.throwIf(tagTopN == null || tagTopN <= 0 || tagTopN > 1000, ErrorCode.PARAMS_ERROR, "标签数量需在 1-1000 之间");
+        Integer rankTopN = spaceDashboardRequest.getRankTopN();
+        ThrowUtils.throwIf(rankTopN == null || rankTopN <= 0 || rankTopN > 100, ErrorCode.PARAMS_ERROR, "排名数量需在 1 到 100 之间");
+        String timeDimension = spaceDashboardRequest.getTimeDimension();
+        ThrowUtils.throwIf(!"day".equals(timeDimension) && !"week".equals(timeDimension) && !"month".equals(timeDimension),
+                ErrorCode.PARAMS_ERROR, "不支持非日、周、月以外的时间维度");
+
+        // 权限校验（只查询一次空间）
+        Space space = checkSpaceAnalyzeAuth(spaceDashboardRequest, loginUser);
+        boolean queryAll = spaceDashboardRequest.isQueryAll();
+
+        // 按范围的版本号读取缓存
+        String scope = queryAll ? SpaceDashboardCacheManager.SCOPE_ALL
+                : SpaceDashboardCacheManager.scopeOf(space == null ? null : space.getId());
+        String cacheKey = spaceDashboardCacheManager.buildCacheKey(scope, tagTopN, timeDimension, rankTopN,
+                spaceDashboardRequest.isApproximate());
+        SpaceDashboardResponse cachedResponse = spaceDashboardCacheManager.get(cacheKey);
+        if (cachedResponse != null) {
+            return cachedResponse;
+        }
+
+        // 并行执行各项分析
+        CompletableFuture<SpaceUsageAnalyzeResponse> usageFuture = CompletableFuture.supplyAsync(
+                () -> buildUsageResponse(spaceDashboardRequest, space == null ? null : spaceQuotaManager.fillUsage(space)),
+                spaceAnalyzeExecutor);
+        CompletableFuture<List<SpaceCategoryAnalyzeResponse>> categoryFuture = CompletableFuture.supplyAsync(
+                () -> analyzeCategory(spaceDashboardRequest), spaceAnalyzeExecutor);
+        CompletableFuture<List<SpaceTagAnalyzeResponse>> tagFuture = CompletableFuture.supplyAsync(
+                () -> analyzeTag(spaceDashboardRequest, tagTopN), spaceAnalyzeExecutor);
+        CompletableFuture<List<SpaceSizeAnalyzeResponse>> sizeFuture = CompletableFuture.supplyAsync(
+                () -> analyzeSize(spaceDashboardRequest), spaceAnalyzeExecutor);
+        CompletableFuture<SpaceSizePercentileResponse> sizePercentileFuture = CompletableFuture.supplyAsync(
+                () -> analyzeSizePercentile(spaceDashboardRequest), spaceAnalyzeExecutor);
+        CompletableFuture<List<SpaceUserAnalyzeResponse>> userFuture = CompletableFuture.supplyAsync(
+                () -> analyzeUser(spaceDashboardRequest, null, timeDimension), spaceAnalyzeExecutor);
+        // 排行仅管理员可查看，只在全空间分析时返回
+        CompletableFuture<List<SpaceRankAnalyzeResponse>> rankFuture = queryAll
+                ? CompletableFuture.supplyAsync(() -> listRank(SpaceRankTypeEnum.SIZE, rankTopN), spaceAnalyzeExecutor)
+                : CompletableFuture.completedFuture(null);
+
+        SpaceDashboardResponse spaceDashboardResponse = new SpaceDashboardResponse();
+        try {
+            CompletableFuture.allOf(usageFuture, categoryFuture, tagFuture, sizeFuture,
+                    sizePercentileFuture, userFuture, rankFuture).join();
+            spaceDashboardResponse.setUsage(usageFuture.join());
+            spaceDashboardResponse.setCategoryList(categoryFuture.join());
+            spaceDashboardResponse.setTagList(tagFuture.join());
+            spaceDashboardResponse.setSizeList(sizeFuture.join());
+            spaceDashboardResponse.setSizePercentile(sizePercentileFuture.join());
+            spaceDashboardResponse.setUserList(userFuture.join());
+            spaceDashboardResponse.setRankList(rankFuture.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof BusinessException) {
+                throw (BusinessException) e.getCause();
+            }
+            log.error("空间分析看板计算失败, scope = {}", scope, e.getCause());
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "空间分析失败");
+        }
+        spaceDashboardCacheManager.put(cacheKey, spaceDashboardResponse);
+        return spaceDashboardResponse;
+    }
+
     /**
      * 空间使用排行分析
      *
@@ -317,18 +557,89 @@ public class SpaceAnalyzeServiceImpl implements SpaceAnalyzeService {
      * @return 分析结果
      */
     @Override
-    public List<Space> getSpaceRankAnalyze(SpaceRankAnalyzeRequest spaceRankAnalyzeRequest, User loginUser) {
+    public List<SpaceRankAnalyzeResponse> getSpaceRankAnalyze(SpaceRankAnalyzeRequest spaceRankAnalyzeRequest, User loginUser) {
         ThrowUtils.throwIf(spaceRankAnalyzeRequest == null, ErrorCode.PARAMS_ERROR);
         ThrowUtils.throwIf(!userService.isAdmin(loginUser), ErrorCode.NO_AUTH_ERROR, "仅管理员可查看空间排行");
+        Integer topN = spaceRankAnalyzeRequest.getTopN();
+        ThrowUtils.throwIf(topN == null || topN <= 0 || topN > 100, ErrorCode.PARAMS_ERROR, "排名数量需在 1 到 100 之间");
+        SpaceRankTypeEnum rankType = getRankType(spaceRankAnalyzeRequest.getRankType());
+        return listRank(rankType, topN);
+    }
 
-        // 构造查询
-        QueryWrapper<Space> queryWrapper = new QueryWrapper<>();
-        queryWrapper.select("id", "spaceName", "userId", "totalSize")
-                .eq("isDelete", 0)
-                .orderByAsc("totalSize")
-                .last("LIMIT " + spaceRankAnalyzeRequest.getTopN());
+    /**
+     * 取排行前 N 名（已完成权限校验）
+     */
+    private List<SpaceRankAnalyzeResponse> listRank(SpaceRankTypeEnum rankType, int topN) {
+        // 从排行有序集合取前 N 名（降序）
+        Set<ZSetOperations.TypedTuple<String>> tuples = spaceRankManager.listTop(rankType, topN);
+        if (tuples.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> spaceIds = tuples.stream().map(tuple -> Long.valueOf(tuple.getValue())).collect(Collectors.toList());
+        Map<Long, Space> spaceMap = spaceService.list(new QueryWrapper<Space>()
+                        .select("id", "spaceName", "userId", "totalSize", "totalCount")
+                        .in("id", spaceIds))
+                .stream()
+                .collect(Collectors.toMap(Space::getId, space -> space));
+
+        // 按排行顺序组装，已删除的空间跳过
+        List<SpaceRankAnalyzeResponse> responseList = new ArrayList<>();
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            Space space = spaceMap.get(Long.valueOf(tuple.getValue()));
+            if (space == null) {
+                continue;
+            }
+            spaceQuotaManager.fillUsage(space);
+            SpaceRankAnalyzeResponse response = new SpaceRankAnalyzeResponse();
+            response.setId(space.getId());
+            response.setSpaceName(space.getSpaceName());
+            response.setUserId(space.getUserId());
+            response.setTotalSize(space.getTotalSize());
+            response.setTotalCount(space.getTotalCount());
+            response.setRankNo(responseList.size() + 1);
+            response.setScore(tuple.getScore() == null ? 0L : tuple.getScore().longValue());
+            responseList.add(response);
+        }
+        return responseList;
+    }
+
+    /**
+     * 空间排名历史（每日快照，只保存各排行的前 100 名，未上榜的日期没有记录）
+     *
+     * @param spaceRankHistoryRequest 空间排名历史请求类
+     * @param loginUser               登录用户
+     * @return 按日期升序的排名
+     */
+    @Override
+    public List<SpaceRankHistoryResponse> getSpaceRankHistory(SpaceRankHistoryRequest spaceRankHistoryRequest, User loginUser) {
+        ThrowUtils.throwIf(spaceRankHistoryRequest == null || spaceRankHistoryRequest.getSpaceId() == null, ErrorCode.PARAMS_ERROR);
+        ThrowUtils.throwIf(!userService.isAdmin(loginUser), ErrorCode.NO_AUTH_ERROR, "仅管理员可查看空间排行");
+        Integer days = spaceRankHistoryRequest.getDays();
+        ThrowUtils.throwIf(days == null || days <= 0 || days > 366, ErrorCode.PARAMS_ERROR, "天数需在 1 到 366 之间");
+        SpaceRankTypeEnum rankType = getRankType(spaceRankHistoryRequest.getRankType());
+
+        List<SpaceRankSnapshot> snapshotList = spaceRankSnapshotMapper.selectList(new QueryWrapper<SpaceRankSnapshot>()
+                .select("snapshotDate", "rankNo", "score")
+                .eq("spaceId", spaceRankHistoryRequest.getSpaceId())
+                .eq("rankType", rankType.getValue())
+                .ge("snapshotDate", DateUtil.beginOfDay(DateUtil.offsetDay(new Date(), -days)))
+                .orderByAsc("snapshotDate"));
+        return snapshotList.stream()
+                .map(snapshot -> new SpaceRankHistoryResponse(DateUtil.formatDate(snapshot.getSnapshotDate()),
+                        snapshot.getRankNo(), snapshot.getScore()))
+                .collect(Collectors.toList());
+    }
 
-        return spaceService.list(queryWrapper);
+    /**
+     * 解析排行类型，默认按已用容量
+     */
+    private SpaceRankTypeEnum getRankType(String rankTypeValue) {
+        if (rankTypeValue == null) {
+            return SpaceRankTypeEnum.SIZE;
+        }
+        SpaceRankTypeEnum rankType = SpaceRankTypeEnum.getEnumByValue(rankTypeValue);
+        ThrowUtils.throwIf(rankType == null, ErrorCode.PARAMS_ERROR, "排行类型错误");
+        return rankType;
     }
 }
 
@@ -16,6 +16,7 @@ import com.xzc.buyipicturebackend.model.entity.SpaceUser;
 import com.xzc.buyipicturebackend.model.entity.User;
 import com.xzc.buyipicturebackend.model.enums.SpaceLevelEnum;
 import com.xzc.buyipicturebackend.model.enums.SpaceRoleEnum;
+import com.xzc.buyipicturebackend.model.enums.SpaceSortFieldEnum;
 import com.xzc.buyipicturebackend.model.enums.SpaceTypeEnum;
 import com.xzc.buyipicturebackend.model.vo.space.SpaceVo;
 import com.xzc.buyipicturebackend.model.vo.user.UserVo;
@@ -23,6 +24,7 @@ import com.xzc.buyipicturebackend.service.SpaceService;
 import com.xzc.buyipicturebackend.mapper.SpaceMapper;
 import com.xzc.buyipicturebackend.service.SpaceUserService;
 import com.xzc.buyipicturebackend.service.UserService;
+import com.xzc.buyipicturebackend.utils.QuerySortUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.support.TransactionTemplate;
@@ -267,8 +269,12 @@ public class SpaceServiceImpl extends ServiceImpl<SpaceMapper, Space>
         queryWrapper.like(StrUtil.isNotBlank(spaceName), "spaceName", spaceName);
         queryWrapper.eq(ObjUtil.isNotEmpty(spaceLevel), "spaceLevel", spaceLevel);
         queryWrapper.eq(ObjUtil.isNotEmpty(spaceType), "spaceType", spaceType);
-        // 排序
-        queryWrapper.orderBy(StrUtil.isNotEmpty(sortField), "ascend".equals(sortOrder), sortField);
+        // 排序（仅允许枚举中有索引的字段，相同值按 id 排序）
+        if (StrUtil.isNotBlank(sortField)) {
+            SpaceSortFieldEnum sortFieldEnum = SpaceSortFieldEnum.getEnumByValue(sortField);
+            ThrowUtils.throwIf(sortFieldEnum == null, ErrorCode.PARAMS_ERROR, "不支持的排序字段");
+            QuerySortUtils.orderBy(queryWrapper, sortFieldEnum.getColumn(), sortOrder);
+        }
         return queryWrapper;
     }
 
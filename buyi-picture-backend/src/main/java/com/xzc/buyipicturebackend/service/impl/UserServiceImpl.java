@@ -14,15 +14,18 @@ import com.xzc.buyipicturebackend.mapper.UserMapper;
 import com.xzc.buyipicturebackend.model.dto.user.UserQueryRequest;
 import com.xzc.buyipicturebackend.model.entity.User;
 import com.xzc.buyipicturebackend.model.enums.UserRoleEnum;
+import com.xzc.buyipicturebackend.model.enums.UserSortFieldEnum;
 import com.xzc.buyipicturebackend.model.vo.user.LoginUserVo;
 import com.xzc.buyipicturebackend.model.vo.user.UserVo;
 import com.xzc.buyipicturebackend.service.UserService;
+import com.xzc.buyipicturebackend.utils.QuerySortUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.util.DigestUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -208,6 +211,24 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         return userList.stream().map(this::getUserVo).collect(Collectors.toList());
     }
 
+    /**
+     * 根据id批量查询用户，只查询 UserVo 需要的列（不查询密码等字段）
+     *
+     * @param userIds 用户id集合
+     * @return 用户列表
+     */
+    @Override
+    public List<User> listUserVoColumnsByIds(Collection<Long> userIds) {
+        if (CollUtil.isEmpty(userIds)) {
+            return new ArrayList<>();
+        }
+        return this.lambdaQuery()
+                .select(User::getId, User::getUserAccount, User::getUserName, User::getUserAvatar,
+                        User::getUserProfile, User::getUserRole, User::getCreateTime)
+                .in(User::getId, userIds)
+                .list();
+    }
+
     /**
      * 根据用户查询分页请求 构造QueryWrapper
      *
@@ -233,7 +254,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         queryWrapper.eq(StrUtil.isNotBlank(userName), "userName", userName);
         queryWrapper.eq(StrUtil.isNotBlank(userProfile), "userProfile", userProfile);
         queryWrapper.eq(StrUtil.isNotBlank(userRole), "userRole", userRole);
-        queryWrapper.orderBy(StrUtil.isNotBlank(sortField), sortOrder.equals("ascend"), sortField);
+        // 排序（仅允许枚举中有索引的字段，相同值按 id 排序）
+        if (StrUtil.isNotBlank(sortField)) {
+            UserSortFieldEnum sortFieldEnum = UserSortFieldEnum.getEnumByValue(sortField);
+            ThrowUtils.throwIf(sortFieldEnum == null, ErrorCode.PARAMS_ERROR, "不支持的排序字段");
+            QuerySortUtils.orderBy(queryWrapper, sortFieldEnum.getColumn(), sortOrder);
+        }
 
         return queryWrapper;
     }
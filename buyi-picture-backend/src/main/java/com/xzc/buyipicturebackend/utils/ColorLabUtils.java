@@ -0,0 +1,134 @@
+package com.xzc.buyipicturebackend.utils;
+
+import cn.hutool.core.util.StrUtil;
+
+/**
+ * 颜色空间转换（RGB -> CIELAB）及感知色差计算
+ * Lab 以定点数压缩为一个 long 存储：L、a、b 各占 16 位，精度 0.01
+ *
+ * @author xuzhichao
+ */
+public class ColorLabUtils {
+
+    /**
+     * Lab 定点数缩放倍数
+     */
+    private static final double LAB_SCALE = 100.0;
+
+    /**
+     * a、b 分量的偏移量（a、b 取值约为 [-128, 127]）
+     */
+    private static final double AB_OFFSET = 128.0;
+
+    /**
+     * D65 白点
+     */
+    private static final double XN = 0.95047;
+    private static final double YN = 1.0;
+    private static final double ZN = 1.08883;
+
+    /**
+     * 工具类不需实例化
+     */
+    private ColorLabUtils() {
+    }
+
+    /**
+     * 解析十六进制颜色（如 0xFF0000、#FF0000）为 RGB 整数
+     *
+     * @param hexColor 十六进制颜色
+     * @return RGB 整数（0xRRGGBB），无法解析时返回 null
+     */
+    public static Integer parseRgb(String hexColor) {
+        if (StrUtil.isBlank(hexColor)) {
+            return null;
+        }
+        try {
+            return Integer.decode(hexColor.trim()) & 0xFFFFFF;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * RGB 转 CIELAB（sRGB，D65）
+     *
+     * @param rgb RGB 整数（0xRRGGBB）
+     * @return {L, a, b}
+     */
+    public static double[] rgbToLab(int rgb) {
+        double r = linearize(((rgb >> 16) & 0xFF) / 255.0);
+        double g = linearize(((rgb >> 8) & 0xFF) / 255.0);
+        double b = linearize((rgb & 0xFF) / 255.0);
+
+        double x = (r * 0.4124564 + g * 0.3575761 + b * 0.1804375) / XN;
+        double y = (r * 0.2126729 + g * 0.7151522 + b * 0.0721750) / YN;
+        double z = (r * 0.0193339 + g * 0.1191920 + b * 0.9503041) / ZN;
+
+        double fx = labF(x);
+        double fy = labF(y);
+        double fz = labF(z);
+        return new double[]{116 * fy - 16, 500 * (fx - fy), 200 * (fy - fz)};
+    }
+
+    /**
+     * RGB 转压缩后的 Lab
+     *
+     * @param rgb RGB 整数（0xRRGGBB）
+     * @return 压缩后的 Lab
+     */
+    public static long rgbToPackedLab(int rgb) {
+        return packLab(rgbToLab(rgb));
+    }
+
+    /**
+     * 压缩 Lab：L | a+128 | b+128，各 16 位定点数
+     *
+     * @param lab {L, a, b}
+     * @return 压缩后的 Lab
+     */
+    public static long packLab(double[] lab) {
+        long l = clamp(Math.round(lab[0] * LAB_SCALE));
+        long a = clamp(Math.round((lab[1] + AB_OFFSET) * LAB_SCALE));
+        long b = clamp(Math.round((lab[2] + AB_OFFSET) * LAB_SCALE));
+        return (l << 32) | (a << 16) | b;
+    }
+
+    /**
+     * 解压 Lab
+     *
+     * @param packedLab 压缩后的 Lab
+     * @return {L, a, b}
+     */
+    public static double[] unpackLab(long packedLab) {
+        return new double[]{
+                ((packedLab >> 32) & 0xFFFF) / LAB_SCALE,
+                ((packedLab >> 16) & 0xFFFF) / LAB_SCALE - AB_OFFSET,
+                (packedLab & 0xFFFF) / LAB_SCALE - AB_OFFSET
+        };
+    }
+
+    /**
+     * 感知色差 ΔE*ab（CIE76，Lab 空间欧氏距离）的平方，比较大小时无需开方
+     *
+     * @return ΔE 的平方
+     */
+    public static double deltaESquared(double l1, double a1, double b1, double l2, double a2, double b2) {
+        double dl = l1 - l2;
+        double da = a1 - a2;
+        double db = b1 - b2;
+        return dl * dl + da * da + db * db;
+    }
+
+    private static double linearize(double channel) {
+        return channel <= 0.04045 ? channel / 12.92 : Math.pow((channel + 0.055) / 1.055, 2.4);
+    }
+
+    private static double labF(double t) {
+        return t > 216.0 / 24389 ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+    }
+
+    private static long clamp(long value) {
+        return Math.max(0, Math.min(0xFFFF, value));
+    }
+}
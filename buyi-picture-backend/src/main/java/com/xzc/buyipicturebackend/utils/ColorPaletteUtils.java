@@ -0,0 +1,171 @@
+package com.xzc.buyipicturebackend.utils;
+
+import com.xzc.buyipicturebackend.model.dto.picture.PaletteColor;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 图片调色板提取
+ * 对降采样后的像素在 Lab 空间做 k-means 聚类，输出按占比降序的主要颜色
+ *
+ * @author xuzhichao
+ */
+public class ColorPaletteUtils {
+
+    /**
+     * 最多采样的像素数
+     */
+    private static final int MAX_SAMPLES = 10000;
+
+    /**
+     * k-means 最大迭代次数
+     */
+    private static final int MAX_ITERATIONS = 12;
+
+    /**
+     * 工具类不需实例化
+     */
+    private ColorPaletteUtils() {
+    }
+
+    /**
+     * 提取调色板
+     *
+     * @param image 图片
+     * @param k     颜色数
+     * @return 按占比降序的颜色列表
+     */
+    public static List<PaletteColor> extractPalette(BufferedImage image, int k) {
+        if (image == null || k <= 0) {
+            return Collections.emptyList();
+        }
+        // 1.按步长降采样，跳过透明像素
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int step = Math.max(1, (int) Math.ceil(Math.sqrt((double) width * height / MAX_SAMPLES)));
+        List<Integer> rgbList = new ArrayList<>();
+        for (int y = 0; y < height; y += step) {
+            for (int x = 0; x < width; x += step) {
+                int argb = image.getRGB(x, y);
+                if ((argb >>> 24) < 128) {
+                    continue;
+                }
+                rgbList.add(argb & 0xFFFFFF);
+            }
+        }
+        int n = rgbList.size();
+        if (n == 0) {
+            return Collections.emptyList();
+        }
+        double[][] labs = new double[n][];
+        for (int i = 0; i < n; i++) {
+            labs[i] = ColorLabUtils.rgbToLab(rgbList.get(i));
+        }
+
+        // 2.k-means++ 初始化（固定种子，同一张图结果稳定）
+        k = Math.min(k, n);
+        Random random = new Random(42);
+        double[][] centers = new double[k][];
+        centers[0] = labs[random.nextInt(n)].clone();
+        double[] minDistances = new double[n];
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                double distance = Double.MAX_VALUE;
+                for (int j = 0; j < c; j++) {
+                    distance = Math.min(distance, distanceSquared(labs[i], centers[j]));
+                }
+                minDistances[i] = distance;
+                total += distance;
+            }
+            int chosen = random.nextInt(n);
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < n; i++) {
+                    target -= minDistances[i];
+                    if (target <= 0) {
+                        chosen = i;
+                        break;
+                    }
+                }
+            }
+            centers[c] = labs[chosen].clone();
+        }
+
+        // 3.迭代：分配到最近的中心，再重新计算中心
+        int[] assignments = new int[n];
+        int[] counts = new int[k];
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            boolean changed = iteration == 0;
+            for (int i = 0; i < n; i++) {
+                int nearest = nearest(labs[i], centers);
+                if (nearest != assignments[i]) {
+                    assignments[i] = nearest;
+                    changed = true;
+                }
+            }
+            double[][] sums = new double[k][3];
+            counts = new int[k];
+            for (int i = 0; i < n; i++) {
+                int c = assignments[i];
+                sums[c][0] += labs[i][0];
+                sums[c][1] += labs[i][1];
+                sums[c][2] += labs[i][2];
+                counts[c]++;
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] > 0) {
+                    centers[c] = new double[]{sums[c][0] / counts[c], sums[c][1] / counts[c], sums[c][2] / counts[c]};
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+
+        // 4.每个簇取成员的平均 RGB 作为代表色
+        long[][] rgbSums = new long[k][3];
+        for (int i = 0; i < n; i++) {
+            int rgb = rgbList.get(i);
+            int c = assignments[i];
+            rgbSums[c][0] += (rgb >> 16) & 0xFF;
+            rgbSums[c][1] += (rgb >> 8) & 0xFF;
+            rgbSums[c][2] += rgb & 0xFF;
+        }
+        List<PaletteColor> palette = new ArrayList<>();
+        for (int c = 0; c < k; c++) {
+            if (counts[c] == 0) {
+                continue;
+            }
+            int r = (int) (rgbSums[c][0] / counts[c]);
+            int g = (int) (rgbSums[c][1] / counts[c]);
+            int b = (int) (rgbSums[c][2] / counts[c]);
+            double weight = Math.round(counts[c] * 1000.0 / n) / 1000.0;
+            palette.add(new PaletteColor(String.format("0x%06X", (r << 16) | (g << 8) | b), weight));
+        }
+        palette.sort(Comparator.comparingDouble(PaletteColor::getWeight).reversed());
+        return palette;
+    }
+
+    private static int nearest(double[] lab, double[][] centers) {
+        int nearest = 0;
+        double minDistance = Double.MAX_VALUE;
+        for (int c = 0; c < centers.length; c++) {
+            double distance = distanceSquared(lab, centers[c]);
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearest = c;
+            }
+        }
+        return nearest;
+    }
+
+    private static double distanceSquared(double[] lab1, double[] lab2) {
+        return ColorLabUtils.deltaESquared(lab1[0], lab1[1], lab1[2], lab2[0], lab2[1], lab2[2]);
+    }
+}
@@ -0,0 +1,134 @@
+package com.xzc.buyipicturebackend.utils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * 图片感知哈希
+ * 1.pHash：缩放为 32x32 灰度图做二维 DCT，取左上角 8x8 低频系数与中位数比较，对缩放、压缩、轻微调色不敏感
+ * 2.dHash：缩放为 9x8 灰度图，比较相邻像素的亮度梯度，计算更快，用于辅助排序
+ * 两者均为 64 位，相似度用汉明距离衡量
+ *
+ * @author xuzhichao
+ */
+public class PerceptualHashUtils {
+
+    private static final int DCT_SIZE = 32;
+
+    private static final int HASH_SIZE = 8;
+
+    /**
+     * DCT 系数表 cos[(2x + 1) * u * π / 2N]
+     */
+    private static final double[][] DCT_COS = new double[DCT_SIZE][DCT_SIZE];
+
+    static {
+        for (int u = 0; u < DCT_SIZE; u++) {
+            for (int x = 0; x < DCT_SIZE; x++) {
+                DCT_COS[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * DCT_SIZE));
+            }
+        }
+    }
+
+    /**
+     * 工具类不需实例化
+     */
+    private PerceptualHashUtils() {
+    }
+
+    /**
+     * 计算 pHash
+     *
+     * @param image 图片
+     * @return 64 位哈希
+     */
+    public static long pHash(BufferedImage image) {
+        double[][] gray = toGray(image, DCT_SIZE, DCT_SIZE);
+        // 只需要左上角 8x8 的低频系数，先对行后对列做一维 DCT
+        double[][] rowDct = new double[DCT_SIZE][HASH_SIZE];
+        for (int y = 0; y < DCT_SIZE; y++) {
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0;
+                for (int x = 0; x < DCT_SIZE; x++) {
+                    sum += gray[y][x] * DCT_COS[u][x];
+                }
+                rowDct[y][u] = sum;
+            }
+        }
+        double[] coefficients = new double[HASH_SIZE * HASH_SIZE];
+        for (int v = 0; v < HASH_SIZE; v++) {
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0;
+                for (int y = 0; y < DCT_SIZE; y++) {
+                    sum += rowDct[y][u] * DCT_COS[v][y];
+                }
+                coefficients[v * HASH_SIZE + u] = sum;
+            }
+        }
+        // 中位数不计直流分量（整体亮度）
+        double[] acCoefficients = Arrays.copyOfRange(coefficients, 1, coefficients.length);
+        Arrays.sort(acCoefficients);
+        double median = acCoefficients[acCoefficients.length / 2];
+        long hash = 0L;
+        for (int i = 1; i < coefficients.length; i++) {
+            if (coefficients[i] > median) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 计算 dHash
+     *
+     * @param image 图片
+     * @return 64 位哈希
+     */
+    public static long dHash(BufferedImage image) {
+        double[][] gray = toGray(image, HASH_SIZE + 1, HASH_SIZE);
+        long hash = 0L;
+        int bit = 0;
+        for (int y = 0; y < HASH_SIZE; y++) {
+            for (int x = 0; x < HASH_SIZE; x++) {
+                if (gray[y][x] > gray[y][x + 1]) {
+                    hash |= 1L << bit;
+                }
+                bit++;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 汉明距离
+     *
+     * @return 不同的位数（0~64）
+     */
+    public static int hammingDistance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    /**
+     * 缩放并转为灰度（透明部分按白色处理）
+     */
+    private static double[][] toGray(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(image.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        double[][] gray = new double[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = scaled.getRGB(x, y);
+                gray[y][x] = 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+            }
+        }
+        return gray;
+    }
+}
@@ -0,0 +1,143 @@
+package com.xzc.buyipicturebackend.utils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * 图片视觉特征提取（用于“更多相似”推荐）
+ * 特征由三部分组成：RGB 颜色直方图（4x4x4）、Sobel 边缘方向直方图（8 个方向）、宽高比
+ * 直方图取平方根（Hellinger 变换）后各分量落在 [0, 1]，量化为 1 字节存储，共 73 字节
+ *
+ * @author xuzhichao
+ */
+public class PictureFeatureUtils {
+
+    /**
+     * 特征维度
+     */
+    public static final int DIMENSION = 64 + 8 + 1;
+
+    private static final int SAMPLE_SIZE = 64;
+
+    private static final int COLOR_BINS = 4;
+
+    private static final int EDGE_BINS = 8;
+
+    /**
+     * 各部分的权重（作用于距离计算）
+     */
+    private static final float COLOR_WEIGHT = 1.0f;
+    private static final float EDGE_WEIGHT = 0.7f;
+    private static final float ASPECT_WEIGHT = 0.3f;
+
+    /**
+     * 宽高比取对数后的截断范围
+     */
+    private static final double MAX_LOG_ASPECT = 2.0;
+
+    /**
+     * 工具类不需实例化
+     */
+    private PictureFeatureUtils() {
+    }
+
+    /**
+     * 提取量化后的特征
+     *
+     * @param image 图片
+     * @return 特征（每个分量 1 字节）
+     */
+    public static byte[] extractFeature(BufferedImage image) {
+        BufferedImage scaled = new BufferedImage(SAMPLE_SIZE, SAMPLE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, SAMPLE_SIZE, SAMPLE_SIZE);
+            graphics.drawImage(image.getScaledInstance(SAMPLE_SIZE, SAMPLE_SIZE, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        double[] feature = new double[DIMENSION];
+
+        // 1.颜色直方图
+        double[][] gray = new double[SAMPLE_SIZE][SAMPLE_SIZE];
+        for (int y = 0; y < SAMPLE_SIZE; y++) {
+            for (int x = 0; x < SAMPLE_SIZE; x++) {
+                int rgb = scaled.getRGB(x, y);
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                int bin = ((r * COLOR_BINS / 256) * COLOR_BINS + g * COLOR_BINS / 256) * COLOR_BINS + b * COLOR_BINS / 256;
+                feature[bin]++;
+                gray[y][x] = 0.299 * r + 0.587 * g + 0.114 * b;
+            }
+        }
+        normalizeSqrt(feature, 0, 64);
+
+        // 2.边缘方向直方图（按梯度幅值加权，方向取 [0, π)）
+        for (int y = 1; y < SAMPLE_SIZE - 1; y++) {
+            for (int x = 1; x < SAMPLE_SIZE - 1; x++) {
+                double gx = gray[y - 1][x + 1] + 2 * gray[y][x + 1] + gray[y + 1][x + 1]
+                        - gray[y - 1][x - 1] - 2 * gray[y][x - 1] - gray[y + 1][x - 1];
+                double gy = gray[y + 1][x - 1] + 2 * gray[y + 1][x] + gray[y + 1][x + 1]
+                        - gray[y - 1][x - 1] - 2 * gray[y - 1][x] - gray[y - 1][x + 1];
+                double magnitude = Math.sqrt(gx * gx + gy * gy);
+                if (magnitude < 1e-6) {
+                    continue;
+                }
+                double angle = Math.atan2(gy, gx);
+                if (angle < 0) {
+                    angle += Math.PI;
+                }
+                int bin = Math.min(EDGE_BINS - 1, (int) (angle / Math.PI * EDGE_BINS));
+                feature[64 + bin] += magnitude;
+            }
+        }
+        normalizeSqrt(feature, 64, 64 + EDGE_BINS);
+
+        // 3.宽高比（对数，映射到 [0, 1]）
+        double logAspect = Math.log((double) image.getWidth() / Math.max(1, image.getHeight()));
+        logAspect = Math.max(-MAX_LOG_ASPECT, Math.min(MAX_LOG_ASPECT, logAspect));
+        feature[DIMENSION - 1] = (logAspect + MAX_LOG_ASPECT) / (2 * MAX_LOG_ASPECT);
+
+        byte[] quantized = new byte[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            quantized[i] = (byte) Math.round(Math.max(0, Math.min(1, feature[i])) * 255);
+        }
+        return quantized;
+    }
+
+    /**
+     * 量化特征转为加权后的向量，向量间用欧氏距离比较
+     *
+     * @param feature 量化后的特征
+     * @return 向量，特征长度不符时返回 null
+     */
+    public static float[] toVector(byte[] feature) {
+        if (feature == null || feature.length != DIMENSION) {
+            return null;
+        }
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            float weight = i < 64 ? COLOR_WEIGHT : (i < DIMENSION - 1 ? EDGE_WEIGHT : ASPECT_WEIGHT);
+            vector[i] = (feature[i] & 0xFF) / 255f * weight;
+        }
+        return vector;
+    }
+
+    /**
+     * 区间内归一化为和为 1 后取平方根，结果的 L2 范数为 1
+     */
+    private static void normalizeSqrt(double[] feature, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += feature[i];
+        }
+        if (sum <= 0) {
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            feature[i] = Math.sqrt(feature[i] / sum);
+        }
+    }
+}
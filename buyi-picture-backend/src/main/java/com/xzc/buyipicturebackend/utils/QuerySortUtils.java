@@ -0,0 +1,32 @@
+package com.xzc.buyipicturebackend.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+
+/**
+ * 列表查询排序
+ *
+ * @author xuzhichao
+ */
+public class QuerySortUtils {
+
+    /**
+     * 工具类不需实例化
+     */
+    private QuerySortUtils() {
+    }
+
+    /**
+     * 按指定列排序，并追加 id 作为次级排序，保证相同值时分页结果稳定
+     *
+     * @param queryWrapper 查询条件
+     * @param column       排序列（需来自可排序字段枚举，不能直接使用请求参数）
+     * @param sortOrder    排序顺序，ascend 为升序，其余为降序
+     */
+    public static <T> void orderBy(QueryWrapper<T> queryWrapper, String column, String sortOrder) {
+        boolean isAsc = "ascend".equals(sortOrder);
+        queryWrapper.orderBy(true, isAsc, column);
+        if (!"id".equals(column)) {
+            queryWrapper.orderBy(true, isAsc, "id");
+        }
+    }
+}
@@ -0,0 +1,3 @@
+-- 空间额度对账：spaceId IN (...) AND isDelete = 0 GROUP BY spaceId 统计 COUNT(*)、SUM(picSize)
+-- 覆盖 picSize 后按索引即可完成统计，无需回表
+CREATE INDEX idx_spaceId_isDelete_picSize ON picture (spaceId, isDelete, picSize);
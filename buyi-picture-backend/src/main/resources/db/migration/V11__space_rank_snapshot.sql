@@ -0,0 +1,14 @@
+-- 空间排行快照：每天保存各排行的前 N 名，用于查看空间排名随时间的变化
+create table if not exists space_rank_snapshot
+(
+    id           bigint auto_increment comment 'id' primary key,
+    snapshotDate date                               not null comment '快照日期',
+    rankType     varchar(32)                        not null comment '排行类型：size/count/growth',
+    spaceId      bigint                             not null comment '空间 id',
+    rankNo       int                                not null comment '名次（从 1 开始）',
+    score        bigint                             not null comment '排行值（容量、数量或当日容量增长）',
+    createTime   datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    -- 索引设计
+    UNIQUE KEY uk_snapshotDate_rankType_spaceId (snapshotDate, rankType, spaceId), -- 同一天重复快照时覆盖
+    INDEX idx_spaceId_rankType_snapshotDate (spaceId, rankType, snapshotDate)      -- 按空间查询排名历史
+) comment '空间排行快照' collate = utf8mb4_unicode_ci;
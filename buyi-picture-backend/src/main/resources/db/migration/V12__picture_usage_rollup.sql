@@ -0,0 +1,20 @@
+-- 图库用量汇总：全部图片和公共图库各一行，上传、删除时增量更新，管理员用量分析直接读取
+create table if not exists picture_usage_rollup
+(
+    scope      varchar(32)                        not null comment '统计范围：all/public' primary key,
+    totalSize  bigint   default 0                 not null comment '图片总大小',
+    totalCount bigint   default 0                 not null comment '图片总数',
+    updateTime datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间'
+) comment '图库用量汇总' collate = utf8mb4_unicode_ci;
+
+-- 按现有数据初始化
+INSERT INTO picture_usage_rollup (scope, totalSize, totalCount)
+SELECT 'all', IFNULL(SUM(picSize), 0), COUNT(*)
+FROM picture
+WHERE isDelete = 0;
+
+INSERT INTO picture_usage_rollup (scope, totalSize, totalCount)
+SELECT 'public', IFNULL(SUM(picSize), 0), COUNT(*)
+FROM picture
+WHERE isDelete = 0
+  AND spaceId IS NULL;
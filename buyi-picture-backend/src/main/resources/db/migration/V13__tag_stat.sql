@@ -0,0 +1,34 @@
+-- 标签统计：按范围（all / public / space:空间id）统计每个标签关联的图片数
+-- 标签关联变化时增量更新，标签分析直接按 (scope, count) 索引取前 N
+create table if not exists tag_stat
+(
+    scope      varchar(32)                        not null comment '统计范围：all/public/space:空间id',
+    tag        varchar(128)                       not null comment '标签',
+    count      bigint   default 0                 not null comment '关联图片数',
+    updateTime datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    primary key (scope, tag),
+    -- 索引设计
+    INDEX idx_scope_count (scope, count) -- 按范围取使用最多的标签
+) comment '标签统计' collate = utf8mb4_unicode_ci;
+
+-- 按现有标签关联初始化
+INSERT INTO tag_stat (scope, tag, count)
+SELECT 'all', pt.tag, COUNT(*)
+FROM picture_tag pt
+         JOIN picture p ON p.id = pt.pictureId
+WHERE p.isDelete = 0
+GROUP BY pt.tag
+UNION ALL
+SELECT 'public', pt.tag, COUNT(*)
+FROM picture_tag pt
+         JOIN picture p ON p.id = pt.pictureId
+WHERE p.isDelete = 0
+  AND p.spaceId IS NULL
+GROUP BY pt.tag
+UNION ALL
+SELECT CONCAT('space:', p.spaceId), pt.tag, COUNT(*)
+FROM picture_tag pt
+         JOIN picture p ON p.id = pt.pictureId
+WHERE p.isDelete = 0
+  AND p.spaceId IS NOT NULL
+GROUP BY p.spaceId, pt.tag;
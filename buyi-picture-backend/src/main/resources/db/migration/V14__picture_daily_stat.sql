@@ -0,0 +1,20 @@
+-- 每日上传统计：按空间、用户、日期记录上传数量和大小，上传时增量更新
+-- 用户上传行为分析按日读取，周、月由日数据汇总，不再对 picture 表按时间函数分组
+create table if not exists picture_daily_stat
+(
+    spaceId    bigint   default 0                 not null comment '空间 id（0 表示公共图库）',
+    userId     bigint                             not null comment '上传用户 id',
+    day        date                               not null comment '上传日期',
+    count      bigint   default 0                 not null comment '上传数量',
+    bytes      bigint   default 0                 not null comment '上传大小',
+    updateTime datetime default CURRENT_TIMESTAMP not null on update CURRENT_TIMESTAMP comment '更新时间',
+    primary key (spaceId, userId, day),
+    -- 索引设计
+    INDEX idx_userId_day (userId, day) -- 全部空间中按用户分析
+) comment '每日上传统计' collate = utf8mb4_unicode_ci;
+
+-- 按现有图片初始化（上传行为分析包含已删除的图片）
+INSERT INTO picture_daily_stat (spaceId, userId, day, count, bytes)
+SELECT IFNULL(spaceId, 0), userId, DATE(createTime), COUNT(*), IFNULL(SUM(picSize), 0)
+FROM picture
+GROUP BY IFNULL(spaceId, 0), userId, DATE(createTime);
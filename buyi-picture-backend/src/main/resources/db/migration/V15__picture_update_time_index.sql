@@ -0,0 +1,3 @@
+-- 本地索引增量同步：updateTime > ? OR (updateTime = ? AND id > ?) ORDER BY updateTime, id LIMIT ?
+-- 公共图库、全文、相似图片索引在每个节点上定时轮询，按索引顺序范围扫描，避免全表扫描和 filesort
+CREATE INDEX idx_updateTime_id ON picture (updateTime, id);
@@ -0,0 +1,3 @@
+-- 相似图片索引加载单个空间后补齐变更：spaceId = ? AND (updateTime > ? OR (updateTime = ? AND id > ?)) ORDER BY updateTime, id LIMIT ?
+-- 只扫描该空间的变更，不再遍历全库变更后在内存中按空间过滤
+CREATE INDEX idx_spaceId_updateTime_id ON picture (spaceId, updateTime, id);
@@ -0,0 +1,12 @@
+-- 压缩图 url 列：实体已映射但初始脚本缺失，部分已有数据库曾手动添加，按列是否存在决定是否添加
+SET @column_exists = (SELECT COUNT(*)
+                      FROM information_schema.COLUMNS
+                      WHERE TABLE_SCHEMA = DATABASE()
+                        AND TABLE_NAME = 'picture'
+                        AND COLUMN_NAME = 'webpUrl');
+SET @ddl = IF(@column_exists = 0,
+              'ALTER TABLE picture ADD COLUMN webpUrl varchar(512) NULL COMMENT ''压缩图 url（webp）''',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,22 @@
+-- 图片标签关联表（规范化 picture.tags，标签筛选走索引）
+create table if not exists picture_tag
+(
+    id         bigint auto_increment comment 'id' primary key,
+    pictureId  bigint                             not null comment '图片 id',
+    tag        varchar(128)                       not null comment '标签',
+    createTime datetime default CURRENT_TIMESTAMP not null comment '创建时间',
+    -- 索引设计
+    UNIQUE KEY uk_pictureId_tag (pictureId, tag), -- 一张图片的同一标签只记录一次，也用于按图片删除
+    INDEX idx_tag_pictureId (tag, pictureId)      -- 按标签筛选图片（覆盖索引）
+) comment '图片标签关联' collate = utf8mb4_unicode_ci;
+
+-- 回填已有图片的标签（MySQL 8.0+ JSON_TABLE）
+INSERT IGNORE INTO picture_tag (pictureId, tag)
+SELECT p.id, jt.tag
+FROM picture p,
+     JSON_TABLE(p.tags, '$[*]' COLUMNS (tag varchar(128) PATH '$')) jt
+WHERE p.isDelete = 0
+  AND p.tags IS NOT NULL
+  AND JSON_VALID(p.tags)
+  AND jt.tag IS NOT NULL
+  AND jt.tag <> '';
@@ -0,0 +1,5 @@
+-- 列表可排序字段索引（排序字段白名单中的列，避免全表 filesort）
+CREATE INDEX idx_createTime ON picture (createTime);
+CREATE INDEX idx_editTime ON picture (editTime);
+CREATE INDEX idx_createTime ON space (createTime);
+CREATE INDEX idx_createTime ON user (createTime);
@@ -0,0 +1,16 @@
+-- 按实际查询形态建立联合索引
+-- InnoDB 二级索引末尾隐含主键 id，ORDER BY 时间, id 可直接按索引顺序返回
+
+-- 公共图库：spaceId IS NULL AND reviewStatus = 1 AND isDelete = 0 ORDER BY createTime/editTime DESC, id DESC
+CREATE INDEX idx_spaceId_reviewStatus_isDelete_createTime ON picture (spaceId, reviewStatus, isDelete, createTime);
+CREATE INDEX idx_spaceId_reviewStatus_isDelete_editTime ON picture (spaceId, reviewStatus, isDelete, editTime);
+
+-- 私有空间列表：spaceId = ? AND isDelete = 0 ORDER BY createTime DESC, id DESC
+CREATE INDEX idx_spaceId_isDelete_createTime ON picture (spaceId, isDelete, createTime);
+
+-- 按颜色搜索：spaceId = ? AND picColor IS NOT NULL（覆盖主色调列，无需回表过滤）
+CREATE INDEX idx_spaceId_picColor ON picture (spaceId, picColor);
+
+-- 以下单列索引已被联合索引或 picture_tag 表替代
+DROP INDEX idx_spaceId ON picture;
+DROP INDEX idx_tags ON picture;
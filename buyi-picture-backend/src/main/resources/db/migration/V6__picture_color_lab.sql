@@ -0,0 +1,9 @@
+-- 主色调预计算：RGB 整数和压缩后的 CIELAB（L、a、b 各 16 位定点数），按颜色搜索时无需逐条解析十六进制
+ALTER TABLE picture
+    ADD COLUMN picColorRgb int    null comment '主色调 RGB（0xRRGGBB）',
+    ADD COLUMN picColorLab bigint null comment '主色调 CIELAB（压缩存储）';
+
+-- 回填 RGB；Lab 在首次加载空间颜色索引时由应用计算回填
+UPDATE picture
+SET picColorRgb = CONV(SUBSTRING(picColor, 3), 16, 10)
+WHERE picColor LIKE '0x%';
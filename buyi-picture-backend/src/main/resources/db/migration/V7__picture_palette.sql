@@ -0,0 +1,3 @@
+-- 图片调色板：前5种主要颜色及占比（JSON 数组），上传时从原图提取
+ALTER TABLE picture
+    ADD COLUMN picPalette varchar(512) null comment '图片调色板（JSON 数组）';
@@ -0,0 +1,4 @@
+-- 图片感知哈希（64 位），上传时计算，用于站内以图搜图；历史图片通过管理员接口回填
+ALTER TABLE picture
+    ADD COLUMN picPHash bigint null comment '感知哈希 pHash',
+    ADD COLUMN picDHash bigint null comment '差异哈希 dHash';
@@ -0,0 +1,3 @@
+-- 图片视觉特征（颜色直方图、边缘方向直方图、宽高比，量化为 73 字节），用于相似图片推荐
+ALTER TABLE picture
+    ADD COLUMN picFeature varbinary(80) null comment '图片视觉特征';
@@ -0,0 +1,100 @@
+package com.xzc.buyipicturebackend.manager.rollup;
+
+import com.xzc.buyipicturebackend.config.PictureSizeAnalyzeConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 图片大小草图：分位数估计的相对误差不超过配置值
+ *
+ * @author xuzhichao
+ */
+class PictureSizeSketchManagerTest {
+
+    private static final double ACCURACY = 0.01;
+
+    private PictureSizeSketchManager pictureSizeSketchManager;
+
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        PictureSizeAnalyzeConfig config = new PictureSizeAnalyzeConfig();
+        config.setSketchRelativeAccuracy(ACCURACY);
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        hashOperations = mock(HashOperations.class);
+        when(stringRedisTemplate.opsForHash()).thenReturn(hashOperations);
+
+        pictureSizeSketchManager = new PictureSizeSketchManager();
+        ReflectionTestUtils.setField(pictureSizeSketchManager, "pictureSizeAnalyzeConfig", config);
+        ReflectionTestUtils.setField(pictureSizeSketchManager, "stringRedisTemplate", stringRedisTemplate);
+        pictureSizeSketchManager.init();
+    }
+
+    @Test
+    void quantilesAreWithinRelativeAccuracy() {
+        // 1KB ~ 50MB 对数均匀分布
+        Random random = new Random(42);
+        long[] sizes = new long[20000];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = Math.round(Math.exp(Math.log(1024) + random.nextDouble() * Math.log(50 * 1024.0)));
+        }
+        givenSketchOf(sizes);
+
+        double[] quantiles = {0, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1};
+        Long[] estimates = pictureSizeSketchManager.getQuantiles("all", quantiles);
+
+        long[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        for (int q = 0; q < quantiles.length; q++) {
+            long exact = sorted[(int) Math.floor(quantiles[q] * (sorted.length - 1))];
+            // 估计值四舍五入到整数字节，多留 1 字节余量
+            assertTrue(Math.abs(estimates[q] - exact) <= exact * ACCURACY + 1,
+                    "q = " + quantiles[q] + ", exact = " + exact + ", estimate = " + estimates[q]);
+        }
+        assertEquals(sizes.length, pictureSizeSketchManager.getCount("all"));
+    }
+
+    @Test
+    void everySizeIsEstimatedWithinRelativeAccuracy() {
+        for (long size = 1; size < 100_000_000L; size = size * 3 / 2 + 1) {
+            givenSketchOf(size);
+            Long estimate = pictureSizeSketchManager.getQuantiles("all", 0.5)[0];
+            assertTrue(Math.abs(estimate - size) <= size * ACCURACY + 1, "size = " + size + ", estimate = " + estimate);
+        }
+    }
+
+    @Test
+    void singleValueAndMissingSizes() {
+        givenSketchOf(1000L, 1000L, 1000L);
+        Long[] estimates = pictureSizeSketchManager.getQuantiles("all", 0.5, 0.99);
+        assertEquals(estimates[0], estimates[1]);
+        // 大小为空或小于 1 的图片按 1 字节计
+        assertEquals(pictureSizeSketchManager.bucketOf(1L), pictureSizeSketchManager.bucketOf(null));
+        assertEquals(pictureSizeSketchManager.bucketOf(1L), pictureSizeSketchManager.bucketOf(0L));
+    }
+
+    private void givenSketchOf(long... sizes) {
+        Map<Object, Object> entries = new HashMap<>();
+        for (long size : sizes) {
+            String bucket = String.valueOf(pictureSizeSketchManager.bucketOf(size));
+            long count = entries.containsKey(bucket) ? Long.parseLong(entries.get(bucket).toString()) : 0L;
+            entries.put(bucket, String.valueOf(count + 1));
+        }
+        when(hashOperations.entries(anyString())).thenReturn(entries);
+    }
+}
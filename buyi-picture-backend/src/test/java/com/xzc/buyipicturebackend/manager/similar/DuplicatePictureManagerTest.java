@@ -0,0 +1,124 @@
+package com.xzc.buyipicturebackend.manager.similar;
+
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import com.xzc.buyipicturebackend.model.vo.picture.DuplicateClusterVo;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 近似重复分组：以保留图片为中心，不沿 A~B~C 链式合并
+ *
+ * @author xuzhichao
+ */
+class DuplicatePictureManagerTest {
+
+    private final DuplicatePictureManager duplicatePictureManager = new DuplicatePictureManager();
+
+    @Test
+    void chainedPicturesAreNotMergedIntoTheKeeperGroup() {
+        // A 与 B 的 pHash 相差 5 位，B 与 C 相差 5 位，A 与 C 相差 10 位（阈值为 6）
+        Picture a = picture(1L, 0L, 0L, 2000, 2000, 300L);
+        Picture b = picture(2L, 0x1FL, 0L, 1000, 1000, 200L);
+        Picture c = picture(3L, 0x3FFL, 0L, 500, 500, 100L);
+
+        List<DuplicateClusterVo> clusters = duplicatePictureManager.cluster(Arrays.asList(c, b, a));
+
+        assertEquals(1, clusters.size());
+        DuplicateClusterVo cluster = clusters.get(0);
+        assertEquals(1L, cluster.getKeepId());
+        assertEquals(Arrays.asList(1L, 2L), cluster.getPictureIds());
+        assertEquals(200L, cluster.getReclaimableSize());
+        assertFalse(DuplicatePictureManager.isDuplicate(a, c));
+    }
+
+    @Test
+    void keeperIsTheHighestResolutionThenLargestThenOldest() {
+        Picture small = picture(1L, 0L, 0L, 100, 100, 900L);
+        Picture large = picture(2L, 0L, 0L, 800, 600, 100L);
+        Picture largeAndHeavy = picture(3L, 0L, 0L, 800, 600, 500L);
+        Picture sameAsHeavy = picture(4L, 0L, 0L, 800, 600, 500L);
+
+        List<DuplicateClusterVo> clusters = duplicatePictureManager.cluster(Arrays.asList(small, large, sameAsHeavy, largeAndHeavy));
+
+        assertEquals(1, clusters.size());
+        assertEquals(3L, clusters.get(0).getKeepId());
+        assertEquals(Arrays.asList(3L, 4L, 2L, 1L), clusters.get(0).getPictureIds());
+        assertEquals(1500L, clusters.get(0).getReclaimableSize());
+    }
+
+    @Test
+    void dHashMustAlsoBeClose() {
+        Picture a = picture(1L, 0L, 0L, 100, 100, 100L);
+        Picture b = picture(2L, 0L, -1L, 100, 100, 100L);
+        assertTrue(duplicatePictureManager.cluster(Arrays.asList(a, b)).isEmpty());
+    }
+
+    @Test
+    void singlePictureWithZeroHashHasNoDuplicates() {
+        // 哈希为 0 的图片不能与数组尾部未使用的空行匹配
+        List<DuplicateClusterVo> clusters = duplicatePictureManager.cluster(
+                Collections.singletonList(picture(1L, 0L, 0L, 100, 100, 100L)));
+        assertTrue(clusters.isEmpty());
+    }
+
+    @Test
+    void clustersAreDisjointAndCenteredOnKeepers() {
+        // 超过初始容量和单个任务的行数，覆盖扩容和 fork/join 拆分
+        Random random = new Random(42);
+        List<Picture> pictureList = new ArrayList<>();
+        long[] centers = {random.nextLong(), random.nextLong(), random.nextLong()};
+        for (long id = 1; id <= 1500; id++) {
+            long pHash = id % 3 == 0 ? random.nextLong() : flipBits(centers[(int) (id % centers.length)], random.nextInt(8), random);
+            pictureList.add(picture(id, pHash, 0L, 100 + random.nextInt(50), 100, (long) random.nextInt(1000)));
+        }
+        Map<Long, Picture> pictureMap = new HashMap<>();
+        pictureList.forEach(picture -> pictureMap.put(picture.getId(), picture));
+
+        List<DuplicateClusterVo> clusters = duplicatePictureManager.cluster(pictureList);
+
+        assertFalse(clusters.isEmpty());
+        Set<Long> seen = new HashSet<>();
+        long previousReclaimable = Long.MAX_VALUE;
+        for (DuplicateClusterVo cluster : clusters) {
+            assertTrue(cluster.getPictureIds().size() >= 2);
+            assertEquals(cluster.getKeepId(), cluster.getPictureIds().get(0));
+            Picture keeper = pictureMap.get(cluster.getKeepId());
+            long reclaimable = 0;
+            for (Long pictureId : cluster.getPictureIds()) {
+                assertTrue(pictureMap.containsKey(pictureId));
+                assertTrue(seen.add(pictureId), "picture in two clusters: " + pictureId);
+                Picture picture = pictureMap.get(pictureId);
+                if (!pictureId.equals(cluster.getKeepId())) {
+                    assertTrue(DuplicatePictureManager.isDuplicate(keeper, picture));
+                    assertTrue(DuplicatePictureManager.KEEP_ORDER.compare(keeper, picture) < 0);
+                    reclaimable += picture.getPicSize();
+                }
+            }
+            assertEquals(reclaimable, cluster.getReclaimableSize());
+            assertTrue(cluster.getReclaimableSize() <= previousReclaimable);
+            previousReclaimable = cluster.getReclaimableSize();
+        }
+    }
+
+    private static Picture picture(long id, long pHash, long dHash, int width, int height, long size) {
+        Picture picture = new Picture();
+        picture.setId(id);
+        picture.setPicPHash(pHash);
+        picture.setPicDHash(dHash);
+        picture.setPicWidth(width);
+        picture.setPicHeight(height);
+        picture.setPicSize(size);
+        return picture;
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        long result = hash;
+        for (int i = 0; i < bits; i++) {
+            result ^= 1L << random.nextInt(64);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+package com.xzc.buyipicturebackend.manager.similar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HNSW 索引：与暴力搜索比较召回率，删除、更新和文件读写
+ *
+ * @author xuzhichao
+ */
+class HnswIndexTest {
+
+    private static final int DIMENSION = 16;
+
+    private static final int COUNT = 1000;
+
+    @Test
+    void searchRecallsBruteForceNeighbors() {
+        Random random = new Random(42);
+        Map<Long, float[]> vectors = randomVectors(random);
+        HnswIndex index = newIndex(vectors);
+
+        int k = 10;
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            Set<Long> expected = new HashSet<>(bruteForce(vectors, query, k, -1L));
+            List<Long> actual = index.search(query, k, 64, -1L);
+            assertEquals(k, actual.size());
+            hits += actual.stream().filter(expected::contains).count();
+        }
+        double recall = hits / (double) (queries * k);
+        assertTrue(recall >= 0.9, "recall = " + recall);
+    }
+
+    @Test
+    void searchExcludesQueryPictureAndSortsByDistance() {
+        Random random = new Random(7);
+        Map<Long, float[]> vectors = randomVectors(random);
+        HnswIndex index = newIndex(vectors);
+
+        float[] query = vectors.get(1L);
+        List<Long> result = index.search(query, 5, 64, 1L);
+        assertFalse(result.contains(1L));
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(distance(query, vectors.get(result.get(i - 1))) <= distance(query, vectors.get(result.get(i))));
+        }
+    }
+
+    @Test
+    void removedAndUpdatedPicturesAreReflected() {
+        Random random = new Random(3);
+        Map<Long, float[]> vectors = randomVectors(random);
+        HnswIndex index = newIndex(vectors);
+
+        float[] query = vectors.get(10L);
+        index.remove(10L);
+        assertFalse(index.search(query, 10, 64, -1L).contains(10L));
+        assertEquals(COUNT - 1, index.size());
+        assertEquals(1, index.deletedCount());
+
+        // 更新向量后按新向量能搜到，有效向量数不变
+        float[] moved = randomVector(random);
+        index.add(20L, moved);
+        assertEquals(20L, index.search(moved, 1, 64, -1L).get(0));
+        assertEquals(COUNT - 1, index.size());
+
+        index.compact();
+        assertEquals(0, index.deletedCount());
+        assertEquals(COUNT - 1, index.size());
+        assertEquals(20L, index.search(moved, 1, 64, -1L).get(0));
+    }
+
+    @Test
+    void saveAndLoadKeepsSearchResults(@TempDir Path dir) throws Exception {
+        Random random = new Random(11);
+        Map<Long, float[]> vectors = randomVectors(random);
+        HnswIndex index = newIndex(vectors);
+        index.remove(5L);
+        index.setWatermark(123456789L);
+
+        Path path = dir.resolve("public.hnsw");
+        index.save(path);
+        HnswIndex loaded = HnswIndex.load(path, DIMENSION);
+
+        assertEquals(index.size(), loaded.size());
+        assertEquals(123456789L, loaded.getWatermark());
+        for (int q = 0; q < 10; q++) {
+            float[] query = randomVector(random);
+            assertEquals(index.search(query, 10, 64, -1L), loaded.search(query, 10, 64, -1L));
+        }
+        assertFalse(loaded.search(vectors.get(5L), 10, 64, -1L).contains(5L));
+    }
+
+    @Test
+    void emptyIndexReturnsNothing() {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100);
+        assertTrue(index.search(new float[DIMENSION], 10, 64, -1L).isEmpty());
+    }
+
+    private static HnswIndex newIndex(Map<Long, float[]> vectors) {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100);
+        vectors.forEach(index::add);
+        return index;
+    }
+
+    private static Map<Long, float[]> randomVectors(Random random) {
+        Map<Long, float[]> vectors = new LinkedHashMap<>();
+        for (long id = 1; id <= COUNT; id++) {
+            vectors.put(id, randomVector(random));
+        }
+        return vectors;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = random.nextFloat();
+        }
+        return vector;
+    }
+
+    private static List<Long> bruteForce(Map<Long, float[]> vectors, float[] query, int k, long excludeId) {
+        return vectors.entrySet().stream()
+                .filter(entry -> entry.getKey() != excludeId)
+                .sorted(Comparator.comparingDouble(entry -> distance(query, entry.getValue())))
+                .limit(k)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static double distance(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            double diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
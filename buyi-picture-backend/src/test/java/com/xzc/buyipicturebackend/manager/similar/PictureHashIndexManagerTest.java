@@ -0,0 +1,84 @@
+package com.xzc.buyipicturebackend.manager.similar;
+
+import com.xzc.buyipicturebackend.utils.PerceptualHashUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 感知哈希 BK 树：范围查询与暴力比较一致，删除、排序
+ *
+ * @author xuzhichao
+ */
+class PictureHashIndexManagerTest {
+
+    @Test
+    void searchFindsExactlyThePicturesWithinDistance() {
+        Random random = new Random(42);
+        PictureHashIndexManager.HashIndex index = new PictureHashIndexManager.HashIndex();
+        Map<Long, long[]> hashes = new HashMap<>();
+        long base = random.nextLong();
+        for (long id = 1; id <= 2000; id++) {
+            // 一半围绕同一个哈希随机翻转少量位，一半完全随机
+            long pHash = id % 2 == 0 ? flipBits(base, random.nextInt(20), random) : random.nextLong();
+            long dHash = random.nextLong();
+            hashes.put(id, new long[]{pHash, dHash});
+            index.put(id, pHash, dHash);
+        }
+
+        for (long queryId = 2; queryId <= 200; queryId += 2) {
+            long[] query = hashes.get(queryId);
+            Set<Long> expected = new HashSet<>();
+            for (Map.Entry<Long, long[]> entry : hashes.entrySet()) {
+                if (entry.getKey() != queryId
+                        && PerceptualHashUtils.hammingDistance(entry.getValue()[0], query[0]) <= PictureHashIndexManager.MAX_DISTANCE) {
+                    expected.add(entry.getKey());
+                }
+            }
+            List<Long> actual = index.search(queryId, query[0], query[1], Integer.MAX_VALUE);
+            assertEquals(expected, new HashSet<>(actual), "queryId = " + queryId);
+        }
+    }
+
+    @Test
+    void resultsAreSortedByCombinedDistanceAndLimited() {
+        PictureHashIndexManager.HashIndex index = new PictureHashIndexManager.HashIndex();
+        index.put(1L, 0L, 0L);
+        index.put(2L, 0b1L, 0L);
+        index.put(3L, 0b11L, 0b1L);
+        index.put(4L, 0b111L, 0b111L);
+
+        assertEquals(Arrays.asList(2L, 3L, 4L), index.search(1L, 0L, 0L, 10));
+        assertEquals(Arrays.asList(2L, 3L), index.search(1L, 0L, 0L, 2));
+    }
+
+    @Test
+    void removedAndUpdatedPicturesAreReflected() {
+        PictureHashIndexManager.HashIndex index = new PictureHashIndexManager.HashIndex();
+        index.put(1L, 0L, 0L);
+        index.put(2L, 0L, 0L);
+        index.put(3L, 0b1L, 0L);
+
+        index.remove(2L);
+        assertEquals(Collections.singletonList(3L), index.search(1L, 0L, 0L, 10));
+
+        // 更新为很远的哈希后不再命中
+        index.put(3L, -1L, -1L);
+        assertTrue(index.search(1L, 0L, 0L, 10).isEmpty());
+    }
+
+    @Test
+    void emptyIndexReturnsNothing() {
+        assertTrue(new PictureHashIndexManager.HashIndex().search(1L, 0L, 0L, 10).isEmpty());
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        long result = hash;
+        for (int i = 0; i < bits; i++) {
+            result ^= 1L << random.nextInt(64);
+        }
+        return result;
+    }
+}
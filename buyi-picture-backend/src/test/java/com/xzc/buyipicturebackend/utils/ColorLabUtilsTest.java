@@ -0,0 +1,61 @@
+package com.xzc.buyipicturebackend.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 颜色解析、RGB 转 Lab、Lab 压缩与色差
+ *
+ * @author xuzhichao
+ */
+class ColorLabUtilsTest {
+
+    private static final double DELTA = 0.05;
+
+    @Test
+    void parseRgbAcceptsHexFormats() {
+        assertEquals(0xFF0000, ColorLabUtils.parseRgb("0xFF0000"));
+        assertEquals(0x00FF00, ColorLabUtils.parseRgb("#00ff00"));
+        assertEquals(0x0000FF, ColorLabUtils.parseRgb(" 0x0000FF "));
+        assertNull(ColorLabUtils.parseRgb(null));
+        assertNull(ColorLabUtils.parseRgb(""));
+        assertNull(ColorLabUtils.parseRgb("red"));
+    }
+
+    @Test
+    void rgbToLabMatchesReferenceValues() {
+        assertLab(new double[]{100, 0, 0}, ColorLabUtils.rgbToLab(0xFFFFFF));
+        assertLab(new double[]{0, 0, 0}, ColorLabUtils.rgbToLab(0x000000));
+        assertLab(new double[]{53.24, 80.09, 67.20}, ColorLabUtils.rgbToLab(0xFF0000));
+        assertLab(new double[]{87.73, -86.18, 83.18}, ColorLabUtils.rgbToLab(0x00FF00));
+        assertLab(new double[]{32.30, 79.19, -107.86}, ColorLabUtils.rgbToLab(0x0000FF));
+    }
+
+    @Test
+    void packedLabRoundTrips() {
+        for (int rgb : new int[]{0x000000, 0xFFFFFF, 0xFF0000, 0x00FF00, 0x0000FF, 0x123456, 0xABCDEF}) {
+            double[] lab = ColorLabUtils.rgbToLab(rgb);
+            double[] unpacked = ColorLabUtils.unpackLab(ColorLabUtils.packLab(lab));
+            assertLab(lab, unpacked);
+            assertEquals(ColorLabUtils.packLab(lab), ColorLabUtils.rgbToPackedLab(rgb));
+        }
+    }
+
+    @Test
+    void deltaESquaredIsSquaredEuclideanDistance() {
+        assertEquals(0, ColorLabUtils.deltaESquared(50, 10, -10, 50, 10, -10), 1e-9);
+        assertEquals(9 + 16 + 144, ColorLabUtils.deltaESquared(50, 10, -10, 53, 14, 2), 1e-9);
+        double[] red = ColorLabUtils.rgbToLab(0xFF0000);
+        double[] darkRed = ColorLabUtils.rgbToLab(0xEE0000);
+        double[] blue = ColorLabUtils.rgbToLab(0x0000FF);
+        assertTrue(ColorLabUtils.deltaESquared(red[0], red[1], red[2], darkRed[0], darkRed[1], darkRed[2])
+                < ColorLabUtils.deltaESquared(red[0], red[1], red[2], blue[0], blue[1], blue[2]));
+    }
+
+    private static void assertLab(double[] expected, double[] actual) {
+        assertEquals(expected[0], actual[0], DELTA, "L");
+        assertEquals(expected[1], actual[1], DELTA, "a");
+        assertEquals(expected[2], actual[2], DELTA, "b");
+    }
+}
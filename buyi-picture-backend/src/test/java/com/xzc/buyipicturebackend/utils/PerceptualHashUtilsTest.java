@@ -0,0 +1,76 @@
+package com.xzc.buyipicturebackend.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 感知哈希：相同内容的缩放图距离很小，不同内容距离很大
+ *
+ * @author xuzhichao
+ */
+class PerceptualHashUtilsTest {
+
+    @Test
+    void hammingDistanceCountsDifferentBits() {
+        assertEquals(0, PerceptualHashUtils.hammingDistance(0L, 0L));
+        assertEquals(64, PerceptualHashUtils.hammingDistance(0L, -1L));
+        assertEquals(3, PerceptualHashUtils.hammingDistance(0b1011L, 0b0000L));
+        assertEquals(PerceptualHashUtils.hammingDistance(123L, 456L), PerceptualHashUtils.hammingDistance(456L, 123L));
+    }
+
+    @Test
+    void sameImageHasSameHashes() {
+        BufferedImage image = scene(400, 300, false);
+        assertEquals(PerceptualHashUtils.pHash(image), PerceptualHashUtils.pHash(scene(400, 300, false)));
+        assertEquals(PerceptualHashUtils.dHash(image), PerceptualHashUtils.dHash(scene(400, 300, false)));
+    }
+
+    @Test
+    void resizedImageIsClose() {
+        BufferedImage original = scene(800, 600, false);
+        BufferedImage resized = resize(original, 200, 150);
+        assertTrue(PerceptualHashUtils.hammingDistance(PerceptualHashUtils.pHash(original), PerceptualHashUtils.pHash(resized)) <= 6);
+        assertTrue(PerceptualHashUtils.hammingDistance(PerceptualHashUtils.dHash(original), PerceptualHashUtils.dHash(resized)) <= 12);
+    }
+
+    @Test
+    void differentImageIsFar() {
+        BufferedImage image = scene(400, 300, false);
+        BufferedImage mirrored = scene(400, 300, true);
+        assertTrue(PerceptualHashUtils.hammingDistance(PerceptualHashUtils.pHash(image), PerceptualHashUtils.pHash(mirrored)) > 12);
+        assertTrue(PerceptualHashUtils.hammingDistance(PerceptualHashUtils.dHash(image), PerceptualHashUtils.dHash(mirrored)) > 12);
+    }
+
+    /**
+     * 左亮右暗的渐变背景上画几个色块，mirrored 为左右翻转
+     */
+    private static BufferedImage scene(int width, int height, boolean mirrored) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        Color light = new Color(230, 230, 220);
+        Color dark = new Color(20, 30, 60);
+        graphics.setPaint(new GradientPaint(0, 0, mirrored ? dark : light, width, height, mirrored ? light : dark));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(new Color(200, 40, 40));
+        int x = mirrored ? width - width / 8 - width / 3 : width / 8;
+        graphics.fillOval(x, height / 6, width / 3, height / 2);
+        graphics.setColor(new Color(40, 160, 60));
+        x = mirrored ? width / 10 : width - width / 10 - width / 5;
+        graphics.fillRect(x, height / 2, width / 5, height / 3);
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,38 @@
+package com.xzc.buyipicturebackend.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xzc.buyipicturebackend.model.entity.Picture;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 列表排序：追加 id 作为次级排序，方向与主排序一致
+ *
+ * @author xuzhichao
+ */
+class QuerySortUtilsTest {
+
+    @Test
+    void appendsIdInTheSameDirection() {
+        assertEquals("ORDER BY createTime ASC,id ASC", orderBy("createTime", "ascend"));
+        assertEquals("ORDER BY createTime DESC,id DESC", orderBy("createTime", "descend"));
+    }
+
+    @Test
+    void defaultsToDescending() {
+        assertEquals("ORDER BY picSize DESC,id DESC", orderBy("picSize", null));
+        assertEquals("ORDER BY picSize DESC,id DESC", orderBy("picSize", "unknown"));
+    }
+
+    @Test
+    void doesNotRepeatId() {
+        assertEquals("ORDER BY id ASC", orderBy("id", "ascend"));
+    }
+
+    private static String orderBy(String column, String sortOrder) {
+        QueryWrapper<Picture> queryWrapper = new QueryWrapper<>();
+        QuerySortUtils.orderBy(queryWrapper, column, sortOrder);
+        return queryWrapper.getSqlSegment().trim();
+    }
+}